@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.core.LMMESession;
+import org.vanted.addons.lmme_dm.decomposition.DiseaseMapPathwayDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.MMDecomposition;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.io.StreamingSBMLReader;
+
+/**
+ * Decomposes a disease map without starting VANTED.
+ * <p>
+ * The SBML file is read by the {@link StreamingSBMLReader} directly into a {@link BaseGraph}, which is set as model of a session that is not shown in any
+ * view. The {@link DiseaseMapPathwayDecomposition} is then performed with the given cloning threshold, and the subsystems are written to the standard
+ * output, one per line with their numbers of reactions and species, separated by tabs.
+ * 
+ * @author Michael Aichem
+ */
+public class StartLMMEHeadless {
+	
+	/**
+	 * The minimum degree of the species that are cloned, if no other is given. This is the default of the LMME tab.
+	 */
+	private static final int DEFAULT_CLONE_DEGREE = 15;
+	
+	/**
+	 * Reads and decomposes the given disease map.
+	 * 
+	 * @param args
+	 *           the SBML file, optionally followed by the minimum degree of the species that are cloned
+	 * @throws IOException
+	 *            if the SBML file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: " + StartLMMEHeadless.class.getName() + " <SBML file> [minimum degree of cloned species]");
+			System.exit(1);
+		}
+		int cloneDegree = DEFAULT_CLONE_DEGREE;
+		if (args.length == 2) {
+			try {
+				cloneDegree = Integer.parseInt(args[1]);
+			} catch (NumberFormatException e) {
+				System.err.println("The minimum degree of cloned species could not be read: " + args[1]);
+				System.exit(1);
+			}
+		}
+		
+		long start = System.nanoTime();
+		StreamingSBMLReader reader = new StreamingSBMLReader();
+		reader.read(new File(args[0]));
+		BaseGraph baseGraph = reader.createBaseGraph();
+		System.err.println("Read " + baseGraph.getNumberOfSpecies() + " species and " + baseGraph.getNumberOfReactions() + " reactions in "
+				+ (System.nanoTime() - start) / 1000000 + " ms, " + reader.getNumberOfUnresolvedReferences() + " unresolved species references");
+		
+		// the decomposition methods operate on the current session
+		LMMEController.getInstance().setCurrentSession(new LMMESession(baseGraph));
+		
+		start = System.nanoTime();
+		MMDecomposition decomposition = new DiseaseMapPathwayDecomposition().run(false,
+				baseGraph.getOriginalSpeciesWithDegreeAtLeast(cloneDegree), -1, -1, -1);
+		System.err.println("Decomposed into " + decomposition.getSubsystems().size() + " subsystems in " + (System.nanoTime() - start) / 1000000
+				+ " ms");
+		
+		for (SubsystemGraph subsystem : decomposition.getSubsystems()) {
+			System.out.println(subsystem.getName() + "\t" + subsystem.getNumberOfReactions() + "\t" + subsystem.getNumberOfSpecies());
+		}
+		
+	}
+	
+}
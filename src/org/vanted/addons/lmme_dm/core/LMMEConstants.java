@@ -38,6 +38,13 @@ public class LMMEConstants {
 	public static final String DEFAULT_SUBSYSTEM = "Default Subsystem (algorithmically derived)";
 	
 	public static final String DISEASE_MAP_PATHWAY_ATTRIBUTE = "dmPathway";
+	public static final String LABEL_ATTRIBUTE = "label";
+	
+	/**
+	 * The MIRIAM resources of a species or reaction, i.e. the {@code rdf:resource} URIs from its annotation such as
+	 * {@code urn:miriam:kegg.reaction:R00200}, separated by blanks.
+	 */
+	public static final String MIRIAM_ATTRIBUTE = "miriam";
 	
 	/**
 	 * These are the global and overview pathway maps from KEGG.
@@ -15,18 +15,19 @@
 package org.vanted.addons.lmme_dm.core;
 
 import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.regex.Pattern;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 import org.AttributeHelper;
+import org.ReleaseInfo;
 import org.graffiti.editor.GraffitiInternalFrame;
 import org.graffiti.editor.GravistoService;
 import org.graffiti.editor.MainFrame;
@@ -36,13 +37,19 @@ import org.graffiti.graph.Node;
 import org.graffiti.plugin.algorithm.Algorithm;
 import org.graffiti.util.InstanceLoader;
 import org.vanted.addons.lmme_dm.analysis.OverRepresentationAnalysis;
+import org.vanted.addons.lmme_dm.decomposition.AnnotationMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.CompartmentMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.DiseaseMapPathwayDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.GirvanMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.KeggMMDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.LabelPropagationMMDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.LouvainMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.MMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.MMDecompositionAlgorithm;
+import org.vanted.addons.lmme_dm.decomposition.MultilevelMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.PredefinedMMDecomposition;
 import org.vanted.addons.lmme_dm.decomposition.SchusterMMDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.SpectralMMDecomposition;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.OverviewGraph;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
@@ -60,8 +67,6 @@ import org.vanted.addons.lmme_dm.ui.LMMETab;
 import org.vanted.addons.lmme_dm.ui.LMMEViewManagement;
 
 import de.ipk_gatersleben.ag_nw.graffiti.GraphHelper;
-import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBMLSpeciesHelper;
-import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
 
 /**
  * This class controls and coordinates the actions of LMME.
@@ -78,6 +83,19 @@ public class LMMEController {
 	
 	private LMMESession currentSession;
 	
+	/**
+	 * All open sessions, including the {@link #currentSession}, in the order in which they have been opened.
+	 */
+	private ArrayList<LMMESession> sessions = new ArrayList<>();
+	
+	private int sessionCounter = 0;
+	
+	/**
+	 * Whether a decomposition or restore is running in the background. Since the decomposition methods operate on the current session, switching sessions
+	 * is not possible during that time.
+	 */
+	private volatile boolean backgroundTaskRunning = false;
+	
 	private LMMETab tab;
 	
 	/**
@@ -95,6 +113,13 @@ public class LMMEController {
 	 */
 	private HashMap<String, MMSubsystemLayout> subsystemLayoutsMap = new HashMap<>();
 	
+	/**
+	 * The recently computed decompositions, shared by all sessions.
+	 */
+	private LMMEDecompositionCache decompositionCache = new LMMEDecompositionCache(
+			new File(ReleaseInfo.getAppFolderWithFinalSep() + "lmme", "decompositions"), LMMEDecompositionCache.DEFAULT_CAPACITY,
+			LMMEDecompositionCache.DEFAULT_DISK_CAPACITY);
+	
 	/**
 	 * The constructor of the controller.
 	 * <p>
@@ -102,21 +127,31 @@ public class LMMEController {
 	 */
 	private LMMEController() {
 		
-		currentSession = new LMMESession();
+		currentSession = addSession(null);
 		
 		PredefinedMMDecomposition predefDecomp = new PredefinedMMDecomposition();
 		KeggMMDecomposition keggDecomp = new KeggMMDecomposition();
+		AnnotationMMDecomposition annotationDecomp = new AnnotationMMDecomposition();
 		SchusterMMDecomposition schusterDecomp = new SchusterMMDecomposition();
 		CompartmentMMDecomposition compartmentDecomp = new CompartmentMMDecomposition();
 		DiseaseMapPathwayDecomposition diseaseMapPathwayDecomp = new DiseaseMapPathwayDecomposition();
-//		GirvanMMDecomposition girvanDecomp = new GirvanMMDecomposition();
+		GirvanMMDecomposition girvanDecomp = new GirvanMMDecomposition();
+		LouvainMMDecomposition louvainDecomp = new LouvainMMDecomposition();
+		LabelPropagationMMDecomposition labelPropagationDecomp = new LabelPropagationMMDecomposition();
+		MultilevelMMDecomposition multilevelDecomp = new MultilevelMMDecomposition();
+		SpectralMMDecomposition spectralDecomp = new SpectralMMDecomposition();
 		
 //		decompositionAlgorithmsMap.put(predefDecomp.getName(), predefDecomp);
 //		decompositionAlgorithmsMap.put(keggDecomp.getName(), keggDecomp);
+		decompositionAlgorithmsMap.put(annotationDecomp.getName(), annotationDecomp);
 		decompositionAlgorithmsMap.put(schusterDecomp.getName(), schusterDecomp);
-//		decompositionAlgorithmsMap.put(compartmentDecomp.getName(), compartmentDecomp);
+		decompositionAlgorithmsMap.put(compartmentDecomp.getName(), compartmentDecomp);
 		decompositionAlgorithmsMap.put(diseaseMapPathwayDecomp.getName(), diseaseMapPathwayDecomp);
-//		decompositionAlgorithmsMap.put(girvanDecomp.getName(), girvanDecomp);
+		decompositionAlgorithmsMap.put(girvanDecomp.getName(), girvanDecomp);
+		decompositionAlgorithmsMap.put(louvainDecomp.getName(), louvainDecomp);
+		decompositionAlgorithmsMap.put(labelPropagationDecomp.getName(), labelPropagationDecomp);
+		decompositionAlgorithmsMap.put(multilevelDecomp.getName(), multilevelDecomp);
+		decompositionAlgorithmsMap.put(spectralDecomp.getName(), spectralDecomp);
 		
 		StressMinMMLayout stressMinLayout = new StressMinMMLayout();
 		ForceDirectedMMLayout forceLayout = new ForceDirectedMMLayout();
@@ -166,6 +201,67 @@ public class LMMEController {
 		this.currentSession = currentSession;
 	}
 	
+	public ArrayList<LMMESession> getSessions() {
+		return sessions;
+	}
+	
+	/**
+	 * Creates a new session for the given base graph, assigns it a name and adds it to the list of open sessions.
+	 * 
+	 * @param baseGraph
+	 *           the base graph of the new session, may be {@code null}
+	 * @return the new session
+	 */
+	private LMMESession addSession(BaseGraph baseGraph) {
+		LMMESession session = new LMMESession(baseGraph);
+		session.setName("Session " + (++sessionCounter));
+		sessions.add(session);
+		return session;
+	}
+	
+	/**
+	 * Marks the background task that has been started for the current session as finished.
+	 * <p>
+	 * This is done on the event dispatch thread, such that it happens after all GUI updates that the task has scheduled before.
+	 */
+	private void finishBackgroundTask() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				backgroundTaskRunning = false;
+			}
+		});
+	}
+	
+	/**
+	 * Runs the given task in a background thread, such that the GUI stays responsive. Like the decomposition, it is not started while another background
+	 * task is running.
+	 * 
+	 * @param name
+	 *           the name of the thread
+	 * @param task
+	 *           the task, it has to schedule its GUI updates on the event dispatch thread
+	 * @return whether the task has been started
+	 */
+	public boolean startBackgroundTask(String name, Runnable task) {
+		if (backgroundTaskRunning) {
+			JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+			return false;
+		}
+		backgroundTaskRunning = true;
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					finishBackgroundTask();
+				}
+			}
+		});
+		thread.setName(name);
+		thread.start();
+		return true;
+	}
+	
 	public LMMETab getTab() {
 		return tab;
 	}
@@ -189,10 +285,13 @@ public class LMMEController {
 			// 0=Yes, 1=No, -1=window closed
 			int option = JOptionPane.showConfirmDialog(null,
 					"<html>The base graph has already been set. Re-setting it will start a new session <br>"
-							+ "and delete the data from the current session. Do you want to continue?</html>",
+							+ "and delete the data from all open sessions. Do you want to continue?</html>",
 					"Warning: Model already set", JOptionPane.YES_NO_OPTION);
 			if (option == 0) {
-				LMMEViewManagement.getInstance().closeFrames();
+				if (backgroundTaskRunning) {
+					JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+					return;
+				}
 				resetSession();
 			} else {
 				return;
@@ -201,41 +300,16 @@ public class LMMEController {
 		if (MainFrame.getInstance().getActiveEditorSession() != null) {
 			Graph graph = MainFrame.getInstance().getActiveEditorSession().getGraph();
 			
-			// restore role attribute to sbml-style
-			for (Node node : graph.getNodes()) {
-				if (AttributeHelper.hasAttribute(node, "cd19dm", "node_type")) {
-					String nodeType = (String) AttributeHelper.getAttributeValue(node, "cd19dm", "node_type", "", "");
-					AttributeHelper.setAttribute(node, SBML_Constants.SBML, SBML_Constants.SBML_ROLE, nodeType);
-				}
-			}
+			LMMEModelIngest ingest = new LMMEModelIngest(graph);
+			ingest.classify();
+			ingest.normalize();
 			
-			// restore origin diagram annotation
-			for (Node reactionNode : graph.getNodes()) {
-				if (LMMETools.getInstance().isReaction(reactionNode)) {
-					if (AttributeHelper.hasAttribute(reactionNode, "cd19dm", "diagram")) {
-						String diagramAnnotation = (String) AttributeHelper.getAttributeValue(reactionNode, "cd19dm", "diagram", "", "");
-//						if (diagramAnnotation.indexOf(";") != -1) {
-//							System.out.println("Check diagram annotation: " + diagramAnnotation);
-//						}
-						AttributeHelper.setAttribute(reactionNode, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.DISEASE_MAP_PATHWAY_ATTRIBUTE,
-								diagramAnnotation.split(Pattern.quote(";"))[0]);
-					}
-				}
-			}
-			
-			// assign species circular shape
-			for (Node speciesNode : graph.getNodes()) {
-				if (LMMETools.getInstance().isSpecies(speciesNode)) {
-					AttributeHelper.setShape(speciesNode, "org.graffiti.plugins.views.defaults.CircleNodeShape");
-				}
-			}
-			
-			SBMLSpeciesHelper helper = new SBMLSpeciesHelper(graph);
-			if (helper.getSpeciesNodes().isEmpty()) {
+			if (ingest.getNumberOfSpecies() == 0) {
 				JOptionPane.showMessageDialog(null, "The currently active graph is no SBML model.");
 				return;
 			}
-			this.currentSession.setBaseGraph(new BaseGraph(graph));
+			this.currentSession.setBaseGraph(ingest.createBaseGraph());
+			this.tab.logMsg(ingest.getTimings());
 			LMMESubsystemViewManagement.getInstance().resetLists();
 		} else {
 			JOptionPane.showMessageDialog(null, "There is no active model.");
@@ -247,10 +321,15 @@ public class LMMEController {
 	 * Implements the action for the 'Show Overview Graph' button in the Add-On tab.
 	 * <p>
 	 * Using the {@link BaseGraph} of the {@link #currentSession}, the selected decomposition is performed and the overview graph is created and drawn according
-	 * to the selected layout method.
+	 * to the selected layout method. If the decomposition has been computed before with the same settings and cloning, it is taken from the
+	 * {@link #decompositionCache}.
 	 */
 	public void showOverviewGraphAction() {
 		if (this.currentSession.isModelSet()) {
+			if (backgroundTaskRunning) {
+				JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+				return;
+			}
 			if (this.currentSession.isOverviewGraphConstructed()) {
 				// 0=Yes, 1=No, -1=window closed
 				int option = JOptionPane.showConfirmDialog(null,
@@ -264,23 +343,29 @@ public class LMMEController {
 				partiallyResetSession();
 			}
 			
+			LMMESession session = this.currentSession;
+			backgroundTaskRunning = true;
 			Thread decompositionThread = new Thread(new Runnable() {
 				public void run() {
-					MMDecomposition decomposition = decompositionAlgorithmsMap.get(tab.getDecompositionMethod())
-							.run(tab.getAddTransporterSubS());
-					currentSession.setOverviewGraph(new OverviewGraph(decomposition, tab.getShowInterfaces()));
-					MainFrame.showMessage("Calculating Layout ...", MessageType.PERMANENT_INFO);
-					SwingUtilities.invokeLater(new Runnable() {
-						public void run() {
-							LMMEViewManagement.getInstance()
-									.showAsOverviewGraph(currentSession.getOverviewGraph().getGraph());
-							overviewLayoutsMap.get(tab.getOverviewLayoutMethod()).layOutAsOverview(
-									LMMEViewManagement.getInstance().getOverviewFrame().getView().getGraph());
-							LMMESubsystemViewManagement.getInstance().resetLists();
-							tab.setLblNumberOfSubsystems(decomposition.getSubsystems().size());
-							tab.updateOptions();
-						}
-					});
+					try {
+						MMDecomposition decomposition = decompose(session.getBaseGraph(),
+								decompositionAlgorithmsMap.get(tab.getDecompositionMethod()));
+						session.setDecompositionMethod(tab.getDecompositionMethod());
+						session.setOverviewGraph(new OverviewGraph(decomposition, tab.getShowInterfaces()));
+						MainFrame.showMessage("Calculating Layout ...", MessageType.PERMANENT_INFO);
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								session.getViewManagement().showAsOverviewGraph(session.getOverviewGraph().getGraph());
+								overviewLayoutsMap.get(tab.getOverviewLayoutMethod()).layOutAsOverview(
+										session.getViewManagement().getOverviewFrame().getView().getGraph());
+								session.getSubsystemViewManagement().resetLists();
+								tab.setLblNumberOfSubsystems(decomposition.getSubsystems().size());
+								tab.updateOptions();
+							}
+						});
+					} finally {
+						finishBackgroundTask();
+					}
 				}
 			});
 			decompositionThread.setName("Decomposition");
@@ -293,6 +378,194 @@ public class LMMEController {
 		
 	}
 	
+	/**
+	 * Performs the given decomposition method with the current settings of the tab, or takes its result from the {@link #decompositionCache} if it has
+	 * been computed before. Methods that are not {@link MMDecompositionAlgorithm#isCacheable()} are always performed.
+	 * 
+	 * @param baseGraph
+	 *           the base graph of the current session
+	 * @param algorithm
+	 *           the decomposition method
+	 * @return the decomposition
+	 */
+	private MMDecomposition decompose(BaseGraph baseGraph, MMDecompositionAlgorithm algorithm) {
+		if (!algorithm.isCacheable()) {
+			return algorithm.run(tab.getAddTransporterSubS());
+		}
+		String cacheKey = LMMEDecompositionCache.getKey(baseGraph, algorithm,
+				algorithm.requiresCloning() ? tab.getClonableSpecies() : new ArrayList<Node>(), tab.getDecompositionSettings(),
+				tab.getAddTransporterSubS());
+		boolean useDisk = tab.isDecompositionDiskCacheUsed() && algorithm.isDiskCacheable();
+		MMDecomposition decomposition = decompositionCache.get(cacheKey, baseGraph, useDisk);
+		if (decomposition == null) {
+			decomposition = algorithm.run(tab.getAddTransporterSubS());
+			decompositionCache.put(cacheKey, baseGraph, decomposition, useDisk);
+		} else {
+			// the attributes of the previous run do not belong to the cached decomposition
+			baseGraph.clearNodeAttributes();
+			tab.logMsg("The decomposition has been taken from the cache.");
+		}
+		return decomposition;
+	}
+	
+	/**
+	 * Implements the action for the 'Expand Selected Group' button in the Add-On tab.
+	 * <p>
+	 * The overview graph of the subsystems in the selected group is shown instead of the current level. It is constructed and laid out when the group is
+	 * expanded for the first time, and reused afterwards.
+	 */
+	public void expandSubsystemAction() {
+		if (!this.currentSession.isOverviewGraphConstructed()) {
+			JOptionPane.showMessageDialog(null, "There was no overview graph constructed so far.");
+			return;
+		}
+		OverviewGraph overviewGraph = this.currentSession.getOverviewGraph();
+		SubsystemGraph superSubsystem = null;
+		for (SubsystemGraph subsystem : overviewGraph.getSelectedSubsystems()) {
+			if (overviewGraph.getDecomposition().isSuperSubsystem(subsystem)) {
+				superSubsystem = subsystem;
+				break;
+			}
+		}
+		if (superSubsystem == null) {
+			JOptionPane.showMessageDialog(null, "There is no group of subsystems selected in the overview graph.");
+			return;
+		}
+		boolean layOut = !overviewGraph.hasChildOverview(superSubsystem);
+		showOverviewLevel(overviewGraph.getChildOverview(superSubsystem), layOut);
+	}
+	
+	/**
+	 * Implements the action for the 'Show Parent Level' button in the Add-On tab.
+	 * <p>
+	 * The level of the overview graph that contains the currently expanded group is shown again.
+	 */
+	public void showParentLevelAction() {
+		if (!this.currentSession.isOverviewGraphConstructed()) {
+			JOptionPane.showMessageDialog(null, "There was no overview graph constructed so far.");
+			return;
+		}
+		OverviewGraph parent = this.currentSession.getOverviewGraph().getParent();
+		if (parent == null) {
+			JOptionPane.showMessageDialog(null, "The overview graph already shows the top level.");
+			return;
+		}
+		showOverviewLevel(parent, false);
+	}
+	
+	/**
+	 * Shows the given level of the overview graph of the current session.
+	 * 
+	 * @param overviewGraph
+	 *           the level to be shown
+	 * @param layOut
+	 *           whether the level has to be laid out, i.e. whether it is shown for the first time
+	 */
+	private void showOverviewLevel(OverviewGraph overviewGraph, boolean layOut) {
+		LMMESession session = this.currentSession;
+		session.setOverviewGraph(overviewGraph);
+		session.getViewManagement().showAsOverviewGraph(overviewGraph.getGraph());
+		if (layOut) {
+			overviewLayoutsMap.get(tab.getOverviewLayoutMethod()).layOutAsOverview(
+					session.getViewManagement().getOverviewFrame().getView().getGraph());
+		}
+		session.getSubsystemViewManagement().resetLists();
+		tab.resetSelectionInfo();
+		tab.resetSubsystemInfo();
+	}
+	
+	/**
+	 * Implements the action for the 'Save Session' button in the Add-On tab.
+	 * <p>
+	 * The current session is written as {@link LMMESessionSnapshot} to the given file.
+	 * 
+	 * @param file
+	 *           the target file
+	 */
+	public void saveSessionAction(File file) {
+		if (this.currentSession.isOverviewGraphConstructed()) {
+			try {
+				LMMESessionSnapshot.capture(this.currentSession).write(file);
+				tab.logMsg("Saved session to " + file.getName());
+			} catch (IOException e) {
+				e.printStackTrace();
+				JOptionPane.showMessageDialog(null, "The session could not be saved: " + e.getMessage());
+			}
+		} else {
+			JOptionPane.showMessageDialog(null, "There was no overview graph constructed so far.");
+		}
+	}
+	
+	/**
+	 * Implements the action for the 'Load Session' button in the Add-On tab.
+	 * <p>
+	 * The {@link LMMESessionSnapshot} is read from the given file and restored on the {@link BaseGraph} of the current session. Neither the decomposition nor
+	 * the layout of the overview graph and the subsystems view are recomputed.
+	 * 
+	 * @param file
+	 *           the snapshot file
+	 */
+	public void loadSessionAction(File file) {
+		if (!this.currentSession.isModelSet()) {
+			JOptionPane.showMessageDialog(null, "No base graph was set.");
+			return;
+		}
+		LMMESessionSnapshot snapshot;
+		try {
+			snapshot = LMMESessionSnapshot.read(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(null, "The session could not be loaded: " + e.getMessage());
+			return;
+		}
+		if (!snapshot.matches(this.currentSession.getBaseGraph())) {
+			JOptionPane.showMessageDialog(null,
+					"The session in " + file.getName() + " has been saved for a different model than the one currently set.");
+			return;
+		}
+		if (backgroundTaskRunning) {
+			JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+			return;
+		}
+		if (this.currentSession.isOverviewGraphConstructed()) {
+			LMMEViewManagement.getInstance().closeFrames();
+			partiallyResetSession();
+		}
+		
+		LMMESession session = this.currentSession;
+		backgroundTaskRunning = true;
+		Thread restoreThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					BaseGraph baseGraph = session.getBaseGraph();
+					MMDecomposition decomposition = snapshot.restoreDecomposition(baseGraph);
+					session.setDecompositionMethod(snapshot.getDecompositionMethod());
+					session.setOverviewGraph(new OverviewGraph(decomposition, snapshot.isShowInterfaces()));
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							snapshot.restoreOverviewPositions(baseGraph, session.getOverviewGraph());
+							session.getViewManagement().showAsOverviewGraph(session.getOverviewGraph().getGraph());
+							session.getSubsystemViewManagement().resetLists();
+							ArrayList<SubsystemGraph> shownSubsystems = snapshot.getShownSubsystems(decomposition);
+							if (!shownSubsystems.isEmpty()) {
+								session.getSubsystemViewManagement().showSubsystems(shownSubsystems, true,
+										snapshot.isColorMappingUsed());
+								snapshot.restoreSubsystemViewPositions(baseGraph);
+							}
+							tab.setLblNumberOfSubsystems(decomposition.getSubsystems().size());
+							tab.updateOptions();
+							tab.logMsg("Restored session from " + file.getName());
+						}
+					});
+				} finally {
+					finishBackgroundTask();
+				}
+			}
+		});
+		restoreThread.setName("Session Restore");
+		restoreThread.start();
+	}
+	
 	/**
 	 * Implements the action for the 'Show Selected Subsystems' button in the Add-On tab.
 	 * <p>
@@ -336,7 +609,10 @@ public class LMMEController {
 			LMMESubsystemViewManagement.getInstance().resetOverviewGraphColoring();
 			OverviewGraph og = getCurrentSession().getOverviewGraph();
 			for (SubsystemGraph subsystem : significantSubsystems) {
-				AttributeHelper.setFillColor(og.getNodeOfSubsystem(subsystem), Color.RED);
+				Node subsystemNode = og.getNodeOfSubsystem(subsystem);
+				if (subsystemNode != null) {
+					AttributeHelper.setFillColor(subsystemNode, Color.RED);
+				}
 			}
 		} else {
 			JOptionPane.showMessageDialog(null, "There was no overview graph constructed so far.");
@@ -397,22 +673,93 @@ public class LMMEController {
 		
 	}
 	
+	/**
+	 * Implements the action for the 'New Session' button in the Add-On tab.
+	 * <p>
+	 * A new session is opened for the model of the current session and becomes the current session. Its {@link BaseGraph} is a fork of the current one,
+	 * such that the original graph and all data derived from it are shared between the sessions.
+	 */
+	public void forkSessionAction() {
+		if (!this.currentSession.isModelSet()) {
+			JOptionPane.showMessageDialog(null, "No base graph was set.");
+			return;
+		}
+		if (backgroundTaskRunning) {
+			JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+			return;
+		}
+		switchSessionAction(addSession(this.currentSession.getBaseGraph().fork()));
+	}
+	
+	/**
+	 * Implements the action for the session selection in the Add-On tab.
+	 * <p>
+	 * The given session becomes the current session and its views are brought to the front. The other sessions, including their views, are kept open.
+	 * 
+	 * @param session
+	 *           one of the open sessions
+	 */
+	public void switchSessionAction(LMMESession session) {
+		if ((session == this.currentSession) || !this.sessions.contains(session)) {
+			return;
+		}
+		if (backgroundTaskRunning) {
+			JOptionPane.showMessageDialog(null, "Please wait until the current session has finished its computation.");
+			this.tab.updateGUI();
+			return;
+		}
+		this.currentSession = session;
+		session.getViewManagement().toFront();
+		this.tab.resetSubsystemInfo();
+		this.tab.updateGUI();
+	}
+	
 	/**
 	 * Resets the whole session.
+	 * <p>
+	 * All open sessions are closed, including their views, and a single empty session is opened.
 	 */
 	private void resetSession() {
-		currentSession = new LMMESession();
+		for (LMMESession session : sessions) {
+			session.getViewManagement().closeFrames();
+		}
+		sessions.clear();
+		sessionCounter = 0;
+		currentSession = addSession(null);
 		this.tab.updateGUI();
 	}
 	
 	/**
-	 * Partially resets the session.
-	 * <p>
-	 * The session is reseted, except that the selected model is kept and a new, clean {@link BaseGraph} is constructed from the latter.
+	 * Partially resets the current session.
+	 * 
+	 * @see #partiallyResetSession(LMMESession)
 	 */
 	public void partiallyResetSession() {
-		Graph originalGraph = currentSession.getBaseGraph().getOriginalGraph();
-		currentSession = new LMMESession(new BaseGraph(originalGraph));
+		partiallyResetSession(this.currentSession);
+	}
+	
+	/**
+	 * Partially resets the given session.
+	 * <p>
+	 * The session is reseted, except that the {@link BaseGraph} of the selected model is kept. Its cloned species are not rebuilt, the next decomposition
+	 * only applies or undoes the difference to the newly selected clonable species, but the attributes that the decomposition methods assigned to its nodes
+	 * are removed. The other open sessions are not affected.
+	 * 
+	 * @param session
+	 *           the session to be reseted
+	 */
+	public void partiallyResetSession(LMMESession session) {
+		int index = sessions.indexOf(session);
+		if (index == -1) {
+			return;
+		}
+		session.getBaseGraph().clearNodeAttributes();
+		LMMESession newSession = new LMMESession(session.getBaseGraph());
+		newSession.setName(session.getName());
+		sessions.set(index, newSession);
+		if (session == currentSession) {
+			currentSession = newSession;
+		}
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
 				tab.updateGUI();
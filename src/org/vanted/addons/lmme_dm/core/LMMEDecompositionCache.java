@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.decomposition.MMDecomposition;
+import org.vanted.addons.lmme_dm.decomposition.MMDecompositionAlgorithm;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+
+/**
+ * A least recently used cache of decompositions, such that switching back to a decomposition method with unchanged settings does not recompute the
+ * cloning and the decomposition.
+ * <p>
+ * A decomposition is identified by a key consisting of the {@link BaseGraph#getModelFingerprint()}, the species to be cloned, the name, the
+ * {@link MMDecompositionAlgorithm#getParameterString()} and the {@link MMDecompositionAlgorithm#getAttributeFingerprint(BaseGraph, boolean)} of the
+ * method, and the general decomposition settings of the tab. The model and the cloning together determine the structure of the working graph, while the
+ * attribute fingerprint covers the attributes that the method reads, which the model fingerprint does not. Computing the key therefore takes time linear
+ * in the number of nodes whose attributes are fingerprinted. The entries are kept in an access-ordered {@code LinkedHashMap}, such that finding an entry
+ * by its key and evicting the least recently used entry take constant time. Methods that are not {@link MMDecompositionAlgorithm#isCacheable()}, i.e.
+ * not deterministic, are not cached at all.
+ * <p>
+ * Since the nodes of the working graph are replaced whenever the cloning changes, a decomposition is not kept as an object but encoded like in an
+ * {@link LMMESessionSnapshot}: the cloned species and the reactions and species of every subsystem are stored by their stable index in the original
+ * graph, and the super-subsystems by the indices of their children. On a hit, the cloning is restored and the subsystems are rebuilt from their reactions
+ * and species, which takes time linear in the size of the decomposition. Optionally, every entry is also written to a file in a cache directory, from
+ * which it can be read in later runs of VANTED. The number of files is bounded as well, the least recently used ones are deleted first.
+ * 
+ * @author Michael Aichem
+ */
+public class LMMEDecompositionCache {
+	
+	private static final int MAGIC = 0x4C4D4443;
+	private static final int VERSION = 2;
+	
+	private static final String FILE_EXTENSION = ".dec";
+	
+	public static final int DEFAULT_CAPACITY = 8;
+	public static final int DEFAULT_DISK_CAPACITY = 64;
+	
+	private final int capacity;
+	private final int diskCapacity;
+	private final File directory;
+	
+	private final LinkedHashMap<String, Entry> entries;
+	
+	/**
+	 * @param directory
+	 *           the directory for the entries that are kept on disk, which is created on first write
+	 * @param capacity
+	 *           the maximum number of entries in memory
+	 * @param diskCapacity
+	 *           the maximum number of entries on disk
+	 */
+	public LMMEDecompositionCache(File directory, int capacity, int diskCapacity) {
+		this.directory = directory;
+		this.capacity = capacity;
+		this.diskCapacity = diskCapacity;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > LMMEDecompositionCache.this.capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Creates the key of a decomposition.
+	 * 
+	 * @param baseGraph
+	 *           the base graph
+	 * @param algorithm
+	 *           the decomposition method
+	 * @param clonableSpecies
+	 *           the species of the original graph that are cloned before the decomposition, empty if the method does not require cloning
+	 * @param settings
+	 *           the general decomposition settings, see {@link org.vanted.addons.lmme_dm.ui.LMMETab#getDecompositionSettings()}
+	 * @param addTransporterSubsystem
+	 *           whether the transporter subsystem is determined, which is part of the settings
+	 * @return the key
+	 */
+	public static String getKey(BaseGraph baseGraph, MMDecompositionAlgorithm algorithm, List<Node> clonableSpecies, String settings,
+			boolean addTransporterSubsystem) {
+		int[] clonedSpecies = new int[clonableSpecies.size()];
+		for (int i = 0; i < clonedSpecies.length; i++) {
+			clonedSpecies[i] = baseGraph.getOriginalNodeIndex(clonableSpecies.get(i));
+		}
+		Arrays.sort(clonedSpecies);
+		StringBuilder key = new StringBuilder();
+		key.append(String.format("%016x", Long.valueOf(baseGraph.getModelFingerprint()))).append('\n');
+		key.append(algorithm.getName()).append('\n');
+		key.append(algorithm.getParameterString()).append('\n');
+		key.append(algorithm.getAttributeFingerprint(baseGraph, addTransporterSubsystem)).append('\n');
+		key.append(settings).append('\n');
+		for (int index : clonedSpecies) {
+			key.append(index).append(',');
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Gets the decomposition for the given key and brings the cloning of the given base graph into the state it has been computed on.
+	 * 
+	 * @param key
+	 *           the key of the decomposition
+	 * @param baseGraph
+	 *           the base graph, which has to belong to the model of the key
+	 * @param useDisk
+	 *           whether to look for the decomposition on disk if it is not contained in memory
+	 * @return the decomposition, or {@code null} if it is not contained in the cache
+	 */
+	public synchronized MMDecomposition get(String key, BaseGraph baseGraph, boolean useDisk) {
+		Entry entry = entries.get(key);
+		if (entry == null && useDisk) {
+			File file = getFile(key);
+			if (file.isFile()) {
+				try {
+					entry = Entry.read(file, key);
+					file.setLastModified(System.currentTimeMillis());
+					entries.put(key, entry);
+				} catch (IOException e) {
+					e.printStackTrace();
+					file.delete();
+				}
+			}
+		}
+		if (entry == null) {
+			return null;
+		}
+		LMMESessionSnapshot.restoreClonedSpecies(baseGraph, entry.clonedSpecies);
+		return entry.decode(baseGraph);
+	}
+	
+	/**
+	 * Stores the given decomposition, which has to be computed on the current cloning of the given base graph.
+	 * 
+	 * @param key
+	 *           the key of the decomposition
+	 * @param baseGraph
+	 *           the base graph
+	 * @param decomposition
+	 *           the decomposition
+	 * @param useDisk
+	 *           whether to write the decomposition to disk as well
+	 */
+	public synchronized void put(String key, BaseGraph baseGraph, MMDecomposition decomposition, boolean useDisk) {
+		Entry entry = Entry.encode(baseGraph, decomposition);
+		entries.put(key, entry);
+		if (useDisk) {
+			try {
+				entry.write(getFile(key), directory, key);
+				trimDirectory();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Removes all entries from memory. The entries on disk are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * The file of an entry is named by the 64-bit FNV-1a hash of its key. The key itself is stored in the file, such that collisions are detected.
+	 */
+	private File getFile(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return new File(directory, String.format("%016x", Long.valueOf(hash)) + FILE_EXTENSION);
+	}
+	
+	/**
+	 * Deletes the least recently used files, until at most {@link #diskCapacity} are left.
+	 */
+	private void trimDirectory() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+		if (files == null || files.length <= diskCapacity) {
+			return;
+		}
+		long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastModified[i] = files[i].lastModified();
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(lastModified[a.intValue()], lastModified[b.intValue()]));
+		for (int i = 0; i < files.length - diskCapacity; i++) {
+			files[order[i].intValue()].delete();
+		}
+	}
+	
+	/**
+	 * A decomposition, encoded by the stable indices of the nodes in the original graph.
+	 */
+	private static class Entry {
+		
+		private int[] clonedSpecies;
+		
+		private String[] subsystemNames;
+		private int[][] subsystemReactions;
+		private long[][] subsystemSpecies;
+		
+		/**
+		 * The super-subsystems, each after its children. The children are referred to by their index in the list of subsystems, followed by the
+		 * super-subsystems.
+		 */
+		private String[] superSubsystemNames;
+		private int[][] superSubsystemChildren;
+		
+		private static Entry encode(BaseGraph baseGraph, MMDecomposition decomposition) {
+			ArrayList<SubsystemGraph> subsystems = decomposition.getSubsystems();
+			Entry entry = new Entry();
+			entry.clonedSpecies = LMMESessionSnapshot.encodeClonedSpecies(baseGraph);
+			entry.subsystemNames = LMMESessionSnapshot.encodeSubsystemNames(subsystems);
+			entry.subsystemReactions = LMMESessionSnapshot.encodeSubsystemReactions(baseGraph, subsystems);
+			entry.subsystemSpecies = LMMESessionSnapshot.encodeSubsystemSpecies(baseGraph, subsystems);
+			
+			HashMap<SubsystemGraph, Integer> indices = new HashMap<>();
+			for (int i = 0; i < subsystems.size(); i++) {
+				indices.put(subsystems.get(i), Integer.valueOf(i));
+			}
+			LinkedHashSet<SubsystemGraph> pending = new LinkedHashSet<>();
+			for (SubsystemGraph subsystem : subsystems) {
+				for (SubsystemGraph parent = decomposition.getParent(subsystem); parent != null; parent = decomposition.getParent(parent)) {
+					pending.add(parent);
+				}
+			}
+			ArrayList<SubsystemGraph> superSubsystems = new ArrayList<>();
+			while (!pending.isEmpty()) {
+				for (Iterator<SubsystemGraph> it = pending.iterator(); it.hasNext();) {
+					SubsystemGraph superSubsystem = it.next();
+					if (indices.keySet().containsAll(decomposition.getChildren(superSubsystem))) {
+						indices.put(superSubsystem, Integer.valueOf(subsystems.size() + superSubsystems.size()));
+						superSubsystems.add(superSubsystem);
+						it.remove();
+					}
+				}
+			}
+			entry.superSubsystemNames = LMMESessionSnapshot.encodeSubsystemNames(superSubsystems);
+			entry.superSubsystemChildren = new int[superSubsystems.size()][];
+			for (int i = 0; i < superSubsystems.size(); i++) {
+				ArrayList<SubsystemGraph> children = decomposition.getChildren(superSubsystems.get(i));
+				entry.superSubsystemChildren[i] = new int[children.size()];
+				for (int j = 0; j < children.size(); j++) {
+					entry.superSubsystemChildren[i][j] = indices.get(children.get(j)).intValue();
+				}
+			}
+			return entry;
+		}
+		
+		/**
+		 * Rebuilds the decomposition on the given base graph, whose cloning has to be in the state of {@link #clonedSpecies}.
+		 */
+		private MMDecomposition decode(BaseGraph baseGraph) {
+			ArrayList<SubsystemGraph> subsystems = LMMESessionSnapshot.decodeSubsystems(baseGraph, subsystemNames, subsystemReactions,
+					subsystemSpecies);
+			MMDecomposition decomposition = new MMDecomposition(subsystems);
+			ArrayList<SubsystemGraph> all = new ArrayList<>(subsystems);
+			for (int i = 0; i < superSubsystemNames.length; i++) {
+				SubsystemGraph superSubsystem = new SubsystemGraph(superSubsystemNames[i], new HashSet<>(), new HashSet<>(), new HashSet<>());
+				ArrayList<SubsystemGraph> children = new ArrayList<>();
+				for (int child : superSubsystemChildren[i]) {
+					SubsystemGraph childSubsystem = all.get(child);
+					children.add(childSubsystem);
+					superSubsystem.getSpeciesNodes().addAll(childSubsystem.getSpeciesNodes());
+					superSubsystem.getReactionNodes().addAll(childSubsystem.getReactionNodes());
+					superSubsystem.getEdges().addAll(childSubsystem.getEdges());
+				}
+				decomposition.addSuperSubsystem(superSubsystem, children);
+				all.add(superSubsystem);
+			}
+			return decomposition;
+		}
+		
+		/**
+		 * Writes this entry to the given file. The file is replaced only once it has been written completely.
+		 */
+		private void write(File file, File directory, String key) throws IOException {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("The directory " + directory + " could not be created.");
+			}
+			File temporaryFile = new File(directory, file.getName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, key);
+				writeIntArray(out, clonedSpecies);
+				out.writeInt(subsystemNames.length);
+				for (int i = 0; i < subsystemNames.length; i++) {
+					writeString(out, subsystemNames[i]);
+					writeIntArray(out, subsystemReactions[i]);
+					writeLongArray(out, subsystemSpecies[i]);
+				}
+				out.writeInt(superSubsystemNames.length);
+				for (int i = 0; i < superSubsystemNames.length; i++) {
+					writeString(out, superSubsystemNames[i]);
+					writeIntArray(out, superSubsystemChildren[i]);
+				}
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		/**
+		 * Reads the entry for the given key from the given file.
+		 * 
+		 * @throws IOException
+		 *            if the file cannot be read, is no valid entry file or belongs to a different key
+		 */
+		private static Entry read(File file, String key) throws IOException {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				if (in.readInt() != MAGIC) {
+					throw new IOException("The file " + file.getName() + " is not a decomposition cache file.");
+				}
+				int version = in.readInt();
+				if (version != VERSION) {
+					throw new IOException("The decomposition cache file " + file.getName() + " has the unsupported version " + version + ".");
+				}
+				long length = file.length();
+				if (!key.equals(readString(in, length))) {
+					throw new IOException("The decomposition cache file " + file.getName() + " belongs to a different decomposition.");
+				}
+				Entry entry = new Entry();
+				entry.clonedSpecies = readIntArray(in, length);
+				int numberOfSubsystems = readLength(in, length);
+				entry.subsystemNames = new String[numberOfSubsystems];
+				entry.subsystemReactions = new int[numberOfSubsystems][];
+				entry.subsystemSpecies = new long[numberOfSubsystems][];
+				for (int i = 0; i < numberOfSubsystems; i++) {
+					entry.subsystemNames[i] = readString(in, length);
+					entry.subsystemReactions[i] = readIntArray(in, length);
+					entry.subsystemSpecies[i] = readLongArray(in, length);
+				}
+				int numberOfSuperSubsystems = readLength(in, length);
+				entry.superSubsystemNames = new String[numberOfSuperSubsystems];
+				entry.superSubsystemChildren = new int[numberOfSuperSubsystems][];
+				for (int i = 0; i < numberOfSuperSubsystems; i++) {
+					entry.superSubsystemNames[i] = readString(in, length);
+					entry.superSubsystemChildren[i] = readIntArray(in, length);
+					for (int child : entry.superSubsystemChildren[i]) {
+						if (child < 0 || child >= numberOfSubsystems + i) {
+							throw new IOException("The decomposition cache file " + file.getName() + " is corrupt.");
+						}
+					}
+				}
+				return entry;
+			}
+		}
+		
+		private static void writeString(DataOutputStream out, String str) throws IOException {
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		
+		private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+			out.writeInt(array.length);
+			for (int value : array) {
+				out.writeInt(value);
+			}
+		}
+		
+		private static void writeLongArray(DataOutputStream out, long[] array) throws IOException {
+			out.writeInt(array.length);
+			for (long value : array) {
+				out.writeLong(value);
+			}
+		}
+		
+		/**
+		 * Reads a length and checks it against the length of the file, such that a corrupt file does not lead to a huge allocation.
+		 */
+		private static int readLength(DataInputStream in, long fileLength) throws IOException {
+			int length = in.readInt();
+			if (length < 0 || length > fileLength) {
+				throw new IOException("The decomposition cache file is corrupt.");
+			}
+			return length;
+		}
+		
+		private static String readString(DataInputStream in, long fileLength) throws IOException {
+			byte[] bytes = new byte[readLength(in, fileLength)];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		private static int[] readIntArray(DataInputStream in, long fileLength) throws IOException {
+			int[] array = new int[readLength(in, fileLength)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.readInt();
+			}
+			return array;
+		}
+		
+		private static long[] readLongArray(DataInputStream in, long fileLength) throws IOException {
+			long[] array = new long[readLength(in, fileLength)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.readLong();
+			}
+			return array;
+		}
+		
+	}
+	
+}
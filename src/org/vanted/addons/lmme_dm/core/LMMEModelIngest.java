@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.core;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.AttributeHelper;
+import org.graffiti.graph.Graph;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.NodeRoleIndex;
+
+import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
+
+/**
+ * Prepares a model for the use in LMME, when it is set as base graph.
+ * <p>
+ * The ingest consists of three stages. During {@link #classify()}, the attributes of all nodes are read once and the roles and disease map pathways are
+ * determined. This stage only reads attributes and is therefore partitioned across all available cores. During {@link #normalize()}, the results are
+ * written back to the attributes, i.e. the SBML role is restored from the CellDesigner annotation, the disease map pathway is stored and species are
+ * assigned a circular shape. Since the attribute tree of VANTED is not thread-safe, this stage is sequential. Finally, {@link #createBaseGraph()}
+ * builds the {@link BaseGraph} from the already known roles.
+ * 
+ * @author Michael Aichem
+ */
+public class LMMEModelIngest {
+	
+	private static final String CELL_DESIGNER_PATH = "cd19dm";
+	
+	private final Graph graph;
+	
+	private final Node[] nodes;
+	
+	/**
+	 * The role of every node, after restoring the SBML role from the CellDesigner annotation.
+	 */
+	private final byte[] roles;
+	
+	/**
+	 * The CellDesigner node type of every node, or {@code null} if the node does not have one.
+	 */
+	private final String[] nodeTypes;
+	
+	/**
+	 * The disease map pathway of every reaction, or {@code null} if the reaction does not have a diagram annotation.
+	 */
+	private final String[] diseaseMapPathways;
+	
+	private int numberOfSpecies;
+	private int numberOfReactions;
+	
+	private long classifyTime;
+	private long normalizeTime;
+	private long indexTime;
+	
+	public LMMEModelIngest(Graph graph) {
+		this.graph = graph;
+		List<Node> nodeList = graph.getNodes();
+		this.nodes = nodeList.toArray(new Node[nodeList.size()]);
+		this.roles = new byte[nodes.length];
+		this.nodeTypes = new String[nodes.length];
+		this.diseaseMapPathways = new String[nodes.length];
+	}
+	
+	/**
+	 * Reads the attributes of all nodes in parallel and determines their roles and disease map pathways. The attributes are not modified.
+	 */
+	public void classify() {
+		long start = System.nanoTime();
+		IntStream.range(0, nodes.length).parallel().forEach(i -> classify(i));
+		numberOfSpecies = 0;
+		numberOfReactions = 0;
+		for (byte role : roles) {
+			if (role == NodeRoleIndex.ROLE_SPECIES) {
+				numberOfSpecies++;
+			} else if (role == NodeRoleIndex.ROLE_REACTION) {
+				numberOfReactions++;
+			}
+		}
+		classifyTime = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Classifies a single node.
+	 * 
+	 * @param i
+	 *           the index of the node
+	 */
+	private void classify(int i) {
+		Node node = nodes[i];
+		String role = null;
+		if (AttributeHelper.hasAttribute(node, CELL_DESIGNER_PATH, "node_type")) {
+			nodeTypes[i] = (String) AttributeHelper.getAttributeValue(node, CELL_DESIGNER_PATH, "node_type", "", "");
+			role = nodeTypes[i];
+		} else if (AttributeHelper.hasAttribute(node, SBML_Constants.SBML, SBML_Constants.SBML_ROLE)) {
+			role = (String) AttributeHelper.getAttributeValue(node, SBML_Constants.SBML, SBML_Constants.SBML_ROLE, "", "");
+		}
+		if (SBML_Constants.ROLE_SPECIES.equals(role)) {
+			roles[i] = NodeRoleIndex.ROLE_SPECIES;
+		} else if (SBML_Constants.ROLE_REACTION.equals(role)) {
+			roles[i] = NodeRoleIndex.ROLE_REACTION;
+			if (AttributeHelper.hasAttribute(node, CELL_DESIGNER_PATH, "diagram")) {
+				String diagramAnnotation = (String) AttributeHelper.getAttributeValue(node, CELL_DESIGNER_PATH, "diagram", "", "");
+				diseaseMapPathways[i] = diagramAnnotation.split(Pattern.quote(";"))[0];
+			}
+		} else {
+			roles[i] = NodeRoleIndex.ROLE_OTHER;
+		}
+	}
+	
+	/**
+	 * Writes the results of {@link #classify()} to the attributes of the nodes in a single sequential pass.
+	 */
+	public void normalize() {
+		long start = System.nanoTime();
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[i];
+			// restore role attribute to sbml-style
+			if (nodeTypes[i] != null) {
+				AttributeHelper.setAttribute(node, SBML_Constants.SBML, SBML_Constants.SBML_ROLE, nodeTypes[i]);
+			}
+			// restore origin diagram annotation
+			if (diseaseMapPathways[i] != null) {
+				AttributeHelper.setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.DISEASE_MAP_PATHWAY_ATTRIBUTE,
+						diseaseMapPathways[i]);
+			}
+			// assign species circular shape
+			if (roles[i] == NodeRoleIndex.ROLE_SPECIES) {
+				AttributeHelper.setShape(node, "org.graffiti.plugins.views.defaults.CircleNodeShape");
+			}
+		}
+		normalizeTime = System.nanoTime() - start;
+	}
+	
+	/**
+	 * Creates the {@link BaseGraph} for the ingested model without reading the roles of the nodes again.
+	 * 
+	 * @return the base graph
+	 */
+	public BaseGraph createBaseGraph() {
+		long start = System.nanoTime();
+		BaseGraph baseGraph = new BaseGraph(graph, nodes, roles);
+		indexTime = System.nanoTime() - start;
+		return baseGraph;
+	}
+	
+	public int getNumberOfSpecies() {
+		return numberOfSpecies;
+	}
+	
+	public int getNumberOfReactions() {
+		return numberOfReactions;
+	}
+	
+	/**
+	 * Gets the time needed by the single stages of the ingest.
+	 * 
+	 * @return a short summary of the timings in milliseconds
+	 */
+	public String getTimings() {
+		return "Ingest of " + nodes.length + " nodes: classify " + classifyTime / 1000000 + " ms, normalize "
+				+ normalizeTime / 1000000 + " ms, index " + indexTime / 1000000 + " ms";
+	}
+	
+}
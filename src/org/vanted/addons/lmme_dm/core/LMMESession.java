@@ -14,10 +14,11 @@
  ******************************************************************************/
 package org.vanted.addons.lmme_dm.core;
 
-import org.AttributeHelper;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.OverviewGraph;
+import org.vanted.addons.lmme_dm.ui.LMMESubsystemViewManagement;
+import org.vanted.addons.lmme_dm.ui.LMMEViewManagement;
 
 /**
  * This class represents a decomposition session in the LMME addon.
@@ -25,6 +26,10 @@ import org.vanted.addons.lmme_dm.graphs.OverviewGraph;
  * It contains all settings and generated variables that might be created during
  * a decomposition session and that need to be cleared before performing another
  * decomposition.
+ * <p>
+ * Several sessions may be open at the same time. Each of them has its own {@link BaseGraph}, decomposition and views, while the base graphs of sessions
+ * for the same model are forks of each other and share the original graph. The node attributes of a session are kept by its base graph, such that
+ * sessions do not write into the attribute trees of the shared nodes.
  * 
  * @author Michael Aichem
  */
@@ -33,6 +38,16 @@ public class LMMESession {
 	private BaseGraph baseGraph;
 	private OverviewGraph overviewGraph;
 	
+	/**
+	 * The name of the decomposition method that the {@link #overviewGraph} has been constructed with.
+	 */
+	private String decompositionMethod;
+	
+	private String name;
+	
+	private LMMEViewManagement viewManagement;
+	private LMMESubsystemViewManagement subsystemViewManagement;
+	
 	public LMMESession() {
 		
 	}
@@ -41,6 +56,38 @@ public class LMMESession {
 		this.baseGraph = baseGraph;
 	}
 	
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Gets the management of the overview graph and subsystems views of this session. It is created on first request.
+	 * 
+	 * @return the view management of this session
+	 */
+	public synchronized LMMEViewManagement getViewManagement() {
+		if (viewManagement == null) {
+			viewManagement = new LMMEViewManagement(this);
+		}
+		return viewManagement;
+	}
+	
+	/**
+	 * Gets the management of the subsystems view of this session. It is created on first request.
+	 * 
+	 * @return the subsystem view management of this session
+	 */
+	public synchronized LMMESubsystemViewManagement getSubsystemViewManagement() {
+		if (subsystemViewManagement == null) {
+			subsystemViewManagement = new LMMESubsystemViewManagement(this);
+		}
+		return subsystemViewManagement;
+	}
+	
 	public BaseGraph getBaseGraph() {
 		return baseGraph;
 	}
@@ -58,8 +105,18 @@ public class LMMESession {
 		this.overviewGraph = overviewGraph;
 	}
 	
+	public String getDecompositionMethod() {
+		return decompositionMethod;
+	}
+	
+	public void setDecompositionMethod(String decompositionMethod) {
+		this.decompositionMethod = decompositionMethod;
+	}
+	
 	/**
 	 * This method is used to associate an attribute to a node.
+	 * <p>
+	 * The attribute is kept by the {@link BaseGraph} of this session, such that neither the model nor other sessions are affected.
 	 * 
 	 * @param node
 	 *           the node to put the attribute on
@@ -69,7 +126,7 @@ public class LMMESession {
 	 *           the value for the new attribute
 	 */
 	public void addNodeAttribute(Node node, String attributeName, String attributeValue) {
-		AttributeHelper.setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, attributeName, attributeValue);
+		baseGraph.setNodeAttribute(node, attributeName, attributeValue);
 	}
 	
 	/**
@@ -83,7 +140,7 @@ public class LMMESession {
 	 * @return the respective attribute or an empty String otherwise
 	 */
 	public String getNodeAttribute(Node node, String attributeName) {
-		return (String) AttributeHelper.getAttributeValue(node, LMMEConstants.ATTRIBUTE_PATH, attributeName, "", "");
+		return baseGraph.getNodeAttribute(node, attributeName);
 	}
 	
 	public boolean isModelSet() {
@@ -94,4 +151,9 @@ public class LMMESession {
 		return this.overviewGraph != null;
 	}
 	
+	@Override
+	public String toString() {
+		return name == null ? "" : name;
+	}
+	
 }
@@ -0,0 +1,599 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.AttributeHelper;
+import org.graffiti.graph.Edge;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.decomposition.MMDecomposition;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.OverviewGraph;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.ui.LMMESubsystemViewManagement;
+
+/**
+ * A snapshot of an {@link LMMESession} that can be written to and read from a compact binary file.
+ * <p>
+ * The snapshot contains the cloned species, the subsystems of the decomposition, the positions of the nodes in the overview graph and the state of the
+ * subsystems view. It does not contain the model itself. All nodes are referred to by their stable index in the original graph (see
+ * {@link BaseGraph#getOriginalNodeIndex(Node)}), clones additionally by the reaction they are attached to. A snapshot can thus only be restored on a
+ * {@link BaseGraph} of the same model, which is checked by means of the {@link BaseGraph#getModelFingerprint()}.
+ * <p>
+ * Subsystems are stored by their reactions and species. The species are stored as they are, since a decomposition method may assign species that are not
+ * attached to any reaction of the subsystem, e.g. all species of a compartment. The edges are restored from the reactions, in the same way as the
+ * decomposition methods derive them. Restoring a session therefore requires neither the decomposition nor the layout to be recomputed.
+ *
+ * @author Michael Aichem
+ */
+public class LMMESessionSnapshot {
+	
+	public static final String FILE_EXTENSION = "lmme";
+	
+	private static final int MAGIC = 0x4C4D4D45;
+	private static final int VERSION = 2;
+	
+	private long modelFingerprint;
+	
+	/**
+	 * The indices of the original species that are cloned in the working graph.
+	 */
+	private int[] clonedSpecies;
+	
+	private String decompositionMethod;
+	
+	private boolean showInterfaces;
+	
+	private String[] subsystemNames;
+	
+	/**
+	 * For every subsystem, the indices of its reactions in the original graph.
+	 */
+	private int[][] subsystemReactions;
+	
+	/**
+	 * For every subsystem, the references to its species, see {@link #getNodeReference(BaseGraph, Node)}.
+	 */
+	private long[][] subsystemSpecies;
+	
+	/**
+	 * The positions of the subsystem nodes in the overview graph, as consecutive pairs of x and y coordinates.
+	 */
+	private double[] subsystemPositions;
+	
+	private long[] interfaceReferences;
+	private double[] interfacePositions;
+	
+	/**
+	 * The indices of the subsystems that are shown in the subsystems view.
+	 */
+	private int[] shownSubsystems;
+	
+	private boolean useColor;
+	
+	private long[] viewNodeReferences;
+	private double[] viewNodePositions;
+	
+	private LMMESessionSnapshot() {
+		
+	}
+	
+	/**
+	 * Captures the current state of the given session.
+	 *
+	 * @param session
+	 *           the session, which must contain an overview graph
+	 * @return the snapshot of the session
+	 */
+	public static LMMESessionSnapshot capture(LMMESession session) {
+		
+		BaseGraph baseGraph = session.getBaseGraph();
+		// the hierarchy of the decomposition is not stored, the positions are taken from the top level of the overview graph
+		OverviewGraph overviewGraph = session.getOverviewGraph().getRoot();
+		ArrayList<SubsystemGraph> subsystems = overviewGraph.getDecomposition().getSubsystems();
+		
+		LMMESessionSnapshot snapshot = new LMMESessionSnapshot();
+		snapshot.modelFingerprint = baseGraph.getModelFingerprint();
+		snapshot.clonedSpecies = encodeClonedSpecies(baseGraph);
+		snapshot.decompositionMethod = session.getDecompositionMethod() == null ? "" : session.getDecompositionMethod();
+		snapshot.showInterfaces = overviewGraph.isShowingInterfaces();
+		snapshot.subsystemNames = encodeSubsystemNames(subsystems);
+		snapshot.subsystemReactions = encodeSubsystemReactions(baseGraph, subsystems);
+		snapshot.subsystemSpecies = encodeSubsystemSpecies(baseGraph, subsystems);
+		
+		snapshot.subsystemPositions = new double[2 * subsystems.size()];
+		for (int i = 0; i < subsystems.size(); i++) {
+			Node subsystemNode = overviewGraph.getNodeOfSubsystem(subsystems.get(i));
+			if (overviewGraph.getSubsystemGraphOfNode(subsystemNode) == subsystems.get(i)) {
+				snapshot.subsystemPositions[2 * i] = AttributeHelper.getPositionX(subsystemNode);
+				snapshot.subsystemPositions[2 * i + 1] = AttributeHelper.getPositionY(subsystemNode);
+			} else {
+				// grouped subsystems have no node of their own
+				snapshot.subsystemPositions[2 * i] = Double.NaN;
+				snapshot.subsystemPositions[2 * i + 1] = Double.NaN;
+			}
+		}
+		
+		ArrayList<Node> interfaceNodes = new ArrayList<>(overviewGraph.getShownInterfaceNodes());
+		snapshot.interfaceReferences = new long[interfaceNodes.size()];
+		snapshot.interfacePositions = new double[2 * interfaceNodes.size()];
+		for (int i = 0; i < interfaceNodes.size(); i++) {
+			Node overviewNode = overviewGraph.getNodeOfInterface(interfaceNodes.get(i));
+			snapshot.interfaceReferences[i] = getNodeReference(baseGraph, interfaceNodes.get(i));
+			snapshot.interfacePositions[2 * i] = AttributeHelper.getPositionX(overviewNode);
+			snapshot.interfacePositions[2 * i + 1] = AttributeHelper.getPositionY(overviewNode);
+		}
+		
+		LMMESubsystemViewManagement subsystemView = LMMESubsystemViewManagement.getInstance();
+		ArrayList<SubsystemGraph> currentSubsystems = subsystemView.getCurrentSubsystems();
+		snapshot.shownSubsystems = new int[currentSubsystems.size()];
+		for (int i = 0; i < currentSubsystems.size(); i++) {
+			snapshot.shownSubsystems[i] = subsystems.indexOf(currentSubsystems.get(i));
+		}
+		snapshot.useColor = subsystemView.isColorMappingUsed();
+		
+		ArrayList<Node> viewNodes = new ArrayList<>(subsystemView.getShownNodes());
+		if (currentSubsystems.isEmpty()) {
+			viewNodes.clear();
+		}
+		snapshot.viewNodeReferences = new long[viewNodes.size()];
+		snapshot.viewNodePositions = new double[2 * viewNodes.size()];
+		for (int i = 0; i < viewNodes.size(); i++) {
+			Node viewNode = subsystemView.getViewNode(viewNodes.get(i));
+			snapshot.viewNodeReferences[i] = getNodeReference(baseGraph, viewNodes.get(i));
+			snapshot.viewNodePositions[2 * i] = AttributeHelper.getPositionX(viewNode);
+			snapshot.viewNodePositions[2 * i + 1] = AttributeHelper.getPositionY(viewNode);
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Writes this snapshot to the given file.
+	 *
+	 * @param file
+	 *           the target file, which is overwritten if it exists
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(modelFingerprint);
+			writeIntArray(out, clonedSpecies);
+			writeString(out, decompositionMethod);
+			out.writeBoolean(showInterfaces);
+			out.writeInt(subsystemNames.length);
+			for (int i = 0; i < subsystemNames.length; i++) {
+				writeString(out, subsystemNames[i]);
+				writeIntArray(out, subsystemReactions[i]);
+				writeLongArray(out, subsystemSpecies[i]);
+			}
+			writeDoubleArray(out, subsystemPositions);
+			writeLongArray(out, interfaceReferences);
+			writeDoubleArray(out, interfacePositions);
+			writeIntArray(out, shownSubsystems);
+			out.writeBoolean(useColor);
+			writeLongArray(out, viewNodeReferences);
+			writeDoubleArray(out, viewNodePositions);
+		}
+	}
+	
+	/**
+	 * Reads a snapshot from the given file.
+	 * <p>
+	 * The file is mapped into memory and decoded directly from the mapping.
+	 *
+	 * @param file
+	 *           the snapshot file
+	 * @return the snapshot
+	 * @throws IOException
+	 *            if the file cannot be read or is not a valid snapshot file
+	 */
+	public static LMMESessionSnapshot read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException("The file " + file.getName() + " is not an LMME session file.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("The session file " + file.getName() + " has the unsupported version " + version + ".");
+			}
+			LMMESessionSnapshot snapshot = new LMMESessionSnapshot();
+			snapshot.modelFingerprint = buffer.getLong();
+			snapshot.clonedSpecies = readIntArray(buffer);
+			snapshot.decompositionMethod = readString(buffer);
+			snapshot.showInterfaces = buffer.get() != 0;
+			int numberOfSubsystems = readLength(buffer, 4);
+			snapshot.subsystemNames = new String[numberOfSubsystems];
+			snapshot.subsystemReactions = new int[numberOfSubsystems][];
+			snapshot.subsystemSpecies = new long[numberOfSubsystems][];
+			for (int i = 0; i < numberOfSubsystems; i++) {
+				snapshot.subsystemNames[i] = readString(buffer);
+				snapshot.subsystemReactions[i] = readIntArray(buffer);
+				snapshot.subsystemSpecies[i] = readLongArray(buffer);
+			}
+			snapshot.subsystemPositions = readDoubleArray(buffer);
+			snapshot.interfaceReferences = readLongArray(buffer);
+			snapshot.interfacePositions = readDoubleArray(buffer);
+			snapshot.shownSubsystems = readIntArray(buffer);
+			snapshot.useColor = buffer.get() != 0;
+			snapshot.viewNodeReferences = readLongArray(buffer);
+			snapshot.viewNodePositions = readDoubleArray(buffer);
+			return snapshot;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The session file " + file.getName() + " is truncated.", e);
+		}
+	}
+	
+	/**
+	 * Checks whether this snapshot has been taken from a session on the same model as the given base graph.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @return whether the snapshot can be restored on the given base graph
+	 */
+	public boolean matches(BaseGraph baseGraph) {
+		return this.modelFingerprint == baseGraph.getModelFingerprint();
+	}
+	
+	/**
+	 * Restores the cloning and the decomposition on the given base graph.
+	 *
+	 * @param baseGraph
+	 *           the base graph, which must match this snapshot
+	 * @return the restored decomposition
+	 */
+	public MMDecomposition restoreDecomposition(BaseGraph baseGraph) {
+		restoreClonedSpecies(baseGraph, clonedSpecies);
+		return new MMDecomposition(decodeSubsystems(baseGraph, subsystemNames, subsystemReactions, subsystemSpecies));
+	}
+	
+	/**
+	 * Moves the nodes of the given overview graph to their stored positions.
+	 *
+	 * @param baseGraph
+	 *           the base graph the overview graph has been constructed on
+	 * @param overviewGraph
+	 *           the overview graph of the restored decomposition
+	 */
+	public void restoreOverviewPositions(BaseGraph baseGraph, OverviewGraph overviewGraph) {
+		ArrayList<SubsystemGraph> subsystems = overviewGraph.getDecomposition().getSubsystems();
+		for (int i = 0; i < subsystems.size(); i++) {
+			if (!Double.isNaN(subsystemPositions[2 * i])) {
+				AttributeHelper.setPosition(overviewGraph.getNodeOfSubsystem(subsystems.get(i)), subsystemPositions[2 * i],
+						subsystemPositions[2 * i + 1]);
+			}
+		}
+		for (int i = 0; i < interfaceReferences.length; i++) {
+			Node interfaceNode = resolveNodeReference(baseGraph, interfaceReferences[i]);
+			Node overviewNode = interfaceNode == null ? null : overviewGraph.getNodeOfInterface(interfaceNode);
+			if (overviewNode != null) {
+				AttributeHelper.setPosition(overviewNode, interfacePositions[2 * i], interfacePositions[2 * i + 1]);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the subsystems of the given restored decomposition that have been shown in the subsystems view.
+	 *
+	 * @param decomposition
+	 *           the restored decomposition
+	 * @return the subsystems to be shown
+	 */
+	public ArrayList<SubsystemGraph> getShownSubsystems(MMDecomposition decomposition) {
+		ArrayList<SubsystemGraph> res = new ArrayList<>();
+		for (int index : shownSubsystems) {
+			if (index >= 0 && index < decomposition.getSubsystems().size()) {
+				res.add(decomposition.getSubsystems().get(index));
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Moves the nodes of the current drawing in the subsystems view to their stored positions.
+	 *
+	 * @param baseGraph
+	 *           the base graph the subsystems view has been constructed on
+	 */
+	public void restoreSubsystemViewPositions(BaseGraph baseGraph) {
+		LMMESubsystemViewManagement subsystemView = LMMESubsystemViewManagement.getInstance();
+		for (int i = 0; i < viewNodeReferences.length; i++) {
+			Node node = resolveNodeReference(baseGraph, viewNodeReferences[i]);
+			Node viewNode = node == null ? null : subsystemView.getViewNode(node);
+			if (viewNode != null) {
+				AttributeHelper.setPosition(viewNode, viewNodePositions[2 * i], viewNodePositions[2 * i + 1]);
+			}
+		}
+	}
+	
+	public String getDecompositionMethod() {
+		return decompositionMethod;
+	}
+	
+	public boolean isShowInterfaces() {
+		return showInterfaces;
+	}
+	
+	public boolean isColorMappingUsed() {
+		return useColor;
+	}
+	
+	/**
+	 * Gets a reference to the given node of the working graph that is valid across sessions on the same model.
+	 * <p>
+	 * The upper 32 bits contain the index of the corresponding original node. For clones, the lower 32 bits contain the index of the reaction that the clone
+	 * is attached to, increased by one; they are zero otherwise.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @param workingNode
+	 *           the node within the working graph
+	 * @return the reference to the node
+	 */
+	public static long getNodeReference(BaseGraph baseGraph, Node workingNode) {
+		Node originalNode = baseGraph.getOriginalNode(workingNode);
+		if (originalNode == null) {
+			return -1L;
+		}
+		long reference = ((long) baseGraph.getOriginalNodeIndex(originalNode)) << 32;
+		if (baseGraph.isCloned(originalNode)) {
+			Node anchor = workingNode.getNeighbors().iterator().next();
+			reference |= baseGraph.getOriginalNodeIndex(baseGraph.getOriginalNode(anchor)) + 1;
+		}
+		return reference;
+	}
+	
+	/**
+	 * Resolves a reference created by {@link #getNodeReference(BaseGraph, Node)}.
+	 *
+	 * @param baseGraph
+	 *           the base graph, whose cloning has to be in the same state as when the reference has been created
+	 * @param reference
+	 *           the reference
+	 * @return the node within the working graph or {@code null} if it does not exist
+	 */
+	public static Node resolveNodeReference(BaseGraph baseGraph, long reference) {
+		int index = (int) (reference >>> 32);
+		int anchorIndex = (int) reference - 1;
+		if (index < 0 || index >= baseGraph.getNumberOfOriginalNodes()) {
+			return null;
+		}
+		List<Node> workingNodes = baseGraph.getWorkingNodes(baseGraph.getOriginalNodeByIndex(index));
+		if (workingNodes == null || workingNodes.isEmpty()) {
+			return null;
+		}
+		if (anchorIndex < 0) {
+			return workingNodes.get(0);
+		}
+		if (anchorIndex >= baseGraph.getNumberOfOriginalNodes()) {
+			return null;
+		}
+		List<Node> anchorNodes = baseGraph.getWorkingNodes(baseGraph.getOriginalNodeByIndex(anchorIndex));
+		if (anchorNodes == null || anchorNodes.isEmpty()) {
+			return null;
+		}
+		Node anchor = anchorNodes.get(0);
+		for (Node clone : workingNodes) {
+			if (clone.getNeighbors().contains(anchor)) {
+				return clone;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Encodes the currently cloned species of the given base graph by their original indices.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @return the indices of the cloned species
+	 */
+	public static int[] encodeClonedSpecies(BaseGraph baseGraph) {
+		ArrayList<Node> clonedNodes = baseGraph.getClonedSpecies();
+		int[] res = new int[clonedNodes.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = baseGraph.getOriginalNodeIndex(clonedNodes.get(i));
+		}
+		return res;
+	}
+	
+	/**
+	 * Brings the cloning of the given base graph into the state described by the given original indices.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @param clonedSpecies
+	 *           the indices of the species to be cloned
+	 */
+	public static void restoreClonedSpecies(BaseGraph baseGraph, int[] clonedSpecies) {
+		ArrayList<Node> clonableSpecies = new ArrayList<>(clonedSpecies.length);
+		for (int index : clonedSpecies) {
+			clonableSpecies.add(baseGraph.getOriginalNodeByIndex(index));
+		}
+		baseGraph.cloneSpecies(clonableSpecies);
+	}
+	
+	public static String[] encodeSubsystemNames(List<SubsystemGraph> subsystems) {
+		String[] res = new String[subsystems.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = subsystems.get(i).getName();
+		}
+		return res;
+	}
+	
+	/**
+	 * Encodes the reactions of the given subsystems by their original indices.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @param subsystems
+	 *           the subsystems
+	 * @return for every subsystem, the indices of its reactions
+	 */
+	public static int[][] encodeSubsystemReactions(BaseGraph baseGraph, List<SubsystemGraph> subsystems) {
+		int[][] res = new int[subsystems.size()][];
+		for (int i = 0; i < res.length; i++) {
+			HashSet<Node> reactionNodes = subsystems.get(i).getReactionNodes();
+			res[i] = new int[reactionNodes.size()];
+			int j = 0;
+			for (Node reactionNode : reactionNodes) {
+				res[i][j++] = baseGraph.getOriginalNodeIndex(baseGraph.getOriginalNode(reactionNode));
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Encodes the species of the given subsystems by their references.
+	 *
+	 * @param baseGraph
+	 *           the base graph
+	 * @param subsystems
+	 *           the subsystems
+	 * @return for every subsystem, the references to its species, see {@link #getNodeReference(BaseGraph, Node)}
+	 */
+	public static long[][] encodeSubsystemSpecies(BaseGraph baseGraph, List<SubsystemGraph> subsystems) {
+		long[][] res = new long[subsystems.size()][];
+		for (int i = 0; i < res.length; i++) {
+			HashSet<Node> speciesNodes = subsystems.get(i).getSpeciesNodes();
+			res[i] = new long[speciesNodes.size()];
+			int j = 0;
+			for (Node speciesNode : speciesNodes) {
+				res[i][j++] = getNodeReference(baseGraph, speciesNode);
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Creates the subsystems from their names, the original indices of their reactions and the references to their species.
+	 * <p>
+	 * Every subsystem is assigned exactly the stored species and all edges incident to its reactions.
+	 *
+	 * @param baseGraph
+	 *           the base graph, whose cloning has to be in the same state as when the subsystems have been encoded
+	 * @param names
+	 *           the names of the subsystems
+	 * @param reactions
+	 *           for every subsystem, the indices of its reactions
+	 * @param species
+	 *           for every subsystem, the references to its species
+	 * @return the subsystems
+	 */
+	public static ArrayList<SubsystemGraph> decodeSubsystems(BaseGraph baseGraph, String[] names, int[][] reactions, long[][] species) {
+		ArrayList<SubsystemGraph> res = new ArrayList<>(names.length);
+		for (int i = 0; i < names.length; i++) {
+			SubsystemGraph subsystem = new SubsystemGraph(names[i], new HashSet<>(), new HashSet<>(), new HashSet<>());
+			for (int index : reactions[i]) {
+				Node reactionNode = baseGraph.getWorkingNodes(baseGraph.getOriginalNodeByIndex(index)).get(0);
+				subsystem.addReaction(reactionNode);
+				for (Edge incidentEdge : reactionNode.getEdges()) {
+					subsystem.addEdge(incidentEdge);
+				}
+			}
+			for (long reference : species[i]) {
+				Node speciesNode = resolveNodeReference(baseGraph, reference);
+				if (speciesNode != null) {
+					subsystem.addSpecies(speciesNode);
+				}
+			}
+			res.add(subsystem);
+		}
+		return res;
+	}
+	
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+		out.writeInt(array.length);
+		for (int value : array) {
+			out.writeInt(value);
+		}
+	}
+	
+	private static void writeLongArray(DataOutputStream out, long[] array) throws IOException {
+		out.writeInt(array.length);
+		for (long value : array) {
+			out.writeLong(value);
+		}
+	}
+	
+	private static void writeDoubleArray(DataOutputStream out, double[] array) throws IOException {
+		out.writeInt(array.length);
+		for (double value : array) {
+			out.writeDouble(value);
+		}
+	}
+	
+	/**
+	 * Reads a length and checks that the buffer contains enough bytes for that many elements.
+	 */
+	private static int readLength(ByteBuffer buffer, int elementSize) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || (long) length * elementSize > buffer.remaining()) {
+			throw new IOException("The session file is corrupt.");
+		}
+		return length;
+	}
+	
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[readLength(buffer, 1)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static int[] readIntArray(ByteBuffer buffer) throws IOException {
+		int[] array = new int[readLength(buffer, 4)];
+		buffer.asIntBuffer().get(array);
+		buffer.position(buffer.position() + 4 * array.length);
+		return array;
+	}
+	
+	private static long[] readLongArray(ByteBuffer buffer) throws IOException {
+		long[] array = new long[readLength(buffer, 8)];
+		buffer.asLongBuffer().get(array);
+		buffer.position(buffer.position() + 8 * array.length);
+		return array;
+	}
+	
+	private static double[] readDoubleArray(ByteBuffer buffer) throws IOException {
+		double[] array = new double[readLength(buffer, 8)];
+		buffer.asDoubleBuffer().get(array);
+		buffer.position(buffer.position() + 8 * array.length);
+		return array;
+	}
+	
+}
@@ -25,6 +25,7 @@ import org.graffiti.graph.Graph;
 import org.graffiti.graph.Node;
 import org.sbml.jsbml.xml.XMLNode;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.NodeRoleIndex;
 
 import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBMLReactionHelper;
 import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBMLSpeciesHelper;
@@ -186,6 +187,10 @@ public class LMMETools {
 	 */
 	public boolean isReaction(Node node) {
 		
+		byte role = getIndexedRole(node);
+		if (role != NodeRoleIndex.ROLE_UNKNOWN) {
+			return role == NodeRoleIndex.ROLE_REACTION;
+		}
 		return isRole(node, SBML_Constants.ROLE_REACTION);
 		
 	}
@@ -199,10 +204,31 @@ public class LMMETools {
 	 */
 	public boolean isSpecies(Node node) {
 		
+		byte role = getIndexedRole(node);
+		if (role != NodeRoleIndex.ROLE_UNKNOWN) {
+			return role == NodeRoleIndex.ROLE_SPECIES;
+		}
 		return isRole(node, SBML_Constants.ROLE_SPECIES);
 		
 	}
 	
+	/**
+	 * Gets the role of the given node from the role index of the {@link BaseGraph} of the current session, by a single lookup.
+	 * <p>
+	 * Nodes of other graphs, such as the overview graph or the subsystem views, are not indexed and have to be checked by means of their attributes.
+	 * 
+	 * @param node
+	 *           the node to be checked
+	 * @return the role of the node or {@link NodeRoleIndex#ROLE_UNKNOWN} if it is not indexed
+	 */
+	private byte getIndexedRole(Node node) {
+		LMMESession session = LMMEController.getInstance().getCurrentSession();
+		if (session != null && session.isModelSet()) {
+			return session.getBaseGraph().getRoleIndex().lookupRole(node);
+		}
+		return NodeRoleIndex.ROLE_UNKNOWN;
+	}
+	
 	/**
 	 * Checks whether a given node has a given role.
 	 * 
@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JTextField;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.ErrorMsg;
+import org.FolderPanel;
+import org.GuiRow;
+import org.SystemInfo;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEConstants;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.core.LMMESession;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.io.PathwayAnnotationIndex;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
+
+import info.clearthought.layout.TableLayout;
+
+/**
+ * This method determines the pathways of the reactions from locally stored annotation dumps, i.e. KEGG link files, Reactome mapping files or GMT
+ * files, see {@link PathwayAnnotationIndex}. It thus works without any network access.
+ * <p>
+ * The identifiers are read from a textual attribute of the model, see {@link BaseGraph#getModelAttributeKeys()}. By default, these are the MIRIAM
+ * resources of the RDF annotations, such as {@code urn:miriam:kegg.reaction:R00200} or {@code https://identifiers.org/reactome:R-HSA-70171}, which
+ * are reduced to the identifiers themselves. Any other attribute, e.g. a CellDesigner or MINERVA annotation, may hold several identifiers separated
+ * by a configurable separator.
+ * <p>
+ * The candidate pathways of a reaction are the pathways of its own identifiers or, alternatively, the pathways of the identifiers of its species,
+ * where cloned species are left out. The reactions are then assigned to the candidate pathways greedily, in the same way as in the
+ * {@link KeggMMDecomposition}.
+ * 
+ * @author Michael Aichem
+ */
+public class AnnotationMMDecomposition extends MMDecompositionAlgorithm {
+	
+	private JComboBox<String> cbIdentifierAttribute;
+	private GuiRow identifierAttributeRow;
+	private FolderPanel fp;
+	
+	private JComboBox<String> cbIdentifiersOf;
+	private JTextField separator;
+	private JTextField dumpFiles;
+	private JLabel minimumNumberValue;
+	private JSlider minimumNumberSlider;
+	
+	/**
+	 * The settings of the decomposition, taken from the folder panel if it has been created.
+	 */
+	private String identifierAttribute = MIRIAM_ATTRIBUTE_KEY;
+	private boolean identifiersOfSpecies = false;
+	private String separatorText = ",";
+	private ArrayList<File> dumps = new ArrayList<>();
+	private int minimumNumber = 5;
+	private File indexDirectory = null;
+	
+	private static final String MIRIAM_ATTRIBUTE_KEY = BaseGraph.getModelAttributeKey(LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.MIRIAM_ATTRIBUTE);
+	
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	
+	private final String ATTRIBUTE_NAME_FINAL_SUBSYSTEM = "FinalAnnotationSubsystem";
+	
+	private final String IDENTIFIERS_OF_REACTIONS = "Reactions";
+	private final String IDENTIFIERS_OF_SPECIES = "Species";
+	
+	@Override
+	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
+		
+		readSettings();
+		
+		// The working graph may be shared with the model, so results of previous runs have to be discarded.
+		LMMESession currentSession = LMMEController.getInstance().getCurrentSession();
+		for (Node reactionNode : currentSession.getBaseGraph().getReactionNodes()) {
+			currentSession.addNodeAttribute(reactionNode, ATTRIBUTE_NAME_FINAL_SUBSYSTEM, "");
+		}
+		
+		PathwayAnnotationIndex index = null;
+		try {
+			index = this.indexDirectory == null ? PathwayAnnotationIndex.getInstance(this.dumps)
+					: PathwayAnnotationIndex.getInstance(this.dumps, this.indexDirectory);
+			if (LMMEController.getInstance().getTab() != null) {
+				LMMEController.getInstance().getTab().logMsg("Annotation index: " + index.getNumberOfIdentifiers() + " identifiers in "
+						+ index.getNumberOfPathways() + " pathways.");
+			}
+		} catch (IOException e) {
+			ErrorMsg.addErrorMessage("Pathway Annotation Decomposition: the annotation dumps could not be indexed. " + e.getMessage());
+		}
+		
+		if (index != null) {
+			KeggGreedyAssignment<Node> greedyAssignment = new KeggGreedyAssignment<>(determineCandidates(index), this.minimumNumber);
+			greedyAssignment.run();
+			for (Map.Entry<String, ArrayList<Node>> entry : greedyAssignment.getAssignment().entrySet()) {
+				for (Node reactionNode : entry.getValue()) {
+					currentSession.addNodeAttribute(reactionNode, ATTRIBUTE_NAME_FINAL_SUBSYSTEM, entry.getKey());
+				}
+			}
+		}
+		
+		return determineSubsystemsFromReactionAttributes(ATTRIBUTE_NAME_FINAL_SUBSYSTEM, false, "", alreadyClassifiedNodes);
+	}
+	
+	/**
+	 * Determines the candidate pathways of every reaction. If the identifiers of the reactions are used, a pathway is listed once per identifier of a
+	 * reaction, as in the {@link KeggMMDecomposition}. If the identifiers of the species are used, a pathway is listed only once per reaction, since a
+	 * reaction usually shares several species with its pathway. The pathways of a species are looked up only once.
+	 */
+	private HashMap<Node, ArrayList<String>> determineCandidates(PathwayAnnotationIndex index) {
+		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		CompactGraph compactGraph = baseGraph.getCompactGraph();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		LinkedHashSet<String>[] pathwaysOfSpecies = createPathwaysOfSpecies(compactGraph.getNumberOfSpecies());
+		
+		HashMap<Node, ArrayList<String>> res = new HashMap<>();
+		for (int r = compactGraph.getNumberOfSpecies(); r < compactGraph.getNumberOfNodes(); r++) {
+			Node reactionNode = compactGraph.getNode(r);
+			ArrayList<String> candidates;
+			if (this.identifiersOfSpecies) {
+				LinkedHashSet<String> speciesPathways = new LinkedHashSet<>();
+				for (int k = adjacencyOffsets[r]; k < adjacencyOffsets[r + 1]; k++) {
+					int s = adjacentNodes[k];
+					if (pathwaysOfSpecies[s] == null) {
+						pathwaysOfSpecies[s] = new LinkedHashSet<>();
+						Node speciesNode = compactGraph.getNode(s);
+						if (!baseGraph.isCloned(baseGraph.getAttributeNode(speciesNode))) {
+							for (String identifier : getIdentifiers(baseGraph, speciesNode)) {
+								pathwaysOfSpecies[s].addAll(lookup(index, identifier));
+							}
+						}
+					}
+					speciesPathways.addAll(pathwaysOfSpecies[s]);
+				}
+				candidates = new ArrayList<>(speciesPathways);
+			} else {
+				candidates = new ArrayList<>();
+				for (String identifier : getIdentifiers(baseGraph, reactionNode)) {
+					candidates.addAll(lookup(index, identifier));
+				}
+			}
+			if (!candidates.isEmpty()) {
+				res.put(reactionNode, candidates);
+			}
+		}
+		return res;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static LinkedHashSet<String>[] createPathwaysOfSpecies(int numberOfSpecies) {
+		return new LinkedHashSet[numberOfSpecies];
+	}
+	
+	/**
+	 * Looks up the given identifier, and then without its database prefixes as long as it has some, e.g. {@code rn:R00200} or
+	 * {@code obo.chebi:CHEBI:15422}.
+	 */
+	private static List<String> lookup(PathwayAnnotationIndex index, String identifier) {
+		String remainder = identifier;
+		List<String> res = index.getPathways(remainder);
+		while (res.isEmpty() && remainder.indexOf(':') >= 0) {
+			remainder = remainder.substring(remainder.indexOf(':') + 1);
+			res = index.getPathways(remainder);
+		}
+		return res;
+	}
+	
+	/**
+	 * Reduces a MIRIAM resource to the identifier and its collection, e.g. {@code urn:miriam:kegg.reaction:R00200} or
+	 * {@code https://identifiers.org/kegg.reaction/R00200} to {@code kegg.reaction:R00200}. Other identifiers are returned as they are.
+	 * 
+	 * @param identifier
+	 *           the MIRIAM URN or identifiers.org URL, or any other identifier
+	 * @return the identifier with its collection as prefix
+	 */
+	static String getMiriamIdentifier(String identifier) {
+		String res = identifier.replace("%3A", ":").replace("%3a", ":");
+		if (res.startsWith("urn:miriam:")) {
+			return res.substring("urn:miriam:".length());
+		}
+		int identifiersOrg = res.indexOf("identifiers.org/");
+		if (identifiersOrg >= 0) {
+			res = res.substring(identifiersOrg + "identifiers.org/".length());
+			int slash = res.indexOf('/');
+			// the former URLs separate the collection by a slash, the current ones by a colon
+			return slash < 0 ? res : res.substring(0, slash) + ":" + res.substring(slash + 1);
+		}
+		return res;
+	}
+	
+	private ArrayList<String> getIdentifiers(BaseGraph baseGraph, Node node) {
+		ArrayList<String> res = new ArrayList<>();
+		int colon = this.identifierAttribute.indexOf(':');
+		if (colon < 0) {
+			return res;
+		}
+		String identifiers = baseGraph.getModelAttribute(node, this.identifierAttribute.substring(0, colon),
+				this.identifierAttribute.substring(colon + 1));
+		if (identifiers == null || identifiers.trim().isEmpty()) {
+			return res;
+		}
+		String[] split;
+		if (this.identifierAttribute.equals(MIRIAM_ATTRIBUTE_KEY)) {
+			split = WHITESPACE.split(identifiers.trim());
+		} else if (!this.separatorText.isEmpty()) {
+			split = identifiers.split(Pattern.quote(this.separatorText));
+		} else {
+			split = new String[] { identifiers };
+		}
+		for (String singleIdentifier : split) {
+			if (!singleIdentifier.trim().isEmpty()) {
+				res.add(getMiriamIdentifier(singleIdentifier.trim()));
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Takes over the settings from the folder panel, if it has been created. Otherwise, the settings that have been set before are kept.
+	 */
+	private void readSettings() {
+		if (this.fp == null) {
+			return;
+		}
+		if (this.cbIdentifierAttribute.getSelectedItem() != null) {
+			this.identifierAttribute = (String) this.cbIdentifierAttribute.getSelectedItem();
+		}
+		this.identifiersOfSpecies = IDENTIFIERS_OF_SPECIES.equals(this.cbIdentifiersOf.getSelectedItem());
+		this.separatorText = this.separator.getText().trim();
+		this.dumps = new ArrayList<>();
+		for (String path : this.dumpFiles.getText().split(Pattern.quote(File.pathSeparator))) {
+			if (!path.trim().isEmpty()) {
+				this.dumps.add(new File(path.trim()));
+			}
+		}
+		this.minimumNumber = this.minimumNumberSlider.getValue();
+	}
+	
+	/**
+	 * Sets the settings for a decomposition without the folder panel, e.g. in batch.
+	 * 
+	 * @param identifierAttribute
+	 *           the key of the model attribute that holds the identifiers, see {@link BaseGraph#getModelAttributeKey(String, String)}
+	 * @param identifiersOfSpecies
+	 *           whether the identifiers of the species are used instead of those of the reactions
+	 * @param separatorText
+	 *           the separator of the identifiers within an attribute other than the MIRIAM resources
+	 * @param dumps
+	 *           the annotation dumps
+	 * @param minimumNumber
+	 *           the minimum number of reactions per pathway
+	 * @param indexDirectory
+	 *           the directory of the annotation index, or {@code null} for the application folder
+	 */
+	void setSettings(String identifierAttribute, boolean identifiersOfSpecies, String separatorText, List<File> dumps, int minimumNumber,
+			File indexDirectory) {
+		this.identifierAttribute = identifierAttribute;
+		this.identifiersOfSpecies = identifiersOfSpecies;
+		this.separatorText = separatorText;
+		this.dumps = new ArrayList<>(dumps);
+		this.minimumNumber = minimumNumber;
+		this.indexDirectory = indexDirectory;
+	}
+	
+	@Override
+	public boolean requiresCloning() {
+		return true;
+	}
+	
+	@Override
+	public FolderPanel getFolderPanel() {
+		
+		if (this.fp != null) {
+			updateFolderPanel();
+		} else {
+			this.fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+			
+			this.cbIdentifierAttribute = createComboBox(this.identifierAttribute);
+			JPanel identifierAttributeLine = LMMETab.combine(new JLabel("Identifiers attribute:"), this.cbIdentifierAttribute, Color.WHITE, false,
+					true);
+			this.identifierAttributeRow = new GuiRow(identifierAttributeLine, null);
+			fp.addGuiComponentRow(this.identifierAttributeRow, true);
+			
+			this.cbIdentifiersOf = new JComboBox<>(new String[] { IDENTIFIERS_OF_REACTIONS, IDENTIFIERS_OF_SPECIES });
+			JPanel identifiersOfLine = LMMETab.combine(new JLabel("Identifiers of:"), this.cbIdentifiersOf, Color.WHITE, false, true);
+			fp.addGuiComponentRow(FolderPanel.getBorderedComponent(identifiersOfLine, 5, 0, 0, 0), null, true);
+			
+			JLabel lblSeparator = new JLabel("Separator:");
+			this.separator = new JTextField(5);
+			this.separator.setText(",");
+			this.separator.setToolTipText(
+					"The separator of several identifiers within one attribute. MIRIAM resources are always separated by blanks.");
+			JPanel separatorLine = LMMETab.combine(lblSeparator, this.separator, Color.WHITE, false, true);
+			fp.addGuiComponentRow(FolderPanel.getBorderedComponent(separatorLine, 5, 0, 0, 0), null, true);
+			
+			this.dumpFiles = new JTextField(15);
+			this.dumpFiles.setToolTipText("KEGG link and list files, Reactome mapping files or GMT files, separated by \"" + File.pathSeparator + "\".");
+			JButton btnAddDumpFiles = new JButton("Add");
+			btnAddDumpFiles.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					JFileChooser fc = new JFileChooser();
+					fc.setMultiSelectionEnabled(true);
+					int res = fc.showOpenDialog(null);
+					if (res == JFileChooser.APPROVE_OPTION) {
+						StringBuilder paths = new StringBuilder(dumpFiles.getText().trim());
+						for (File file : fc.getSelectedFiles()) {
+							if (paths.length() > 0) {
+								paths.append(File.pathSeparator);
+							}
+							paths.append(file.getAbsolutePath());
+						}
+						dumpFiles.setText(paths.toString());
+					}
+				}
+			});
+			JPanel dumpFilesLine = LMMETab.combine(this.dumpFiles, btnAddDumpFiles, Color.WHITE, true, false);
+			JComponent dumpFilesComponent = TableLayout.getDoubleRow(new JLabel("Annotation dumps:"), dumpFilesLine, Color.WHITE);
+			fp.addGuiComponentRow(FolderPanel.getBorderedComponent(dumpFilesComponent, 5, 0, 0, 0), null, true);
+			
+			JLabel lblMinimumNumber = new JLabel("Minimum reactions per pathway:");
+			this.minimumNumberValue = new JLabel();
+			
+			this.minimumNumberSlider = new JSlider();
+			if (SystemInfo.isMac()) {
+				this.minimumNumberSlider.setPaintTrack(false);
+			}
+			this.minimumNumberSlider.setBorder(BorderFactory.createLineBorder(Color.WHITE, 1));
+			this.minimumNumberSlider.setMinimum(1);
+			this.minimumNumberSlider.setMaximum(20);
+			this.minimumNumberSlider.setToolTipText(
+					"The minimum number of reactions that must belong to a pathway in order to consider this pathway as present.");
+			this.minimumNumberSlider.setPaintLabels(true);
+			this.minimumNumberSlider.setPaintTicks(true);
+			Hashtable<Integer, JComponent> sliderLabels = new Hashtable<>();
+			for (int i = 5; i <= this.minimumNumberSlider.getMaximum(); i += 5) {
+				sliderLabels.put(Integer.valueOf(i), new JLabel(Integer.toString(i)));
+			}
+			this.minimumNumberSlider.setLabelTable(sliderLabels);
+			this.minimumNumberSlider.setBackground(Color.WHITE);
+			this.minimumNumberSlider.addChangeListener(new ChangeListener() {
+				public void stateChanged(ChangeEvent e) {
+					int newValue = ((JSlider) e.getSource()).getValue();
+					minimumNumberValue.setText(String.valueOf(newValue));
+				}
+			});
+			this.minimumNumberSlider.setValue(5);
+			
+			JComponent minimumNumberComponent = TableLayout.getDoubleRow(
+					LMMETab.combine(lblMinimumNumber, this.minimumNumberValue, Color.WHITE, false, true),
+					this.minimumNumberSlider, Color.WHITE);
+			
+			fp.addGuiComponentRow(minimumNumberComponent, null, true);
+		}
+		return fp;
+	}
+	
+	@Override
+	public void updateFolderPanel() {
+		String currentVal = this.cbIdentifierAttribute == null ? this.identifierAttribute : (String) this.cbIdentifierAttribute.getSelectedItem();
+		this.cbIdentifierAttribute = createComboBox(currentVal);
+		JPanel identifierAttributeLine = LMMETab.combine(new JLabel("Identifiers attribute:"), this.cbIdentifierAttribute, Color.WHITE, false, true);
+		this.identifierAttributeRow.left = identifierAttributeLine;
+		this.fp.layoutRows();
+	}
+	
+	/**
+	 * Creates the selection of the model attribute that holds the identifiers. The given attribute is selected if the model has it, otherwise the
+	 * MIRIAM resources or an attribute that refers to KEGG.
+	 */
+	private JComboBox<String> createComboBox(String initiallySelectedValue) {
+		JComboBox<String> cb;
+		if (LMMEController.getInstance().getCurrentSession().isModelSet()) {
+			cb = new JComboBox<String>(
+					LMMEController.getInstance().getCurrentSession().getBaseGraph().getModelAttributeKeys().toArray(new String[0]));
+		} else {
+			cb = new JComboBox<String>();
+		}
+		String[] preferredValues = new String[] { initiallySelectedValue, MIRIAM_ATTRIBUTE_KEY };
+		for (String preferredValue : preferredValues) {
+			for (int i = 0; i < cb.getItemCount(); i++) {
+				if (cb.getItemAt(i).equals(preferredValue)) {
+					cb.setSelectedIndex(i);
+					return cb;
+				}
+			}
+		}
+		for (int i = 0; i < cb.getItemCount(); i++) {
+			if (cb.getItemAt(i).toLowerCase().contains("kegg")) {
+				cb.setSelectedIndex(i);
+				return cb;
+			}
+		}
+		return cb;
+	}
+	
+	/**
+	 * The dumps are described by their paths, sizes and modification times, such that a decomposition is not reused once a dump has been replaced.
+	 */
+	@Override
+	public String getParameterString() {
+		readSettings();
+		StringBuilder res = new StringBuilder();
+		res.append("identifiers=").append(this.identifierAttribute);
+		res.append(";identifiersOf=").append(this.identifiersOfSpecies ? IDENTIFIERS_OF_SPECIES : IDENTIFIERS_OF_REACTIONS);
+		res.append(";separator=").append(this.separatorText);
+		res.append(";minimumNumber=").append(this.minimumNumber);
+		for (File dump : this.dumps) {
+			res.append(";dump=").append(dump.getAbsolutePath()).append('|').append(dump.length()).append('|').append(dump.lastModified());
+		}
+		return res.toString();
+	}
+	
+	@Override
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		readSettings();
+		int colon = this.identifierAttribute.indexOf(':');
+		long identifiersFingerprint = colon < 0 ? 0L
+				: baseGraph.getModelAttributeFingerprint(this.identifierAttribute.substring(0, colon), this.identifierAttribute.substring(colon + 1));
+		return super.getAttributeFingerprint(baseGraph, addTransporterSubsystem) + ";identifiers=" + Long.toHexString(identifiersFingerprint);
+	}
+	
+	@Override
+	public String getName() {
+		return "Pathway Annotation Decomposition";
+	}
+	
+	@Override
+	public boolean requiresTransporterSubsystem() {
+		return false;
+	}
+	
+}
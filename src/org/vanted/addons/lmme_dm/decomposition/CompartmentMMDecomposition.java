@@ -15,25 +15,29 @@
 package org.vanted.addons.lmme_dm.decomposition;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.stream.IntStream;
 
 import javax.swing.JLabel;
 
-import org.AttributeHelper;
 import org.FolderPanel;
 import org.GuiRow;
-import org.graffiti.graph.Edge;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.CompartmentIndex;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 
-import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
-
 /**
  * This method determines a decomposition of the model based on the compartment
  * information available in the model.
+ * <p>
+ * Every compartment constitutes a subsystem, which contains the species of the
+ * compartment and the reactions that involve them. A reaction that involves
+ * species of several compartments is assigned to the compartment that occurs
+ * first in the model.
  *
  * @author Michael Aichem
  */
@@ -44,54 +48,77 @@ public class CompartmentMMDecomposition extends MMDecompositionAlgorithm {
 	@Override
 	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
 		
-		HashSet<String> compartments = new HashSet<String>();
-		
 		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		CompactGraph compactGraph = baseGraph.getCompactGraph();
+		CompartmentIndex compartmentIndex = baseGraph.getCompartmentIndex();
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		int numberOfCompartments = compartmentIndex.getNumberOfCompartments();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int[] adjacentEdges = compactGraph.getAdjacentEdges();
 		
-		for (Node speciesNode : baseGraph.getSpeciesNodes()) {
-			if (!alreadyClassifiedNodes.contains(speciesNode)) {
-				if (AttributeHelper.hasAttribute(speciesNode, SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME)) {
-					String compName = (String) AttributeHelper.getAttributeValue(speciesNode, SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME, "", "");
-					compartments.add(compName);
+		// every unclassified reaction belongs to the first compartment among those of its species
+		int[] reactionCompartments = new int[compactGraph.getNumberOfReactions()];
+		int[] reactionOffsets = new int[numberOfCompartments + 1];
+		for (int r = 0; r < reactionCompartments.length; r++) {
+			int reactionIndex = numberOfSpecies + r;
+			int compartment = CompartmentIndex.NO_COMPARTMENT;
+			if (!alreadyClassifiedNodes.contains(compactGraph.getNode(reactionIndex))) {
+				for (int k = adjacencyOffsets[reactionIndex]; k < adjacencyOffsets[reactionIndex + 1]; k++) {
+					int speciesCompartment = compartmentIndex.getCompartment(adjacentNodes[k]);
+					if (speciesCompartment != CompartmentIndex.NO_COMPARTMENT
+							&& (compartment == CompartmentIndex.NO_COMPARTMENT || speciesCompartment < compartment)) {
+						compartment = speciesCompartment;
+					}
 				}
 			}
+			reactionCompartments[r] = compartment;
+			if (compartment != CompartmentIndex.NO_COMPARTMENT) {
+				reactionOffsets[compartment + 1]++;
+			}
+		}
+		for (int c = 0; c < numberOfCompartments; c++) {
+			reactionOffsets[c + 1] += reactionOffsets[c];
+		}
+		int[] compartmentReactions = new int[reactionOffsets[numberOfCompartments]];
+		int[] fill = new int[numberOfCompartments];
+		for (int r = 0; r < reactionCompartments.length; r++) {
+			int compartment = reactionCompartments[r];
+			if (compartment != CompartmentIndex.NO_COMPARTMENT) {
+				compartmentReactions[reactionOffsets[compartment] + fill[compartment]++] = numberOfSpecies + r;
+			}
 		}
 		
-		ArrayList<SubsystemGraph> subsystems = new ArrayList<SubsystemGraph>();
-		
-		for (String compartment : compartments) {
-			SubsystemGraph subsystem = new SubsystemGraph(compartment, new HashSet<>(), new HashSet<>(), new HashSet<>());
-			for (Node speciesNode : baseGraph.getSpeciesNodes()) {
-				if (compartment
-						.equals((String) AttributeHelper.getAttributeValue(speciesNode, SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME, "", ""))) {
-					subsystem.addSpecies(speciesNode);
-					Collection<Edge> edgeSet = speciesNode.getEdges();
-					for (Edge edge : edgeSet) {
-						Node neighbor;
-						if (edge.getSource() == speciesNode) {
-							neighbor = edge.getTarget();
-						} else {
-							neighbor = edge.getSource();
-						}
-						if (!alreadyClassifiedNodes.contains(neighbor)) {
-							subsystem.addReaction(neighbor);
-							alreadyClassifiedNodes.add(neighbor);
-							for (Edge incidentEdge : neighbor.getEdges()) {
-								subsystem.addEdge(incidentEdge);
-								if (incidentEdge.getSource() == neighbor) {
-									subsystem.addSpecies(incidentEdge.getTarget());
-								} else {
-									subsystem.addSpecies(incidentEdge.getSource());
-								}
-							}
-							subsystem.addEdge(edge);
-						}
-					}
+		// the subsystems are independent of each other and are built in parallel
+		SubsystemGraph[] subsystems = new SubsystemGraph[numberOfCompartments];
+		int[] compartmentOffsets = compartmentIndex.getCompartmentOffsets();
+		int[] compartmentSpecies = compartmentIndex.getCompartmentSpecies();
+		IntStream.range(0, numberOfCompartments).parallel().forEach(c -> {
+			SubsystemGraph subsystem = new SubsystemGraph(compartmentIndex.getCompartmentName(c), new HashSet<>(), new HashSet<>(),
+					new HashSet<>());
+			for (int k = compartmentOffsets[c]; k < compartmentOffsets[c + 1]; k++) {
+				subsystem.addSpecies(compactGraph.getNode(compartmentSpecies[k]));
+			}
+			for (int k = reactionOffsets[c]; k < reactionOffsets[c + 1]; k++) {
+				int reactionIndex = compartmentReactions[k];
+				subsystem.addReaction(compactGraph.getNode(reactionIndex));
+				for (int l = adjacencyOffsets[reactionIndex]; l < adjacencyOffsets[reactionIndex + 1]; l++) {
+					subsystem.addSpecies(compactGraph.getNode(adjacentNodes[l]));
+					subsystem.addEdge(compactGraph.getEdge(adjacentEdges[l]));
 				}
 			}
-			subsystems.add(subsystem);
+			subsystems[c] = subsystem;
+		});
+		
+		for (SubsystemGraph subsystem : subsystems) {
+			alreadyClassifiedNodes.addAll(subsystem.getReactionNodes());
 		}
-		return subsystems;
+		return new ArrayList<>(Arrays.asList(subsystems));
+	}
+	
+	@Override
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		return "compartments=" + Long.toHexString(baseGraph.getCompartmentFingerprint());
 	}
 	
 	@Override
@@ -23,6 +23,7 @@ import org.FolderPanel;
 import org.GuiRow;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEConstants;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 
 /**
@@ -41,6 +42,12 @@ public class DiseaseMapPathwayDecomposition extends MMDecompositionAlgorithm {
 		
 	}
 	
+	@Override
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		return super.getAttributeFingerprint(baseGraph, addTransporterSubsystem) + ";pathways="
+				+ Long.toHexString(baseGraph.getNodeAttributeFingerprint(LMMEConstants.DISEASE_MAP_PATHWAY_ATTRIBUTE));
+	}
+	
 	@Override
 	public boolean requiresCloning() {
 		
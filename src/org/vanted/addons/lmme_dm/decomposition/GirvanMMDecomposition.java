@@ -14,12 +14,24 @@
  ******************************************************************************/
 package org.vanted.addons.lmme_dm.decomposition;
 
+import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
 import org.FolderPanel;
 import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.EdgeBetweenness;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
 
 /**
  * This class is an implementation of the method that has
@@ -29,16 +41,219 @@ import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
  * Girvan, M., Newman, M. E. (2002). Community structure in social and
  * biological networks. Proceedings of the national academy of sciences, 99(12),
  * 7821-7826.
- *
+ * <p>
+ * The edge with the highest betweenness is removed repeatedly, until either the target number of subsystems or the target modularity is reached. The
+ * betweenness is computed by {@link EdgeBetweenness} in parallel, and after a removal it is only recomputed for the component that contained the
+ * removed edge.
+ * 
  * @author Michael Aichem
  */
 public class GirvanMMDecomposition extends MMDecompositionAlgorithm {
 	
+	private int defaultNumberOfSubsystems = 20;
+	
+	private double defaultModularity = 0.8;
+	
+	private JTextField tfNumberOfSubsystems;
+	
+	private JTextField tfModularity;
+	
+	private final String ATTRIBUTE_NAME_SUBSYSTEM = "GirvanSubsystem";
+	
 	@Override
 	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
-		return null;
-		// TODO Auto-generated method stub
 		
+		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		CompactGraph compactGraph = baseGraph.getCompactGraph();
+		
+		int targetNumberOfSubsystems = readNumberOfSubsystems();
+		double targetModularity = readModularity();
+		
+		int numberOfNodes = compactGraph.getNumberOfNodes();
+		int numberOfEdges = compactGraph.getNumberOfEdges();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int[] adjacentEdges = compactGraph.getAdjacentEdges();
+		
+		EdgeBetweenness edgeBetweenness = new EdgeBetweenness(compactGraph);
+		
+		// initial components
+		int[] component = new int[numberOfNodes];
+		Arrays.fill(component, -1);
+		int[] queue = new int[numberOfNodes];
+		int numberOfComponents = 0;
+		for (int start = 0; start < numberOfNodes; start++) {
+			if (component[start] == -1) {
+				collectComponent(start, numberOfComponents++, component, queue, adjacencyOffsets, adjacentNodes, adjacentEdges,
+						edgeBetweenness);
+			}
+		}
+		
+		// the number of reactions, the number of internal edges and the total degree of every component, the latter two are needed for the modularity
+		int capacity = numberOfNodes + 1;
+		int[] reactionCounts = new int[capacity];
+		int[] internalEdges = new int[capacity];
+		int[] degreeSums = new int[capacity];
+		for (int i = 0; i < numberOfNodes; i++) {
+			if (compactGraph.isReaction(i)) {
+				reactionCounts[component[i]]++;
+			}
+			degreeSums[component[i]] += compactGraph.getDegree(i);
+		}
+		for (int e = 0; e < numberOfEdges; e++) {
+			internalEdges[component[compactGraph.getEdgeSource(e)]]++;
+		}
+		int numberOfSubsystems = 0;
+		double modularity = 0.0;
+		for (int c = 0; c < numberOfComponents; c++) {
+			if (reactionCounts[c] > 0) {
+				numberOfSubsystems++;
+			}
+			modularity += modularityTerm(internalEdges[c], degreeSums[c], numberOfEdges);
+		}
+		
+		int[] allNodes = new int[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			allNodes[i] = i;
+		}
+		double[] betweenness = edgeBetweenness.compute(allNodes);
+		
+		int removedEdges = 0;
+		while (numberOfSubsystems < targetNumberOfSubsystems && modularity < targetModularity && removedEdges < numberOfEdges) {
+			
+			int maxEdge = -1;
+			double maxBetweenness = -1.0;
+			for (int e = 0; e < numberOfEdges; e++) {
+				// ties, also those caused by rounding, are broken in favor of the smallest edge id
+				if (!edgeBetweenness.isRemoved(e) && betweenness[e] > maxBetweenness + 1e-9 * Math.max(1.0, maxBetweenness)) {
+					maxEdge = e;
+					maxBetweenness = betweenness[e];
+				}
+			}
+			edgeBetweenness.removeEdge(maxEdge);
+			removedEdges++;
+			
+			int source = compactGraph.getEdgeSource(maxEdge);
+			int target = compactGraph.getEdgeTarget(maxEdge);
+			int oldComponent = component[source];
+			
+			// the source keeps the old component, the part of the target becomes a new component if it is not reachable anymore
+			int sizeOfSourcePart = collectComponent(source, -2, component, queue, adjacencyOffsets, adjacentNodes, adjacentEdges,
+					edgeBetweenness);
+			int[] affectedNodes;
+			if (component[target] == -2) {
+				affectedNodes = Arrays.copyOf(queue, sizeOfSourcePart);
+				for (int node : affectedNodes) {
+					component[node] = oldComponent;
+				}
+			} else {
+				int[] sourcePart = Arrays.copyOf(queue, sizeOfSourcePart);
+				for (int node : sourcePart) {
+					component[node] = oldComponent;
+				}
+				int newComponent = numberOfComponents++;
+				int sizeOfTargetPart = collectComponent(target, newComponent, component, queue, adjacencyOffsets, adjacentNodes,
+						adjacentEdges, edgeBetweenness);
+				int[] targetPart = Arrays.copyOf(queue, sizeOfTargetPart);
+				
+				modularity -= modularityTerm(internalEdges[oldComponent], degreeSums[oldComponent], numberOfEdges);
+				boolean hadReactions = reactionCounts[oldComponent] > 0;
+				reactionCounts[oldComponent] = 0;
+				internalEdges[oldComponent] = 0;
+				degreeSums[oldComponent] = 0;
+				for (int[] part : new int[][] { sourcePart, targetPart }) {
+					for (int node : part) {
+						int c = component[node];
+						if (compactGraph.isReaction(node)) {
+							reactionCounts[c]++;
+						}
+						degreeSums[c] += compactGraph.getDegree(node);
+						// the modularity refers to the original graph, so removed edges are counted as well, each one from its source
+						for (int k = adjacencyOffsets[node]; k < adjacencyOffsets[node + 1]; k++) {
+							int edgeId = adjacentEdges[k];
+							if (compactGraph.getEdgeSource(edgeId) == node && component[adjacentNodes[k]] == c) {
+								internalEdges[c]++;
+							}
+						}
+					}
+				}
+				modularity += modularityTerm(internalEdges[oldComponent], degreeSums[oldComponent], numberOfEdges);
+				modularity += modularityTerm(internalEdges[newComponent], degreeSums[newComponent], numberOfEdges);
+				if (hadReactions && reactionCounts[oldComponent] > 0 && reactionCounts[newComponent] > 0) {
+					numberOfSubsystems++;
+				}
+				
+				affectedNodes = new int[sourcePart.length + targetPart.length];
+				System.arraycopy(sourcePart, 0, affectedNodes, 0, sourcePart.length);
+				System.arraycopy(targetPart, 0, affectedNodes, sourcePart.length, targetPart.length);
+			}
+			
+			// only the betweenness within the affected component changes
+			double[] componentBetweenness = edgeBetweenness.compute(affectedNodes);
+			for (int node : affectedNodes) {
+				for (int k = adjacencyOffsets[node]; k < adjacencyOffsets[node + 1]; k++) {
+					int edgeId = adjacentEdges[k];
+					betweenness[edgeId] = componentBetweenness[edgeId];
+				}
+			}
+		}
+		
+		// The components are numbered in the order of their smallest nodes.
+		int[] subsystemNumbers = new int[numberOfComponents];
+		int count = 1;
+		for (int i = 0; i < numberOfNodes; i++) {
+			if (subsystemNumbers[component[i]] == 0) {
+				subsystemNumbers[component[i]] = count++;
+			}
+		}
+		
+		for (int i = compactGraph.getNumberOfSpecies(); i < numberOfNodes; i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + subsystemNumbers[component[i]]);
+			}
+		}
+		
+		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, false, "",
+				alreadyClassifiedNodes);
+	}
+	
+	/**
+	 * Assigns the given label to all nodes that are reachable from the start node via edges that have not been removed.
+	 * <p>
+	 * Nodes that already carry the label are not visited. Afterwards, the first entries of the queue contain the visited nodes.
+	 * 
+	 * @return the number of visited nodes
+	 */
+	private static int collectComponent(int start, int label, int[] component, int[] queue, int[] adjacencyOffsets, int[] adjacentNodes,
+			int[] adjacentEdges, EdgeBetweenness edgeBetweenness) {
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		component[start] = label;
+		while (head < tail) {
+			int current = queue[head++];
+			for (int k = adjacencyOffsets[current]; k < adjacencyOffsets[current + 1]; k++) {
+				int neighbor = adjacentNodes[k];
+				if (!edgeBetweenness.isRemoved(adjacentEdges[k]) && component[neighbor] != label) {
+					component[neighbor] = label;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+		return tail;
+	}
+	
+	/**
+	 * Computes the contribution of a single component to the modularity of the partition, with respect to the original graph.
+	 */
+	private static double modularityTerm(int internalEdges, int degreeSum, int numberOfEdges) {
+		if (numberOfEdges == 0) {
+			return 0.0;
+		}
+		double fraction = degreeSum / (2.0 * numberOfEdges);
+		return (double) internalEdges / numberOfEdges - fraction * fraction;
 	}
 	
 	@Override
@@ -48,15 +263,55 @@ public class GirvanMMDecomposition extends MMDecompositionAlgorithm {
 	
 	@Override
 	public FolderPanel getFolderPanel() {
-		FolderPanel fp = new FolderPanel(getName(), false, true, false, null);
+		FolderPanel fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+		
+		JLabel lblNumberOfSubsystems = new JLabel("Target number of subsystems: ");
+		this.tfNumberOfSubsystems = new JTextField(5);
+		this.tfNumberOfSubsystems.setText(Integer.toString(this.defaultNumberOfSubsystems));
+		JPanel numberOfSubsystemsLine = LMMETab.combine(lblNumberOfSubsystems, this.tfNumberOfSubsystems, Color.WHITE, false, true);
+		fp.addGuiComponentRow(numberOfSubsystemsLine, null, true);
+		
+		JLabel lblModularity = new JLabel("Target modularity: ");
+		this.tfModularity = new JTextField(5);
+		this.tfModularity.setText(Double.toString(this.defaultModularity));
+		JPanel modularityLine = LMMETab.combine(lblModularity, this.tfModularity, Color.WHITE, false, true);
+		fp.addGuiComponentRow(modularityLine, null, true);
 		
 		return fp;
 	}
 	
 	@Override
 	public void updateFolderPanel() {
-		// TODO Auto-generated method stub
-		
+		// no need to do sth.
+	}
+	
+	private int readNumberOfSubsystems() {
+		int res;
+		try {
+			res = Integer.parseInt(this.tfNumberOfSubsystems.getText());
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The target number of subsystems could not be read. "
+					+ "It has therefore been set to " + this.defaultNumberOfSubsystems + ".");
+			res = this.defaultNumberOfSubsystems;
+		}
+		return res;
+	}
+	
+	private double readModularity() {
+		double res;
+		try {
+			res = Double.parseDouble(this.tfModularity.getText());
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The target modularity could not be read. "
+					+ "It has therefore been set to " + this.defaultModularity + ".");
+			res = this.defaultModularity;
+		}
+		return res;
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "numberOfSubsystems=" + this.tfNumberOfSubsystems.getText() + ";modularity=" + this.tfModularity.getText();
 	}
 	
 	@Override
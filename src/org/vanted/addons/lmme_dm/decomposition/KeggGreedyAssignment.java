@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Greedily assigns reactions to the candidate pathways that they may belong to.
+ * <p>
+ * In every step, the pathway with the most unassigned candidate reactions is selected and all of these reactions are assigned to it. A reaction that
+ * lists a pathway several times, e.g. because it has several KEGG IDs, is counted several times. The assignment stops as soon as no pathway has at
+ * least the minimum number of unassigned reactions. Ties are broken in favour of the lexicographically smaller pathway name.
+ * <p>
+ * Instead of recounting all candidates in every step, the reactions of every pathway are looked up in an inverted index and the pathways are kept in an
+ * indexed max-heap by their number of unassigned reactions. When a reaction is assigned, the numbers of its other candidate pathways are decremented
+ * in place, such that the total running time is {@code O(c log p)} for {@code c} candidate entries and {@code p} pathways.
+ * 
+ * @author Michael Aichem
+ * @param <T>
+ *           the type of the reactions
+ */
+public class KeggGreedyAssignment<T> {
+	
+	private final Map<T, ? extends List<String>> candidates;
+	
+	private final int minimumNumber;
+	
+	private LinkedHashMap<String, ArrayList<T>> assignment;
+	
+	/**
+	 * The number of unassigned reactions of every pathway.
+	 */
+	private int[] counts;
+	
+	/**
+	 * The heap of pathways, together with the position of every pathway in the heap, which is -1 once the pathway has left the heap.
+	 */
+	private int[] heap;
+	private int[] positions;
+	private int heapSize;
+	
+	/**
+	 * @param candidates
+	 *           the candidate pathways of every reaction
+	 * @param minimumNumber
+	 *           the minimum number of reactions a pathway needs to be selected, at least 1
+	 */
+	public KeggGreedyAssignment(Map<T, ? extends List<String>> candidates, int minimumNumber) {
+		this.candidates = candidates;
+		this.minimumNumber = Math.max(1, minimumNumber);
+	}
+	
+	/**
+	 * Performs the assignment.
+	 */
+	public void run() {
+		
+		// the pathways are numbered in lexicographical order, so that the smaller number wins a tie
+		ArrayList<String> pathways = new ArrayList<>();
+		HashMap<String, Integer> pathway2index = new HashMap<>();
+		for (List<String> list : candidates.values()) {
+			for (String pathway : list) {
+				if (!pathway2index.containsKey(pathway)) {
+					pathway2index.put(pathway, Integer.valueOf(0));
+					pathways.add(pathway);
+				}
+			}
+		}
+		Collections.sort(pathways);
+		for (int p = 0; p < pathways.size(); p++) {
+			pathway2index.put(pathways.get(p), Integer.valueOf(p));
+		}
+		int numberOfPathways = pathways.size();
+		
+		// the candidate pathways of every reaction, with multiplicities, and the inverted index
+		ArrayList<T> reactions = new ArrayList<>(candidates.keySet());
+		int[][] reaction2pathways = new int[reactions.size()][];
+		counts = new int[numberOfPathways];
+		for (int r = 0; r < reactions.size(); r++) {
+			List<String> list = candidates.get(reactions.get(r));
+			reaction2pathways[r] = new int[list.size()];
+			for (int k = 0; k < list.size(); k++) {
+				int p = pathway2index.get(list.get(k)).intValue();
+				reaction2pathways[r][k] = p;
+				counts[p]++;
+			}
+		}
+		int[][] pathway2reactions = new int[numberOfPathways][];
+		int[] fill = new int[numberOfPathways];
+		for (int p = 0; p < numberOfPathways; p++) {
+			pathway2reactions[p] = new int[counts[p]];
+		}
+		for (int r = 0; r < reactions.size(); r++) {
+			for (int p : reaction2pathways[r]) {
+				pathway2reactions[p][fill[p]++] = r;
+			}
+		}
+		
+		heap = new int[numberOfPathways];
+		positions = new int[numberOfPathways];
+		heapSize = numberOfPathways;
+		for (int p = 0; p < numberOfPathways; p++) {
+			heap[p] = p;
+			positions[p] = p;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+		
+		assignment = new LinkedHashMap<>();
+		boolean[] assigned = new boolean[reactions.size()];
+		while (heapSize > 0 && counts[heap[0]] >= minimumNumber) {
+			int selected = removeTop();
+			ArrayList<T> selectedReactions = new ArrayList<>();
+			for (int r : pathway2reactions[selected]) {
+				if (!assigned[r]) {
+					assigned[r] = true;
+					selectedReactions.add(reactions.get(r));
+					for (int p : reaction2pathways[r]) {
+						counts[p]--;
+						if (positions[p] >= 0) {
+							siftDown(positions[p]);
+						}
+					}
+				}
+			}
+			assignment.put(pathways.get(selected), selectedReactions);
+		}
+	}
+	
+	/**
+	 * @return whether pathway {@code p} precedes pathway {@code q} in the heap
+	 */
+	private boolean precedes(int p, int q) {
+		return counts[p] > counts[q] || (counts[p] == counts[q] && p < q);
+	}
+	
+	private int removeTop() {
+		int top = heap[0];
+		positions[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+	
+	/**
+	 * Restores the heap property below the given position, after the count of the pathway there has been decremented.
+	 */
+	private void siftDown(int position) {
+		int pathway = heap[position];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && precedes(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!precedes(heap[child], pathway)) {
+				break;
+			}
+			heap[position] = heap[child];
+			positions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = pathway;
+		positions[pathway] = position;
+	}
+	
+	/**
+	 * Gets the selected pathways in the order of their selection, each with the reactions that have been assigned to it. Reactions that are not
+	 * contained have not been assigned to any pathway.
+	 * 
+	 * @return the assignment
+	 */
+	public LinkedHashMap<String, ArrayList<T>> getAssignment() {
+		return assignment;
+	}
+	
+}
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import javax.swing.BorderFactory;
@@ -30,7 +31,6 @@ import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import javax.ws.rs.core.MediaType;
 
 import org.ErrorMsg;
 import org.FolderPanel;
@@ -43,11 +43,13 @@ import org.vanted.addons.lmme_dm.core.LMMEConstants;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.core.LMMESession;
 import org.vanted.addons.lmme_dm.core.LMMETools;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.io.KeggRequestCache;
+import org.vanted.addons.lmme_dm.io.KeggRestClient;
 import org.vanted.addons.lmme_dm.ui.LMMETab;
 
 import de.ipk_gatersleben.ag_nw.graffiti.NeedsSwingThread;
-import de.ipk_gatersleben.ag_nw.graffiti.services.web.RestService;
 import info.clearthought.layout.TableLayout;
 
 /**
@@ -77,18 +79,14 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 	private final String ATTRIBUTE_NAME_FINAL_SUBSYSTEM = "FinalSubsystem";
 	
 	/**
-	 * The rest service for the KEGG requests.
+	 * The maximum number of simultaneous requests to KEGG.
 	 */
-	private RestService restService = new RestService("http://rest.kegg.jp/get/");
+	private static final int PARALLEL_REQUESTS = 4;
 	
 	private HashMap<Node, ArrayList<String>> node2possibleSubsystems;
-	private HashMap<String, Integer> subsystem2number;
-	
-	private int packageStart;
 	
 	public KeggMMDecomposition() {
 		this.node2possibleSubsystems = new HashMap<>();
-		this.subsystem2number = new HashMap<>();
 	}
 	
 	@Override
@@ -96,13 +94,24 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 		
 		LMMETools.getInstance().readNotes(this.getSelectedTag(), this.ATTRIBUTE_NAME_KEGG_ID);
 		
+		// The working graph may be shared with the model, so results of previous runs have to be discarded.
+		LMMESession currentSession = LMMEController.getInstance().getCurrentSession();
+		for (Node reactionNode : currentSession.getBaseGraph().getReactionNodes()) {
+			currentSession.addNodeAttribute(reactionNode, ATTRIBUTE_NAME_FINAL_SUBSYSTEM, "");
+		}
+		
+		this.node2possibleSubsystems.clear();
 		request();
 		
-		while (!this.node2possibleSubsystems.isEmpty()) {
-			updateSubsystemNumber();
-			removeTooSmallSubsystems();
-			removeNodesWithoutSubsystem();
-			extractNodesFromHugestSubsystem();
+		KeggGreedyAssignment<Node> greedyAssignment = new KeggGreedyAssignment<>(this.node2possibleSubsystems,
+				this.minimumNumberSlider.getValue());
+		greedyAssignment.run();
+		for (Map.Entry<String, ArrayList<Node>> entry : greedyAssignment.getAssignment().entrySet()) {
+			for (Node reactionNode : entry.getValue()) {
+				currentSession.addNodeAttribute(reactionNode, ATTRIBUTE_NAME_FINAL_SUBSYSTEM, entry.getKey());
+			}
+			LMMEController.getInstance().getTab()
+					.logMsg("Added " + entry.getValue().size() + " nodes to subsystem " + entry.getKey());
 		}
 		
 		return determineSubsystemsFromReactionAttributes(ATTRIBUTE_NAME_FINAL_SUBSYSTEM, false, "",
@@ -110,8 +119,9 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 	}
 	
 	/**
-	 * For each reaction that has a KEGG ID, an HTTP request to KEGG is sent,
-	 * querying the pathways that belong to the reaction.
+	 * For each reaction that has a KEGG ID, the pathways that belong to the
+	 * reaction are queried from KEGG, or taken from the local cache if they have
+	 * been queried before.
 	 * <p>
 	 * These are then stored in the the HashMap {@link node2possibleSubsystems}.
 	 */
@@ -119,138 +129,49 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 		
 		LMMESession currentSession = LMMEController.getInstance().getCurrentSession();
 		
-		// Grab reactions with viable KEGG reaction id.
+		// Grab reactions with viable KEGG reaction id, a reaction may have several ones.
+		String separatorText = this.separator.getText().trim();
+		HashMap<Node, ArrayList<String>> reaction2keggIds = new HashMap<>();
 		ArrayList<Node> reactionsWithKeggId = new ArrayList<>();
+		ArrayList<String> keggIds = new ArrayList<>();
 		for (Node reactionNode : currentSession.getBaseGraph().getReactionNodes()) {
 			String keggId = currentSession.getNodeAttribute(reactionNode, ATTRIBUTE_NAME_KEGG_ID);
 			if ((keggId.length() > 0) && !(keggId.equals("null"))) {
+				ArrayList<String> severalIDs = new ArrayList<>();
+				if (!separatorText.isEmpty() && keggId.contains(separatorText)) {
+					for (String singleKeggRid : keggId.split(Pattern.quote(separatorText))) {
+						if (!singleKeggRid.trim().isEmpty()) {
+							severalIDs.add(singleKeggRid.trim());
+						}
+					}
+				} else {
+					severalIDs.add(keggId.trim());
+				}
+				reaction2keggIds.put(reactionNode, severalIDs);
 				reactionsWithKeggId.add(reactionNode);
+				keggIds.addAll(severalIDs);
 			}
 		}
 		
-		ArrayList<Node> reactionPackage;
-		String[] res;
-		this.packageStart = 0;
-		while (reactionsWithKeggId.size() - this.packageStart >= 10) {
-			reactionPackage = new ArrayList<>();
-			for (int i = 0; i < 10; i++) {
-				reactionPackage.add(reactionsWithKeggId.get(this.packageStart + i));
-			}
-			res = requestPackage(reactionPackage);
-			if (res.length == 10) {
-				processPackageResults(reactionPackage, res);
-			} else {
-				requestAndProcessPackageSeparately(reactionPackage);
-			}
-			this.packageStart += 10;
-			MainFrame.showMessage("So far " + packageStart + " of " + reactionsWithKeggId.size()
-					+ " reactions have been queried from Kegg.", MessageType.PERMANENT_INFO);
-		}
-		reactionPackage = new ArrayList<>();
-		for (int i = this.packageStart; i < reactionsWithKeggId.size(); i++) {
-			reactionPackage.add(reactionsWithKeggId.get(i));
-		}
-		if (!reactionPackage.isEmpty()) {
-			res = requestPackage(reactionPackage);
-			if (res.length == reactionPackage.size()) {
-				processPackageResults(reactionPackage, res);
-			} else {
-				requestAndProcessPackageSeparately(reactionPackage);
-			}
-		}
-	}
-	
-	/**
-	 * This method sends HTTP requests to KEGG for a whole package of up to 10
-	 * reactions.
-	 * 
-	 * @param reactionPackage
-	 *           The package of reaction nodes to be requested
-	 * @return a list of request result Strings
-	 */
-	private String[] requestPackage(ArrayList<Node> reactionPackage) {
-		String urlPostFix = "";
-		for (Node reactionNode : reactionPackage) {
-			String keggId = LMMEController.getInstance().getCurrentSession().getNodeAttribute(reactionNode,
-					ATTRIBUTE_NAME_KEGG_ID);
-			/*
-			 * This forces the calling method to use requestAndProcessPackageSeparately
-			 * instead as the latter can handle multiple reaction ids.
-			 */
-			if (keggId.contains(this.separator.getText().trim())) {
-				return new String[0];
-			}
-			urlPostFix += "+rn:" + keggId;
-		}
-		urlPostFix = urlPostFix.substring(1);
-		String response = (String) this.restService.makeRequest(urlPostFix, MediaType.TEXT_PLAIN_TYPE, String.class);
-		if ((response == null)) {
-			// TODO: proper evaluation of response once RestService returns a map instead of just a string
-			ErrorMsg.addErrorMessage("KEGG Decomposition failed: could not retrieve pathway information for reactions from KEGG database.");
-			return new String[0];
+		KeggRestClient client = new KeggRestClient(KeggRestClient.DEFAULT_BASE_URL, PARALLEL_REQUESTS,
+				KeggRequestCache.getInstance());
+		int numberOfIds = new HashSet<>(keggIds).size();
+		HashMap<String, String> responses = client.getEntries("rn", keggIds,
+				processed -> MainFrame.showMessage("So far " + processed + " of " + numberOfIds
+						+ " reactions have been queried from Kegg.", MessageType.PERMANENT_INFO));
+		LMMEController.getInstance().getTab().logMsg("KEGG: " + client.getNumberOfCachedEntries() + " of " + numberOfIds
+				+ " reactions were taken from the local cache.");
+		if (client.getNumberOfFailedEntries() > 0) {
+			ErrorMsg.addErrorMessage("KEGG Decomposition: could not retrieve pathway information for "
+					+ client.getNumberOfFailedEntries() + " reactions from KEGG database.");
 		}
-		response = response.substring(0, response.length() - 3);
-		return response.split(Pattern.quote(LMMEConstants.KEGGSEP));
-	}
-	
-	/**
-	 * This method stores the results from the KEGG requests in the map
-	 * {@link node2possibleSubsystems}.
-	 * <p>
-	 * The method thus therefore expects two lists:
-	 * <ul>
-	 * <li>a list of reactions and
-	 * <li>a list of request result Strings,
-	 * </ul>
-	 * that match position by position.
-	 * <p>
-	 * This method assumes both lists to have the same length.
-	 * 
-	 * @param reactionNodes
-	 *           The nodes that have been requested
-	 * @param requestResults
-	 *           The results from the request
-	 */
-	private void processPackageResults(ArrayList<Node> reactionNodes, String[] requestResults) {
-		for (int i = 0; i < reactionNodes.size(); i++) {
-			Node reactionNode = reactionNodes.get(i);
-			String response = requestResults[i];
-			processSingleNode(reactionNode, response);
-		}
-	}
-	
-	/**
-	 * This method separately requests reaction by reaction.
-	 * <p>
-	 * This method also expects a list of reaction nodes but in contrast to
-	 * {@link requestPackage} it requests AND processes (stores the results in the
-	 * map {@link node2possibleSubsystems}) the nodes one by one. This is necessary
-	 * if one of the reactions did not yield request results during a previous call
-	 * of {@link requestPackage} such that list sizes do not match or if a reaction
-	 * has had assigned more than one KEGG id.
-	 * 
-	 * @param reactionPackage
-	 *           A list of reaction nodes that will be requested and
-	 *           directly processed.
-	 */
-	private void requestAndProcessPackageSeparately(ArrayList<Node> reactionPackage) {
-		for (Node reactionNode : reactionPackage) {
-			String keggId = LMMEController.getInstance().getCurrentSession().getNodeAttribute(reactionNode,
-					ATTRIBUTE_NAME_KEGG_ID);
-			ArrayList<String> severalIDs = new ArrayList<>();
-			if (keggId.contains(this.separator.getText().trim())) {
-				String[] splitted = keggId.split(Pattern.quote(this.separator.getText().trim()));
-				for (int i = 0; i < splitted.length; i++) {
-					severalIDs.add(splitted[i].trim());
+		
+		for (Node reactionNode : reactionsWithKeggId) {
+			for (String singleKeggRid : reaction2keggIds.get(reactionNode)) {
+				String response = responses.get(singleKeggRid);
+				if (response != null) {
+					processSingleNode(reactionNode, response);
 				}
-			} else {
-				severalIDs.add(keggId);
-			}
-			
-			for (String singleKeggRid : severalIDs) {
-				String response = (String) this.restService.makeRequest("rn:" + singleKeggRid,
-						MediaType.TEXT_PLAIN_TYPE, String.class);
-				processSingleNode(reactionNode, response);
 			}
 		}
 	}
@@ -297,92 +218,6 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 		}
 	}
 	
-	/**
-	 * Updates the numbers associated to subsystems, stating how many possible reactions may belong to a subsystem.
-	 */
-	private void updateSubsystemNumber() {
-		subsystem2number.clear();
-		for (Node reactionNode : node2possibleSubsystems.keySet()) {
-			for (String subsystem : node2possibleSubsystems.get(reactionNode)) {
-				Integer number = Integer.valueOf(1);
-				if (subsystem2number.containsKey(subsystem)) {
-					number = Integer.valueOf(subsystem2number.get(subsystem).intValue() + 1);
-				}
-				subsystem2number.put(subsystem, number);
-			}
-		}
-	}
-	
-	/**
-	 * Removes those candidate subsystems that may have assigned a lesser number of reactions than specified by the user.
-	 */
-	private void removeTooSmallSubsystems() {
-		ArrayList<String> subsystemsToRemove = new ArrayList<>();
-		for (String smallSubsystem : subsystem2number.keySet()) {
-			if (subsystem2number.get(smallSubsystem).intValue() < this.minimumNumberSlider.getValue()) {
-				subsystemsToRemove.add(smallSubsystem);
-				for (ArrayList<String> list : node2possibleSubsystems.values()) {
-					list.remove(smallSubsystem);
-				}
-			}
-		}
-		for (String subsystem : subsystemsToRemove) {
-			subsystem2number.remove(subsystem);
-		}
-	}
-	
-	/**
-	 * Removes reactions that do not have candidate pathways anymore.
-	 */
-	private void removeNodesWithoutSubsystem() {
-		
-		ArrayList<Node> nodesToRemove = new ArrayList<>();
-		for (Node reactionNode : node2possibleSubsystems.keySet()) {
-			if (node2possibleSubsystems.get(reactionNode).isEmpty()) {
-				nodesToRemove.add(reactionNode);
-			}
-		}
-		for (Node nodeToRemove : nodesToRemove) {
-			node2possibleSubsystems.remove(nodeToRemove);
-		}
-		
-	}
-	
-	/**
-	 * Processes the not-yet-confirmed subsystem that would currently have the most reactions assigned to.
-	 */
-	private void extractNodesFromHugestSubsystem() {
-		
-		if (subsystem2number.isEmpty()) {
-			return;
-		}
-		
-		int currentMax = 0;
-		String hugestSubsystem = "";
-		for (String subsystem : subsystem2number.keySet()) {
-			if (subsystem2number.get(subsystem).intValue() > currentMax) {
-				currentMax = subsystem2number.get(subsystem).intValue();
-				hugestSubsystem = subsystem;
-			}
-		}
-		
-		ArrayList<Node> nodesToRemove = new ArrayList<>();
-		for (Node reactionNode : node2possibleSubsystems.keySet()) {
-			if (node2possibleSubsystems.get(reactionNode).contains(hugestSubsystem)) {
-				nodesToRemove.add(reactionNode);
-				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
-						ATTRIBUTE_NAME_FINAL_SUBSYSTEM, hugestSubsystem);
-			}
-		}
-		LMMEController.getInstance().getTab()
-				.logMsg("Added " + nodesToRemove.size() + " nodes to subsystem " + hugestSubsystem);
-		
-		for (Node nodeToRemove : nodesToRemove) {
-			node2possibleSubsystems.remove(nodeToRemove);
-		}
-		
-	}
-	
 	@Override
 	public boolean requiresCloning() {
 		return true;
@@ -508,6 +343,26 @@ public class KeggMMDecomposition extends MMDecompositionAlgorithm implements Nee
 		}
 	}
 	
+	@Override
+	public String getParameterString() {
+		return "tag=" + getSelectedTag() + ";separator=" + this.separator.getText() + ";minimumNumber="
+				+ this.minimumNumberSlider.getValue();
+	}
+	
+	@Override
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		return super.getAttributeFingerprint(baseGraph, addTransporterSubsystem) + ";identifiers="
+				+ Long.toHexString(baseGraph.getNodeAttributeFingerprint(ATTRIBUTE_NAME_KEGG_ID));
+	}
+	
+	/**
+	 * The decomposition depends on the entries of KEGG, which may change between runs of VANTED.
+	 */
+	@Override
+	public boolean isDiskCacheable() {
+		return false;
+	}
+	
 	@Override
 	public String getName() {
 		return "KEGG Decomposition";
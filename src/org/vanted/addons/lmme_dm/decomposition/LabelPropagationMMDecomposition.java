@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.FolderPanel;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.LabelPropagation;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
+
+/**
+ * This class implements a decomposition by label propagation, see {@link LabelPropagation}. It runs in near-linear time and is therefore meant as a
+ * fast alternative to {@link LouvainMMDecomposition} for very large models, for instance while tuning the list of species to be cloned.
+ * <p>
+ * As with the Louvain method, the clustering is computed on the working graph, where cloned species are leaves. The result is not deterministic.
+ * 
+ * @author Michael Aichem
+ */
+public class LabelPropagationMMDecomposition extends MMDecompositionAlgorithm {
+	
+	private int defaultMaxSweeps = 50;
+	
+	private JTextField tfMaxSweeps;
+	
+	private final String ATTRIBUTE_NAME_SUBSYSTEM = "LabelPropagationSubsystem";
+	
+	@Override
+	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		
+		int maxSweeps = readMaxSweeps();
+		
+		LabelPropagation labelPropagation = new LabelPropagation(compactGraph, maxSweeps);
+		labelPropagation.run();
+		int[] clusters = labelPropagation.getClusters();
+		
+		for (int i = compactGraph.getNumberOfSpecies(); i < compactGraph.getNumberOfNodes(); i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + (clusters[i] + 1));
+			}
+		}
+		
+		LMMEController.getInstance().getTab().logMsg("Label propagation: " + labelPropagation.getNumberOfClusters() + " clusters after "
+				+ labelPropagation.getNumberOfSweeps() + " sweeps");
+		
+		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, false, "",
+				alreadyClassifiedNodes);
+	}
+	
+	@Override
+	public boolean requiresCloning() {
+		return true;
+	}
+	
+	@Override
+	public FolderPanel getFolderPanel() {
+		FolderPanel fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+		
+		JLabel lblMaxSweeps = new JLabel("Maximum number of sweeps: ");
+		lblMaxSweeps.setToolTipText("The propagation stops earlier if no label changes anymore.");
+		this.tfMaxSweeps = new JTextField(5);
+		this.tfMaxSweeps.setText(Integer.toString(this.defaultMaxSweeps));
+		
+		JPanel maxSweepsLine = LMMETab.combine(lblMaxSweeps, this.tfMaxSweeps, Color.WHITE, false, true);
+		fp.addGuiComponentRow(maxSweepsLine, null, true);
+		
+		return fp;
+	}
+	
+	@Override
+	public void updateFolderPanel() {
+		// no need to do sth.
+	}
+	
+	private int readMaxSweeps() {
+		int res;
+		try {
+			res = Integer.parseInt(this.tfMaxSweeps.getText());
+			if (res <= 0) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The maximum number of sweeps could not be read or is not positive. "
+					+ "It has therefore been set to " + this.defaultMaxSweeps + ".");
+			res = this.defaultMaxSweeps;
+		}
+		return res;
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "maxSweeps=" + this.tfMaxSweeps.getText();
+	}
+	
+	/**
+	 * The ties are broken at random and the blocks are processed concurrently, so every run may yield a different decomposition.
+	 */
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+	
+	@Override
+	public String getName() {
+		return "Label Propagation";
+	}
+	
+	@Override
+	public boolean requiresTransporterSubsystem() {
+		return false;
+	}
+	
+}
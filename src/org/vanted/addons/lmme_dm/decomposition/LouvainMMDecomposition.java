@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.FolderPanel;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.LouvainClustering;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.graphs.WeightedGraph;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
+
+/**
+ * This class implements a decomposition by modularity maximization with the Louvain method, see {@link LouvainClustering}.
+ * <p>
+ * The clustering is computed on the working graph of the base graph, in which the species that have been selected for cloning are already cloned. Their
+ * clones are leaves and thus do not connect different subsystems. The subsystems are given by the clusters of the reactions.
+ * 
+ * @author Michael Aichem
+ */
+public class LouvainMMDecomposition extends MMDecompositionAlgorithm {
+	
+	private double defaultResolution = 1.0;
+	
+	private JTextField tfResolution;
+	
+	private final String ATTRIBUTE_NAME_SUBSYSTEM = "LouvainSubsystem";
+	
+	@Override
+	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		
+		double resolution = readResolution();
+		
+		LouvainClustering louvain = new LouvainClustering(WeightedGraph.fromCompactGraph(compactGraph), resolution);
+		louvain.run();
+		int[] clusters = louvain.getClusters();
+		
+		for (int i = compactGraph.getNumberOfSpecies(); i < compactGraph.getNumberOfNodes(); i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + (clusters[i] + 1));
+			}
+		}
+		
+		LMMEController.getInstance().getTab().logMsg("Louvain: " + louvain.getNumberOfClusters() + " clusters after "
+				+ louvain.getNumberOfLevels() + " levels, modularity " + String.format("%.4f", louvain.getModularity()));
+		
+		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, false, "",
+				alreadyClassifiedNodes);
+	}
+	
+	@Override
+	public boolean requiresCloning() {
+		return true;
+	}
+	
+	@Override
+	public FolderPanel getFolderPanel() {
+		FolderPanel fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+		
+		JLabel lblResolution = new JLabel("Resolution: ");
+		lblResolution.setToolTipText("Higher values lead to more and smaller subsystems.");
+		this.tfResolution = new JTextField(5);
+		this.tfResolution.setText(Double.toString(this.defaultResolution));
+		
+		JPanel resolutionLine = LMMETab.combine(lblResolution, this.tfResolution, Color.WHITE, false, true);
+		fp.addGuiComponentRow(resolutionLine, null, true);
+		
+		return fp;
+	}
+	
+	@Override
+	public void updateFolderPanel() {
+		// no need to do sth.
+	}
+	
+	private double readResolution() {
+		double res;
+		try {
+			res = Double.parseDouble(this.tfResolution.getText());
+			if (res <= 0.0) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The resolution could not be read or is not positive. "
+					+ "It has therefore been set to " + this.defaultResolution + ".");
+			res = this.defaultResolution;
+		}
+		return res;
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "resolution=" + this.tfResolution.getText();
+	}
+	
+	@Override
+	public String getName() {
+		return "Louvain";
+	}
+	
+	@Override
+	public boolean requiresTransporterSubsystem() {
+		return false;
+	}
+	
+}
@@ -17,6 +17,7 @@ package org.vanted.addons.lmme_dm.decomposition;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEConstants;
@@ -25,7 +26,9 @@ import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 /**
  * This class represents the decomposition of a model.
  * <p>
- * It maintains the list of derived subsystems and mappings between species/reactions and the subsystems.
+ * It maintains the list of derived subsystems and mappings between species/reactions and the subsystems. Optionally, the subsystems can be grouped
+ * hierarchically into super-subsystems, which may again be grouped. Super-subsystems are not part of the list of subsystems, they only structure the
+ * overview graph.
  *
  * @author Michael Aichem
  */
@@ -50,6 +53,16 @@ public class MMDecomposition {
 	
 	private ArrayList<SubsystemGraph> subsystems;
 	
+	/**
+	 * A {@code HashMap} maintaining the mapping of a super-subsystem to the subsystems or super-subsystems that are grouped in it.
+	 */
+	private HashMap<SubsystemGraph, ArrayList<SubsystemGraph>> childrenMap;
+	
+	/**
+	 * A {@code HashMap} maintaining the mapping of a subsystem or super-subsystem to the super-subsystem that it is grouped in.
+	 */
+	private HashMap<SubsystemGraph, SubsystemGraph> parentMap;
+	
 	private double subsystemSizeMean = -1.0;
 	private double subsystemSizeMedian = -1.0;
 	private double subsystemSizeStandardDeviation = -1.0;
@@ -61,6 +74,8 @@ public class MMDecomposition {
 		this.subsystems = new ArrayList<>();
 		speciesSubsystemsMap = new HashMap<>();
 		reactionSubsystemsMap = new HashMap<>();
+		childrenMap = new HashMap<>();
+		parentMap = new HashMap<>();
 		
 		for (SubsystemGraph subsystem : subsystems) {
 			this.addSubsystem(subsystem);
@@ -118,6 +133,102 @@ public class MMDecomposition {
 		}
 	}
 	
+	/**
+	 * Groups the given subsystems or super-subsystems into a super-subsystem. Each of them must not have been grouped before.
+	 * 
+	 * @param superSubsystem
+	 *           the super-subsystem, containing the species, reactions and edges of its children
+	 * @param children
+	 *           the subsystems or super-subsystems to be grouped
+	 */
+	public void addSuperSubsystem(SubsystemGraph superSubsystem, ArrayList<SubsystemGraph> children) {
+		childrenMap.put(superSubsystem, children);
+		for (SubsystemGraph child : children) {
+			parentMap.put(child, superSubsystem);
+		}
+	}
+	
+	/**
+	 * Returns whether the subsystems of this decomposition have been grouped into super-subsystems.
+	 * 
+	 * @return whether the decomposition is hierarchical
+	 */
+	public boolean isHierarchical() {
+		return !childrenMap.isEmpty();
+	}
+	
+	/**
+	 * Returns whether the given subsystem is a super-subsystem of this decomposition.
+	 * 
+	 * @param subsystem
+	 *           the subsystem
+	 * @return whether the subsystem is a super-subsystem
+	 */
+	public boolean isSuperSubsystem(SubsystemGraph subsystem) {
+		return childrenMap.containsKey(subsystem);
+	}
+	
+	/**
+	 * Gets the subsystems or super-subsystems that are grouped in the given super-subsystem.
+	 * 
+	 * @param superSubsystem
+	 *           the super-subsystem
+	 * @return the children of the super-subsystem, or null if it is not a super-subsystem
+	 */
+	public ArrayList<SubsystemGraph> getChildren(SubsystemGraph superSubsystem) {
+		return childrenMap.get(superSubsystem);
+	}
+	
+	/**
+	 * Gets the super-subsystem that the given subsystem or super-subsystem is grouped in.
+	 * 
+	 * @param subsystem
+	 *           the subsystem or super-subsystem
+	 * @return the super-subsystem containing it, or null if it is on the top level
+	 */
+	public SubsystemGraph getParent(SubsystemGraph subsystem) {
+		return parentMap.get(subsystem);
+	}
+	
+	/**
+	 * Gets the subsystems and super-subsystems on the top level of the hierarchy, in the order of their first subsystems. If the decomposition is not
+	 * hierarchical, these are all subsystems.
+	 * 
+	 * @return the subsystems and super-subsystems that are not grouped in any super-subsystem
+	 */
+	public ArrayList<SubsystemGraph> getTopLevelSubsystems() {
+		ArrayList<SubsystemGraph> res = new ArrayList<>();
+		HashSet<SubsystemGraph> added = new HashSet<>();
+		for (SubsystemGraph subsystem : subsystems) {
+			SubsystemGraph topLevelSubsystem = subsystem;
+			while (parentMap.containsKey(topLevelSubsystem)) {
+				topLevelSubsystem = parentMap.get(topLevelSubsystem);
+			}
+			if (added.add(topLevelSubsystem)) {
+				res.add(topLevelSubsystem);
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets the ancestor of the given subsystem, or the subsystem itself, that is a direct child of the given super-subsystem.
+	 * 
+	 * @param subsystem
+	 *           the subsystem
+	 * @param superSubsystem
+	 *           the super-subsystem, or null for the top level
+	 * @return the ancestor that is a child of the super-subsystem or on the top level, respectively, or null if the subsystem is not contained in the
+	 *         super-subsystem
+	 */
+	public SubsystemGraph getAncestorWithin(SubsystemGraph subsystem, SubsystemGraph superSubsystem) {
+		SubsystemGraph res = subsystem;
+		while (res != null && parentMap.get(res) != superSubsystem) {
+			res = parentMap.get(res);
+		}
+		return res;
+	}
+	
 	/**
 	 * Returns an {@code ArrayList} that contains the subsystems that this species belongs
 	 * to, or null if it does not belong to any.
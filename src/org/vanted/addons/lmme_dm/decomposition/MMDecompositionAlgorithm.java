@@ -16,29 +16,31 @@ package org.vanted.addons.lmme_dm.decomposition;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
-import org.AttributeHelper;
 import org.FolderPanel;
-import org.graffiti.graph.AdjListGraph;
 import org.graffiti.graph.Edge;
-import org.graffiti.graph.Graph;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEConstants;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.core.LMMESession;
-import org.vanted.addons.lmme_dm.core.LMMETools;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.CompartmentIndex;
+import org.vanted.addons.lmme_dm.graphs.MultilevelPartitioner;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.graphs.UnionFind;
+import org.vanted.addons.lmme_dm.graphs.WeightedGraph;
 import org.vanted.addons.lmme_dm.ui.LMMETab;
 
-import de.ipk_gatersleben.ag_nw.graffiti.GraphHelper;
-import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
-
 /**
  * Abstract class representing a decomposition method.
  * <p>
@@ -63,7 +65,8 @@ public abstract class MMDecompositionAlgorithm {
 	 * The overall method that creates a decomposition.
 	 * <p>
 	 * Within this method, cloning and specific decomposition are performed, and, if appropriate, the transporter and
-	 * default subsystems are computed and added.
+	 * default subsystems are computed and added. Finally, subsystems that exceed the maximum size chosen in the {@link LMMETab} are split, and the
+	 * subsystems are grouped hierarchically if the overview graph would otherwise exceed the maximum number of nodes per level.
 	 * 
 	 * @param addTransporterSubsystem
 	 *           whether to add the transporter subsystem
@@ -71,11 +74,37 @@ public abstract class MMDecompositionAlgorithm {
 	 */
 	public MMDecomposition run(boolean addTransporterSubsystem) {
 		
-		LMMESession currentSession = LMMEController.getInstance().getCurrentSession();
 		LMMETab tab = LMMEController.getInstance().getTab();
+		return run(addTransporterSubsystem, tab.getClonableSpecies(), tab.getMinDefaultComponentSize(), tab.getMaxSubsystemSize(),
+				tab.getMaxOverviewLevelSize());
+	}
+	
+	/**
+	 * Creates a decomposition with the given settings instead of those chosen in the {@link LMMETab}, e.g. when a model is processed without GUI.
+	 * 
+	 * @param addTransporterSubsystem
+	 *           whether to add the transporter subsystem
+	 * @param clonableSpecies
+	 *           the species of the original graph that are cloned, if the method requires cloning
+	 * @param minDefaultComponentSize
+	 *           the minimum number of reactions of a component of the default subsystem to become a subsystem of its own, or -1 to keep the default
+	 *           subsystem as a whole
+	 * @param maxSubsystemSize
+	 *           the maximum number of reactions per subsystem, or -1 to keep large subsystems
+	 * @param maxOverviewLevelSize
+	 *           the maximum number of nodes per level of the overview graph, or -1 to not group the subsystems
+	 * @return an {@link MMDecomposition} object representing the constructed decomposition
+	 */
+	public MMDecomposition run(boolean addTransporterSubsystem, List<Node> clonableSpecies, int minDefaultComponentSize, int maxSubsystemSize,
+			int maxOverviewLevelSize) {
 		
+		// the attributes of a previous run must not be read as the result of this one
+		LMMEController.getInstance().getCurrentSession().getBaseGraph().clearNodeAttributes();
+		// only the difference to the cloning of a previous run is applied
 		if (this.requiresCloning()) {
-			LMMEController.getInstance().getCurrentSession().getBaseGraph().cloneSpecies(tab.getClonableSpecies());
+			LMMEController.getInstance().getCurrentSession().getBaseGraph().cloneSpecies(clonableSpecies);
+		} else {
+			LMMEController.getInstance().getCurrentSession().getBaseGraph().resetCloning();
 		}
 		
 		HashSet<Node> transporters;
@@ -99,14 +128,31 @@ public abstract class MMDecompositionAlgorithm {
 		SubsystemGraph defaultSubsystem = this.determineDefaultSubsystem(decomposition);
 		
 		if (defaultSubsystem != null) {
-			decomposition.addSubsystem(defaultSubsystem);
+			if (minDefaultComponentSize > 0) {
+				for (SubsystemGraph subsystem : splitDefaultSubsystem(defaultSubsystem, minDefaultComponentSize)) {
+					decomposition.addSubsystem(subsystem);
+				}
+			} else {
+				decomposition.addSubsystem(defaultSubsystem);
+			}
+		}
+		
+		if (maxSubsystemSize > 0) {
+			decomposition = new MMDecomposition(splitLargeSubsystems(decomposition.getSubsystems(), maxSubsystemSize));
+		}
+		
+		if (maxOverviewLevelSize > 0) {
+			groupSubsystems(decomposition, maxOverviewLevelSize);
 		}
 		
 		return decomposition;
 	}
 	
 	/**
-	 * Determines the transporter subsystem.
+	 * Determines the transporter subsystem, which contains the reactions that involve species of more than one compartment.
+	 * <p>
+	 * The transporter reactions are taken from the {@link CompartmentIndex} of the base graph, which computes them only once per state of the working
+	 * graph.
 	 * 
 	 * @return a {@link SubsystemGraph} representing the transporter subsystem
 	 */
@@ -115,30 +161,18 @@ public abstract class MMDecompositionAlgorithm {
 		HashSet<Node> reactionNodes = new HashSet<>();
 		HashSet<Edge> edges = new HashSet<>();
 		
-		for (Node reactionNode : LMMEController.getInstance().getCurrentSession().getBaseGraph().getReactionNodes()) {
-			
-			HashSet<String> compartments = new HashSet<String>();
-			Collection<Edge> edgeSet = reactionNode.getEdges();
-			HashSet<Node> neighbors = new HashSet<Node>();
-			
-			for (Edge edge : edgeSet) {
-				Node neighbor;
-				if (edge.getSource() == reactionNode) {
-					neighbor = edge.getTarget();
-				} else {
-					neighbor = edge.getSource();
-				}
-				if (AttributeHelper.hasAttribute(neighbor, SBML_Constants.SBML, SBML_Constants.COMPARTMENT)) {
-					compartments.add((String) AttributeHelper.getAttributeValue(neighbor, SBML_Constants.SBML,
-							SBML_Constants.COMPARTMENT, "", ""));
-				}
-				neighbors.add(neighbor);
-			}
-			
-			if (compartments.size() > 1) {
-				speciesNodes.addAll(neighbors);
-				reactionNodes.add(reactionNode);
-				edges.addAll(edgeSet);
+		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		CompactGraph compactGraph = baseGraph.getCompactGraph();
+		BitSet transporterReactions = baseGraph.getCompartmentIndex().getTransporterReactions();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int[] adjacentEdges = compactGraph.getAdjacentEdges();
+		for (int r = transporterReactions.nextSetBit(0); r >= 0; r = transporterReactions.nextSetBit(r + 1)) {
+			int reactionIndex = compactGraph.getNumberOfSpecies() + r;
+			reactionNodes.add(compactGraph.getNode(reactionIndex));
+			for (int k = adjacencyOffsets[reactionIndex]; k < adjacencyOffsets[reactionIndex + 1]; k++) {
+				speciesNodes.add(compactGraph.getNode(adjacentNodes[k]));
+				edges.add(compactGraph.getEdge(adjacentEdges[k]));
 			}
 		}
 		
@@ -178,74 +212,264 @@ public abstract class MMDecompositionAlgorithm {
 	}
 	
 	/**
-	 * Legacy version of a method to split the default subsystem in its conencted components.
+	 * Splits the subsystems that contain more than the given number of reactions by a {@link MultilevelPartitioner}, such that the parts share as few
+	 * species as possible. The parts of a subsystem are named after it, followed by a consecutive number.
+	 * 
+	 * @param subsystems
+	 *           the subsystems
+	 * @param maxNumberOfReactions
+	 *           the maximum number of reactions per subsystem
+	 * @return the subsystems that did not need to be split, together with the parts of the split ones
+	 */
+	protected ArrayList<SubsystemGraph> splitLargeSubsystems(ArrayList<SubsystemGraph> subsystems, int maxNumberOfReactions) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		
+		ArrayList<SubsystemGraph> res = new ArrayList<>();
+		for (SubsystemGraph subsystem : subsystems) {
+			if (subsystem.getNumberOfReactions() <= maxNumberOfReactions) {
+				res.add(subsystem);
+				continue;
+			}
+			
+			// the nodes and edges are ordered as in the base graph, such that the result does not depend on the iteration order of the sets
+			ArrayList<Node> nodes = new ArrayList<>(subsystem.getSpeciesNodes());
+			nodes.addAll(subsystem.getReactionNodes());
+			nodes.sort((a, b) -> Integer.compare(compactGraph.getIndex(a), compactGraph.getIndex(b)));
+			HashMap<Node, Integer> nodeIndices = new HashMap<>();
+			int[] nodeWeights = new int[nodes.size()];
+			for (int i = 0; i < nodes.size(); i++) {
+				nodeIndices.put(nodes.get(i), Integer.valueOf(i));
+				nodeWeights[i] = subsystem.getReactionNodes().contains(nodes.get(i)) ? 1 : 0;
+			}
+			ArrayList<int[]> edges = new ArrayList<>();
+			for (Edge edge : subsystem.getEdges()) {
+				Integer source = nodeIndices.get(edge.getSource());
+				Integer target = nodeIndices.get(edge.getTarget());
+				if (source != null && target != null) {
+					edges.add(new int[] { source.intValue(), target.intValue() });
+				}
+			}
+			edges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+			int[] sources = new int[edges.size()];
+			int[] targets = new int[edges.size()];
+			for (int e = 0; e < edges.size(); e++) {
+				sources[e] = edges.get(e)[0];
+				targets[e] = edges.get(e)[1];
+			}
+			
+			MultilevelPartitioner partitioner = new MultilevelPartitioner(WeightedGraph.fromEdges(nodes.size(), sources, targets),
+					nodeWeights, maxNumberOfReactions);
+			partitioner.run();
+			int[] parts = partitioner.getParts();
+			
+			SubsystemGraph[] partSubsystems = new SubsystemGraph[partitioner.getNumberOfParts()];
+			for (int i = 0; i < nodes.size(); i++) {
+				if (nodeWeights[i] == 0) {
+					continue;
+				}
+				Node reactionNode = nodes.get(i);
+				int part = parts[i];
+				if (partSubsystems[part] == null) {
+					partSubsystems[part] = new SubsystemGraph(subsystem.getName(), new HashSet<>(), new HashSet<>(), new HashSet<>());
+				}
+				partSubsystems[part].addReaction(reactionNode);
+				for (Edge incidentEdge : reactionNode.getEdges()) {
+					if (subsystem.getEdges().contains(incidentEdge)) {
+						partSubsystems[part].addEdge(incidentEdge);
+						if (incidentEdge.getSource() == reactionNode) {
+							partSubsystems[part].addSpecies(incidentEdge.getTarget());
+						} else {
+							partSubsystems[part].addSpecies(incidentEdge.getSource());
+						}
+					}
+				}
+			}
+			int count = 1;
+			for (SubsystemGraph partSubsystem : partSubsystems) {
+				if (partSubsystem != null) {
+					partSubsystem.setName(subsystem.getName() + " " + count++);
+					res.add(partSubsystem);
+				}
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Groups the subsystems of the given decomposition into super-subsystems, until the top level contains at most the given number of subsystems and
+	 * super-subsystems.
 	 * <p>
-	 * Would need a review before usage.
+	 * Every level is partitioned by a {@link MultilevelPartitioner} on the graph that connects each subsystem with the species it shares with other
+	 * subsystems, such that the groups share as few species as possible. The groups of one level are grouped again on the next one. A group is named after
+	 * its largest member.
 	 * 
-	 * @deprecated
 	 * @param decomposition
-	 * @param defaultSubsystem
-	 * @param threshold
-	 * @return
+	 *           the decomposition, whose subsystems are grouped
+	 * @param maxLevelSize
+	 *           the maximum number of subsystems or super-subsystems per level, at least 2
 	 */
-	private ArrayList<SubsystemGraph> splitDefaultSubsystem(MMDecomposition decomposition,
-			SubsystemGraph defaultSubsystem, int threshold) {
+	protected void groupSubsystems(MMDecomposition decomposition, int maxLevelSize) {
 		
-		ArrayList<SubsystemGraph> subsystems = new ArrayList<>();
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
 		
-		Graph workingCopy = new AdjListGraph();
-		HashMap<Node, Node> original2CopiedNodes = new HashMap<>();
-		HashMap<Node, Node> copied2OriginalNodes = new HashMap<>();
-		// HashMap<Edge, Edge> original2CopiedEdges = new HashMap<>();
-		HashMap<Edge, Edge> copied2OriginalEdges = new HashMap<>();
-		
-		for (Node speciesNode : defaultSubsystem.getSpeciesNodes()) {
-			Node newNode = workingCopy.addNodeCopy(speciesNode);
-			original2CopiedNodes.put(speciesNode, newNode);
-			copied2OriginalNodes.put(newNode, speciesNode);
+		ArrayList<SubsystemGraph> level = new ArrayList<>(decomposition.getSubsystems());
+		while (level.size() > maxLevelSize) {
+			
+			// the shared species are numbered after the subsystems, in the order of the base graph
+			HashMap<Node, Integer> occurrences = new HashMap<>();
+			for (SubsystemGraph subsystem : level) {
+				for (Node speciesNode : subsystem.getSpeciesNodes()) {
+					occurrences.merge(speciesNode, Integer.valueOf(1), Integer::sum);
+				}
+			}
+			ArrayList<Node> sharedSpecies = new ArrayList<>();
+			for (Map.Entry<Node, Integer> entry : occurrences.entrySet()) {
+				if (entry.getValue().intValue() > 1) {
+					sharedSpecies.add(entry.getKey());
+				}
+			}
+			sharedSpecies.sort((a, b) -> Integer.compare(compactGraph.getIndex(a), compactGraph.getIndex(b)));
+			HashMap<Node, Integer> speciesIndices = new HashMap<>();
+			for (int i = 0; i < sharedSpecies.size(); i++) {
+				speciesIndices.put(sharedSpecies.get(i), Integer.valueOf(level.size() + i));
+			}
+			int numberOfNodes = level.size() + sharedSpecies.size();
+			int[] nodeWeights = new int[numberOfNodes];
+			ArrayList<int[]> edges = new ArrayList<>();
+			for (int i = 0; i < level.size(); i++) {
+				nodeWeights[i] = 1;
+				for (Node speciesNode : level.get(i).getSpeciesNodes()) {
+					Integer speciesIndex = speciesIndices.get(speciesNode);
+					if (speciesIndex != null) {
+						edges.add(new int[] { i, speciesIndex.intValue() });
+					}
+				}
+			}
+			edges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+			int[] sources = new int[edges.size()];
+			int[] targets = new int[edges.size()];
+			for (int e = 0; e < edges.size(); e++) {
+				sources[e] = edges.get(e)[0];
+				targets[e] = edges.get(e)[1];
+			}
+			
+			MultilevelPartitioner partitioner = new MultilevelPartitioner(WeightedGraph.fromEdges(numberOfNodes, sources, targets), nodeWeights,
+					maxLevelSize);
+			partitioner.run();
+			int[] parts = partitioner.getParts();
+			
+			ArrayList<ArrayList<SubsystemGraph>> groups = new ArrayList<>();
+			for (int p = 0; p < partitioner.getNumberOfParts(); p++) {
+				groups.add(new ArrayList<>());
+			}
+			for (int i = 0; i < level.size(); i++) {
+				groups.get(parts[i]).add(level.get(i));
+			}
+			ArrayList<SubsystemGraph> nextLevel = new ArrayList<>();
+			for (ArrayList<SubsystemGraph> group : groups) {
+				if (group.size() == 1) {
+					nextLevel.add(group.get(0));
+				} else if (group.size() > 1) {
+					SubsystemGraph largest = group.get(0);
+					HashSet<Node> speciesNodes = new HashSet<>();
+					HashSet<Node> reactionNodes = new HashSet<>();
+					HashSet<Edge> groupEdges = new HashSet<>();
+					for (SubsystemGraph member : group) {
+						if (member.getNumberOfReactions() > largest.getNumberOfReactions()) {
+							largest = member;
+						}
+						speciesNodes.addAll(member.getSpeciesNodes());
+						reactionNodes.addAll(member.getReactionNodes());
+						groupEdges.addAll(member.getEdges());
+					}
+					SubsystemGraph superSubsystem = new SubsystemGraph(largest.getName() + " and " + (group.size() - 1) + " more", speciesNodes,
+							reactionNodes, groupEdges);
+					decomposition.addSuperSubsystem(superSubsystem, group);
+					nextLevel.add(superSubsystem);
+				}
+			}
+			// safeguard against a partitioning that does not merge any subsystems
+			if (nextLevel.size() >= level.size()) {
+				break;
+			}
+			level = nextLevel;
 		}
+	}
+	
+	/**
+	 * Splits the default subsystem into its connected components. Every component with at least the given number of reactions becomes a subsystem of
+	 * its own, named after the default subsystem followed by a consecutive number. The reactions of the smaller components stay in the default
+	 * subsystem.
+	 * <p>
+	 * The components are determined by a {@link UnionFind} over the reactions of the default subsystem, where every reaction is merged with the last
+	 * reaction seen at each of its species, such that every edge is considered once and no graph needs to be built. The components are numbered in the
+	 * order of their first reaction in the base graph.
+	 * 
+	 * @param defaultSubsystem
+	 *           the default subsystem
+	 * @param minNumberOfReactions
+	 *           the minimum number of reactions of a component to become a subsystem of its own
+	 * @return the subsystems of the large components, followed by the default subsystem of the remaining reactions, if any
+	 */
+	protected ArrayList<SubsystemGraph> splitDefaultSubsystem(SubsystemGraph defaultSubsystem, int minNumberOfReactions) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		int numberOfReactions = compactGraph.getNumberOfReactions();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int[] adjacentEdges = compactGraph.getAdjacentEdges();
+		
+		BitSet defaultReactions = new BitSet(numberOfReactions);
 		for (Node reactionNode : defaultSubsystem.getReactionNodes()) {
-			Node newNode = workingCopy.addNodeCopy(reactionNode);
-			original2CopiedNodes.put(reactionNode, newNode);
-			copied2OriginalNodes.put(newNode, reactionNode);
+			defaultReactions.set(compactGraph.getIndex(reactionNode) - numberOfSpecies);
 		}
 		
-		for (Edge edge : defaultSubsystem.getEdges()) {
-			Node sourceNode = original2CopiedNodes.get(edge.getSource());
-			Node tragetNode = original2CopiedNodes.get(edge.getTarget());
-			Edge newEdge = workingCopy.addEdgeCopy(edge, sourceNode, tragetNode);
-			copied2OriginalEdges.put(newEdge, edge);
+		UnionFind components = new UnionFind(numberOfReactions);
+		int[] lastReactions = new int[numberOfSpecies];
+		Arrays.fill(lastReactions, -1);
+		for (int r = defaultReactions.nextSetBit(0); r >= 0; r = defaultReactions.nextSetBit(r + 1)) {
+			int reactionIndex = numberOfSpecies + r;
+			for (int k = adjacencyOffsets[reactionIndex]; k < adjacencyOffsets[reactionIndex + 1]; k++) {
+				int species = adjacentNodes[k];
+				if (lastReactions[species] >= 0) {
+					components.union(lastReactions[species], r);
+				}
+				lastReactions[species] = r;
+			}
 		}
 		
-		Set<Set<Node>> connComps = GraphHelper.getConnectedComponents(workingCopy.getNodes());
-		
-		int i = 1;
-		for (Set<Node> connComp : connComps) {
-			if (connComp.size() >= threshold) {
-				HashSet<Node> speciesNodes = new HashSet<>();
-				HashSet<Node> reactionNodes = new HashSet<>();
-				HashSet<Edge> edges = new HashSet<>();
-				for (Node node : connComp) {
-					Node originalNode = copied2OriginalNodes.get(node);
-					if (LMMETools.getInstance().isSpecies(originalNode)) {
-						speciesNodes.add(originalNode);
-					} else if (LMMETools.getInstance().isReaction(originalNode)) {
-						reactionNodes.add(originalNode);
-					}
-					for (Edge edge : node.getEdges()) {
-						Edge originalEdge = copied2OriginalEdges.get(edge);
-						if (defaultSubsystem.getEdges().contains(originalEdge)) {
-							edges.add(originalEdge);
-						}
-					}
+		ArrayList<SubsystemGraph> res = new ArrayList<>();
+		SubsystemGraph remainder = null;
+		SubsystemGraph[] componentSubsystems = new SubsystemGraph[numberOfReactions];
+		for (int r = defaultReactions.nextSetBit(0); r >= 0; r = defaultReactions.nextSetBit(r + 1)) {
+			int root = components.find(r);
+			SubsystemGraph subsystem;
+			if (components.getSize(root) >= minNumberOfReactions) {
+				if (componentSubsystems[root] == null) {
+					componentSubsystems[root] = new SubsystemGraph(LMMEConstants.DEFAULT_SUBSYSTEM + " " + (res.size() + 1), new HashSet<>(),
+							new HashSet<>(), new HashSet<>());
+					res.add(componentSubsystems[root]);
 				}
-				subsystems.add(new SubsystemGraph(LMMEConstants.DEFAULT_SUBSYSTEM + " " + i, speciesNodes,
-						reactionNodes, edges));
-				i += 1;
+				subsystem = componentSubsystems[root];
+			} else {
+				if (remainder == null) {
+					remainder = new SubsystemGraph(LMMEConstants.DEFAULT_SUBSYSTEM, new HashSet<>(), new HashSet<>(), new HashSet<>());
+				}
+				subsystem = remainder;
+			}
+			int reactionIndex = numberOfSpecies + r;
+			subsystem.addReaction(compactGraph.getNode(reactionIndex));
+			for (int k = adjacencyOffsets[reactionIndex]; k < adjacencyOffsets[reactionIndex + 1]; k++) {
+				subsystem.addSpecies(compactGraph.getNode(adjacentNodes[k]));
+				subsystem.addEdge(compactGraph.getEdge(adjacentEdges[k]));
 			}
 		}
-		
-		return subsystems;
+		if (remainder != null) {
+			res.add(remainder);
+		}
+		return res;
 	}
 	
 	/**
@@ -253,6 +477,11 @@ public abstract class MMDecompositionAlgorithm {
 	 * <p>
 	 * The specified {@code attributeName} is used to distribute the reactions to subsystems. Every unique value of the attribute constitutes a subsystem which
 	 * gets assigned all corresponding reactions.
+	 * <p>
+	 * The attribute values are read and split sequentially. Every distinct value is split only once, and equal subsystem names are mapped to a single
+	 * canonical String instance. The reactions are then grouped in a single pass, in parallel over blocks of reactions whose partial groupings are merged
+	 * afterwards. The incident edges and species are taken from the adjacency arrays of the {@link CompactGraph}. The subsystems are returned in the order
+	 * of their first occurrence among the reactions.
 	 * 
 	 * @param attributeName
 	 *           the name of the attribute serving as subsystem indicator
@@ -267,64 +496,85 @@ public abstract class MMDecompositionAlgorithm {
 	protected ArrayList<SubsystemGraph> determineSubsystemsFromReactionAttributes(String attributeName,
 			boolean considerSeparator, String separator, HashSet<Node> alreadyClassifiedNodes) {
 		
-		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
 		LMMESession currentSession = LMMEController.getInstance().getCurrentSession();
+		CompactGraph compactGraph = currentSession.getBaseGraph().getCompactGraph();
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		int numberOfReactions = compactGraph.getNumberOfReactions();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int[] adjacentEdges = compactGraph.getAdjacentEdges();
+		Pattern separatorPattern = considerSeparator ? Pattern.compile(Pattern.quote(separator)) : null;
 		
-		HashSet<String> allSubsystemNames = new HashSet<>();
-		
-		for (Node reactionNode : baseGraph.getReactionNodes()) {
-			if (!alreadyClassifiedNodes.contains(reactionNode)) {
-				String subsystemName = currentSession.getNodeAttribute(reactionNode, attributeName);
-				// if (subsystemName != "") {
-				if (subsystemName.length() > 0) {
-					if (considerSeparator) {
-						String[] subsystemNames = subsystemName.split(Pattern.quote(separator));
-						allSubsystemNames.addAll(Arrays.asList(subsystemNames));
-					} else {
-						allSubsystemNames.add(subsystemName);
+		// the attribute values are read and split sequentially, since reading them is not safe from several threads
+		HashMap<String, String[]> splitValues = new HashMap<>();
+		HashMap<String, String> canonicalNames = new HashMap<>();
+		String[][] subsystemNames = new String[numberOfReactions][];
+		for (int i = 0; i < numberOfReactions; i++) {
+			Node reactionNode = compactGraph.getNode(numberOfSpecies + i);
+			if (alreadyClassifiedNodes.contains(reactionNode)) {
+				continue;
+			}
+			String value = currentSession.getNodeAttribute(reactionNode, attributeName);
+			if (value == null || value.length() == 0) {
+				continue;
+			}
+			String[] names = splitValues.get(value);
+			if (names == null) {
+				names = considerSeparator ? separatorPattern.split(value) : new String[] { value };
+				for (int j = 0; j < names.length; j++) {
+					String canonicalName = canonicalNames.putIfAbsent(names[j], names[j]);
+					if (canonicalName != null) {
+						names[j] = canonicalName;
 					}
 				}
+				splitValues.put(value, names);
 			}
+			subsystemNames[i] = names;
 		}
 		
-		HashMap<String, SubsystemGraph> subsystemMap = new HashMap<>();
-		
-		for (String subsystemName : allSubsystemNames) {
-			subsystemMap.put(subsystemName,
-					new SubsystemGraph(subsystemName, new HashSet<>(), new HashSet<>(), new HashSet<>()));
-		}
-		
-		for (Node reactionNode : baseGraph.getReactionNodes()) {
-			if (!alreadyClassifiedNodes.contains(reactionNode)) {
-				String subsystemName = currentSession.getNodeAttribute(reactionNode, attributeName);
-				// if (subsystemName != "") {
-				if (subsystemName.length() > 0) {
-					String[] subsystemNames;
-					if (considerSeparator) {
-						subsystemNames = subsystemName.split(Pattern.quote(separator));
-					} else {
-						subsystemNames = new String[1];
-						subsystemNames[0] = subsystemName;
+		// the reactions are then grouped in a single pass over contiguous blocks, which are processed in parallel
+		int numberOfBlocks = Math.max(1, Math.min(numberOfReactions, 4 * ForkJoinPool.getCommonPoolParallelism()));
+		@SuppressWarnings("unchecked")
+		LinkedHashMap<String, SubsystemGraph>[] blockSubsystems = new LinkedHashMap[numberOfBlocks];
+		IntStream.range(0, numberOfBlocks).parallel().forEach(block -> {
+			LinkedHashMap<String, SubsystemGraph> subsystemMap = new LinkedHashMap<>();
+			int from = (int) ((long) block * numberOfReactions / numberOfBlocks);
+			int to = (int) ((long) (block + 1) * numberOfReactions / numberOfBlocks);
+			for (int i = from; i < to; i++) {
+				if (subsystemNames[i] == null) {
+					continue;
+				}
+				int reaction = numberOfSpecies + i;
+				Node reactionNode = compactGraph.getNode(reaction);
+				for (String subsystemName : subsystemNames[i]) {
+					SubsystemGraph subsystem = subsystemMap.get(subsystemName);
+					if (subsystem == null) {
+						subsystem = new SubsystemGraph(subsystemName, new HashSet<>(), new HashSet<>(), new HashSet<>());
+						subsystemMap.put(subsystemName, subsystem);
 					}
-					for (String currentSubsystemName : subsystemNames) {
-						subsystemMap.get(currentSubsystemName).addReaction(reactionNode);
-						for (Edge incidentEdge : reactionNode.getEdges()) {
-							subsystemMap.get(currentSubsystemName).addEdge(incidentEdge);
-							if (incidentEdge.getSource() == reactionNode) {
-								subsystemMap.get(currentSubsystemName).addSpecies(incidentEdge.getTarget());
-							} else {
-								subsystemMap.get(currentSubsystemName).addSpecies(incidentEdge.getSource());
-							}
-						}
+					subsystem.addReaction(reactionNode);
+					for (int k = adjacencyOffsets[reaction]; k < adjacencyOffsets[reaction + 1]; k++) {
+						subsystem.addEdge(compactGraph.getEdge(adjacentEdges[k]));
+						subsystem.addSpecies(compactGraph.getNode(adjacentNodes[k]));
 					}
 				}
 			}
+			blockSubsystems[block] = subsystemMap;
+		});
+		
+		// the blocks are merged in their order, names are canonical, so equal names of different blocks are the same instance
+		LinkedHashMap<String, SubsystemGraph> subsystemMap = blockSubsystems[0];
+		for (int block = 1; block < numberOfBlocks; block++) {
+			for (SubsystemGraph blockSubsystem : blockSubsystems[block].values()) {
+				SubsystemGraph subsystem = subsystemMap.putIfAbsent(blockSubsystem.getName(), blockSubsystem);
+				if (subsystem != null) {
+					subsystem.getSpeciesNodes().addAll(blockSubsystem.getSpeciesNodes());
+					subsystem.getReactionNodes().addAll(blockSubsystem.getReactionNodes());
+					subsystem.getEdges().addAll(blockSubsystem.getEdges());
+				}
+			}
 		}
-		ArrayList<SubsystemGraph> res = new ArrayList<>();
-		for (SubsystemGraph subsystem : subsystemMap.values()) {
-			res.add(subsystem);
-		}
-		return res;
+		return new ArrayList<>(subsystemMap.values());
 	}
 	
 	/**
@@ -355,5 +605,59 @@ public abstract class MMDecompositionAlgorithm {
 	 */
 	public abstract void updateFolderPanel();
 	
+	/**
+	 * Returns the current values of the settings of this method in its {@code FolderPanel}.
+	 * <p>
+	 * Two runs of this method with the same parameter string on the same working graph are expected to yield the same decomposition, which allows to reuse
+	 * decompositions from the {@link org.vanted.addons.lmme_dm.core.LMMEDecompositionCache}. Methods with settings therefore need to override this method;
+	 * the default implementation returns an empty string.
+	 * 
+	 * @return the values of the settings of this method
+	 */
+	public String getParameterString() {
+		return "";
+	}
+	
+	/**
+	 * Returns a fingerprint of the node attributes that the result of this method depends on.
+	 * <p>
+	 * The {@link BaseGraph#getModelFingerprint()} only covers the structure of the model, so the fingerprint is added to the key in the
+	 * {@link org.vanted.addons.lmme_dm.core.LMMEDecompositionCache}, such that a decomposition is not reused after these attributes have changed. The default
+	 * implementation covers the compartments of the species if the transporter subsystem is determined. Methods that read further attributes need to
+	 * override this method.
+	 * 
+	 * @param baseGraph
+	 *           the base graph
+	 * @param addTransporterSubsystem
+	 *           whether the transporter subsystem is to be determined even if the method does not require it
+	 * @return the fingerprint, which is empty if the decomposition only depends on the structure of the model
+	 */
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		if (requiresTransporterSubsystem() || addTransporterSubsystem) {
+			return "compartments=" + Long.toHexString(baseGraph.getCompartmentFingerprint());
+		}
+		return "";
+	}
+	
+	/**
+	 * Returns whether decompositions of this method may be cached at all. This is not the case if the method is not deterministic, since a cached result
+	 * would prevent the user from obtaining a different one by running the method again.
+	 * 
+	 * @return whether decompositions of this method may be cached
+	 */
+	public boolean isCacheable() {
+		return true;
+	}
+	
+	/**
+	 * Returns whether decompositions of this method may be kept on disk and reused in later runs of VANTED. This is not the case if the result depends on
+	 * data beyond the model, which may have changed in the meantime.
+	 * 
+	 * @return whether decompositions of this method may be kept on disk
+	 */
+	public boolean isDiskCacheable() {
+		return true;
+	}
+	
 	public abstract String getName();
 }
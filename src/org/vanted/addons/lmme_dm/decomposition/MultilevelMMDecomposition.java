@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.FolderPanel;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.MultilevelPartitioner;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.graphs.WeightedGraph;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
+
+/**
+ * This class implements a decomposition into subsystems of bounded size by multilevel graph partitioning, see {@link MultilevelPartitioner}.
+ * <p>
+ * Every subsystem contains at most the chosen number of reactions, while the number of edges between the subsystems, and thus the number of interface
+ * species, is kept small. The partitioning is computed on the working graph, where cloned species are leaves. Reactions that have been classified
+ * already, such as transport reactions, are left out.
+ * 
+ * @author Michael Aichem
+ */
+public class MultilevelMMDecomposition extends MMDecompositionAlgorithm {
+	
+	private int defaultMaxNumberOfReactions = 100;
+	
+	private JTextField tfMaxNumberOfReactions;
+	
+	private final String ATTRIBUTE_NAME_SUBSYSTEM = "MultilevelSubsystem";
+	
+	@Override
+	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		
+		int maxNumberOfReactions = readMaxNumberOfReactions();
+		
+		int numberOfNodes = compactGraph.getNumberOfNodes();
+		int[] nodeWeights = new int[numberOfNodes];
+		boolean[] excluded = new boolean[numberOfNodes];
+		for (int i = compactGraph.getNumberOfSpecies(); i < numberOfNodes; i++) {
+			excluded[i] = alreadyClassifiedNodes.contains(compactGraph.getNode(i));
+			nodeWeights[i] = excluded[i] ? 0 : 1;
+		}
+		int numberOfEdges = 0;
+		int[] sources = new int[compactGraph.getNumberOfEdges()];
+		int[] targets = new int[compactGraph.getNumberOfEdges()];
+		for (int e = 0; e < compactGraph.getNumberOfEdges(); e++) {
+			int source = compactGraph.getEdgeSource(e);
+			int target = compactGraph.getEdgeTarget(e);
+			if (!excluded[source] && !excluded[target]) {
+				sources[numberOfEdges] = source;
+				targets[numberOfEdges] = target;
+				numberOfEdges++;
+			}
+		}
+		
+		MultilevelPartitioner partitioner = new MultilevelPartitioner(WeightedGraph.fromEdges(numberOfNodes,
+				Arrays.copyOf(sources, numberOfEdges), Arrays.copyOf(targets, numberOfEdges)), nodeWeights, maxNumberOfReactions);
+		partitioner.run();
+		int[] clusters = partitioner.getParts();
+		
+		for (int i = compactGraph.getNumberOfSpecies(); i < compactGraph.getNumberOfNodes(); i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + (clusters[i] + 1));
+			}
+		}
+		
+		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, false, "",
+				alreadyClassifiedNodes);
+	}
+	
+	@Override
+	public boolean requiresCloning() {
+		return true;
+	}
+	
+	@Override
+	public FolderPanel getFolderPanel() {
+		FolderPanel fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+		
+		JLabel lblMaxNumberOfReactions = new JLabel("Maximum number of reactions per subsystem: ");
+		this.tfMaxNumberOfReactions = new JTextField(5);
+		this.tfMaxNumberOfReactions.setText(Integer.toString(this.defaultMaxNumberOfReactions));
+		
+		JPanel maxNumberOfReactionsLine = LMMETab.combine(lblMaxNumberOfReactions, this.tfMaxNumberOfReactions, Color.WHITE, false,
+				true);
+		fp.addGuiComponentRow(maxNumberOfReactionsLine, null, true);
+		
+		return fp;
+	}
+	
+	@Override
+	public void updateFolderPanel() {
+		// no need to do sth.
+	}
+	
+	private int readMaxNumberOfReactions() {
+		int res;
+		try {
+			res = Integer.parseInt(this.tfMaxNumberOfReactions.getText());
+			if (res < 1) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The maximum number of reactions could not be read or is not positive. "
+					+ "It has therefore been set to " + this.defaultMaxNumberOfReactions + ".");
+			res = this.defaultMaxNumberOfReactions;
+		}
+		return res;
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "maxNumberOfReactions=" + this.tfMaxNumberOfReactions.getText();
+	}
+	
+	@Override
+	public String getName() {
+		return "Multilevel Partitioning";
+	}
+	
+	@Override
+	public boolean requiresTransporterSubsystem() {
+		return false;
+	}
+	
+}
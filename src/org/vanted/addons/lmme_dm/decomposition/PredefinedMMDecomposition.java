@@ -28,6 +28,7 @@ import org.GuiRow;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.core.LMMETools;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 import org.vanted.addons.lmme_dm.ui.LMMETab;
 
@@ -145,6 +146,17 @@ public class PredefinedMMDecomposition extends MMDecompositionAlgorithm {
 		}
 	}
 	
+	@Override
+	public String getParameterString() {
+		return "tag=" + getSelectedTag();
+	}
+	
+	@Override
+	public String getAttributeFingerprint(BaseGraph baseGraph, boolean addTransporterSubsystem) {
+		return super.getAttributeFingerprint(baseGraph, addTransporterSubsystem) + ";subsystems="
+				+ Long.toHexString(baseGraph.getNodeAttributeFingerprint(this.ATTRIBUTE_NAME));
+	}
+	
 	@Override
 	public String getName() {
 		return "Predefined Decomposition";
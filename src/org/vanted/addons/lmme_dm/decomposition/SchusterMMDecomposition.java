@@ -15,29 +15,40 @@
 package org.vanted.addons.lmme_dm.decomposition;
 
 import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
+import java.util.stream.IntStream;
 
+import javax.swing.JButton;
+import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 import org.FolderPanel;
-import org.graffiti.graph.AdjListGraph;
-import org.graffiti.graph.Edge;
-import org.graffiti.graph.Graph;
 import org.graffiti.graph.Node;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartMouseEvent;
+import org.jfree.chart.ChartMouseListener;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.ValueMarker;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
 import org.vanted.addons.lmme_dm.core.LMMEController;
-import org.vanted.addons.lmme_dm.core.LMMETools;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.ConcurrentUnionFind;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 import org.vanted.addons.lmme_dm.ui.LMMETab;
 
-import de.ipk_gatersleben.ag_nw.graffiti.GraphHelper;
-
 /**
  * This method is an implementation of the method that has been proposed by Schuster et al.
  * <p>
@@ -61,55 +72,43 @@ public class SchusterMMDecomposition extends MMDecompositionAlgorithm {
 	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
 		
 		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		CompactGraph compactGraph = baseGraph.getCompactGraph();
 		
-		Graph workingCopy = new AdjListGraph();
-		HashMap<Node, Node> original2CopiedNodes = new HashMap<>();
-		HashMap<Node, Node> copied2OriginalNodes = new HashMap<>();
-		// HashMap<Edge, Edge> original2CopiedEdges = new HashMap<>();
-		HashMap<Edge, Edge> copied2OriginalEdges = new HashMap<>();
+		int threshold = readThreshold();
 		
-		for (Node speciesNode : baseGraph.getSpeciesNodes()) {
-			Node newNode = workingCopy.addNodeCopy(speciesNode);
-			original2CopiedNodes.put(speciesNode, newNode);
-			copied2OriginalNodes.put(newNode, speciesNode);
-		}
-		for (Node reactionNode : baseGraph.getReactionNodes()) {
-			Node newNode = workingCopy.addNodeCopy(reactionNode);
-			original2CopiedNodes.put(reactionNode, newNode);
-			copied2OriginalNodes.put(newNode, reactionNode);
-		}
+		int numberOfNodes = compactGraph.getNumberOfNodes();
 		
-		for (Edge edge : baseGraph.getGraph().getEdges()) {
-			Node sourceNode = original2CopiedNodes.get(edge.getSource());
-			Node tragetNode = original2CopiedNodes.get(edge.getTarget());
-			Edge newEdge = workingCopy.addEdgeCopy(edge, sourceNode, tragetNode);
-			copied2OriginalEdges.put(newEdge, edge);
+		// Species above the threshold are treated as if they had been deleted from the graph.
+		boolean[] removed = new boolean[numberOfNodes];
+		for (int i = 0; i < compactGraph.getNumberOfSpecies(); i++) {
+			removed[i] = compactGraph.getDegree(i) >= threshold;
 		}
 		
-		int threshold = readThreshold();
-		
-		// ArrayList<Node> possibleInterfaces = new ArrayList<>();
+		ConcurrentUnionFind unionFind = new ConcurrentUnionFind(numberOfNodes);
+		IntStream.range(0, compactGraph.getNumberOfEdges()).parallel().forEach(edgeId -> {
+			int source = compactGraph.getEdgeSource(edgeId);
+			int target = compactGraph.getEdgeTarget(edgeId);
+			if (!removed[source] && !removed[target]) {
+				unionFind.union(source, target);
+			}
+		});
 		
-		for (Node speciesNode : baseGraph.getSpeciesNodes()) {
-			if (speciesNode.getDegree() >= threshold) {
-				// possibleInterfaces.add(speciesNode);
-				workingCopy.deleteNode(original2CopiedNodes.get(speciesNode));
+		// The representative of a component is its smallest node, so the components are numbered in the order of their smallest nodes.
+		int[] component = new int[numberOfNodes];
+		int count = 1;
+		for (int i = 0; i < numberOfNodes; i++) {
+			if (!removed[i]) {
+				int root = unionFind.find(i);
+				component[i] = root == i ? count++ : component[root];
 			}
 		}
 		
-		Set<Set<Node>> connComps = GraphHelper.getConnectedComponents(workingCopy.getNodes());
-		
-		int count = 1;
-		for (Set<Node> nodes : connComps) {
-			for (Node node : nodes) {
-				Node originalNode = copied2OriginalNodes.get(node);
-				if (LMMETools.getInstance().isReaction(originalNode)
-						&& !alreadyClassifiedNodes.contains(originalNode)) {
-					LMMEController.getInstance().getCurrentSession().addNodeAttribute(originalNode,
-							this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + count);
-				}
+		for (int i = compactGraph.getNumberOfSpecies(); i < numberOfNodes; i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + component[i]);
 			}
-			count++;
 		}
 		
 		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, true, ";",
@@ -132,19 +131,97 @@ public class SchusterMMDecomposition extends MMDecompositionAlgorithm {
 		JPanel thresholdLine = LMMETab.combine(lblThreshold, this.tfThreshold, Color.WHITE, false, true);
 		fp.addGuiComponentRow(thresholdLine, null, true);
 		
+		JButton btnShowThresholdCurve = new JButton("Show Threshold Curve");
+		btnShowThresholdCurve.setToolTipText("<html>Shows the number of subsystems for every metabolite degree threshold.<br>"
+				+ "Click into the chart to use the respective threshold.</html>");
+		btnShowThresholdCurve.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showThresholdCurve();
+			}
+		});
+		fp.addGuiComponentRow(btnShowThresholdCurve, null, true);
+		
 		return fp;
 	}
 	
+	/**
+	 * Computes the {@link SchusterThresholdSweep} for the current base graph in a background task and shows the results as a chart afterwards.
+	 */
+	private void showThresholdCurve() {
+		if (!LMMEController.getInstance().getCurrentSession().isModelSet()) {
+			JOptionPane.showMessageDialog(null, "No base graph was set.");
+			return;
+		}
+		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		SchusterThresholdSweep sweep = new SchusterThresholdSweep(baseGraph,
+				LMMEController.getInstance().getTab().getClonableSpecies());
+		LMMEController.getInstance().startBackgroundTask("Threshold Sweep", new Runnable() {
+			public void run() {
+				sweep.run();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						showThresholdCurve(sweep);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Shows the results of the given sweep as a chart. Clicking into the chart sets the threshold.
+	 * 
+	 * @param sweep
+	 *           the sweep that has been run
+	 */
+	private void showThresholdCurve(SchusterThresholdSweep sweep) {
+		XYSeries subsystemsSeries = new XYSeries("Number of subsystems");
+		XYSeries largestSeries = new XYSeries("Reactions in largest subsystem");
+		int[] thresholds = sweep.getThresholds();
+		for (int i = 0; i < thresholds.length; i++) {
+			subsystemsSeries.add(thresholds[i], sweep.getNumberOfSubsystems()[i]);
+			largestSeries.add(thresholds[i], sweep.getLargestSubsystemSizes()[i]);
+		}
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		dataset.addSeries(subsystemsSeries);
+		dataset.addSeries(largestSeries);
+		
+		JFreeChart chart = ChartFactory.createXYLineChart("Metabolite Degree Threshold", "Threshold", null, dataset,
+				PlotOrientation.VERTICAL, true, true, false);
+		XYPlot plot = chart.getXYPlot();
+		ValueMarker marker = new ValueMarker(parseThreshold(this.defaultThreshold));
+		marker.setPaint(Color.BLACK);
+		plot.addDomainMarker(marker);
+		
+		ChartPanel chartPanel = new ChartPanel(chart);
+		chartPanel.addChartMouseListener(new ChartMouseListener() {
+			public void chartMouseClicked(ChartMouseEvent event) {
+				Rectangle2D dataArea = chartPanel.getScreenDataArea();
+				double value = plot.getDomainAxis().java2DToValue(event.getTrigger().getX(), dataArea, plot.getDomainAxisEdge());
+				int threshold = (int) Math.round(value);
+				threshold = Math.max(thresholds[0], Math.min(thresholds[thresholds.length - 1], threshold));
+				tfThreshold.setText(Integer.toString(threshold));
+				marker.setValue(threshold);
+			}
+			
+			public void chartMouseMoved(ChartMouseEvent event) {
+				// no need to do sth.
+			}
+		});
+		JFrame chartFrame = new JFrame();
+		chartFrame.add(chartPanel);
+		chartFrame.setSize(800, 500);
+		chartFrame.setLocationRelativeTo(null);
+		chartFrame.setVisible(true);
+	}
+	
 	@Override
 	public void updateFolderPanel() {
 		// no need to do sth.
 	}
 	
 	private int readThreshold() {
-		int res;
-		try {
-			res = Integer.parseInt(this.tfThreshold.getText());
-		} catch (NumberFormatException e) {
+		int res = parseThreshold(-1);
+		if (res == -1) {
 			JOptionPane.showMessageDialog(null, "The metabolite degree threshold could not be read. "
 					+ "It has therefore been set to " + this.defaultThreshold + ".");
 			res = this.defaultThreshold;
@@ -152,6 +229,26 @@ public class SchusterMMDecomposition extends MMDecompositionAlgorithm {
 		return res;
 	}
 	
+	/**
+	 * Parses the threshold from the text field without any user interaction.
+	 * 
+	 * @param fallback
+	 *           the value to return if the text cannot be parsed
+	 * @return the threshold or the fallback
+	 */
+	private int parseThreshold(int fallback) {
+		try {
+			return Integer.parseInt(this.tfThreshold.getText());
+		} catch (NumberFormatException e) {
+			return fallback;
+		}
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "threshold=" + this.tfThreshold.getText();
+	}
+	
 	@Override
 	public String getName() {
 		return "Schuster et al.";
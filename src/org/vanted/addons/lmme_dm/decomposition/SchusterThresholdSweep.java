@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.util.Collection;
+
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.UnionFind;
+
+/**
+ * Computes the outcome of the {@link SchusterMMDecomposition} for every metabolite degree threshold in a single pass.
+ * <p>
+ * The sweep starts with the threshold 2, where all species of degree 2 or more are removed, and raises the threshold step by step. Raising the threshold
+ * from {@code t} to {@code t+1} adds the species of degree {@code t} back to the graph, which only merges components. Hence, the species are added in
+ * increasing order of their degree into a {@link UnionFind}, and the number of subsystems as well as the size of the largest subsystem are recorded
+ * for every threshold.
+ * <p>
+ * The sweep is computed on the {@link CompactGraph} of the original graph, degrees and neighbors are taken from its adjacency arrays. Species that are
+ * going to be cloned are never added, since their clones have degree 1 and do not connect any reactions. Subsystems are counted as the components that
+ * contain at least one reaction.
+ * 
+ * @author Michael Aichem
+ */
+public class SchusterThresholdSweep {
+	
+	private final BaseGraph baseGraph;
+	
+	private final Collection<Node> clonedSpecies;
+	
+	/**
+	 * The thresholds for which the results have been recorded, in increasing order.
+	 */
+	private int[] thresholds;
+	private int[] numberOfSubsystems;
+	private int[] largestSubsystemSizes;
+	
+	/**
+	 * Creates the sweep for the given base graph.
+	 * 
+	 * @param baseGraph
+	 *           the base graph
+	 * @param clonedSpecies
+	 *           the species of the original graph that are going to be cloned
+	 */
+	public SchusterThresholdSweep(BaseGraph baseGraph, Collection<Node> clonedSpecies) {
+		this.baseGraph = baseGraph;
+		this.clonedSpecies = clonedSpecies;
+	}
+	
+	/**
+	 * Performs the sweep.
+	 */
+	public void run() {
+		CompactGraph compactGraph = baseGraph.getOriginalCompactGraph();
+		int numberOfNodes = compactGraph.getNumberOfNodes();
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		
+		UnionFind unionFind = new UnionFind(numberOfNodes);
+		int[] reactionCounts = new int[numberOfNodes];
+		boolean[] active = new boolean[numberOfNodes];
+		
+		int currentSubsystems = 0;
+		int currentLargest = 0;
+		for (int reaction = numberOfSpecies; reaction < numberOfNodes; reaction++) {
+			active[reaction] = true;
+			reactionCounts[reaction] = 1;
+			currentSubsystems++;
+		}
+		if (currentSubsystems > 0) {
+			currentLargest = 1;
+		}
+		
+		// edges between reactions do not depend on the threshold
+		for (int reaction = numberOfSpecies; reaction < numberOfNodes; reaction++) {
+			for (int k = adjacencyOffsets[reaction]; k < adjacencyOffsets[reaction + 1]; k++) {
+				int neighbor = adjacentNodes[k];
+				if (neighbor > reaction) {
+					int merged = merge(unionFind, reactionCounts, reaction, neighbor);
+					if (merged > 0) {
+						currentSubsystems--;
+						currentLargest = Math.max(currentLargest, merged);
+					}
+				}
+			}
+		}
+		
+		boolean[] cloned = new boolean[numberOfSpecies];
+		for (Node speciesNode : clonedSpecies) {
+			int index = compactGraph.getIndex(speciesNode);
+			if (index >= 0 && index < numberOfSpecies) {
+				cloned[index] = true;
+			}
+		}
+		
+		// species in increasing order of their degree, by counting sort
+		int maxDegree = 0;
+		for (int species = 0; species < numberOfSpecies; species++) {
+			maxDegree = Math.max(maxDegree, adjacencyOffsets[species + 1] - adjacencyOffsets[species]);
+		}
+		int[] degreeOffsets = new int[maxDegree + 2];
+		for (int species = 0; species < numberOfSpecies; species++) {
+			degreeOffsets[adjacencyOffsets[species + 1] - adjacencyOffsets[species] + 1]++;
+		}
+		for (int degree = 0; degree <= maxDegree; degree++) {
+			degreeOffsets[degree + 1] += degreeOffsets[degree];
+		}
+		int[] sortedSpecies = new int[numberOfSpecies];
+		int[] fill = degreeOffsets.clone();
+		for (int species = 0; species < numberOfSpecies; species++) {
+			sortedSpecies[fill[adjacencyOffsets[species + 1] - adjacencyOffsets[species]]++] = species;
+		}
+		int position = 0;
+		
+		int numberOfThresholds = Math.max(maxDegree, 1);
+		this.thresholds = new int[numberOfThresholds];
+		this.numberOfSubsystems = new int[numberOfThresholds];
+		this.largestSubsystemSizes = new int[numberOfThresholds];
+		
+		for (int step = 0; step < numberOfThresholds; step++) {
+			int threshold = step + 2;
+			// with this threshold, exactly the species of a degree below it are part of the graph
+			int end = degreeOffsets[Math.min(threshold, maxDegree + 1)];
+			for (; position < end; position++) {
+				int species = sortedSpecies[position];
+				if (cloned[species]) {
+					continue;
+				}
+				active[species] = true;
+				for (int k = adjacencyOffsets[species]; k < adjacencyOffsets[species + 1]; k++) {
+					int neighbor = adjacentNodes[k];
+					if (active[neighbor]) {
+						int merged = merge(unionFind, reactionCounts, species, neighbor);
+						if (merged > 0) {
+							currentSubsystems--;
+							currentLargest = Math.max(currentLargest, merged);
+						}
+					}
+				}
+			}
+			thresholds[step] = threshold;
+			numberOfSubsystems[step] = currentSubsystems;
+			largestSubsystemSizes[step] = currentLargest;
+		}
+	}
+	
+	/**
+	 * Merges the components of the given nodes.
+	 * 
+	 * @return the number of reactions in the merged component if two components containing reactions have been merged, 0 otherwise
+	 */
+	private static int merge(UnionFind unionFind, int[] reactionCounts, int a, int b) {
+		int rootA = unionFind.find(a);
+		int rootB = unionFind.find(b);
+		if (rootA == rootB) {
+			return 0;
+		}
+		int countA = reactionCounts[rootA];
+		int countB = reactionCounts[rootB];
+		int root = unionFind.union(rootA, rootB);
+		reactionCounts[root] = countA + countB;
+		return (countA > 0 && countB > 0) ? countA + countB : 0;
+	}
+	
+	/**
+	 * @return the thresholds in increasing order
+	 */
+	public int[] getThresholds() {
+		return thresholds;
+	}
+	
+	/**
+	 * @return the number of subsystems for each of the {@link #getThresholds()}
+	 */
+	public int[] getNumberOfSubsystems() {
+		return numberOfSubsystems;
+	}
+	
+	/**
+	 * @return the number of reactions in the largest subsystem for each of the {@link #getThresholds()}
+	 */
+	public int[] getLargestSubsystemSizes() {
+		return largestSubsystemSizes;
+	}
+	
+}
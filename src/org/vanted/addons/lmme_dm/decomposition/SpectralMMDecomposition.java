@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.FolderPanel;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.graphs.CompactGraph;
+import org.vanted.addons.lmme_dm.graphs.KMeans;
+import org.vanted.addons.lmme_dm.graphs.SpectralEmbedding;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.graphs.UnionFind;
+import org.vanted.addons.lmme_dm.graphs.WeightedGraph;
+import org.vanted.addons.lmme_dm.ui.LMMETab;
+
+/**
+ * This class implements a decomposition by spectral clustering.
+ * <p>
+ * The working graph, where cloned species are leaves, is split into its connected components, and the desired number of subsystems is distributed
+ * among them in proportion to their numbers of reactions. Every component that receives more than one subsystem is embedded by the eigenvectors of its
+ * normalized Laplacian, see {@link SpectralEmbedding}, and the rows of the embedding are normalized and clustered by {@link KMeans}.
+ * <p>
+ * Ng, A. Y., Jordan, M. I., Weiss, Y. (2002). On spectral clustering: Analysis and an algorithm. Advances in neural information processing systems,
+ * 849-856.
+ * 
+ * @author Michael Aichem
+ */
+public class SpectralMMDecomposition extends MMDecompositionAlgorithm {
+	
+	private int defaultNumberOfSubsystems = 20;
+	
+	private JTextField tfNumberOfSubsystems;
+	
+	private final String ATTRIBUTE_NAME_SUBSYSTEM = "SpectralSubsystem";
+	
+	@Override
+	protected ArrayList<SubsystemGraph> runSpecific(HashSet<Node> alreadyClassifiedNodes) {
+		
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		
+		int numberOfSubsystems = readNumberOfSubsystems();
+		
+		int numberOfNodes = compactGraph.getNumberOfNodes();
+		WeightedGraph graph = WeightedGraph.fromCompactGraph(compactGraph);
+		
+		UnionFind unionFind = new UnionFind(numberOfNodes);
+		for (int e = 0; e < compactGraph.getNumberOfEdges(); e++) {
+			unionFind.union(compactGraph.getEdgeSource(e), compactGraph.getEdgeTarget(e));
+		}
+		int[] componentSizes = new int[numberOfNodes];
+		int[] componentReactions = new int[numberOfNodes];
+		int totalReactions = 0;
+		for (int i = 0; i < numberOfNodes; i++) {
+			int root = unionFind.find(i);
+			componentSizes[root]++;
+			if (compactGraph.isReaction(i) && !alreadyClassifiedNodes.contains(compactGraph.getNode(i))) {
+				componentReactions[root]++;
+				totalReactions++;
+			}
+		}
+		
+		// the components are processed in the order of their smallest nodes, and the nodes of every component are kept in increasing order
+		int[][] components = new int[numberOfNodes][];
+		int[] fill = new int[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			int root = unionFind.find(i);
+			if (components[root] == null) {
+				components[root] = new int[componentSizes[root]];
+			}
+			components[root][fill[root]++] = i;
+		}
+		
+		int[] clusters = new int[numberOfNodes];
+		int numberOfClusters = 0;
+		for (int i = 0; i < numberOfNodes; i++) {
+			int root = unionFind.find(i);
+			if (components[root][0] != i) {
+				continue;
+			}
+			
+			int[] nodes = components[root];
+			int k = totalReactions == 0 ? 1 : (int) Math.round((double) numberOfSubsystems * componentReactions[root] / totalReactions);
+			k = Math.max(1, Math.min(k, componentReactions[root]));
+			if (k == 1) {
+				for (int node : nodes) {
+					clusters[node] = numberOfClusters;
+				}
+				numberOfClusters++;
+				continue;
+			}
+			
+			SpectralEmbedding embedding = new SpectralEmbedding(graph.subgraph(nodes), k);
+			embedding.run();
+			double[][] eigenvectors = embedding.getEigenvectors();
+			double[][] points = new double[nodes.length][eigenvectors.length];
+			for (int j = 0; j < nodes.length; j++) {
+				double norm = 0.0;
+				for (int d = 0; d < eigenvectors.length; d++) {
+					points[j][d] = eigenvectors[d][j];
+					norm += points[j][d] * points[j][d];
+				}
+				norm = Math.sqrt(norm);
+				if (norm > 0.0) {
+					for (int d = 0; d < eigenvectors.length; d++) {
+						points[j][d] /= norm;
+					}
+				}
+			}
+			KMeans kMeans = new KMeans(points, k);
+			kMeans.run();
+			int[] componentClusters = kMeans.getClusters();
+			for (int j = 0; j < nodes.length; j++) {
+				clusters[nodes[j]] = numberOfClusters + componentClusters[j];
+			}
+			numberOfClusters += k;
+		}
+		
+		for (int i = compactGraph.getNumberOfSpecies(); i < compactGraph.getNumberOfNodes(); i++) {
+			Node reactionNode = compactGraph.getNode(i);
+			if (!alreadyClassifiedNodes.contains(reactionNode)) {
+				LMMEController.getInstance().getCurrentSession().addNodeAttribute(reactionNode,
+						this.ATTRIBUTE_NAME_SUBSYSTEM, "Algorithmically derived Subsystem " + (clusters[i] + 1));
+			}
+		}
+		
+		return determineSubsystemsFromReactionAttributes(this.ATTRIBUTE_NAME_SUBSYSTEM, false, "",
+				alreadyClassifiedNodes);
+	}
+	
+	@Override
+	public boolean requiresCloning() {
+		return true;
+	}
+	
+	@Override
+	public FolderPanel getFolderPanel() {
+		FolderPanel fp = new FolderPanel(getName() + " Settings", false, true, false, null);
+		
+		JLabel lblNumberOfSubsystems = new JLabel("Number of subsystems: ");
+		lblNumberOfSubsystems.setToolTipText("Separate connected components always form separate subsystems.");
+		this.tfNumberOfSubsystems = new JTextField(5);
+		this.tfNumberOfSubsystems.setText(Integer.toString(this.defaultNumberOfSubsystems));
+		
+		JPanel numberOfSubsystemsLine = LMMETab.combine(lblNumberOfSubsystems, this.tfNumberOfSubsystems, Color.WHITE, false, true);
+		fp.addGuiComponentRow(numberOfSubsystemsLine, null, true);
+		
+		return fp;
+	}
+	
+	@Override
+	public void updateFolderPanel() {
+		// no need to do sth.
+	}
+	
+	private int readNumberOfSubsystems() {
+		int res;
+		try {
+			res = Integer.parseInt(this.tfNumberOfSubsystems.getText());
+			if (res < 1) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The number of subsystems could not be read or is not positive. "
+					+ "It has therefore been set to " + this.defaultNumberOfSubsystems + ".");
+			res = this.defaultNumberOfSubsystems;
+		}
+		return res;
+	}
+	
+	@Override
+	public String getParameterString() {
+		return "numberOfSubsystems=" + this.tfNumberOfSubsystems.getText();
+	}
+	
+	@Override
+	public String getName() {
+		return "Spectral Clustering";
+	}
+	
+	@Override
+	public boolean requiresTransporterSubsystem() {
+		return false;
+	}
+	
+}
@@ -17,9 +17,17 @@ package org.vanted.addons.lmme_dm.graphs;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 import org.AttributeHelper;
+import org.graffiti.attributes.Attribute;
+import org.graffiti.attributes.CollectionAttribute;
+import org.graffiti.attributes.StringAttribute;
 import org.graffiti.graph.AdjListGraph;
 import org.graffiti.graph.Edge;
 import org.graffiti.graph.Graph;
@@ -28,6 +36,8 @@ import org.vanted.addons.lmme_dm.core.LMMEConstants;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.core.LMMETools;
 
+import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
+
 /**
  * Maintains the graph that is represented by the underlying model.
  * <p>
@@ -37,6 +47,18 @@ import org.vanted.addons.lmme_dm.core.LMMETools;
  * access the {@code workingGraph}. The only reason for the {@code originalGraph} to be also stored is that this is the only one that has the SBML file
  * associated. It needs therefore only to be accessed when the SBML file is to be read - or when a session is to be reseted and a new working copy is to be
  * produced.
+ * <p>
+ * As long as no species have been cloned, the working graph is the original graph itself; the working copy is only materialized by the first call to
+ * {@link #cloneSpecies(List)} that actually modifies the graph, and it is dropped again once no species is cloned anymore. Every cloning step is recorded
+ * as a {@link CloneDelta}, such that a different set of clonable species can be set by only applying or undoing the difference.
+ * <p>
+ * The nodes and edges of a materialized working copy are bare, i.e. they do not carry a copy of the attribute trees of the model. Labels and attributes
+ * are resolved through the corresponding original node by {@link #getLabel(Node)} and {@link #getModelAttribute(Node, String, String)}, and views that
+ * need the graphics of a working node copy it by {@link #copyNode(Graph, Node)} and {@link #copyEdge(Graph, Edge, Node, Node)}.
+ * <p>
+ * The attributes that a session assigns to the working nodes, e.g. the subsystems determined by a decomposition, are not written to the attribute trees
+ * of the nodes but kept in the {@link #nodeAttributes} of this base graph. This way, the model is not modified while the working graph is still the
+ * original graph.
  *
  * @author Michael Aichem
  */
@@ -48,7 +70,7 @@ public class BaseGraph {
 	private Graph originalGraph;
 	
 	/**
-	 * The working copy of the {@link #originalGraph}.
+	 * The working copy of the {@link #originalGraph}. Identical to the {@link #originalGraph} until the working copy has been materialized.
 	 */
 	private Graph workingGraph;
 	
@@ -59,8 +81,65 @@ public class BaseGraph {
 	
 	private HashMap<Node, Node> working2originalNodes = new HashMap<>();
 	private HashMap<Node, ArrayList<Node>> original2workingNodes = new HashMap<>();
+	private HashMap<Edge, Edge> working2originalEdges = new HashMap<>();
+	
+	/**
+	 * The species of the {@link #originalGraph} that are currently cloned in the {@link #workingGraph}, together with the changes made by the cloning.
+	 */
+	private LinkedHashMap<Node, CloneDelta> cloneDeltas = new LinkedHashMap<>();
+	
+	/**
+	 * The species of the {@link #originalGraph} sorted by their degree.
+	 */
+	private DegreeIndex originalDegreeIndex;
 	
-	private int[] degreeSpecies;
+	/**
+	 * The species of the {@link #workingGraph} sorted by their degree. It is built on first request and discarded whenever the working graph changes.
+	 */
+	private DegreeIndex workingDegreeIndex;
+	
+	/**
+	 * The compact, int-indexed representation of the {@link #workingGraph}. It is built on first request and discarded whenever the working graph changes.
+	 */
+	private CompactGraph compactGraph;
+	
+	/**
+	 * The compartments of the species of the {@link #compactGraph}. It is built on first request and discarded together with the compact graph.
+	 */
+	private CompartmentIndex compartmentIndex;
+	
+	/**
+	 * The roles of the nodes of the {@link #originalGraph}. This index is shared by all forks of a base graph.
+	 */
+	private NodeRoleIndex originalRoleIndex;
+	
+	/**
+	 * The roles of the nodes of both the {@link #originalGraph} and the {@link #workingGraph}. Only the working nodes are stored here, the roles of the
+	 * original nodes are taken from the {@link #originalRoleIndex}.
+	 */
+	private NodeRoleIndex roleIndex;
+	
+	/**
+	 * The nodes of the {@link #originalGraph} in the order of {@link Graph#getNodes()}. The position of a node in this array is its stable index, which can
+	 * be used to refer to the node independently of the current session, e.g. in snapshots.
+	 */
+	private Node[] originalNodes;
+	private IdentityHashMap<Node, Integer> originalNodeIndices;
+	
+	private long modelFingerprint;
+	
+	/**
+	 * The attributes of the nodes of the {@link #originalGraph} that have been read without storing them in the attribute trees of the nodes, e.g. by the
+	 * {@link org.vanted.addons.lmme_dm.io.StreamingSBMLReader}, keyed by {@link #getModelAttributeKey(String, String)}. If this is {@code null}, the
+	 * attributes of the model are read from the attribute trees. It is shared by all forks.
+	 */
+	private IdentityHashMap<Node, HashMap<String, String>> modelAttributes;
+	
+	/**
+	 * The attributes that have been assigned to the nodes of the {@link #workingGraph} by {@link #setNodeAttribute(Node, String, String)}. They move along
+	 * with the nodes when the working copy is materialized or species are cloned.
+	 */
+	private IdentityHashMap<Node, HashMap<String, String>> nodeAttributes = new IdentityHashMap<>();
 	
 	private ArrayList<String> processedNotes = new ArrayList<>();
 	private String[] availableNotes;
@@ -76,61 +155,78 @@ public class BaseGraph {
 	 *           The graph object of the model that is to be set as base graph
 	 */
 	public BaseGraph(Graph graph) {
+		this(graph, null, null);
+	}
+	
+	/**
+	 * Constructs a {@code BaseGraph} from nodes whose roles are already known, e.g. from the {@link org.vanted.addons.lmme_dm.core.LMMEModelIngest}.
+	 * 
+	 * @param graph
+	 *           The graph object of the model that is to be set as base graph
+	 * @param nodes
+	 *           the nodes of the graph in the order of {@link Graph#getNodes()}, or {@code null} to read them from the graph
+	 * @param roles
+	 *           the roles of the given nodes as defined in {@link NodeRoleIndex}, or {@code null} to read them from the attributes
+	 */
+	public BaseGraph(Graph graph, Node[] nodes, byte[] roles) {
+		this(graph, nodes, roles, null);
+	}
+	
+	/**
+	 * Constructs a {@code BaseGraph} from nodes whose roles and attributes are already known, e.g. from the
+	 * {@link org.vanted.addons.lmme_dm.io.StreamingSBMLReader}.
+	 * 
+	 * @param graph
+	 *           The graph object of the model that is to be set as base graph
+	 * @param nodes
+	 *           the nodes of the graph in the order of {@link Graph#getNodes()}, or {@code null} to read them from the graph
+	 * @param roles
+	 *           the roles of the given nodes as defined in {@link NodeRoleIndex}, or {@code null} to read them from the attributes
+	 * @param modelAttributes
+	 *           the attributes of the nodes keyed by {@link #getModelAttributeKey(String, String)}, or {@code null} to read them from the attribute trees
+	 */
+	public BaseGraph(Graph graph, Node[] nodes, byte[] roles, IdentityHashMap<Node, HashMap<String, String>> modelAttributes) {
 		
 		this.originalGraph = graph;
+		this.modelAttributes = modelAttributes;
 		
-		for (Node node : originalGraph.getNodes()) {
-			if (LMMETools.getInstance().isSpecies(node)) {
-				originalSpeciesNodes.add(node);
-			} else if (LMMETools.getInstance().isReaction(node)) {
-				originalReactionNodes.add(node);
-			}
-		}
-		
-		this.workingGraph = new AdjListGraph();
-		
-		for (Node node : originalGraph.getNodes()) {
-			Node newNode = workingGraph.addNodeCopy(node);
-			ArrayList<Node> workingNodesList = new ArrayList<>();
-			workingNodesList.add(newNode);
-			original2workingNodes.put(node, workingNodesList);
-			working2originalNodes.put(newNode, node);
+		if (nodes == null) {
+			List<Node> nodeList = originalGraph.getNodes();
+			nodes = nodeList.toArray(new Node[nodeList.size()]);
 		}
-		for (Edge edge : originalGraph.getEdges()) {
-			Node source = original2workingNodes.get(edge.getSource()).get(0);
-			Node target = original2workingNodes.get(edge.getTarget()).get(0);
-			workingGraph.addEdgeCopy(edge, source, target);
+		this.originalNodes = nodes;
+		this.originalNodeIndices = new IdentityHashMap<>(originalNodes.length);
+		for (int i = 0; i < originalNodes.length; i++) {
+			originalNodeIndices.put(originalNodes[i], Integer.valueOf(i));
 		}
 		
-		updateLists();
-		
-		HashMap<Integer, Integer> degreeCount = new HashMap<>();
-		for (Node speciesNode : speciesNodes) {
-			Integer deg = Integer.valueOf(speciesNode.getDegree());
-			if (degreeCount.containsKey(deg)) {
-				degreeCount.put(deg, Integer.valueOf(degreeCount.get(deg).intValue() + 1));
+		this.originalRoleIndex = new NodeRoleIndex();
+		this.roleIndex = new NodeRoleIndex(originalRoleIndex);
+		for (int i = 0; i < originalNodes.length; i++) {
+			byte role;
+			if (roles == null) {
+				role = originalRoleIndex.add(originalNodes[i]);
 			} else {
-				degreeCount.put(deg, Integer.valueOf(1));
+				role = roles[i];
+				originalRoleIndex.add(originalNodes[i], role);
 			}
-		}
-		
-		int max = 0;
-		for (Integer deg : degreeCount.keySet()) {
-			if (deg.intValue() > max) {
-				max = deg.intValue();
+			if (role == NodeRoleIndex.ROLE_SPECIES) {
+				originalSpeciesNodes.add(originalNodes[i]);
+			} else if (role == NodeRoleIndex.ROLE_REACTION) {
+				originalReactionNodes.add(originalNodes[i]);
 			}
 		}
+		// the roles of the original nodes do not change anymore and are shared by all forks
+		originalRoleIndex.freeze();
 		
-		degreeSpecies = new int[max + 1];
-		degreeSpecies[max] = degreeCount.get(Integer.valueOf(max)).intValue();
-		// TODO -1 ok?
-		for (int i = max - 1; i >= 0; i--) {
-			if (degreeCount.containsKey(Integer.valueOf(i))) {
-				degreeSpecies[i] = degreeSpecies[i + 1] + degreeCount.get(Integer.valueOf(i)).intValue();
-			} else {
-				degreeSpecies[i] = degreeSpecies[i + 1];
-			}
-		}
+		// the working graph is the original graph until species are cloned, so its lists need not be computed again
+		this.workingGraph = originalGraph;
+		this.speciesNodes.addAll(originalSpeciesNodes);
+		this.reactionNodes.addAll(originalReactionNodes);
+		
+		this.originalDegreeIndex = new DegreeIndex(originalSpeciesNodes);
+		
+		this.modelFingerprint = computeModelFingerprint();
 		
 		HashSet<String> availableNotesHS = LMMETools.getInstance().findNotes(this.originalGraph);
 		this.availableNotes = new String[availableNotesHS.size()];
@@ -139,58 +235,657 @@ public class BaseGraph {
 			this.availableNotes[index++] = str;
 		}
 		
-		LMMEController.getInstance().getTab().setBaseGraphInfo(this.getOriginalGraph().getName(),
-				this.getNumberOfSpecies(), this.getNumberOfReactions());
+		// there is no tab if the model is processed without GUI, e.g. after the streaming ingest
+		if (LMMEController.getInstance().getTab() != null) {
+			LMMEController.getInstance().getTab().setBaseGraphInfo(this.getOriginalGraph().getName(),
+					this.getNumberOfSpecies(), this.getNumberOfReactions());
+		}
+		
+	}
+	
+	/**
+	 * Constructs a fork of the given {@code BaseGraph}.
+	 * <p>
+	 * The fork shares the original graph and everything that is derived from it, i.e. the lists of original species and reactions, the node indices, the
+	 * role and degree indices and the available notes. The working graph, the cloning, the processed notes and the {@link #nodeAttributes} are kept
+	 * separately. Since the fork starts with its own empty attribute store, sessions on the same model never see the attributes of each other, even while
+	 * their working graphs are still the shared original graph.
+	 * 
+	 * @param baseGraph
+	 *           the base graph that is forked
+	 */
+	private BaseGraph(BaseGraph baseGraph) {
+		
+		this.originalGraph = baseGraph.originalGraph;
+		this.originalNodes = baseGraph.originalNodes;
+		this.originalNodeIndices = baseGraph.originalNodeIndices;
+		this.originalSpeciesNodes = baseGraph.originalSpeciesNodes;
+		this.originalReactionNodes = baseGraph.originalReactionNodes;
+		this.originalRoleIndex = baseGraph.originalRoleIndex;
+		this.roleIndex = new NodeRoleIndex(originalRoleIndex);
+		this.originalDegreeIndex = baseGraph.originalDegreeIndex;
+		this.modelFingerprint = baseGraph.modelFingerprint;
+		this.modelAttributes = baseGraph.modelAttributes;
+		this.availableNotes = baseGraph.availableNotes;
+		
+		this.workingGraph = originalGraph;
+		this.speciesNodes.addAll(originalSpeciesNodes);
+		this.reactionNodes.addAll(originalReactionNodes);
 		
 	}
 	
+	/**
+	 * Creates a new {@code BaseGraph} for the same model that shares all read-only data with this one, but starts with an uncloned working graph.
+	 * <p>
+	 * Forks are used to open several sessions on the same model. As long as no species are cloned in a fork, it does not require any memory besides its
+	 * lists of species and reactions and the attributes assigned by its session.
+	 * 
+	 * @return the fork of this base graph
+	 */
+	public BaseGraph fork() {
+		return new BaseGraph(this);
+	}
+	
 	/**
 	 * Clones the species from the given list in the {@link #workingGraph}.
 	 * <p>
 	 * Cloning in this case means to replace the node by a copy of itself for every
 	 * edge it is incident to. In addition, these edges are also copied such that
 	 * the resulting copied nodes all have a degree of 1.
+	 * <p>
+	 * Afterwards, exactly the species from the given list are cloned. Species that are already cloned are left untouched, while the cloning of species that
+	 * are not contained in the list anymore is undone.
 	 * 
 	 * @param clonableSpecies
 	 *           A list of species from the originalGraph that are to
 	 *           be cloned in the working copy.
 	 */
 	public void cloneSpecies(List<Node> clonableSpecies) {
-		for (Node nodeToClone : clonableSpecies) {
-			Node workingNode = original2workingNodes.get(nodeToClone).get(0);
-			original2workingNodes.get(nodeToClone).clear();
-			for (Edge edge : workingNode.getEdges()) {
-				Node newNode = workingGraph.addNodeCopy(workingNode);
-				AttributeHelper.setAttribute(newNode, LMMEConstants.ATTRIBUTE_PATH, "isClone", true);
-				original2workingNodes.get(nodeToClone).add(newNode);
-				working2originalNodes.put(newNode, nodeToClone);
-				Node source, target;
-				if (edge.getSource() == workingNode) {
-					source = newNode;
-				} else {
-					source = edge.getSource();
-				}
-				if (edge.getTarget() == workingNode) {
-					target = newNode;
-				} else {
-					target = edge.getTarget();
-				}
-				workingGraph.addEdgeCopy(edge, source, target);
+		LinkedHashSet<Node> targetSet = new LinkedHashSet<>(clonableSpecies);
+		
+		ArrayList<Node> speciesToRestore = new ArrayList<>();
+		for (Node clonedNode : cloneDeltas.keySet()) {
+			if (!targetSet.contains(clonedNode)) {
+				speciesToRestore.add(clonedNode);
 			}
-			workingGraph.deleteNode(workingNode);
-			working2originalNodes.remove(workingNode);
 		}
-		LMMEController.getInstance().getCurrentSession().getBaseGraph().updateLists();
+		ArrayList<Node> speciesToClone = new ArrayList<>();
+		for (Node nodeToClone : targetSet) {
+			if (!cloneDeltas.containsKey(nodeToClone)) {
+				speciesToClone.add(nodeToClone);
+			}
+		}
+		if (speciesToRestore.isEmpty() && speciesToClone.isEmpty()) {
+			return;
+		}
+		
+		if (targetSet.isEmpty()) {
+			dropWorkingCopy();
+			return;
+		}
+		if (!isWorkingCopyMaterialized()) {
+			materializeWorkingCopy();
+		}
+		for (Node clonedNode : speciesToRestore) {
+			undoCloning(cloneDeltas.remove(clonedNode));
+		}
+		for (Node nodeToClone : speciesToClone) {
+			cloneDeltas.put(nodeToClone, applyCloning(nodeToClone));
+		}
+		updateLists();
+	}
+	
+	/**
+	 * Undoes the cloning of all species, such that the {@link #workingGraph} is the {@link #originalGraph} again.
+	 */
+	public void resetCloning() {
+		cloneSpecies(new ArrayList<Node>());
+	}
+	
+	/**
+	 * Gets the species of the {@link #originalGraph} that are currently cloned in the {@link #workingGraph}.
+	 * 
+	 * @return the currently cloned species
+	 */
+	public ArrayList<Node> getClonedSpecies() {
+		return new ArrayList<>(cloneDeltas.keySet());
+	}
+	
+	/**
+	 * Returns whether the given species of the {@link #originalGraph} is currently cloned in the {@link #workingGraph}.
+	 * 
+	 * @param originalNode
+	 *           the species within the {@link #originalGraph}
+	 * @return whether the species is cloned
+	 */
+	public boolean isCloned(Node originalNode) {
+		return cloneDeltas.containsKey(originalNode);
+	}
+	
+	/**
+	 * Replaces the working node of the given species by one clone per incident edge.
+	 * 
+	 * @param nodeToClone
+	 *           the species from the {@link #originalGraph}
+	 * @return the record of the performed changes
+	 */
+	private CloneDelta applyCloning(Node nodeToClone) {
+		CloneDelta delta = new CloneDelta(nodeToClone);
+		Node workingNode = original2workingNodes.get(nodeToClone).get(0);
+		original2workingNodes.get(nodeToClone).clear();
+		HashMap<String, String> attributes = nodeAttributes.remove(workingNode);
+		for (Edge edge : workingNode.getEdges()) {
+			Node newNode = workingGraph.addNode();
+			roleIndex.add(newNode, NodeRoleIndex.ROLE_SPECIES);
+			original2workingNodes.get(nodeToClone).add(newNode);
+			working2originalNodes.put(newNode, nodeToClone);
+			if (attributes != null) {
+				nodeAttributes.put(newNode, new HashMap<>(attributes));
+			}
+			Node source, target;
+			if (edge.getSource() == workingNode) {
+				source = newNode;
+			} else {
+				source = edge.getSource();
+			}
+			if (edge.getTarget() == workingNode) {
+				target = newNode;
+			} else {
+				target = edge.getTarget();
+			}
+			delta.clones.add(newNode);
+			delta.edges.add(addWorkingEdge(edge, source, target));
+		}
+		for (Edge edge : workingNode.getEdges()) {
+			working2originalEdges.remove(edge);
+		}
+		workingGraph.deleteNode(workingNode);
+		working2originalNodes.remove(workingNode);
+		roleIndex.remove(workingNode);
+		return delta;
+	}
+	
+	/**
+	 * Merges the clones of a species back into a single working node and rewires the edges to it.
+	 * 
+	 * @param delta
+	 *           the record of the cloning that is to be undone
+	 */
+	private void undoCloning(CloneDelta delta) {
+		Node restoredNode = workingGraph.addNode();
+		if (!delta.clones.isEmpty()) {
+			HashMap<String, String> attributes = nodeAttributes.get(delta.clones.get(0));
+			if (attributes != null) {
+				nodeAttributes.put(restoredNode, new HashMap<>(attributes));
+			}
+		}
+		roleIndex.add(restoredNode, NodeRoleIndex.ROLE_SPECIES);
+		for (int i = 0; i < delta.edges.size(); i++) {
+			Edge edge = delta.edges.get(i);
+			Node clone = delta.clones.get(i);
+			Node source = edge.getSource() == clone ? restoredNode : edge.getSource();
+			Node target = edge.getTarget() == clone ? restoredNode : edge.getTarget();
+			addWorkingEdge(edge, source, target);
+			working2originalEdges.remove(edge);
+		}
+		for (Node clone : delta.clones) {
+			workingGraph.deleteNode(clone);
+			working2originalNodes.remove(clone);
+			nodeAttributes.remove(clone);
+			roleIndex.remove(clone);
+		}
+		ArrayList<Node> workingNodesList = original2workingNodes.get(delta.originalNode);
+		workingNodesList.clear();
+		workingNodesList.add(restoredNode);
+		working2originalNodes.put(restoredNode, delta.originalNode);
+	}
+	
+	/**
+	 * Creates the actual working copy of the {@link #originalGraph}, such that it can be modified without affecting the model.
+	 * <p>
+	 * The working nodes and edges are created without attributes, their attributes are resolved through the original nodes and edges.
+	 */
+	private void materializeWorkingCopy() {
+		this.workingGraph = new AdjListGraph();
+		
+		for (Node node : originalNodes) {
+			Node newNode = workingGraph.addNode();
+			roleIndex.add(newNode, originalRoleIndex.getRole(node));
+			ArrayList<Node> workingNodesList = new ArrayList<>();
+			workingNodesList.add(newNode);
+			original2workingNodes.put(node, workingNodesList);
+			working2originalNodes.put(newNode, node);
+			HashMap<String, String> attributes = nodeAttributes.remove(node);
+			if (attributes != null) {
+				nodeAttributes.put(newNode, attributes);
+			}
+		}
+		for (Edge edge : originalGraph.getEdges()) {
+			Node source = original2workingNodes.get(edge.getSource()).get(0);
+			Node target = original2workingNodes.get(edge.getTarget()).get(0);
+			addWorkingEdge(edge, source, target);
+		}
+		
+		updateLists();
+	}
+	
+	/**
+	 * Adds a bare edge to the {@link #workingGraph} that replaces the given edge and corresponds to the same original edge.
+	 * 
+	 * @param edge
+	 *           the edge of the {@link #originalGraph} or the {@link #workingGraph} that is replaced
+	 * @param source
+	 *           the source of the new edge
+	 * @param target
+	 *           the target of the new edge
+	 * @return the new edge
+	 */
+	private Edge addWorkingEdge(Edge edge, Node source, Node target) {
+		Edge newEdge = workingGraph.addEdge(source, target, edge.isDirected());
+		Edge originalEdge = working2originalEdges.get(edge);
+		working2originalEdges.put(newEdge, originalEdge == null ? edge : originalEdge);
+		return newEdge;
+	}
+	
+	/**
+	 * Discards the working copy, such that the {@link #workingGraph} is the {@link #originalGraph} again. The attributes assigned to a working node move to
+	 * its original node, for cloned species the attributes of the first clone are kept.
+	 */
+	private void dropWorkingCopy() {
+		if (!isWorkingCopyMaterialized()) {
+			return;
+		}
+		IdentityHashMap<Node, HashMap<String, String>> originalAttributes = new IdentityHashMap<>();
+		for (Node originalNode : originalNodes) {
+			ArrayList<Node> workingNodes = original2workingNodes.get(originalNode);
+			HashMap<String, String> attributes = workingNodes.isEmpty() ? null : nodeAttributes.get(workingNodes.get(0));
+			if (attributes != null) {
+				originalAttributes.put(originalNode, attributes);
+			}
+		}
+		this.nodeAttributes = originalAttributes;
+		
+		this.workingGraph = originalGraph;
+		this.cloneDeltas.clear();
+		this.original2workingNodes.clear();
+		this.working2originalNodes.clear();
+		this.working2originalEdges.clear();
+		this.roleIndex = new NodeRoleIndex(originalRoleIndex);
+		
+		this.compactGraph = null;
+		this.compartmentIndex = null;
+		this.workingDegreeIndex = null;
+		this.speciesNodes.clear();
+		this.reactionNodes.clear();
+		this.speciesNodes.addAll(originalSpeciesNodes);
+		this.reactionNodes.addAll(originalReactionNodes);
+	}
+	
+	/**
+	 * Returns whether the {@link #workingGraph} is a separate copy of the {@link #originalGraph}.
+	 * 
+	 * @return whether the working copy has been materialized
+	 */
+	public boolean isWorkingCopyMaterialized() {
+		return workingGraph != originalGraph;
 	}
 	
 	public Graph getGraph() {
 		return workingGraph;
 	}
 	
+	/**
+	 * Assigns an attribute to a node of the {@link #workingGraph}.
+	 * <p>
+	 * The attribute is stored within this base graph only, the attribute tree of the node is left unchanged. It is kept when the node is replaced by a copy
+	 * in the course of the materialization of the working copy or the cloning of species.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @param attributeValue
+	 *           the value of the attribute
+	 */
+	public void setNodeAttribute(Node node, String attributeName, String attributeValue) {
+		HashMap<String, String> attributes = nodeAttributes.get(node);
+		if (attributes == null) {
+			attributes = new HashMap<>();
+			nodeAttributes.put(node, attributes);
+		}
+		attributes.put(attributeName, attributeValue);
+	}
+	
+	/**
+	 * Removes all attributes assigned by {@link #setNodeAttribute(Node, String, String)}, e.g. the subsystems determined by a previous decomposition, such
+	 * that they cannot leak into the next one. The notes that have been read into these attributes are marked as unprocessed again.
+	 */
+	public void clearNodeAttributes() {
+		nodeAttributes.clear();
+		processedNotes.clear();
+	}
+	
+	/**
+	 * Gets an attribute of a node of the {@link #workingGraph}.
+	 * <p>
+	 * Attributes assigned by {@link #setNodeAttribute(Node, String, String)} take precedence. Otherwise, the attribute is read from the LMME attribute path
+	 * of the model, where the model ingest stores e.g. the disease map pathways.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @return the value of the attribute or an empty String if the node does not have it
+	 */
+	public String getNodeAttribute(Node node, String attributeName) {
+		HashMap<String, String> attributes = nodeAttributes.get(node);
+		if (attributes != null) {
+			String attributeValue = attributes.get(attributeName);
+			if (attributeValue != null) {
+				return attributeValue;
+			}
+		}
+		String attributeValue = getModelAttribute(node, LMMEConstants.ATTRIBUTE_PATH, attributeName);
+		return attributeValue == null ? "" : attributeValue;
+	}
+	
+	/**
+	 * Gets an attribute of the model for a node of the {@link #workingGraph}.
+	 * <p>
+	 * If the model has been read with its attributes kept aside, the attribute is taken from the {@link #modelAttributes} of the corresponding original
+	 * node. Otherwise, it is read from the attribute tree of the corresponding original node, since the working nodes are bare. The attribute tree is only
+	 * read, a missing attribute is not created.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @param path
+	 *           the attribute path
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @return the value of the attribute or {@code null} if the node does not have it
+	 */
+	public String getModelAttribute(Node node, String path, String attributeName) {
+		if (modelAttributes != null) {
+			Node originalNode = getOriginalNode(node);
+			HashMap<String, String> attributes = originalNode == null ? null : modelAttributes.get(originalNode);
+			return attributes == null ? null : attributes.get(getModelAttributeKey(path, attributeName));
+		}
+		Node attributeNode = getAttributeNode(node);
+		if (AttributeHelper.hasAttribute(attributeNode, path, attributeName)) {
+			return (String) AttributeHelper.getAttributeValue(attributeNode, path, attributeName, "", "");
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets the label of a node of the {@link #workingGraph}, either from the {@link #modelAttributes} or from the attribute tree of its original node.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @return the label of the node or an empty String if it does not have one
+	 */
+	public String getLabel(Node node) {
+		return getLabel(node, "");
+	}
+	
+	/**
+	 * Gets the label of a node of the {@link #workingGraph} like {@link #getLabel(Node)}.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @param defaultLabel
+	 *           the label to return if the node does not have one
+	 * @return the label of the node or the default label
+	 */
+	public String getLabel(Node node, String defaultLabel) {
+		if (modelAttributes != null) {
+			String label = getModelAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.LABEL_ATTRIBUTE);
+			return label == null ? defaultLabel : label;
+		}
+		return AttributeHelper.getLabel(getAttributeNode(node), defaultLabel);
+	}
+	
+	/**
+	 * Gets the node whose attribute tree holds the attributes of the given node, i.e. the corresponding node of the {@link #originalGraph}.
+	 * 
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @return the original node, or the given node itself if it does not belong to the working graph
+	 */
+	public Node getAttributeNode(Node node) {
+		Node originalNode = getOriginalNode(node);
+		return originalNode == null ? node : originalNode;
+	}
+	
+	/**
+	 * Adds a copy of a node of the {@link #workingGraph} including its attributes to another graph, e.g. to a view. The attributes are copied from the
+	 * original node. Clones are marked by the attribute {@code isClone}, such that layouts can tell them apart.
+	 * 
+	 * @param graph
+	 *           the graph that the copy is added to
+	 * @param node
+	 *           the node within the {@link #workingGraph}
+	 * @return the copy of the node
+	 */
+	public Node copyNode(Graph graph, Node node) {
+		Node newNode = graph.addNodeCopy(getAttributeNode(node));
+		Node originalNode = getOriginalNode(node);
+		if (originalNode != null && isCloned(originalNode)) {
+			AttributeHelper.setAttribute(newNode, LMMEConstants.ATTRIBUTE_PATH, "isClone", true);
+		}
+		return newNode;
+	}
+	
+	/**
+	 * Adds a copy of an edge of the {@link #workingGraph} including the attributes of its original edge to another graph.
+	 * 
+	 * @param graph
+	 *           the graph that the copy is added to
+	 * @param edge
+	 *           the edge within the {@link #workingGraph}
+	 * @param source
+	 *           the source of the copy within the given graph
+	 * @param target
+	 *           the target of the copy within the given graph
+	 * @return the copy of the edge
+	 */
+	public Edge copyEdge(Graph graph, Edge edge, Node source, Node target) {
+		Edge originalEdge = getOriginalEdge(edge);
+		return graph.addEdgeCopy(originalEdge == null ? edge : originalEdge, source, target);
+	}
+	
+	/**
+	 * Gets the key of an attribute within the model attributes that are passed to
+	 * {@link #BaseGraph(Graph, Node[], byte[], IdentityHashMap)}.
+	 * 
+	 * @param path
+	 *           the attribute path
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @return the key of the attribute
+	 */
+	public static String getModelAttributeKey(String path, String attributeName) {
+		return path + ":" + attributeName;
+	}
+	
+	/**
+	 * Gets the compact, int-indexed representation of the {@link #workingGraph}.
+	 * <p>
+	 * Decompositions and analyses that traverse the whole model should use this representation instead of the VANTED object graph. It is built once per
+	 * state of the working graph and rebuilt only after species have been cloned.
+	 * 
+	 * @return the compact representation of the working graph
+	 */
+	public synchronized CompactGraph getCompactGraph() {
+		if (compactGraph == null) {
+			compactGraph = new CompactGraph(speciesNodes, reactionNodes, workingGraph.getEdges());
+		}
+		return compactGraph;
+	}
+	
+	/**
+	 * Gets the compact, int-indexed representation of the {@link #originalGraph}, i.e. of the model without any cloned species.
+	 * <p>
+	 * As long as the working copy is not materialized, this is the {@link #getCompactGraph()}. Otherwise, a new representation is built on every call, such
+	 * that it is not kept in memory alongside the one of the working graph.
+	 * 
+	 * @return the compact representation of the original graph
+	 */
+	public synchronized CompactGraph getOriginalCompactGraph() {
+		if (!isWorkingCopyMaterialized()) {
+			return getCompactGraph();
+		}
+		return new CompactGraph(originalSpeciesNodes, originalReactionNodes, originalGraph.getEdges());
+	}
+	
+	/**
+	 * Gets the compartments of the species of the {@link #workingGraph}, indexed as in the {@link #getCompactGraph()}.
+	 * 
+	 * @return the compartment index of the working graph
+	 */
+	public synchronized CompartmentIndex getCompartmentIndex() {
+		if (compartmentIndex == null) {
+			compartmentIndex = new CompartmentIndex(getCompactGraph(), this);
+		}
+		return compartmentIndex;
+	}
+	
+	/**
+	 * Checks whether the given node of the {@link #originalGraph} or the {@link #workingGraph} is a species node, using the precomputed role index.
+	 * 
+	 * @param node
+	 *           the node to be checked
+	 * @return whether the given node is a species node
+	 */
+	public boolean isSpecies(Node node) {
+		return roleIndex.isSpecies(node);
+	}
+	
+	/**
+	 * Checks whether the given node of the {@link #originalGraph} or the {@link #workingGraph} is a reaction node, using the precomputed role index.
+	 * 
+	 * @param node
+	 *           the node to be checked
+	 * @return whether the given node is a reaction node
+	 */
+	public boolean isReaction(Node node) {
+		return roleIndex.isReaction(node);
+	}
+	
+	public NodeRoleIndex getRoleIndex() {
+		return roleIndex;
+	}
+	
 	public Graph getOriginalGraph() {
 		return originalGraph;
 	}
 	
+	/**
+	 * Gets the stable index of the given node of the {@link #originalGraph}.
+	 * 
+	 * @param originalNode
+	 *           the node within the {@link #originalGraph}
+	 * @return the index of the node or -1 if it is not part of the {@link #originalGraph}
+	 */
+	public int getOriginalNodeIndex(Node originalNode) {
+		Integer index = originalNodeIndices.get(originalNode);
+		return index == null ? -1 : index.intValue();
+	}
+	
+	/**
+	 * Gets the node of the {@link #originalGraph} with the given stable index.
+	 * 
+	 * @param index
+	 *           the index of the node
+	 * @return the node within the {@link #originalGraph}
+	 */
+	public Node getOriginalNodeByIndex(int index) {
+		return originalNodes[index];
+	}
+	
+	public int getNumberOfOriginalNodes() {
+		return originalNodes.length;
+	}
+	
+	/**
+	 * Gets a fingerprint of the structure of the model, i.e. of the roles and labels of its nodes and of its edges.
+	 * <p>
+	 * Two base graphs constructed from the same model have the same fingerprint, such that data referring to the stable node indices can be validated before
+	 * it is applied.
+	 * 
+	 * @return the fingerprint of the model
+	 */
+	public long getModelFingerprint() {
+		return modelFingerprint;
+	}
+	
+	/**
+	 * Computes a 64 bit FNV-1a hash over the structure of the {@link #originalGraph}.
+	 * 
+	 * @return the fingerprint of the model
+	 */
+	private long computeModelFingerprint() {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ originalNodes.length) * 0x100000001b3L;
+		for (Node node : originalNodes) {
+			hash = (hash ^ originalRoleIndex.getRole(node)) * 0x100000001b3L;
+			hash = (hash ^ getLabel(node).hashCode()) * 0x100000001b3L;
+		}
+		for (Edge edge : originalGraph.getEdges()) {
+			hash = (hash ^ getOriginalNodeIndex(edge.getSource())) * 0x100000001b3L;
+			hash = (hash ^ getOriginalNodeIndex(edge.getTarget())) * 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Gets a fingerprint of the current values of a node attribute, see {@link #getNodeAttribute(Node, String)}.
+	 * <p>
+	 * Unlike the {@link #getModelFingerprint()}, the fingerprint is computed on every call, since the attributes may change during a session. It is a 64 bit
+	 * FNV-1a hash over the stable indices of the nodes that have a value and over these values.
+	 * 
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @return the fingerprint of the attribute values
+	 */
+	public long getNodeAttributeFingerprint(String attributeName) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < originalNodes.length; i++) {
+			List<Node> workingNodes = getWorkingNodes(originalNodes[i]);
+			if (workingNodes.isEmpty()) {
+				continue;
+			}
+			String value = getNodeAttribute(workingNodes.get(0), attributeName);
+			if (value.length() > 0) {
+				hash = (hash ^ i) * 0x100000001b3L;
+				hash = (hash ^ value.hashCode()) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Gets a fingerprint of the current compartments of the species, i.e. of the attributes that a {@link CompartmentIndex} is built from. It is computed
+	 * like the {@link #getNodeAttributeFingerprint(String)}.
+	 * 
+	 * @return the fingerprint of the compartments
+	 */
+	public long getCompartmentFingerprint() {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < originalNodes.length; i++) {
+			List<Node> workingNodes = getWorkingNodes(originalNodes[i]);
+			if (originalRoleIndex.getRole(originalNodes[i]) != NodeRoleIndex.ROLE_SPECIES || workingNodes.isEmpty()) {
+				continue;
+			}
+			String id = getModelAttribute(workingNodes.get(0), SBML_Constants.SBML, SBML_Constants.COMPARTMENT);
+			String name = getModelAttribute(workingNodes.get(0), SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME);
+			hash = (hash ^ i) * 0x100000001b3L;
+			hash = (hash ^ (id == null ? 0 : id.hashCode())) * 0x100000001b3L;
+			hash = (hash ^ (name == null ? 0 : name.hashCode())) * 0x100000001b3L;
+		}
+		return hash;
+	}
+	
 	/**
 	 * Gets the node in the {@link #originalGraph} that corresponds to the given node within the {@link #workingGraph}.
 	 * 
@@ -199,9 +894,26 @@ public class BaseGraph {
 	 * @return the node in the {@link #originalGraph} that corresponds to the given node
 	 */
 	public Node getOriginalNode(Node workingNode) {
+		if (!isWorkingCopyMaterialized()) {
+			return workingNode.getGraph() == originalGraph ? workingNode : null;
+		}
 		return working2originalNodes.get(workingNode);
 	}
 	
+	/**
+	 * Gets the edge in the {@link #originalGraph} that corresponds to the given edge within the {@link #workingGraph}.
+	 * 
+	 * @param workingEdge
+	 *           the requested edge within the {@link #workingGraph}
+	 * @return the edge in the {@link #originalGraph} that corresponds to the given edge, or {@code null} if there is none
+	 */
+	public Edge getOriginalEdge(Edge workingEdge) {
+		if (!isWorkingCopyMaterialized()) {
+			return workingEdge.getGraph() == originalGraph ? workingEdge : null;
+		}
+		return working2originalEdges.get(workingEdge);
+	}
+	
 	/**
 	 * Gets the nodes in the {@link #workingGraph} that correspond to the given node within the {@link #originalGraph}.
 	 * 
@@ -210,9 +922,77 @@ public class BaseGraph {
 	 * @return the nodes in the {@link #workingGraph} that correspond to the given node
 	 */
 	public ArrayList<Node> getWorkingNodes(Node originalNode) {
+		if (!isWorkingCopyMaterialized()) {
+			if (originalNode.getGraph() != originalGraph) {
+				return null;
+			}
+			ArrayList<Node> workingNodesList = new ArrayList<>(1);
+			workingNodesList.add(originalNode);
+			return workingNodesList;
+		}
 		return original2workingNodes.get(originalNode);
 	}
 	
+	/**
+	 * Gets the textual attributes of the model that are set for at least one species or reaction, keyed by {@link #getModelAttributeKey(String, String)}
+	 * in lexicographical order. They are taken from the {@link #modelAttributes}, or from the first level of the attribute trees of the original nodes,
+	 * where the graphics attributes are left out. Each of them can be read by {@link #getModelAttribute(Node, String, String)}.
+	 * 
+	 * @return the keys of the textual model attributes
+	 */
+	public TreeSet<String> getModelAttributeKeys() {
+		TreeSet<String> res = new TreeSet<>();
+		for (Node node : originalNodes) {
+			if (originalRoleIndex.getRole(node) == NodeRoleIndex.ROLE_OTHER) {
+				continue;
+			}
+			if (modelAttributes != null) {
+				HashMap<String, String> attributes = modelAttributes.get(node);
+				if (attributes != null) {
+					res.addAll(attributes.keySet());
+				}
+				continue;
+			}
+			for (Map.Entry<String, Attribute> path : node.getAttributes().getCollection().entrySet()) {
+				if (!(path.getValue() instanceof CollectionAttribute) || path.getKey().equals("graphics")) {
+					continue;
+				}
+				for (Map.Entry<String, Attribute> attribute : ((CollectionAttribute) path.getValue()).getCollection().entrySet()) {
+					if (attribute.getValue() instanceof StringAttribute) {
+						res.add(getModelAttributeKey(path.getKey(), attribute.getKey()));
+					}
+				}
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets a fingerprint of the values of a model attribute, see {@link #getModelAttribute(Node, String, String)}. It is computed like the
+	 * {@link #getNodeAttributeFingerprint(String)}, since the attribute trees of the model may be edited during a session.
+	 * 
+	 * @param path
+	 *           the path of the attribute
+	 * @param attributeName
+	 *           the name of the attribute
+	 * @return the fingerprint of the attribute values
+	 */
+	public long getModelAttributeFingerprint(String path, String attributeName) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < originalNodes.length; i++) {
+			List<Node> workingNodes = getWorkingNodes(originalNodes[i]);
+			if (workingNodes.isEmpty()) {
+				continue;
+			}
+			String value = getModelAttribute(workingNodes.get(0), path, attributeName);
+			if (value != null && value.length() > 0) {
+				hash = (hash ^ i) * 0x100000001b3L;
+				hash = (hash ^ value.hashCode()) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+	
 	/**
 	 * Returns the names of the notes that are available in the SBML file underlying this graph.
 	 * 
@@ -239,10 +1019,7 @@ public class BaseGraph {
 	 * @return the number of species having at least the specified degree
 	 */
 	public int getNumberOfSpeciesWithDegreeAtLeast(int degree) {
-		if (degreeSpecies.length >= degree + 1)
-			return degreeSpecies[degree];
-		else
-			return 0;
+		return originalDegreeIndex.getNumberOfNodesWithDegreeAtLeast(degree);
 	}
 	
 	/**
@@ -250,16 +1027,10 @@ public class BaseGraph {
 	 * 
 	 * @param degree
 	 *           the degree threshold
-	 * @return list of species from the original graph that have at least the specified degree
+	 * @return unmodifiable list of species from the original graph that have at least the specified degree, ordered by decreasing degree
 	 */
-	public ArrayList<Node> getOriginalSpeciesWithDegreeAtLeast(int degree) {
-		ArrayList<Node> res = new ArrayList<>();
-		for (Node node : getOriginalGraph().getNodes()) {
-			if ((node.getDegree() >= degree) && (LMMETools.getInstance().isSpecies(node))) {
-				res.add(node);
-			}
-		}
-		return res;
+	public List<Node> getOriginalSpeciesWithDegreeAtLeast(int degree) {
+		return originalDegreeIndex.getNodesWithDegreeAtLeast(degree);
 	}
 	
 	/**
@@ -267,16 +1038,13 @@ public class BaseGraph {
 	 * 
 	 * @param degree
 	 *           the degree threshold
-	 * @return list of species from the working graph that have at least the specified degree
+	 * @return unmodifiable list of species from the working graph that have at least the specified degree, ordered by decreasing degree
 	 */
-	public ArrayList<Node> getSpeciesWithDegreeAtLeast(int degree) {
-		ArrayList<Node> res = new ArrayList<>();
-		for (Node node : getGraph().getNodes()) {
-			if ((node.getDegree() >= degree) && (LMMETools.getInstance().isSpecies(node))) {
-				res.add(node);
-			}
+	public synchronized List<Node> getSpeciesWithDegreeAtLeast(int degree) {
+		if (workingDegreeIndex == null) {
+			workingDegreeIndex = new DegreeIndex(speciesNodes);
 		}
-		return res;
+		return workingDegreeIndex.getNodesWithDegreeAtLeast(degree);
 	}
 	
 	/**
@@ -285,7 +1053,7 @@ public class BaseGraph {
 	 * @return the maximum degree occurring in the original graph
 	 */
 	public int getMaximumDegree() {
-		return degreeSpecies.length - 1;
+		return originalDegreeIndex.getMaximumDegree();
 	}
 	
 	/**
@@ -328,15 +1096,40 @@ public class BaseGraph {
 	 * Needs to be called whenever a species or reaction has been deleted or added.
 	 */
 	public void updateLists() {
+		this.compactGraph = null;
+		this.compartmentIndex = null;
+		this.workingDegreeIndex = null;
 		this.speciesNodes.clear();
 		this.reactionNodes.clear();
 		for (Node node : this.getGraph().getNodes()) {
-			if (LMMETools.getInstance().isSpecies(node)) {
+			// nodes that have been added to the working graph from outside are classified once and then kept in the index
+			byte role = roleIndex.lookupRole(node);
+			if (role == NodeRoleIndex.ROLE_UNKNOWN) {
+				role = roleIndex.add(node);
+			}
+			if (role == NodeRoleIndex.ROLE_SPECIES) {
 				speciesNodes.add(node);
-			} else if (LMMETools.getInstance().isReaction(node)) {
+			} else if (role == NodeRoleIndex.ROLE_REACTION) {
 				reactionNodes.add(node);
 			}
 		}
 	}
 	
+	/**
+	 * The changes made to the {@link #workingGraph} by cloning a single species.
+	 * <p>
+	 * The i-th edge has been created for the i-th clone, replacing the corresponding edge of the former working node.
+	 */
+	private static class CloneDelta {
+		
+		private final Node originalNode;
+		private final ArrayList<Node> clones = new ArrayList<>();
+		private final ArrayList<Edge> edges = new ArrayList<>();
+		
+		private CloneDelta(Node originalNode) {
+			this.originalNode = originalNode;
+		}
+		
+	}
+	
 }
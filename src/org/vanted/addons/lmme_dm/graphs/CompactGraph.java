@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.graffiti.graph.Edge;
+import org.graffiti.graph.Node;
+
+/**
+ * An immutable, int-indexed representation of a species-reaction graph in compressed sparse row (CSR) format.
+ * <p>
+ * The species are assigned the indices {@code 0, ..., s-1} and the reactions the indices {@code s, ..., s+r-1}. Edges are numbered in the order in which
+ * they are passed to the constructor, edges that are not incident to two of the given nodes are ignored. For every node, the ids of its outgoing and incoming
+ * edges are stored in contiguous ranges of primitive arrays, such that traversals do not need to touch the VANTED object graph at all.
+ * <p>
+ * The representation is built by the {@link BaseGraph} from its working graph and becomes invalid as soon as the latter is modified. The arrays returned by
+ * the getters are the internal ones and must not be modified.
+ *
+ * @author Michael Aichem
+ */
+public class CompactGraph {
+	
+	private final Node[] nodes;
+	
+	private final IdentityHashMap<Node, Integer> nodeIndices;
+	
+	private final int numberOfSpecies;
+	
+	private final Edge[] edges;
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	
+	/**
+	 * The outgoing edges of node {@code i} are {@code outEdges[outOffsets[i]], ..., outEdges[outOffsets[i + 1] - 1]}.
+	 */
+	private final int[] outOffsets;
+	private final int[] outEdges;
+	
+	/**
+	 * The incoming edges of node {@code i} are {@code inEdges[inOffsets[i]], ..., inEdges[inOffsets[i + 1] - 1]}.
+	 */
+	private final int[] inOffsets;
+	private final int[] inEdges;
+	
+	/**
+	 * The undirected adjacency, i.e. the concatenation of outgoing and incoming edges per node. Built on first request.
+	 */
+	private volatile int[] adjacencyOffsets;
+	private int[] adjacentNodes;
+	private int[] adjacentEdges;
+	
+	/**
+	 * Builds the compact representation.
+	 *
+	 * @param speciesNodes
+	 *           the species nodes, they receive the indices {@code 0, ..., speciesNodes.size() - 1}
+	 * @param reactionNodes
+	 *           the reaction nodes, they receive the subsequent indices
+	 * @param edgeCollection
+	 *           the edges between the given nodes
+	 */
+	public CompactGraph(List<Node> speciesNodes, List<Node> reactionNodes, Collection<Edge> edgeCollection) {
+		
+		int numberOfNodes = speciesNodes.size() + reactionNodes.size();
+		this.numberOfSpecies = speciesNodes.size();
+		this.nodes = new Node[numberOfNodes];
+		this.nodeIndices = new IdentityHashMap<>(numberOfNodes);
+		
+		int index = 0;
+		for (Node speciesNode : speciesNodes) {
+			nodes[index] = speciesNode;
+			nodeIndices.put(speciesNode, Integer.valueOf(index));
+			index++;
+		}
+		for (Node reactionNode : reactionNodes) {
+			nodes[index] = reactionNode;
+			nodeIndices.put(reactionNode, Integer.valueOf(index));
+			index++;
+		}
+		
+		Edge[] edgeBuffer = new Edge[edgeCollection.size()];
+		int[] sourceBuffer = new int[edgeCollection.size()];
+		int[] targetBuffer = new int[edgeCollection.size()];
+		int numberOfEdges = 0;
+		for (Edge edge : edgeCollection) {
+			Integer source = nodeIndices.get(edge.getSource());
+			Integer target = nodeIndices.get(edge.getTarget());
+			if ((source != null) && (target != null)) {
+				edgeBuffer[numberOfEdges] = edge;
+				sourceBuffer[numberOfEdges] = source.intValue();
+				targetBuffer[numberOfEdges] = target.intValue();
+				numberOfEdges++;
+			}
+		}
+		this.edges = Arrays.copyOf(edgeBuffer, numberOfEdges);
+		this.edgeSources = Arrays.copyOf(sourceBuffer, numberOfEdges);
+		this.edgeTargets = Arrays.copyOf(targetBuffer, numberOfEdges);
+		
+		this.outOffsets = new int[numberOfNodes + 1];
+		this.inOffsets = new int[numberOfNodes + 1];
+		for (int e = 0; e < numberOfEdges; e++) {
+			outOffsets[edgeSources[e] + 1]++;
+			inOffsets[edgeTargets[e] + 1]++;
+		}
+		for (int i = 0; i < numberOfNodes; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+		}
+		
+		this.outEdges = new int[numberOfEdges];
+		this.inEdges = new int[numberOfEdges];
+		int[] outPositions = Arrays.copyOf(outOffsets, numberOfNodes);
+		int[] inPositions = Arrays.copyOf(inOffsets, numberOfNodes);
+		for (int e = 0; e < numberOfEdges; e++) {
+			outEdges[outPositions[edgeSources[e]]++] = e;
+			inEdges[inPositions[edgeTargets[e]]++] = e;
+		}
+	}
+	
+	/**
+	 * Builds the undirected adjacency arrays.
+	 */
+	private synchronized void buildAdjacency() {
+		if (adjacencyOffsets != null) {
+			return;
+		}
+		int numberOfNodes = nodes.length;
+		int[] offsets = new int[numberOfNodes + 1];
+		for (int i = 0; i < numberOfNodes; i++) {
+			offsets[i + 1] = offsets[i] + (outOffsets[i + 1] - outOffsets[i]) + (inOffsets[i + 1] - inOffsets[i]);
+		}
+		int[] neighbors = new int[offsets[numberOfNodes]];
+		int[] neighborEdges = new int[offsets[numberOfNodes]];
+		for (int i = 0; i < numberOfNodes; i++) {
+			int position = offsets[i];
+			for (int k = outOffsets[i]; k < outOffsets[i + 1]; k++) {
+				neighborEdges[position] = outEdges[k];
+				neighbors[position++] = edgeTargets[outEdges[k]];
+			}
+			for (int k = inOffsets[i]; k < inOffsets[i + 1]; k++) {
+				neighborEdges[position] = inEdges[k];
+				neighbors[position++] = edgeSources[inEdges[k]];
+			}
+		}
+		this.adjacentNodes = neighbors;
+		this.adjacentEdges = neighborEdges;
+		this.adjacencyOffsets = offsets;
+	}
+	
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+	
+	public int getNumberOfSpecies() {
+		return numberOfSpecies;
+	}
+	
+	public int getNumberOfReactions() {
+		return nodes.length - numberOfSpecies;
+	}
+	
+	public int getNumberOfEdges() {
+		return edges.length;
+	}
+	
+	public boolean isSpecies(int index) {
+		return index < numberOfSpecies;
+	}
+	
+	public boolean isReaction(int index) {
+		return index >= numberOfSpecies;
+	}
+	
+	public Node getNode(int index) {
+		return nodes[index];
+	}
+	
+	/**
+	 * Gets the index of the given node.
+	 *
+	 * @param node
+	 *           the node, usually from the working graph
+	 * @return the index of the node or -1 if it is not part of this graph
+	 */
+	public int getIndex(Node node) {
+		Integer index = nodeIndices.get(node);
+		return index == null ? -1 : index.intValue();
+	}
+	
+	public Edge getEdge(int edgeId) {
+		return edges[edgeId];
+	}
+	
+	public int getEdgeSource(int edgeId) {
+		return edgeSources[edgeId];
+	}
+	
+	public int getEdgeTarget(int edgeId) {
+		return edgeTargets[edgeId];
+	}
+	
+	/**
+	 * Gets the end of the given edge that is not the given node.
+	 *
+	 * @param edgeId
+	 *           the edge
+	 * @param index
+	 *           one end of the edge
+	 * @return the other end of the edge
+	 */
+	public int getOpposite(int edgeId, int index) {
+		return edgeSources[edgeId] == index ? edgeTargets[edgeId] : edgeSources[edgeId];
+	}
+	
+	/**
+	 * Gets the number of edges incident to the given node, regardless of their direction.
+	 *
+	 * @param index
+	 *           the node
+	 * @return the degree of the node
+	 */
+	public int getDegree(int index) {
+		return (outOffsets[index + 1] - outOffsets[index]) + (inOffsets[index + 1] - inOffsets[index]);
+	}
+	
+	public int[] getOutOffsets() {
+		return outOffsets;
+	}
+	
+	public int[] getOutEdges() {
+		return outEdges;
+	}
+	
+	public int[] getInOffsets() {
+		return inOffsets;
+	}
+	
+	public int[] getInEdges() {
+		return inEdges;
+	}
+	
+	/**
+	 * Gets the offsets into the undirected adjacency arrays. The neighbors of node {@code i} are found at the positions
+	 * {@code getAdjacencyOffsets()[i], ..., getAdjacencyOffsets()[i + 1] - 1} of {@link #getAdjacentNodes()} and {@link #getAdjacentEdges()}.
+	 *
+	 * @return the offsets into the undirected adjacency arrays
+	 */
+	public int[] getAdjacencyOffsets() {
+		if (adjacencyOffsets == null) {
+			buildAdjacency();
+		}
+		return adjacencyOffsets;
+	}
+	
+	public int[] getAdjacentNodes() {
+		if (adjacencyOffsets == null) {
+			buildAdjacency();
+		}
+		return adjacentNodes;
+	}
+	
+	public int[] getAdjacentEdges() {
+		if (adjacencyOffsets == null) {
+			buildAdjacency();
+		}
+		return adjacentEdges;
+	}
+	
+}
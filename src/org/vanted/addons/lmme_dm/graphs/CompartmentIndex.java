@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.graffiti.graph.Node;
+
+import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
+
+/**
+ * The compartments of the species of a {@link CompactGraph}, interned to the ids {@code 0, ..., c-1} in the order of their first occurrence.
+ * <p>
+ * The SBML compartment of every species is read from the model attributes of the {@link BaseGraph} exactly once, when the index is built. A compartment is identified by the SBML
+ * compartment id of its species, or by the compartment name if a species has no id, and named by the compartment name if there is one. The species
+ * are bucketed by their compartment in compressed sparse row format, such that the species of a compartment are found without scanning the graph.
+ * <p>
+ * The index is built by the {@link BaseGraph} together with its compact graph and becomes invalid with it. The arrays returned by the getters are the
+ * internal ones and must not be modified.
+ * 
+ * @author Michael Aichem
+ */
+public class CompartmentIndex {
+	
+	public static final int NO_COMPARTMENT = -1;
+	
+	private final CompactGraph compactGraph;
+	
+	private final String[] compartmentNames;
+	
+	/**
+	 * The compartment of species {@code i}, or {@link #NO_COMPARTMENT}.
+	 */
+	private final int[] speciesCompartments;
+	
+	/**
+	 * The species of compartment {@code c} are {@code compartmentSpecies[compartmentOffsets[c]], ..., compartmentSpecies[compartmentOffsets[c + 1] - 1]}
+	 * in increasing order.
+	 */
+	private final int[] compartmentOffsets;
+	private final int[] compartmentSpecies;
+	
+	/**
+	 * The reactions that involve species of more than one compartment, by their index in the compact graph minus the number of species. Computed on
+	 * first request.
+	 */
+	private BitSet transporterReactions;
+	
+	/**
+	 * Builds the index in a single pass over the species of the given graph.
+	 * 
+	 * @param compactGraph
+	 *           the graph
+	 * @param baseGraph
+	 *           the base graph the compact graph has been built for, which provides the compartments of the species
+	 */
+	public CompartmentIndex(CompactGraph compactGraph, BaseGraph baseGraph) {
+		this.compactGraph = compactGraph;
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		this.speciesCompartments = new int[numberOfSpecies];
+		
+		HashMap<String, Integer> compartmentIds = new HashMap<>();
+		ArrayList<String> names = new ArrayList<>();
+		for (int i = 0; i < numberOfSpecies; i++) {
+			Node speciesNode = compactGraph.getNode(i);
+			String id = baseGraph.getModelAttribute(speciesNode, SBML_Constants.SBML, SBML_Constants.COMPARTMENT);
+			String name = baseGraph.getModelAttribute(speciesNode, SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME);
+			String key = id != null ? id : name;
+			if (key == null) {
+				speciesCompartments[i] = NO_COMPARTMENT;
+				continue;
+			}
+			Integer compartment = compartmentIds.get(key);
+			if (compartment == null) {
+				compartment = Integer.valueOf(names.size());
+				compartmentIds.put(key, compartment);
+				names.add(name != null ? name : id);
+			}
+			speciesCompartments[i] = compartment.intValue();
+		}
+		this.compartmentNames = names.toArray(new String[names.size()]);
+		
+		// counting sort of the species by their compartment
+		int numberOfCompartments = compartmentNames.length;
+		this.compartmentOffsets = new int[numberOfCompartments + 1];
+		for (int compartment : speciesCompartments) {
+			if (compartment != NO_COMPARTMENT) {
+				compartmentOffsets[compartment + 1]++;
+			}
+		}
+		for (int c = 0; c < numberOfCompartments; c++) {
+			compartmentOffsets[c + 1] += compartmentOffsets[c];
+		}
+		this.compartmentSpecies = new int[compartmentOffsets[numberOfCompartments]];
+		int[] fill = new int[numberOfCompartments];
+		for (int i = 0; i < numberOfSpecies; i++) {
+			int compartment = speciesCompartments[i];
+			if (compartment != NO_COMPARTMENT) {
+				compartmentSpecies[compartmentOffsets[compartment] + fill[compartment]++] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the transporter reactions, i.e. the reactions that involve species of more than one compartment.
+	 * <p>
+	 * The reactions are scanned in parallel over contiguous blocks. For every reaction, the compartments of its species are compared with the first one
+	 * found, so that no memory is allocated per reaction. The result is computed once and returned on subsequent calls.
+	 * 
+	 * @return the transporter reactions, where bit {@code r} stands for the reaction with index {@code getNumberOfSpecies() + r} in the compact graph
+	 */
+	public synchronized BitSet getTransporterReactions() {
+		if (transporterReactions == null) {
+			int numberOfSpecies = compactGraph.getNumberOfSpecies();
+			int numberOfReactions = compactGraph.getNumberOfReactions();
+			int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+			int[] adjacentNodes = compactGraph.getAdjacentNodes();
+			int numberOfBlocks = Math.max(1, Math.min(numberOfReactions, 4 * ForkJoinPool.getCommonPoolParallelism()));
+			BitSet[] blockTransporters = new BitSet[numberOfBlocks];
+			IntStream.range(0, numberOfBlocks).parallel().forEach(block -> {
+				int from = (int) ((long) block * numberOfReactions / numberOfBlocks);
+				int to = (int) ((long) (block + 1) * numberOfReactions / numberOfBlocks);
+				BitSet transporters = new BitSet(numberOfReactions);
+				for (int r = from; r < to; r++) {
+					int reactionIndex = numberOfSpecies + r;
+					int firstCompartment = NO_COMPARTMENT;
+					for (int k = adjacencyOffsets[reactionIndex]; k < adjacencyOffsets[reactionIndex + 1]; k++) {
+						int compartment = speciesCompartments[adjacentNodes[k]];
+						if (compartment == NO_COMPARTMENT) {
+							continue;
+						}
+						if (firstCompartment == NO_COMPARTMENT) {
+							firstCompartment = compartment;
+						} else if (compartment != firstCompartment) {
+							transporters.set(r);
+							break;
+						}
+					}
+				}
+				blockTransporters[block] = transporters;
+			});
+			transporterReactions = new BitSet(numberOfReactions);
+			for (BitSet transporters : blockTransporters) {
+				transporterReactions.or(transporters);
+			}
+		}
+		return transporterReactions;
+	}
+	
+	public int getNumberOfCompartments() {
+		return compartmentNames.length;
+	}
+	
+	public String getCompartmentName(int compartment) {
+		return compartmentNames[compartment];
+	}
+	
+	/**
+	 * @param speciesIndex
+	 *           the index of a species in the compact graph
+	 * @return the compartment of the species, or {@link #NO_COMPARTMENT}
+	 */
+	public int getCompartment(int speciesIndex) {
+		return speciesCompartments[speciesIndex];
+	}
+	
+	/**
+	 * @return the compartment of every species, indexed as in the compact graph
+	 */
+	public int[] getSpeciesCompartments() {
+		return speciesCompartments;
+	}
+	
+	public int[] getCompartmentOffsets() {
+		return compartmentOffsets;
+	}
+	
+	public int[] getCompartmentSpecies() {
+		return compartmentSpecies;
+	}
+	
+}
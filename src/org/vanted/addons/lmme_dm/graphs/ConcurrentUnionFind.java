@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free union-find structure over the elements {@code 0, ..., n-1}, which may be used by several threads at the same time.
+ * <p>
+ * Sets are always linked such that the element with the larger index points to the one with the smaller index. Hence, the representative of every set
+ * is its smallest element, independently of the order in which the unions have been performed. Links are set by compare-and-set, and paths are halved
+ * during {@link #find(int)}.
+ * 
+ * @author Michael Aichem
+ */
+public class ConcurrentUnionFind {
+	
+	private final AtomicIntegerArray parent;
+	
+	public ConcurrentUnionFind(int size) {
+		this.parent = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			parent.set(i, i);
+		}
+	}
+	
+	/**
+	 * Finds the representative of the set containing the given element.
+	 * 
+	 * @param element
+	 *           the element
+	 * @return the smallest element of its set
+	 */
+	public int find(int element) {
+		int current = element;
+		while (true) {
+			int p = parent.get(current);
+			if (p == current) {
+				return current;
+			}
+			int gp = parent.get(p);
+			if (p != gp) {
+				parent.compareAndSet(current, p, gp);
+			}
+			current = gp;
+		}
+	}
+	
+	/**
+	 * Merges the sets containing the given elements.
+	 * 
+	 * @param a
+	 *           an element
+	 * @param b
+	 *           another element
+	 */
+	public void union(int a, int b) {
+		while (true) {
+			int rootA = find(a);
+			int rootB = find(b);
+			if (rootA == rootB) {
+				return;
+			}
+			int larger = Math.max(rootA, rootB);
+			int smaller = Math.min(rootA, rootB);
+			if (parent.compareAndSet(larger, larger, smaller)) {
+				return;
+			}
+		}
+	}
+	
+	public int size() {
+		return parent.length();
+	}
+	
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.graffiti.graph.Node;
+
+/**
+ * An index of nodes sorted by their degree in non-increasing order.
+ * <p>
+ * The nodes having at least a given degree form a prefix of the sorted array. Such a prefix is found by a binary search and returned as an unmodifiable
+ * view, without scanning the graph. Nodes with the same degree keep the order in which they were passed to the constructor.
+ * <p>
+ * The degrees are captured on construction, the index has to be rebuilt when the graph changes.
+ *
+ * @author Michael Aichem
+ */
+public class DegreeIndex {
+	
+	private final Node[] sortedNodes;
+	
+	/**
+	 * The degrees of the {@link #sortedNodes}, in non-increasing order.
+	 */
+	private final int[] sortedDegrees;
+	
+	private final List<Node> sortedNodesView;
+	
+	/**
+	 * Builds the index by a counting sort over the degrees.
+	 * 
+	 * @param nodes
+	 *           the nodes to be indexed
+	 */
+	public DegreeIndex(Collection<Node> nodes) {
+		int numberOfNodes = nodes.size();
+		int[] degrees = new int[numberOfNodes];
+		int maxDegree = 0;
+		int i = 0;
+		for (Node node : nodes) {
+			degrees[i] = node.getDegree();
+			maxDegree = Math.max(maxDegree, degrees[i]);
+			i++;
+		}
+		
+		// position of the first node of every degree, largest degrees first
+		int[] start = new int[maxDegree + 2];
+		for (int degree : degrees) {
+			start[maxDegree - degree + 1]++;
+		}
+		for (int d = 1; d < start.length; d++) {
+			start[d] += start[d - 1];
+		}
+		
+		this.sortedNodes = new Node[numberOfNodes];
+		this.sortedDegrees = new int[numberOfNodes];
+		i = 0;
+		for (Node node : nodes) {
+			int position = start[maxDegree - degrees[i]]++;
+			sortedNodes[position] = node;
+			sortedDegrees[position] = degrees[i];
+			i++;
+		}
+		this.sortedNodesView = Collections.unmodifiableList(Arrays.asList(sortedNodes));
+	}
+	
+	/**
+	 * Returns the number of indexed nodes having at least the specified degree.
+	 * 
+	 * @param degree
+	 *           the degree threshold
+	 * @return the number of nodes having at least the specified degree
+	 */
+	public int getNumberOfNodesWithDegreeAtLeast(int degree) {
+		int low = 0;
+		int high = sortedDegrees.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sortedDegrees[middle] >= degree) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Gets the indexed nodes having at least the specified degree, ordered by decreasing degree.
+	 * 
+	 * @param degree
+	 *           the degree threshold
+	 * @return an unmodifiable view of the nodes having at least the specified degree
+	 */
+	public List<Node> getNodesWithDegreeAtLeast(int degree) {
+		return sortedNodesView.subList(0, getNumberOfNodesWithDegreeAtLeast(degree));
+	}
+	
+	/**
+	 * Gets the maximum degree of the indexed nodes.
+	 * 
+	 * @return the maximum degree or 0 if no nodes are indexed
+	 */
+	public int getMaximumDegree() {
+		return sortedDegrees.length == 0 ? 0 : sortedDegrees[0];
+	}
+	
+}
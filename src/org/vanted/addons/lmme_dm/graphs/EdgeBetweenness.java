@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the edge betweenness of a {@link CompactGraph} by the algorithm of Brandes, treating the graph as undirected and unweighted.
+ * <p>
+ * The single-source computations are independent of each other, so the given source vertices are split into ranges that are processed in parallel by
+ * fork-join tasks. Every task accumulates into its own array, and the arrays are summed when the tasks are joined. Since the ranges only depend on the
+ * number of sources, the result does not depend on the scheduling of the tasks.
+ * <p>
+ * Edges can be marked as removed, they are ignored by all subsequent computations. As no shortest path crosses two connected components, the betweenness
+ * of the edges of a single component can be recomputed by using only its vertices as sources.
+ * <p>
+ * Brandes, U. (2001). A faster algorithm for betweenness centrality. Journal of Mathematical Sociology, 25(2), 163-177.
+ * 
+ * @author Michael Aichem
+ */
+public class EdgeBetweenness {
+	
+	private final int numberOfNodes;
+	private final int numberOfEdges;
+	
+	private final int[] adjacencyOffsets;
+	private final int[] adjacentNodes;
+	private final int[] adjacentEdges;
+	
+	private final boolean[] removedEdges;
+	
+	/**
+	 * The number of sources below which a task is not split any further.
+	 */
+	private final int sequentialThreshold;
+	
+	public EdgeBetweenness(CompactGraph compactGraph) {
+		this.numberOfNodes = compactGraph.getNumberOfNodes();
+		this.numberOfEdges = compactGraph.getNumberOfEdges();
+		this.adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		this.adjacentNodes = compactGraph.getAdjacentNodes();
+		this.adjacentEdges = compactGraph.getAdjacentEdges();
+		this.removedEdges = new boolean[numberOfEdges];
+		this.sequentialThreshold = Math.max(1, numberOfNodes / (4 * ForkJoinPool.getCommonPoolParallelism()));
+	}
+	
+	public void removeEdge(int edgeId) {
+		removedEdges[edgeId] = true;
+	}
+	
+	public boolean isRemoved(int edgeId) {
+		return removedEdges[edgeId];
+	}
+	
+	/**
+	 * Computes the betweenness of all edges that lie on shortest paths starting at the given sources.
+	 * 
+	 * @param sources
+	 *           the source vertices, usually all vertices of one or more components
+	 * @return the betweenness of every edge, edges between vertices that are not reachable from the sources have a value of 0
+	 */
+	public double[] compute(int[] sources) {
+		return ForkJoinPool.commonPool().invoke(new BetweennessTask(sources, 0, sources.length));
+	}
+	
+	/**
+	 * Accumulates the dependencies of all edges for the sources in the given range.
+	 */
+	private void accumulate(int[] sources, int from, int to, double[] betweenness) {
+		int[] distance = new int[numberOfNodes];
+		double[] sigma = new double[numberOfNodes];
+		double[] delta = new double[numberOfNodes];
+		int[] stack = new int[numberOfNodes];
+		Arrays.fill(distance, -1);
+		
+		for (int s = from; s < to; s++) {
+			int source = sources[s];
+			int stackSize = 0;
+			int head = 0;
+			stack[stackSize++] = source;
+			distance[source] = 0;
+			sigma[source] = 1.0;
+			// the stack doubles as BFS queue, since vertices are visited in non-decreasing order of their distance
+			while (head < stackSize) {
+				int v = stack[head++];
+				for (int k = adjacencyOffsets[v]; k < adjacencyOffsets[v + 1]; k++) {
+					if (removedEdges[adjacentEdges[k]]) {
+						continue;
+					}
+					int w = adjacentNodes[k];
+					if (distance[w] < 0) {
+						distance[w] = distance[v] + 1;
+						stack[stackSize++] = w;
+					}
+					if (distance[w] == distance[v] + 1) {
+						sigma[w] += sigma[v];
+					}
+				}
+			}
+			for (int i = stackSize - 1; i >= 0; i--) {
+				int w = stack[i];
+				for (int k = adjacencyOffsets[w]; k < adjacencyOffsets[w + 1]; k++) {
+					int edgeId = adjacentEdges[k];
+					if (removedEdges[edgeId]) {
+						continue;
+					}
+					int v = adjacentNodes[k];
+					if (distance[v] == distance[w] - 1) {
+						double contribution = sigma[v] / sigma[w] * (1.0 + delta[w]);
+						betweenness[edgeId] += contribution;
+						delta[v] += contribution;
+					}
+				}
+			}
+			for (int i = 0; i < stackSize; i++) {
+				int v = stack[i];
+				distance[v] = -1;
+				sigma[v] = 0.0;
+				delta[v] = 0.0;
+			}
+		}
+	}
+	
+	/**
+	 * Processes a range of sources, either directly or by splitting it in halves.
+	 */
+	private class BetweennessTask extends RecursiveTask<double[]> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int[] sources;
+		private final int from;
+		private final int to;
+		
+		BetweennessTask(int[] sources, int from, int to) {
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected double[] compute() {
+			if (to - from <= sequentialThreshold) {
+				double[] betweenness = new double[numberOfEdges];
+				accumulate(sources, from, to, betweenness);
+				return betweenness;
+			}
+			int middle = (from + to) >>> 1;
+			BetweennessTask left = new BetweennessTask(sources, from, middle);
+			BetweennessTask right = new BetweennessTask(sources, middle, to);
+			left.fork();
+			double[] result = right.compute();
+			double[] leftResult = left.join();
+			for (int e = 0; e < result.length; e++) {
+				result[e] += leftResult[e];
+			}
+			return result;
+		}
+	}
+	
+}
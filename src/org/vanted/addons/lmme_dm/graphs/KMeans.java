@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Clusters points by the k-means algorithm of Lloyd, with the k-means++ initialization.
+ * <p>
+ * The assignment step is computed in parallel. The algorithm is repeated with several initializations and the clustering with the smallest sum of
+ * squared distances is kept. The initializations are drawn from a fixed seed, so the result is deterministic.
+ * <p>
+ * Arthur, D., Vassilvitskii, S. (2007). k-means++: The advantages of careful seeding. Proceedings of the eighteenth annual ACM-SIAM symposium on Discrete
+ * algorithms, 1027-1035.
+ * 
+ * @author Michael Aichem
+ */
+public class KMeans {
+	
+	private static final long SEED = 42L;
+	
+	private static final int MAX_ITERATIONS = 50;
+	
+	/**
+	 * The fraction of points that may still change their cluster when the algorithm is considered converged.
+	 */
+	private static final double CONVERGENCE_TOLERANCE = 0.001;
+	
+	private static final int NUMBER_OF_RUNS = 3;
+	
+	private final double[][] points;
+	
+	private final int k;
+	
+	private int[] clusters;
+	private double cost;
+	
+	/**
+	 * @param points
+	 *           the points, {@code points[i]} being the coordinates of point {@code i}
+	 * @param k
+	 *           the number of clusters
+	 */
+	public KMeans(double[][] points, int k) {
+		this.points = points;
+		this.k = k;
+	}
+	
+	/**
+	 * Performs the clustering.
+	 */
+	public void run() {
+		SplittableRandom random = new SplittableRandom(SEED);
+		clusters = null;
+		cost = Double.MAX_VALUE;
+		for (int run = 0; run < NUMBER_OF_RUNS; run++) {
+			int[] runClusters = new int[points.length];
+			double runCost = cluster(random.split(), runClusters);
+			if (runCost < cost) {
+				cost = runCost;
+				clusters = runClusters;
+			}
+		}
+	}
+	
+	private double cluster(SplittableRandom random, int[] assignment) {
+		int numberOfPoints = points.length;
+		int dimension = numberOfPoints == 0 ? 0 : points[0].length;
+		int numberOfCenters = Math.min(k, numberOfPoints);
+		double[][] centers = new double[numberOfCenters][];
+		if (numberOfCenters == 0) {
+			return 0.0;
+		}
+		
+		// k-means++ initialization, every point becomes the next center with a probability proportional to its squared distance to the closest center
+		double[] distances = new double[numberOfPoints];
+		centers[0] = points[random.nextInt(numberOfPoints)].clone();
+		for (int i = 0; i < numberOfPoints; i++) {
+			distances[i] = squaredDistance(points[i], centers[0]);
+		}
+		for (int c = 1; c < numberOfCenters; c++) {
+			double sum = 0.0;
+			for (double distance : distances) {
+				sum += distance;
+			}
+			int chosen = numberOfPoints - 1;
+			double threshold = random.nextDouble() * sum;
+			for (int i = 0; i < numberOfPoints; i++) {
+				threshold -= distances[i];
+				if (threshold < 0.0) {
+					chosen = i;
+					break;
+				}
+			}
+			centers[c] = points[chosen].clone();
+			for (int i = 0; i < numberOfPoints; i++) {
+				distances[i] = Math.min(distances[i], squaredDistance(points[i], centers[c]));
+			}
+		}
+		
+		for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			int changes = IntStream.range(0, numberOfPoints).parallel().map(i -> {
+				int best = 0;
+				double bestDistance = Double.MAX_VALUE;
+				for (int c = 0; c < numberOfCenters; c++) {
+					double distance = squaredDistance(points[i], centers[c]);
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = c;
+					}
+				}
+				int previous = assignment[i];
+				assignment[i] = best;
+				return previous != best ? 1 : 0;
+			}).sum();
+			if (iteration > 0 && changes <= CONVERGENCE_TOLERANCE * numberOfPoints) {
+				break;
+			}
+			
+			double[][] sums = new double[numberOfCenters][dimension];
+			int[] counts = new int[numberOfCenters];
+			for (int i = 0; i < numberOfPoints; i++) {
+				counts[assignment[i]]++;
+				for (int d = 0; d < dimension; d++) {
+					sums[assignment[i]][d] += points[i][d];
+				}
+			}
+			for (int c = 0; c < numberOfCenters; c++) {
+				// empty clusters keep their center
+				if (counts[c] > 0) {
+					for (int d = 0; d < dimension; d++) {
+						centers[c][d] = sums[c][d] / counts[c];
+					}
+				}
+			}
+		}
+		
+		double res = 0.0;
+		for (int i = 0; i < numberOfPoints; i++) {
+			res += squaredDistance(points[i], centers[assignment[i]]);
+		}
+		return res;
+	}
+	
+	private static double squaredDistance(double[] a, double[] b) {
+		double res = 0.0;
+		for (int d = 0; d < a.length; d++) {
+			double diff = a[d] - b[d];
+			res += diff * diff;
+		}
+		return res;
+	}
+	
+	/**
+	 * @return the cluster of every point, between 0 and {@code k - 1}
+	 */
+	public int[] getClusters() {
+		return clusters;
+	}
+	
+	/**
+	 * @return the sum of the squared distances of all points to the centers of their clusters
+	 */
+	public double getCost() {
+		return cost;
+	}
+	
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Computes a clustering of a {@link CompactGraph} by asynchronous label propagation, treating the graph as undirected.
+ * <p>
+ * Initially, every node has its own label. In every sweep, each node adopts the label that is most frequent among its neighbors, where ties are broken
+ * at random. The nodes are split into contiguous blocks that are processed in parallel, each in a random order drawn from a {@link SplittableRandom} of
+ * its own. Labels are read and written in place, so a node immediately sees the labels that have been updated before it in the same sweep. The sweeps
+ * are repeated until almost every node has one of the most frequent labels of its neighbors, or the maximum number of sweeps is reached. Since the
+ * workers do not synchronize within a sweep, the result may differ between runs.
+ * <p>
+ * Raghavan, U. N., Albert, R., Kumara, S. (2007). Near linear time algorithm to detect community structures in large-scale networks. Physical Review
+ * E, 76(3), 036106.
+ * 
+ * @author Michael Aichem
+ */
+public class LabelPropagation {
+	
+	/**
+	 * The fraction of nodes that may still change their label when the propagation is considered converged. Waiting for all nodes to be stable would take
+	 * many sweeps that hardly change the clustering, since ties keep being broken at random.
+	 */
+	private static final double CONVERGENCE_TOLERANCE = 0.01;
+	
+	private final CompactGraph compactGraph;
+	
+	private final int maxSweeps;
+	
+	private int[] labels;
+	private int numberOfClusters;
+	private int numberOfSweeps;
+	
+	/**
+	 * @param compactGraph
+	 *           the graph to be clustered
+	 * @param maxSweeps
+	 *           the maximum number of sweeps over all nodes
+	 */
+	public LabelPropagation(CompactGraph compactGraph, int maxSweeps) {
+		this.compactGraph = compactGraph;
+		this.maxSweeps = maxSweeps;
+	}
+	
+	/**
+	 * Performs the clustering.
+	 */
+	public void run() {
+		int numberOfNodes = compactGraph.getNumberOfNodes();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		
+		labels = new int[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			labels[i] = i;
+		}
+		
+		int numberOfBlocks = Math.max(1, Math.min(numberOfNodes, 4 * ForkJoinPool.getCommonPoolParallelism()));
+		int[] blockOffsets = new int[numberOfBlocks + 1];
+		for (int b = 0; b <= numberOfBlocks; b++) {
+			blockOffsets[b] = (int) ((long) numberOfNodes * b / numberOfBlocks);
+		}
+		SplittableRandom root = new SplittableRandom();
+		SplittableRandom[] randoms = new SplittableRandom[numberOfBlocks];
+		int[][] orders = new int[numberOfBlocks][];
+		for (int b = 0; b < numberOfBlocks; b++) {
+			randoms[b] = root.split();
+			orders[b] = new int[blockOffsets[b + 1] - blockOffsets[b]];
+			for (int k = 0; k < orders[b].length; k++) {
+				orders[b][k] = blockOffsets[b] + k;
+			}
+		}
+		int[] changes = new int[numberOfBlocks];
+		ThreadLocal<int[]> labelCounts = ThreadLocal.withInitial(() -> new int[numberOfNodes]);
+		ThreadLocal<int[]> touchedLabels = ThreadLocal.withInitial(() -> new int[numberOfNodes]);
+		
+		numberOfSweeps = 0;
+		while (numberOfSweeps < maxSweeps) {
+			numberOfSweeps++;
+			IntStream.range(0, numberOfBlocks).parallel().forEach(b -> {
+				int[] order = orders[b];
+				SplittableRandom random = randoms[b];
+				for (int k = order.length - 1; k > 0; k--) {
+					int j = random.nextInt(k + 1);
+					int tmp = order[k];
+					order[k] = order[j];
+					order[j] = tmp;
+				}
+				int[] count = labelCounts.get();
+				int[] touched = touchedLabels.get();
+				int blockChanges = 0;
+				for (int node : order) {
+					int numberOfTouched = 0;
+					for (int k = adjacencyOffsets[node]; k < adjacencyOffsets[node + 1]; k++) {
+						int label = labels[adjacentNodes[k]];
+						if (count[label]++ == 0) {
+							touched[numberOfTouched++] = label;
+						}
+					}
+					if (numberOfTouched == 0) {
+						continue;
+					}
+					int ownLabel = labels[node];
+					int bestLabel = ownLabel;
+					int bestCount = 0;
+					int ties = 0;
+					for (int t = 0; t < numberOfTouched; t++) {
+						int label = touched[t];
+						if (count[label] > bestCount) {
+							bestCount = count[label];
+							bestLabel = label;
+							ties = 1;
+						} else if (count[label] == bestCount && random.nextInt(++ties) == 0) {
+							// ties are broken uniformly at random
+							bestLabel = label;
+						}
+					}
+					// the propagation has converged as soon as every node has one of the most frequent labels of its neighbors
+					if (count[ownLabel] < bestCount) {
+						blockChanges++;
+					}
+					for (int t = 0; t < numberOfTouched; t++) {
+						count[touched[t]] = 0;
+					}
+					labels[node] = bestLabel;
+				}
+				changes[b] = blockChanges;
+			});
+			if (Arrays.stream(changes).sum() <= CONVERGENCE_TOLERANCE * numberOfNodes) {
+				break;
+			}
+		}
+		
+		// The clusters are numbered consecutively in the order of their smallest nodes.
+		int[] newIds = new int[numberOfNodes];
+		Arrays.fill(newIds, -1);
+		numberOfClusters = 0;
+		for (int i = 0; i < numberOfNodes; i++) {
+			if (newIds[labels[i]] == -1) {
+				newIds[labels[i]] = numberOfClusters++;
+			}
+			labels[i] = newIds[labels[i]];
+		}
+	}
+	
+	/**
+	 * @return the cluster of every node of the graph, numbered consecutively in the order of their smallest nodes
+	 */
+	public int[] getClusters() {
+		return labels;
+	}
+	
+	public int getNumberOfClusters() {
+		return numberOfClusters;
+	}
+	
+	public int getNumberOfSweeps() {
+		return numberOfSweeps;
+	}
+	
+}
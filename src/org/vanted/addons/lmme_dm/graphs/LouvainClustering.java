@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes a clustering of a {@link WeightedGraph} with high modularity by the Louvain method.
+ * <p>
+ * Every level consists of local moving, where nodes are moved to the neighboring cluster with the highest modularity gain until no node can be improved
+ * any further, followed by the aggregation of the clusters into the nodes of the next level. The levels are repeated as long as clusters are merged.
+ * <p>
+ * Local moving is performed in rounds. In each round, the best move of every node is determined in parallel on the assignment at the beginning of the
+ * round. Afterwards, the proposed moves are applied sequentially in the order of the nodes, and a move is only applied if it still improves the
+ * modularity at that point. Thus, moves of neighboring nodes cannot undo each other and the result does not depend on the number of threads.
+ * <p>
+ * Blondel, V. D., Guillaume, J. L., Lambiotte, R., Lefebvre, E. (2008). Fast unfolding of communities in large networks. Journal of Statistical
+ * Mechanics: Theory and Experiment, 2008(10), P10008.
+ * 
+ * @author Michael Aichem
+ */
+public class LouvainClustering {
+	
+	private static final int MAX_ROUNDS_PER_LEVEL = 100;
+	
+	private static final double EPSILON = 1e-12;
+	
+	private final WeightedGraph graph;
+	
+	private final double resolution;
+	
+	private int[] clusters;
+	private int numberOfClusters;
+	private int numberOfLevels;
+	private double modularity;
+	
+	/**
+	 * @param graph
+	 *           the graph to be clustered
+	 * @param resolution
+	 *           the resolution parameter of the modularity, higher values lead to smaller clusters
+	 */
+	public LouvainClustering(WeightedGraph graph, double resolution) {
+		this.graph = graph;
+		this.resolution = resolution;
+	}
+	
+	/**
+	 * Performs the clustering.
+	 */
+	public void run() {
+		int numberOfNodes = graph.getNumberOfNodes();
+		clusters = new int[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			clusters[i] = i;
+		}
+		numberOfClusters = numberOfNodes;
+		numberOfLevels = 0;
+		
+		WeightedGraph levelGraph = graph;
+		while (true) {
+			int[] levelClusters = moveNodes(levelGraph);
+			int numberOfLevelClusters = renumber(levelClusters);
+			if (numberOfLevelClusters == levelGraph.getNumberOfNodes()) {
+				break;
+			}
+			for (int i = 0; i < numberOfNodes; i++) {
+				clusters[i] = levelClusters[clusters[i]];
+			}
+			numberOfClusters = numberOfLevelClusters;
+			numberOfLevels++;
+			levelGraph = levelGraph.aggregate(levelClusters, numberOfLevelClusters);
+		}
+		modularity = computeModularity(levelGraph);
+	}
+	
+	/**
+	 * Performs the local moving on the given graph, starting with singleton clusters.
+	 * 
+	 * @return the cluster of every node
+	 */
+	private int[] moveNodes(WeightedGraph levelGraph) {
+		int numberOfNodes = levelGraph.getNumberOfNodes();
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		double[] adjacentWeights = levelGraph.getAdjacentWeights();
+		double totalWeight = levelGraph.getTotalWeight();
+		if (totalWeight == 0.0) {
+			int[] singletons = new int[numberOfNodes];
+			Arrays.setAll(singletons, i -> i);
+			return singletons;
+		}
+		// the modularity gains are scaled by the total weight, which does not change their order
+		double factor = resolution / (2.0 * totalWeight);
+		
+		int[] levelClusters = new int[numberOfNodes];
+		double[] clusterStrengths = new double[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			levelClusters[i] = i;
+			clusterStrengths[i] = levelGraph.getStrength(i);
+		}
+		
+		int[] proposals = new int[numberOfNodes];
+		ThreadLocal<double[]> weightsToClusters = ThreadLocal.withInitial(() -> new double[numberOfNodes]);
+		ThreadLocal<int[]> touchedClusters = ThreadLocal.withInitial(() -> new int[numberOfNodes]);
+		
+		for (int round = 0; round < MAX_ROUNDS_PER_LEVEL; round++) {
+			
+			IntStream.range(0, numberOfNodes).parallel().forEach(i -> {
+				double[] weightToCluster = weightsToClusters.get();
+				int[] touched = touchedClusters.get();
+				int numberOfTouched = 0;
+				int ownCluster = levelClusters[i];
+				for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+					int neighborCluster = levelClusters[adjacentNodes[k]];
+					if (weightToCluster[neighborCluster] == 0.0) {
+						touched[numberOfTouched++] = neighborCluster;
+					}
+					weightToCluster[neighborCluster] += adjacentWeights[k];
+				}
+				double strength = levelGraph.getStrength(i);
+				double bestGain = weightToCluster[ownCluster] - factor * (clusterStrengths[ownCluster] - strength) * strength;
+				int bestCluster = ownCluster;
+				for (int t = 0; t < numberOfTouched; t++) {
+					int neighborCluster = touched[t];
+					if (neighborCluster != ownCluster) {
+						double gain = weightToCluster[neighborCluster] - factor * clusterStrengths[neighborCluster] * strength;
+						// ties are broken in favor of the cluster with the smaller id
+						if (gain > bestGain + EPSILON || (gain > bestGain - EPSILON && bestCluster != ownCluster && neighborCluster < bestCluster)) {
+							bestGain = gain;
+							bestCluster = neighborCluster;
+						}
+					}
+					weightToCluster[neighborCluster] = 0.0;
+				}
+				proposals[i] = bestCluster;
+			});
+			
+			int moves = 0;
+			for (int i = 0; i < numberOfNodes; i++) {
+				int ownCluster = levelClusters[i];
+				int targetCluster = proposals[i];
+				if (targetCluster == ownCluster) {
+					continue;
+				}
+				// the proposal is based on the assignment at the beginning of the round, so it has to be checked again
+				double weightToOwn = 0.0;
+				double weightToTarget = 0.0;
+				for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+					int neighborCluster = levelClusters[adjacentNodes[k]];
+					if (neighborCluster == ownCluster) {
+						weightToOwn += adjacentWeights[k];
+					} else if (neighborCluster == targetCluster) {
+						weightToTarget += adjacentWeights[k];
+					}
+				}
+				double strength = levelGraph.getStrength(i);
+				double stayGain = weightToOwn - factor * (clusterStrengths[ownCluster] - strength) * strength;
+				double moveGain = weightToTarget - factor * clusterStrengths[targetCluster] * strength;
+				if (moveGain > stayGain + EPSILON) {
+					clusterStrengths[ownCluster] -= strength;
+					clusterStrengths[targetCluster] += strength;
+					levelClusters[i] = targetCluster;
+					moves++;
+				}
+			}
+			if (moves == 0) {
+				break;
+			}
+		}
+		return levelClusters;
+	}
+	
+	/**
+	 * Renumbers the given clusters consecutively in the order of their smallest nodes.
+	 * 
+	 * @return the number of clusters
+	 */
+	private static int renumber(int[] levelClusters) {
+		int[] newIds = new int[levelClusters.length];
+		Arrays.fill(newIds, -1);
+		int count = 0;
+		for (int i = 0; i < levelClusters.length; i++) {
+			if (newIds[levelClusters[i]] == -1) {
+				newIds[levelClusters[i]] = count++;
+			}
+			levelClusters[i] = newIds[levelClusters[i]];
+		}
+		return count;
+	}
+	
+	/**
+	 * Computes the modularity of the clustering, given the graph whose nodes are the final clusters.
+	 */
+	private double computeModularity(WeightedGraph clusterGraph) {
+		double totalWeight = clusterGraph.getTotalWeight();
+		if (totalWeight == 0.0) {
+			return 0.0;
+		}
+		double res = 0.0;
+		for (int c = 0; c < clusterGraph.getNumberOfNodes(); c++) {
+			double fraction = clusterGraph.getStrength(c) / (2.0 * totalWeight);
+			res += clusterGraph.getSelfLoopWeight(c) / totalWeight - resolution * fraction * fraction;
+		}
+		return res;
+	}
+	
+	/**
+	 * @return the cluster of every node of the graph, numbered consecutively in the order of their smallest nodes
+	 */
+	public int[] getClusters() {
+		return clusters;
+	}
+	
+	public int getNumberOfClusters() {
+		return numberOfClusters;
+	}
+	
+	public int getNumberOfLevels() {
+		return numberOfLevels;
+	}
+	
+	public double getModularity() {
+		return modularity;
+	}
+	
+}
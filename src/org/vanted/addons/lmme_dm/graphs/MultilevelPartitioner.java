@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Partitions a {@link WeightedGraph} into parts whose total node weight does not exceed a given bound, while keeping the weight of the cut edges small.
+ * <p>
+ * The partition is computed by recursive bisection, until every part satisfies the bound. Every bisection follows the multilevel scheme: the graph is
+ * coarsened by heavy-edge matchings, the coarsest graph is bisected by graph growing from several start nodes, and the bisection is projected back level
+ * by level, where it is improved by moving boundary nodes with a positive gain. Finally, the sides are rebalanced on the original graph if necessary.
+ * <p>
+ * The node weights are expected to be 0 or 1, e.g. 1 for reactions and 0 for species. Then, every part is guaranteed to satisfy the bound. The result is
+ * deterministic.
+ * <p>
+ * Karypis, G., Kumar, V. (1998). A fast and high quality multilevel scheme for partitioning irregular graphs. SIAM Journal on Scientific Computing,
+ * 20(1), 359-392.
+ * 
+ * @author Michael Aichem
+ */
+public class MultilevelPartitioner {
+	
+	/**
+	 * The number of nodes below which a graph is not coarsened any further.
+	 */
+	private static final int COARSEST_SIZE = 64;
+	
+	private static final int REFINEMENT_PASSES = 8;
+	
+	private static final int INITIAL_TRIALS = 4;
+	
+	private final WeightedGraph graph;
+	
+	private final int[] nodeWeights;
+	
+	private final int maxPartWeight;
+	
+	private int[] parts;
+	private int numberOfParts;
+	
+	/**
+	 * @param graph
+	 *           the graph to be partitioned
+	 * @param nodeWeights
+	 *           the weight of every node, 0 or 1
+	 * @param maxPartWeight
+	 *           the maximum total node weight of a part, at least 1
+	 */
+	public MultilevelPartitioner(WeightedGraph graph, int[] nodeWeights, int maxPartWeight) {
+		this.graph = graph;
+		this.nodeWeights = nodeWeights;
+		this.maxPartWeight = maxPartWeight;
+	}
+	
+	/**
+	 * Performs the partitioning.
+	 */
+	public void run() {
+		int numberOfNodes = graph.getNumberOfNodes();
+		parts = new int[numberOfNodes];
+		numberOfParts = 0;
+		
+		int[] allNodes = new int[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			allNodes[i] = i;
+		}
+		// the node sets are kept in increasing order, and the left side is always processed first
+		ArrayDeque<int[]> pending = new ArrayDeque<>();
+		pending.push(allNodes);
+		while (!pending.isEmpty()) {
+			int[] nodes = pending.pop();
+			long weight = 0;
+			for (int node : nodes) {
+				weight += nodeWeights[node];
+			}
+			if (weight <= maxPartWeight) {
+				for (int node : nodes) {
+					parts[node] = numberOfParts;
+				}
+				numberOfParts++;
+				continue;
+			}
+			
+			int[] subWeights = new int[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				subWeights[i] = nodeWeights[nodes[i]];
+			}
+			// the left side has to take ceil(k / 2) of the k parts that are needed at least
+			long k = (weight + maxPartWeight - 1) / maxPartWeight;
+			long kLeft = (k + 1) / 2;
+			long[] maxWeights = new long[] { kLeft * maxPartWeight, (k - kLeft) * maxPartWeight };
+			long target = weight * kLeft / k;
+			int[] sides = bisect(graph.subgraph(nodes), subWeights, maxWeights, target);
+			
+			int leftSize = 0;
+			for (int side : sides) {
+				if (side == 0) {
+					leftSize++;
+				}
+			}
+			int[] left = new int[leftSize];
+			int[] right = new int[nodes.length - leftSize];
+			int l = 0;
+			int r = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				if (sides[i] == 0) {
+					left[l++] = nodes[i];
+				} else {
+					right[r++] = nodes[i];
+				}
+			}
+			pending.push(right);
+			pending.push(left);
+		}
+	}
+	
+	/**
+	 * Bisects the given graph, such that the weight of side {@code s} does not exceed {@code maxWeights[s]}.
+	 * 
+	 * @return the side, 0 or 1, of every node
+	 */
+	private static int[] bisect(WeightedGraph fineGraph, int[] fineWeights, long[] maxWeights, long target) {
+		
+		ArrayList<WeightedGraph> graphs = new ArrayList<>();
+		ArrayList<int[]> weights = new ArrayList<>();
+		ArrayList<int[]> coarseNodes = new ArrayList<>();
+		graphs.add(fineGraph);
+		weights.add(fineWeights);
+		
+		// coarsening, the weight of coarse nodes is limited such that the initial bisection can still be balanced
+		long maxCoarseWeight = Math.max(1, Math.min(maxWeights[0], maxWeights[1]) / 8);
+		WeightedGraph current = fineGraph;
+		int[] currentWeights = fineWeights;
+		while (current.getNumberOfNodes() > COARSEST_SIZE) {
+			int[] matching = new int[current.getNumberOfNodes()];
+			int numberOfCoarseNodes = match(current, currentWeights, maxCoarseWeight, matching);
+			if (numberOfCoarseNodes > 0.9 * current.getNumberOfNodes()) {
+				break;
+			}
+			int[] coarseWeights = new int[numberOfCoarseNodes];
+			for (int i = 0; i < matching.length; i++) {
+				coarseWeights[matching[i]] += currentWeights[i];
+			}
+			current = current.aggregate(matching, numberOfCoarseNodes);
+			currentWeights = coarseWeights;
+			coarseNodes.add(matching);
+			graphs.add(current);
+			weights.add(currentWeights);
+		}
+		
+		int[] sides = initialBisection(current, currentWeights, maxWeights, target);
+		refine(current, currentWeights, sides, maxWeights);
+		
+		// uncoarsening
+		for (int level = coarseNodes.size() - 1; level >= 0; level--) {
+			int[] matching = coarseNodes.get(level);
+			int[] finerSides = new int[matching.length];
+			for (int i = 0; i < matching.length; i++) {
+				finerSides[i] = sides[matching[i]];
+			}
+			sides = finerSides;
+			refine(graphs.get(level), weights.get(level), sides, maxWeights);
+		}
+		
+		rebalance(fineGraph, fineWeights, sides, maxWeights);
+		return sides;
+	}
+	
+	/**
+	 * Computes a heavy-edge matching, where every node is matched with the unmatched neighbor it shares the heaviest edge with.
+	 * 
+	 * @return the number of coarse nodes
+	 */
+	private static int match(WeightedGraph levelGraph, int[] levelWeights, long maxCoarseWeight, int[] matching) {
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		double[] adjacentWeights = levelGraph.getAdjacentWeights();
+		
+		Arrays.fill(matching, -1);
+		int count = 0;
+		for (int u = 0; u < matching.length; u++) {
+			if (matching[u] != -1) {
+				continue;
+			}
+			int partner = -1;
+			double partnerWeight = 0.0;
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = adjacentNodes[k];
+				if (matching[v] == -1 && v != u && levelWeights[u] + levelWeights[v] <= maxCoarseWeight
+						&& (adjacentWeights[k] > partnerWeight || (adjacentWeights[k] == partnerWeight && v < partner))) {
+					partner = v;
+					partnerWeight = adjacentWeights[k];
+				}
+			}
+			matching[u] = count;
+			if (partner != -1) {
+				matching[partner] = count;
+			}
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Bisects the coarsest graph by growing side 0 in breadth-first order from different start nodes, and keeps the best result.
+	 */
+	private static int[] initialBisection(WeightedGraph levelGraph, int[] levelWeights, long[] maxWeights, long target) {
+		int numberOfNodes = levelGraph.getNumberOfNodes();
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		long totalWeight = 0;
+		for (int weight : levelWeights) {
+			totalWeight += weight;
+		}
+		
+		int[] bestSides = null;
+		double bestCut = Double.MAX_VALUE;
+		long bestViolation = Long.MAX_VALUE;
+		int[] queue = new int[numberOfNodes];
+		for (int trial = 0; trial < Math.min(INITIAL_TRIALS, numberOfNodes); trial++) {
+			int[] sides = new int[numberOfNodes];
+			Arrays.fill(sides, 1);
+			boolean[] visited = new boolean[numberOfNodes];
+			long leftWeight = 0;
+			int head = 0;
+			int tail = 0;
+			int start = trial * numberOfNodes / INITIAL_TRIALS;
+			int scan = 0;
+			while (leftWeight < target) {
+				if (head == tail) {
+					// the first start node depends on the trial, afterwards the growing continues in the next component
+					int next = start;
+					if (visited[start]) {
+						while (scan < numberOfNodes && visited[scan]) {
+							scan++;
+						}
+						if (scan == numberOfNodes) {
+							break;
+						}
+						next = scan;
+					}
+					visited[next] = true;
+					queue[tail++] = next;
+				}
+				int u = queue[head++];
+				if (leftWeight + levelWeights[u] <= maxWeights[0]) {
+					sides[u] = 0;
+					leftWeight += levelWeights[u];
+					for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+						int v = adjacentNodes[k];
+						if (!visited[v]) {
+							visited[v] = true;
+							queue[tail++] = v;
+						}
+					}
+				}
+			}
+			long violation = Math.max(0, leftWeight - maxWeights[0]) + Math.max(0, totalWeight - leftWeight - maxWeights[1]);
+			double cut = computeCut(levelGraph, sides);
+			if (violation < bestViolation || (violation == bestViolation && cut < bestCut)) {
+				bestSides = sides;
+				bestCut = cut;
+				bestViolation = violation;
+			}
+		}
+		return bestSides;
+	}
+	
+	/**
+	 * Improves the given bisection by moving nodes with a positive gain to the other side, as long as the other side does not exceed its maximum weight.
+	 */
+	private static void refine(WeightedGraph levelGraph, int[] levelWeights, int[] sides, long[] maxWeights) {
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		double[] adjacentWeights = levelGraph.getAdjacentWeights();
+		long[] sideWeights = new long[2];
+		for (int u = 0; u < sides.length; u++) {
+			sideWeights[sides[u]] += levelWeights[u];
+		}
+		
+		for (int pass = 0; pass < REFINEMENT_PASSES; pass++) {
+			int moves = 0;
+			for (int u = 0; u < sides.length; u++) {
+				double gain = 0.0;
+				for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+					gain += sides[adjacentNodes[k]] == sides[u] ? -adjacentWeights[k] : adjacentWeights[k];
+				}
+				int from = sides[u];
+				int to = 1 - from;
+				if (gain > 0.0 && sideWeights[to] + levelWeights[u] <= maxWeights[to]) {
+					sides[u] = to;
+					sideWeights[from] -= levelWeights[u];
+					sideWeights[to] += levelWeights[u];
+					moves++;
+				}
+			}
+			if (moves == 0) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Moves nodes from a side that exceeds its maximum weight to the other side, nodes with a higher gain first.
+	 */
+	private static void rebalance(WeightedGraph levelGraph, int[] levelWeights, int[] sides, long[] maxWeights) {
+		long[] sideWeights = new long[2];
+		for (int u = 0; u < sides.length; u++) {
+			sideWeights[sides[u]] += levelWeights[u];
+		}
+		int from;
+		if (sideWeights[0] > maxWeights[0]) {
+			from = 0;
+		} else if (sideWeights[1] > maxWeights[1]) {
+			from = 1;
+		} else {
+			return;
+		}
+		
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		double[] adjacentWeights = levelGraph.getAdjacentWeights();
+		ArrayList<Integer> candidates = new ArrayList<>();
+		double[] gains = new double[sides.length];
+		for (int u = 0; u < sides.length; u++) {
+			if (sides[u] == from && levelWeights[u] > 0) {
+				for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+					gains[u] += sides[adjacentNodes[k]] == from ? -adjacentWeights[k] : adjacentWeights[k];
+				}
+				candidates.add(Integer.valueOf(u));
+			}
+		}
+		candidates.sort((a, b) -> gains[a] != gains[b] ? Double.compare(gains[b], gains[a]) : Integer.compare(a, b));
+		for (Integer u : candidates) {
+			if (sideWeights[from] <= maxWeights[from]) {
+				break;
+			}
+			sides[u] = 1 - from;
+			sideWeights[from] -= levelWeights[u];
+		}
+	}
+	
+	private static double computeCut(WeightedGraph levelGraph, int[] sides) {
+		int[] offsets = levelGraph.getOffsets();
+		int[] adjacentNodes = levelGraph.getAdjacentNodes();
+		double[] adjacentWeights = levelGraph.getAdjacentWeights();
+		double cut = 0.0;
+		for (int u = 0; u < sides.length; u++) {
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				if (sides[adjacentNodes[k]] != sides[u]) {
+					cut += adjacentWeights[k];
+				}
+			}
+		}
+		return cut / 2.0;
+	}
+	
+	/**
+	 * @return the part of every node, numbered consecutively from 0
+	 */
+	public int[] getParts() {
+		return parts;
+	}
+	
+	public int getNumberOfParts() {
+		return numberOfParts;
+	}
+	
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.IdentityHashMap;
+
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMETools;
+
+import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
+
+/**
+ * A table that stores the SBML role of the nodes of a {@link BaseGraph}.
+ * <p>
+ * The role of a node is read from its attributes exactly once, when the node is added to the index. Afterwards, role checks are simple lookups in an
+ * {@link IdentityHashMap} and do not touch the attribute tree anymore. The index is maintained by the {@link BaseGraph} whenever nodes are added to or
+ * removed from its working graph.
+ * <p>
+ * An index may have a parent index, which is consulted first. This allows several base graphs to share the roles of the nodes of the original graph while
+ * keeping the roles of their working nodes separate. The index of the original nodes is {@link #freeze() frozen} once it has been filled. A frozen index is
+ * immutable and is read without synchronization, such that role checks in parallel loops do not contend for a lock. Only the roles of the working nodes,
+ * which change with the cloning, are guarded by the lock of their index.
+ *
+ * @author Michael Aichem
+ */
+public class NodeRoleIndex {
+	
+	public static final byte ROLE_OTHER = 0;
+	public static final byte ROLE_SPECIES = 1;
+	public static final byte ROLE_REACTION = 2;
+	
+	/**
+	 * Returned by {@link #lookupRole(Node)} for nodes that are not contained in the index.
+	 */
+	public static final byte ROLE_UNKNOWN = -1;
+	
+	/**
+	 * The roles of the nodes, guarded by this index until it is frozen.
+	 */
+	private IdentityHashMap<Node, Byte> roles = new IdentityHashMap<>();
+	
+	/**
+	 * The roles of the nodes once the index has been frozen, or {@code null} before. The map is never modified after it has been published.
+	 */
+	private volatile IdentityHashMap<Node, Byte> frozenRoles;
+	
+	private final NodeRoleIndex parent;
+	
+	public NodeRoleIndex() {
+		this(null);
+	}
+	
+	/**
+	 * Creates an index that falls back to the given parent index.
+	 * 
+	 * @param parent
+	 *           the parent index, which is not modified by this index, or {@code null}
+	 */
+	public NodeRoleIndex(NodeRoleIndex parent) {
+		this.parent = parent;
+	}
+	
+	/**
+	 * Reads the role of the given node from its attributes and adds it to the index.
+	 * 
+	 * @param node
+	 *           the node to be added
+	 * @return the role of the node
+	 */
+	public synchronized byte add(Node node) {
+		byte role = readRole(node);
+		add(node, role);
+		return role;
+	}
+	
+	/**
+	 * Adds the given node with an already known role to the index, e.g. for copies of nodes that are already indexed.
+	 * 
+	 * @param node
+	 *           the node to be added
+	 * @param role
+	 *           the role of the node
+	 */
+	public synchronized void add(Node node, byte role) {
+		checkNotFrozen();
+		roles.put(node, Byte.valueOf(role));
+	}
+	
+	public synchronized void remove(Node node) {
+		checkNotFrozen();
+		roles.remove(node);
+	}
+	
+	/**
+	 * Makes this index immutable, such that it can be read from several threads without synchronization.
+	 */
+	public synchronized void freeze() {
+		if (frozenRoles == null) {
+			frozenRoles = roles;
+			roles = null;
+		}
+	}
+	
+	private void checkNotFrozen() {
+		if (frozenRoles != null) {
+			throw new IllegalStateException("The role index has been frozen.");
+		}
+	}
+	
+	public boolean contains(Node node) {
+		return lookupRole(node) != ROLE_UNKNOWN;
+	}
+	
+	/**
+	 * Gets the role of the given node if it is contained in this index or its parent.
+	 * <p>
+	 * The parent and a frozen index are read without locking, only the roles that may still change are read under the lock of this index.
+	 * 
+	 * @param node
+	 *           the requested node
+	 * @return the role of the node or {@link #ROLE_UNKNOWN} if it is not contained in the index
+	 */
+	public byte lookupRole(Node node) {
+		if (parent != null) {
+			byte role = parent.lookupRole(node);
+			if (role != ROLE_UNKNOWN) {
+				return role;
+			}
+		}
+		IdentityHashMap<Node, Byte> frozen = frozenRoles;
+		Byte role;
+		if (frozen != null) {
+			role = frozen.get(node);
+		} else {
+			synchronized (this) {
+				role = roles == null ? frozenRoles.get(node) : roles.get(node);
+			}
+		}
+		return role == null ? ROLE_UNKNOWN : role.byteValue();
+	}
+	
+	/**
+	 * Gets the role of the given node.
+	 * 
+	 * @param node
+	 *           the requested node
+	 * @return the role of the node or {@link #ROLE_OTHER} if it is not contained in the index
+	 */
+	public byte getRole(Node node) {
+		byte role = lookupRole(node);
+		return role == ROLE_UNKNOWN ? ROLE_OTHER : role;
+	}
+	
+	public boolean isSpecies(Node node) {
+		return getRole(node) == ROLE_SPECIES;
+	}
+	
+	public boolean isReaction(Node node) {
+		return getRole(node) == ROLE_REACTION;
+	}
+	
+	/**
+	 * Determines the role of a node from its SBML attributes.
+	 * 
+	 * @param node
+	 *           the node to be checked
+	 * @return the role of the node
+	 */
+	public static byte readRole(Node node) {
+		if (LMMETools.getInstance().isRole(node, SBML_Constants.ROLE_SPECIES)) {
+			return ROLE_SPECIES;
+		} else if (LMMETools.getInstance().isRole(node, SBML_Constants.ROLE_REACTION)) {
+			return ROLE_REACTION;
+		} else {
+			return ROLE_OTHER;
+		}
+	}
+	
+}
@@ -33,13 +33,16 @@ import org.graffiti.selection.SelectionEvent;
 import org.graffiti.selection.SelectionListener;
 import org.graffiti.session.EditorSession;
 import org.vanted.addons.lmme_dm.core.LMMEController;
-import org.vanted.addons.lmme_dm.core.LMMETools;
 import org.vanted.addons.lmme_dm.decomposition.MMDecomposition;
 import org.vanted.addons.lmme_dm.ui.LMMETab;
 import org.vanted.addons.lmme_dm.ui.LMMEViewManagement;
 
 /**
  * Maintains the generated overview graph, which models the relationships between the individual subsystems.
+ * <p>
+ * If the decomposition groups its subsystems hierarchically (see {@link MMDecomposition#addSuperSubsystem(SubsystemGraph, ArrayList)}), an overview
+ * graph shows only one level of the hierarchy: the top level, or the children of one super-subsystem. The overview graphs of the children are built on
+ * demand by {@link #getChildOverview(SubsystemGraph)} and kept, such that every level is constructed and laid out at most once.
  *
  * @author Michael Aichem
  */
@@ -54,8 +57,37 @@ public class OverviewGraph {
 	
 	private boolean containsInterfaceNodes;
 	
+	/**
+	 * The overview graph of the level above, or {@code null} for the top level.
+	 */
+	private OverviewGraph parent;
+	
+	/**
+	 * The super-subsystem whose children are shown, or {@code null} for the top level.
+	 */
+	private SubsystemGraph superSubsystem;
+	
+	/**
+	 * The subsystems and super-subsystems that are shown as nodes on this level.
+	 */
+	private ArrayList<SubsystemGraph> shownSubsystems;
+	
+	/**
+	 * The overview graphs of the children of the super-subsystems on this level, built on first request.
+	 */
+	private HashMap<SubsystemGraph, OverviewGraph> childOverviews;
+	
+	/**
+	 * The interfaces between the shown subsystems. Only pairs of subsystems that share interfaces are contained.
+	 */
 	private HashMap<SubsystemGraph, HashMap<SubsystemGraph, ArrayList<Node>>> interfaceMap;
 	
+	/**
+	 * The interfaces between the subsystems of the decomposition, which are shared by all levels. Only pairs of subsystems that share interfaces are
+	 * contained.
+	 */
+	private HashMap<SubsystemGraph, HashMap<SubsystemGraph, ArrayList<Node>>> subsystemInterfaceMap;
+	
 	// private ArrayList<String> interfaces = new ArrayList<>();
 	
 	/**
@@ -84,26 +116,63 @@ public class OverviewGraph {
 	 * <p>
 	 * During execution, the decomposition is processed to create an overview graph. This is done by creating one node per subsystem and successively determining
 	 * interfaces between the given subsystems and adding respective edges connecting the subsystems.
+	 * If the decomposition is hierarchical, the top level of the hierarchy is shown.
 	 * 
 	 * @param decomposition
 	 *           the underlying decomposition
 	 */
 	public OverviewGraph(MMDecomposition decomposition, boolean showInterfaces) {
+		this(decomposition, showInterfaces, null, null);
+	}
+	
+	/**
+	 * Constructs the overview graph of the children of the given super-subsystem.
+	 * 
+	 * @param decomposition
+	 *           the underlying decomposition
+	 * @param parent
+	 *           the overview graph of the level above, {@code null} for the top level
+	 * @param superSubsystem
+	 *           the super-subsystem whose children are shown, {@code null} for the top level
+	 */
+	private OverviewGraph(MMDecomposition decomposition, boolean showInterfaces, OverviewGraph parent, SubsystemGraph superSubsystem) {
 		this.nodeToSubsystemMap = new HashMap<>();
 		this.subsystemToNodeMap = new HashMap<>();
 		this.edgeToInterfacesMap = new HashMap<>();
 		this.interfaceToNewNodeMap = new HashMap<>();
+		this.childOverviews = new HashMap<>();
 		this.containsInterfaceNodes = showInterfaces;
 		Random random = new Random();
 		
 		this.decomposition = decomposition;
-		determineInterfaces();
+		this.parent = parent;
+		this.superSubsystem = superSubsystem;
+		this.shownSubsystems = superSubsystem == null ? decomposition.getTopLevelSubsystems() : decomposition.getChildren(superSubsystem);
 		
-		this.graph = new AdjListGraph();
+		HashMap<SubsystemGraph, SubsystemGraph> representatives = new HashMap<>();
+		for (SubsystemGraph subsystem : decomposition.getSubsystems()) {
+			SubsystemGraph representative = decomposition.getAncestorWithin(subsystem, superSubsystem);
+			if (representative != null) {
+				representatives.put(subsystem, representative);
+			}
+		}
+		this.interfaceMap = determineInterfaces(representatives);
+		if (parent != null) {
+			this.subsystemInterfaceMap = parent.subsystemInterfaceMap;
+		} else if (decomposition.isHierarchical()) {
+			HashMap<SubsystemGraph, SubsystemGraph> identity = new HashMap<>();
+			for (SubsystemGraph subsystem : decomposition.getSubsystems()) {
+				identity.put(subsystem, subsystem);
+			}
+			this.subsystemInterfaceMap = determineInterfaces(identity);
+		} else {
+			this.subsystemInterfaceMap = this.interfaceMap;
+		}
 		
-		ArrayList<SubsystemGraph> subsystems = this.decomposition.getSubsystems();
+		this.graph = new AdjListGraph();
+		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
 		
-		for (SubsystemGraph subsystem : subsystems) {
+		for (SubsystemGraph subsystem : this.shownSubsystems) {
 			
 			Node subsystemNode = graph.addNode(
 					AttributeHelper.getDefaultGraphicsAttributeForNode(random.nextInt(1000), random.nextInt(1000)));
@@ -114,10 +183,10 @@ public class OverviewGraph {
 			nodeToSubsystemMap.put(subsystemNode, subsystem);
 		}
 		
-		for (int i = 0; i < this.decomposition.getSubsystems().size(); i++) {
-			for (int j = i + 1; j < this.decomposition.getSubsystems().size(); j++) {
-				SubsystemGraph subsystem1 = this.decomposition.getSubsystems().get(i);
-				SubsystemGraph subsystem2 = this.decomposition.getSubsystems().get(j);
+		for (int i = 0; i < this.shownSubsystems.size(); i++) {
+			for (int j = i + 1; j < this.shownSubsystems.size(); j++) {
+				SubsystemGraph subsystem1 = this.shownSubsystems.get(i);
+				SubsystemGraph subsystem2 = this.shownSubsystems.get(j);
 				int totalInterfaces = getInterfaceNodes(subsystem1, subsystem2).size()
 						+ getInterfaceNodes(subsystem2, subsystem1).size();
 				if (totalInterfaces > 0) {
@@ -131,7 +200,7 @@ public class OverviewGraph {
 					if (showInterfaces) {
 						for (Node interfaceNode : interfaceSet) {
 							if (!interfaceToNewNodeMap.containsKey(interfaceNode)) {
-								Node newInterfaceNode = graph.addNodeCopy(interfaceNode);
+								Node newInterfaceNode = baseGraph.copyNode(graph, interfaceNode);
 								AttributeHelper.setSize(newInterfaceNode, nodeSizeInterface, nodeSizeInterface);
 								interfaceToNewNodeMap.put(interfaceNode, newInterfaceNode);
 							}
@@ -184,25 +253,135 @@ public class OverviewGraph {
 	}
 	
 	/**
-	 * Gets the node within the overview graph of the specified subsystem.
+	 * Gets the node within the overview graph of the specified subsystem. If the subsystem is part of a super-subsystem that is shown on this level, the
+	 * node of the super-subsystem is returned.
 	 * 
 	 * @param subsystem
 	 *           the subsystem
-	 * @return the corresponding node within the overview graph
+	 * @return the corresponding node within the overview graph or {@code null} if the subsystem does not belong to this level
 	 */
 	public Node getNodeOfSubsystem(SubsystemGraph subsystem) {
-		return this.subsystemToNodeMap.get(subsystem);
+		Node res = this.subsystemToNodeMap.get(subsystem);
+		if (res == null) {
+			SubsystemGraph representative = this.decomposition.getAncestorWithin(subsystem, this.superSubsystem);
+			if (representative != null) {
+				res = this.subsystemToNodeMap.get(representative);
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets the subsystems and super-subsystems that are shown as nodes on this level.
+	 * 
+	 * @return the shown subsystems
+	 */
+	public ArrayList<SubsystemGraph> getShownSubsystems() {
+		return this.shownSubsystems;
+	}
+	
+	/**
+	 * Gets the overview graph of the children of the given super-subsystem, which is constructed on the first request.
+	 * 
+	 * @param superSubsystem
+	 *           a super-subsystem shown on this level
+	 * @return the overview graph of its children or {@code null} if it is not a super-subsystem
+	 */
+	public OverviewGraph getChildOverview(SubsystemGraph superSubsystem) {
+		if (!this.decomposition.isSuperSubsystem(superSubsystem)) {
+			return null;
+		}
+		OverviewGraph res = this.childOverviews.get(superSubsystem);
+		if (res == null) {
+			res = new OverviewGraph(this.decomposition, this.containsInterfaceNodes, this, superSubsystem);
+			this.childOverviews.put(superSubsystem, res);
+		}
+		return res;
 	}
 	
 	/**
-	 * Gets the list of interface metabolites that lie between the two specified subsystems.
+	 * Returns whether the overview graph of the children of the given super-subsystem has already been constructed.
+	 * 
+	 * @param superSubsystem
+	 *           a super-subsystem shown on this level
+	 * @return whether the child overview graph exists
+	 */
+	public boolean hasChildOverview(SubsystemGraph superSubsystem) {
+		return this.childOverviews.containsKey(superSubsystem);
+	}
+	
+	/**
+	 * @return the overview graph of the level above, or {@code null} for the top level
+	 */
+	public OverviewGraph getParent() {
+		return this.parent;
+	}
+	
+	/**
+	 * @return the overview graph of the top level
+	 */
+	public OverviewGraph getRoot() {
+		OverviewGraph res = this;
+		while (res.parent != null) {
+			res = res.parent;
+		}
+		return res;
+	}
+	
+	/**
+	 * @return the super-subsystem whose children are shown, or {@code null} for the top level
+	 */
+	public SubsystemGraph getSuperSubsystem() {
+		return this.superSubsystem;
+	}
+	
+	/**
+	 * Gets the interface species that are drawn as separate nodes within the overview graph.
+	 * 
+	 * @return the interface species, empty if the interfaces are not shown
+	 */
+	public Set<Node> getShownInterfaceNodes() {
+		return this.interfaceToNewNodeMap.keySet();
+	}
+	
+	/**
+	 * Gets the node within the overview graph of the specified interface species.
+	 * 
+	 * @param interfaceNode
+	 *           the interface species within the base graph
+	 * @return the corresponding node within the overview graph or {@code null} if it is not shown
+	 */
+	public Node getNodeOfInterface(Node interfaceNode) {
+		return this.interfaceToNewNodeMap.get(interfaceNode);
+	}
+	
+	/**
+	 * Returns whether the interfaces are drawn as separate nodes in the overview graph.
+	 * 
+	 * @return whether the interfaces are shown
+	 */
+	public boolean isShowingInterfaces() {
+		return this.containsInterfaceNodes;
+	}
+	
+	/**
+	 * Gets the list of interface metabolites that lie between the two specified subsystems. These may either be subsystems of the decomposition or
+	 * super-subsystems shown on this level.
 	 * 
 	 * @param subsystem1
 	 * @param subsystem2
 	 * @return the list of interface metabolites between the subsystems
 	 */
 	public ArrayList<Node> getInterfaceNodes(SubsystemGraph subsystem1, SubsystemGraph subsystem2) {
-		return this.interfaceMap.get(subsystem1).get(subsystem2);
+		HashMap<SubsystemGraph, HashMap<SubsystemGraph, ArrayList<Node>>> map = this.subsystemInterfaceMap;
+		if (this.subsystemToNodeMap.containsKey(subsystem1) && this.subsystemToNodeMap.containsKey(subsystem2)) {
+			map = this.interfaceMap;
+		}
+		HashMap<SubsystemGraph, ArrayList<Node>> interfaces = map.get(subsystem1);
+		if (interfaces == null || !interfaces.containsKey(subsystem2)) {
+			return new ArrayList<>();
+		}
+		return interfaces.get(subsystem2);
 	}
 	
 	/**
@@ -258,7 +437,7 @@ public class OverviewGraph {
 					Edge edge = edges.iterator().next();
 					ArrayList<String> names = new ArrayList<String>();
 					for (Node interfaceNode : edgeToInterfacesMap.get(edge)) {
-						names.add(AttributeHelper.getLabel(interfaceNode, ""));
+						names.add(LMMEController.getInstance().getCurrentSession().getBaseGraph().getLabel(interfaceNode));
 					}
 					tab.showSelectedEdgeInfo(nodeToSubsystemMap.get(edge.getSource()).getName(),
 							nodeToSubsystemMap.get(edge.getTarget()).getName(), names);
@@ -283,46 +462,69 @@ public class OverviewGraph {
 	 * Interfaces in this case refers to species that act as connection between subsystems. In
 	 * this implementation, a species s is considered to be an interface between
 	 * subsystems S1 and S2 if and only if s has at least one in-neighbor from S1
-	 * and at least one out-neighbor from S2. During this method,
-	 * {@link interfaceMap} is set.
+	 * and at least one out-neighbor from S2.
+	 * <p>
+	 * The subsystems of the decomposition are replaced by their representatives, such that the interfaces between super-subsystems are determined in
+	 * the same way. Only pairs of representatives that share interfaces are contained in the result.
+	 * 
+	 * @param representatives
+	 *           maps every subsystem of the decomposition that is taken into account to its representative
+	 * @return the interfaces between the representatives
 	 */
-	private void determineInterfaces() {
-		ArrayList<SubsystemGraph> subsystems = this.decomposition.getSubsystems();
+	private HashMap<SubsystemGraph, HashMap<SubsystemGraph, ArrayList<Node>>> determineInterfaces(
+			HashMap<SubsystemGraph, SubsystemGraph> representatives) {
+		
+		HashMap<SubsystemGraph, HashMap<SubsystemGraph, ArrayList<Node>>> res = new HashMap<>();
 		
-		// Initialise HashMap(s)
-		interfaceMap = new HashMap<>();
-		for (SubsystemGraph subsystem1 : subsystems) {
-			HashMap<SubsystemGraph, ArrayList<Node>> hmap = new HashMap<>();
-			for (SubsystemGraph subsystem2 : subsystems) {
-				if (subsystem2 != subsystem1) {
-					ArrayList<Node> nodeList = new ArrayList<>();
-					hmap.put(subsystem2, nodeList);
+		CompactGraph compactGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph().getCompactGraph();
+		int[] adjacencyOffsets = compactGraph.getAdjacencyOffsets();
+		int[] adjacentNodes = compactGraph.getAdjacentNodes();
+		int numberOfSpecies = compactGraph.getNumberOfSpecies();
+		
+		// Look up the representatives of every reaction only once instead of once per neighbouring species.
+		ArrayList<ArrayList<SubsystemGraph>> reactionSubsystems = new ArrayList<>(compactGraph.getNumberOfReactions());
+		for (int i = numberOfSpecies; i < compactGraph.getNumberOfNodes(); i++) {
+			ArrayList<SubsystemGraph> subsystemsOfReaction = this.decomposition.getSubsystemsForReaction(compactGraph.getNode(i));
+			ArrayList<SubsystemGraph> representativesOfReaction = null;
+			if (subsystemsOfReaction != null) {
+				representativesOfReaction = new ArrayList<>(subsystemsOfReaction.size());
+				for (SubsystemGraph subsystem : subsystemsOfReaction) {
+					SubsystemGraph representative = representatives.get(subsystem);
+					if (representative != null) {
+						representativesOfReaction.add(representative);
+					}
 				}
 			}
-			interfaceMap.put(subsystem1, hmap);
+			reactionSubsystems.add(representativesOfReaction);
 		}
 		
-		for (Node speciesNode : LMMEController.getInstance().getCurrentSession().getBaseGraph().getSpeciesNodes()) {
-			
-			Set<Node> neighbours = speciesNode.getNeighbors();
+		for (int species = 0; species < numberOfSpecies; species++) {
 			
 			HashSet<SubsystemGraph> containingSystems = new HashSet<>();
-			for (Node reactionNode : neighbours) {
-				if (LMMETools.getInstance().isReaction(reactionNode)) {
-					containingSystems.addAll(this.decomposition.getSubsystemsForReaction(reactionNode));
+			for (int k = adjacencyOffsets[species]; k < adjacencyOffsets[species + 1]; k++) {
+				int neighbour = adjacentNodes[k];
+				if (compactGraph.isReaction(neighbour)) {
+					ArrayList<SubsystemGraph> subsystemsOfReaction = reactionSubsystems.get(neighbour - numberOfSpecies);
+					if (subsystemsOfReaction != null) {
+						containingSystems.addAll(subsystemsOfReaction);
+					}
 				}
 			}
 			
 			// currently, interfaces correspond to undirected relationships between subsystems.
 			// may be changed in the future.
-			for (SubsystemGraph inSystem : containingSystems) {
-				for (SubsystemGraph outSystem : containingSystems) {
-					if (inSystem != outSystem) {
-						interfaceMap.get(inSystem).get(outSystem).add(speciesNode);
+			if (containingSystems.size() > 1) {
+				Node speciesNode = compactGraph.getNode(species);
+				for (SubsystemGraph inSystem : containingSystems) {
+					for (SubsystemGraph outSystem : containingSystems) {
+						if (inSystem != outSystem) {
+							res.computeIfAbsent(inSystem, k -> new HashMap<>()).computeIfAbsent(outSystem, k -> new ArrayList<>()).add(speciesNode);
+						}
 					}
 				}
 			}
 		}
+		return res;
 	}
 	
 	public Graph getGraph() {
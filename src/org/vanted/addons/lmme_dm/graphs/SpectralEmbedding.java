@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the eigenvectors of the normalized Laplacian {@code L = I - D^(-1/2) A D^(-1/2)} of a connected {@link WeightedGraph} that belong to the
+ * smallest eigenvalues, i.e. its spectral embedding. Self-loops are ignored.
+ * <p>
+ * The eigenvectors are computed by the Lanczos method with full reorthogonalization, applied to a power of the operator {@code (2I - L) / 2}, whose
+ * largest eigenvalues correspond to the smallest ones of {@code L} and whose spectrum lies in {@code [0, 1]}. The matrix is never built, the
+ * matrix-vector products are computed in parallel on the adjacency of the graph. Apart from the graph, only a bounded number of
+ * Lanczos vectors is stored, so the memory is linear in the size of the graph. The small tridiagonal eigenproblem is solved by the Jacobi method. The
+ * start vector is drawn from a fixed seed, so the result is deterministic.
+ * <p>
+ * The embedding can be used for clustering, see {@link KMeans}, or as an initial placement of the nodes, where the second and third eigenvector,
+ * multiplied by {@code D^(-1/2)}, serve as coordinates.
+ * 
+ * @author Michael Aichem
+ */
+public class SpectralEmbedding {
+	
+	private static final long SEED = 42L;
+	
+	private static final double EPSILON = 1e-10;
+	
+	/**
+	 * The power of the operator to which the Lanczos method is applied. Higher powers widen the gap between the wanted and the unwanted part of the
+	 * spectrum, such that fewer Lanczos vectors need to be stored, at the cost of more matrix-vector products.
+	 */
+	private static final int POWER = 8;
+	
+	private final WeightedGraph graph;
+	
+	private final int dimension;
+	
+	private double[] eigenvalues;
+	private double[][] eigenvectors;
+	
+	/**
+	 * @param graph
+	 *           a connected graph
+	 * @param dimension
+	 *           the number of eigenvectors to be computed
+	 */
+	public SpectralEmbedding(WeightedGraph graph, int dimension) {
+		this.graph = graph;
+		this.dimension = dimension;
+	}
+	
+	/**
+	 * Performs the computation.
+	 */
+	public void run() {
+		int numberOfNodes = graph.getNumberOfNodes();
+		int[] offsets = graph.getOffsets();
+		int[] adjacentNodes = graph.getAdjacentNodes();
+		double[] adjacentWeights = graph.getAdjacentWeights();
+		
+		double[] inverseSqrtDegrees = new double[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			double degree = 0.0;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				degree += adjacentWeights[k];
+			}
+			inverseSqrtDegrees[i] = degree > 0.0 ? 1.0 / Math.sqrt(degree) : 0.0;
+		}
+		
+		int maxSteps = Math.min(numberOfNodes, 2 * dimension + 40);
+		double[][] lanczosVectors = new double[maxSteps][];
+		double[] alphas = new double[maxSteps];
+		double[] betas = new double[maxSteps];
+		
+		SplittableRandom random = new SplittableRandom(SEED);
+		double[] start = new double[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			start[i] = random.nextDouble() - 0.5;
+		}
+		scale(start, 1.0 / norm(start));
+		lanczosVectors[0] = start;
+		
+		int steps = 0;
+		while (steps < maxSteps) {
+			double[] v = lanczosVectors[steps];
+			double[] w = v;
+			for (int p = 0; p < POWER; p++) {
+				w = multiply(w, offsets, adjacentNodes, adjacentWeights, inverseSqrtDegrees);
+			}
+			alphas[steps] = dot(w, v);
+			steps++;
+			// full reorthogonalization by classical Gram-Schmidt, performed twice to compensate for cancellation
+			orthogonalize(w, lanczosVectors, steps);
+			orthogonalize(w, lanczosVectors, steps);
+			double beta = norm(w);
+			if (steps == maxSteps || beta < EPSILON) {
+				break;
+			}
+			betas[steps - 1] = beta;
+			scale(w, 1.0 / beta);
+			lanczosVectors[steps] = w;
+		}
+		
+		// the eigenpairs of the tridiagonal matrix yield the Ritz pairs
+		double[][] tridiagonal = new double[steps][steps];
+		for (int j = 0; j < steps; j++) {
+			tridiagonal[j][j] = alphas[j];
+			if (j + 1 < steps) {
+				tridiagonal[j][j + 1] = betas[j];
+				tridiagonal[j + 1][j] = betas[j];
+			}
+		}
+		double[][] ritzVectors = new double[steps][steps];
+		double[] ritzValues = jacobi(tridiagonal, ritzVectors);
+		Integer[] order = new Integer[steps];
+		for (int j = 0; j < steps; j++) {
+			order[j] = Integer.valueOf(j);
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(ritzValues[b], ritzValues[a]));
+		
+		int resultDimension = Math.min(dimension, steps);
+		eigenvalues = new double[resultDimension];
+		eigenvectors = new double[resultDimension][numberOfNodes];
+		for (int d = 0; d < resultDimension; d++) {
+			int index = order[d].intValue();
+			for (int j = 0; j < steps; j++) {
+				addScaled(eigenvectors[d], lanczosVectors[j], ritzVectors[j][index]);
+			}
+			// the Ritz values belong to the power of the operator, so the eigenvalue is taken from the Rayleigh quotient instead
+			double[] image = multiply(eigenvectors[d], offsets, adjacentNodes, adjacentWeights, inverseSqrtDegrees);
+			eigenvalues[d] = 2.0 * (1.0 - dot(image, eigenvectors[d]) / dot(eigenvectors[d], eigenvectors[d]));
+		}
+	}
+	
+	/**
+	 * Multiplies the given vector with the operator {@code (2I - L) / 2 = (I + D^(-1/2) A D^(-1/2)) / 2}, in parallel over the rows.
+	 */
+	private static double[] multiply(double[] v, int[] offsets, int[] adjacentNodes, double[] adjacentWeights, double[] inverseSqrtDegrees) {
+		double[] res = new double[v.length];
+		IntStream.range(0, v.length).parallel().forEach(i -> {
+			double sum = 0.0;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				sum += adjacentWeights[k] * v[adjacentNodes[k]] * inverseSqrtDegrees[adjacentNodes[k]];
+			}
+			res[i] = 0.5 * (v[i] + inverseSqrtDegrees[i] * sum);
+		});
+		return res;
+	}
+	
+	/**
+	 * Removes the components of the given vector in the directions of the first {@code size} basis vectors, which have to be orthonormal. The
+	 * projections are computed in parallel.
+	 */
+	private static void orthogonalize(double[] w, double[][] basis, int size) {
+		double[] coefficients = IntStream.range(0, size).parallel().mapToDouble(j -> dot(w, basis[j])).toArray();
+		// the update runs over contiguous blocks of coordinates, so that every basis vector is traversed sequentially
+		int blockSize = 4096;
+		IntStream.range(0, (w.length + blockSize - 1) / blockSize).parallel().forEach(block -> {
+			int from = block * blockSize;
+			int to = Math.min(w.length, from + blockSize);
+			for (int j = 0; j < size; j++) {
+				double coefficient = coefficients[j];
+				double[] vector = basis[j];
+				for (int i = from; i < to; i++) {
+					w[i] -= coefficient * vector[i];
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Computes the eigenvalues and eigenvectors of a small symmetric matrix by the cyclic Jacobi method.
+	 * 
+	 * @param matrix
+	 *           the matrix, which is overwritten
+	 * @param vectors
+	 *           receives the eigenvectors as columns
+	 * @return the eigenvalues
+	 */
+	private static double[] jacobi(double[][] matrix, double[][] vectors) {
+		int n = matrix.length;
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(vectors[i], 0.0);
+			vectors[i][i] = 1.0;
+		}
+		for (int sweep = 0; sweep < 100; sweep++) {
+			double off = 0.0;
+			for (int p = 0; p < n; p++) {
+				for (int q = p + 1; q < n; q++) {
+					off += matrix[p][q] * matrix[p][q];
+				}
+			}
+			if (off < 1e-30) {
+				break;
+			}
+			for (int p = 0; p < n; p++) {
+				for (int q = p + 1; q < n; q++) {
+					if (Math.abs(matrix[p][q]) < 1e-300) {
+						continue;
+					}
+					double theta = (matrix[q][q] - matrix[p][p]) / (2.0 * matrix[p][q]);
+					double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+					if (theta == 0.0) {
+						t = 1.0;
+					}
+					double c = 1.0 / Math.sqrt(t * t + 1.0);
+					double s = t * c;
+					for (int k = 0; k < n; k++) {
+						double mkp = matrix[k][p];
+						double mkq = matrix[k][q];
+						matrix[k][p] = c * mkp - s * mkq;
+						matrix[k][q] = s * mkp + c * mkq;
+					}
+					for (int k = 0; k < n; k++) {
+						double mpk = matrix[p][k];
+						double mqk = matrix[q][k];
+						matrix[p][k] = c * mpk - s * mqk;
+						matrix[q][k] = s * mpk + c * mqk;
+					}
+					for (int k = 0; k < n; k++) {
+						double vkp = vectors[k][p];
+						double vkq = vectors[k][q];
+						vectors[k][p] = c * vkp - s * vkq;
+						vectors[k][q] = s * vkp + c * vkq;
+					}
+				}
+			}
+		}
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = matrix[i][i];
+		}
+		return values;
+	}
+	
+	private static double dot(double[] a, double[] b) {
+		double res = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			res += a[i] * b[i];
+		}
+		return res;
+	}
+	
+	private static double norm(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+	
+	private static void scale(double[] a, double factor) {
+		for (int i = 0; i < a.length; i++) {
+			a[i] *= factor;
+		}
+	}
+	
+	private static void addScaled(double[] a, double[] b, double factor) {
+		for (int i = 0; i < a.length; i++) {
+			a[i] += factor * b[i];
+		}
+	}
+	
+	/**
+	 * @return the smallest eigenvalues of the normalized Laplacian in increasing order
+	 */
+	public double[] getEigenvalues() {
+		return eigenvalues;
+	}
+	
+	/**
+	 * Gets the eigenvectors, where {@code getEigenvectors()[d]} belongs to {@code getEigenvalues()[d]}. There may be less than the requested number of
+	 * eigenvectors, if the graph has less nodes.
+	 * 
+	 * @return the eigenvectors of the normalized Laplacian
+	 */
+	public double[][] getEigenvectors() {
+		return eigenvectors;
+	}
+	
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+/**
+ * A union-find structure over the elements {@code 0, ..., n-1} with union by size and path compression.
+ * <p>
+ * In contrast to the {@link ConcurrentUnionFind}, this structure is not thread-safe, but it keeps track of the size of every set and of the number of
+ * sets, which allows to observe how the sets evolve while elements are merged incrementally.
+ * 
+ * @author Michael Aichem
+ */
+public class UnionFind {
+	
+	private final int[] parent;
+	private final int[] size;
+	
+	private int numberOfSets;
+	
+	public UnionFind(int numberOfElements) {
+		this.parent = new int[numberOfElements];
+		this.size = new int[numberOfElements];
+		for (int i = 0; i < numberOfElements; i++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+		this.numberOfSets = numberOfElements;
+	}
+	
+	/**
+	 * Finds the representative of the set containing the given element.
+	 * 
+	 * @param element
+	 *           the element
+	 * @return the representative of its set
+	 */
+	public int find(int element) {
+		int root = element;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		while (parent[element] != root) {
+			int next = parent[element];
+			parent[element] = root;
+			element = next;
+		}
+		return root;
+	}
+	
+	/**
+	 * Merges the sets containing the given elements.
+	 * 
+	 * @param a
+	 *           an element
+	 * @param b
+	 *           another element
+	 * @return the representative of the merged set
+	 */
+	public int union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA == rootB) {
+			return rootA;
+		}
+		if (size[rootA] < size[rootB]) {
+			int tmp = rootA;
+			rootA = rootB;
+			rootB = tmp;
+		}
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+		numberOfSets--;
+		return rootA;
+	}
+	
+	/**
+	 * Gets the number of elements in the set containing the given element.
+	 * 
+	 * @param element
+	 *           the element
+	 * @return the size of its set
+	 */
+	public int getSize(int element) {
+		return size[find(element)];
+	}
+	
+	public int getNumberOfSets() {
+		return numberOfSets;
+	}
+	
+}
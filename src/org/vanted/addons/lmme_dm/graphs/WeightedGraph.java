@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.graphs;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, undirected graph with edge weights in compressed sparse row (CSR) format, as it is used by the clustering algorithms.
+ * <p>
+ * Every edge between two different nodes is stored once in the adjacency of each of its ends, self-loops are not stored in the adjacency but as a
+ * separate weight per node. Parallel edges are allowed and behave like a single edge with the summed weight.
+ * 
+ * @author Michael Aichem
+ */
+public class WeightedGraph {
+	
+	/**
+	 * The neighbors of node {@code i} are {@code adjacentNodes[offsets[i]], ..., adjacentNodes[offsets[i + 1] - 1]}.
+	 */
+	private final int[] offsets;
+	private final int[] adjacentNodes;
+	private final double[] adjacentWeights;
+	
+	private final double[] selfLoopWeights;
+	
+	/**
+	 * The weighted degree of every node, where a self-loop counts twice.
+	 */
+	private final double[] strengths;
+	
+	private final double totalWeight;
+	
+	private WeightedGraph(int[] offsets, int[] adjacentNodes, double[] adjacentWeights, double[] selfLoopWeights) {
+		this.offsets = offsets;
+		this.adjacentNodes = adjacentNodes;
+		this.adjacentWeights = adjacentWeights;
+		this.selfLoopWeights = selfLoopWeights;
+		
+		int numberOfNodes = selfLoopWeights.length;
+		this.strengths = new double[numberOfNodes];
+		double sum = 0.0;
+		for (int i = 0; i < numberOfNodes; i++) {
+			double strength = 2.0 * selfLoopWeights[i];
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				strength += adjacentWeights[k];
+			}
+			strengths[i] = strength;
+			sum += strength;
+		}
+		this.totalWeight = sum / 2.0;
+	}
+	
+	/**
+	 * Creates the unweighted graph underlying the given {@link CompactGraph}, i.e. every edge receives the weight 1 and directions are ignored.
+	 * 
+	 * @param compactGraph
+	 *           the compact graph
+	 * @return the weighted graph with the same node indices
+	 */
+	public static WeightedGraph fromCompactGraph(CompactGraph compactGraph) {
+		int numberOfEdges = compactGraph.getNumberOfEdges();
+		int[] sources = new int[numberOfEdges];
+		int[] targets = new int[numberOfEdges];
+		for (int e = 0; e < numberOfEdges; e++) {
+			sources[e] = compactGraph.getEdgeSource(e);
+			targets[e] = compactGraph.getEdgeTarget(e);
+		}
+		return fromEdges(compactGraph.getNumberOfNodes(), sources, targets);
+	}
+	
+	/**
+	 * Creates the unweighted graph with the given edges, i.e. every edge receives the weight 1 and directions are ignored.
+	 * 
+	 * @param numberOfNodes
+	 *           the number of nodes
+	 * @param sources
+	 *           the source of every edge
+	 * @param targets
+	 *           the target of every edge
+	 * @return the weighted graph
+	 */
+	public static WeightedGraph fromEdges(int numberOfNodes, int[] sources, int[] targets) {
+		int numberOfEdges = sources.length;
+		
+		int[] offsets = new int[numberOfNodes + 1];
+		double[] selfLoopWeights = new double[numberOfNodes];
+		for (int e = 0; e < numberOfEdges; e++) {
+			int source = sources[e];
+			int target = targets[e];
+			if (source == target) {
+				selfLoopWeights[source] += 1.0;
+			} else {
+				offsets[source + 1]++;
+				offsets[target + 1]++;
+			}
+		}
+		for (int i = 0; i < numberOfNodes; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		
+		int[] adjacentNodes = new int[offsets[numberOfNodes]];
+		double[] adjacentWeights = new double[offsets[numberOfNodes]];
+		Arrays.fill(adjacentWeights, 1.0);
+		int[] position = Arrays.copyOf(offsets, numberOfNodes);
+		for (int e = 0; e < numberOfEdges; e++) {
+			int source = sources[e];
+			int target = targets[e];
+			if (source != target) {
+				adjacentNodes[position[source]++] = target;
+				adjacentNodes[position[target]++] = source;
+			}
+		}
+		return new WeightedGraph(offsets, adjacentNodes, adjacentWeights, selfLoopWeights);
+	}
+	
+	/**
+	 * Creates the graph that has one node per cluster of this graph. The weight of an edge between two clusters is the total weight of the edges between
+	 * them, and the self-loop weight of a cluster is the total weight of the edges within it.
+	 * 
+	 * @param clusters
+	 *           the cluster of every node, numbered from {@code 0} to {@code numberOfClusters - 1}
+	 * @param numberOfClusters
+	 *           the number of clusters
+	 * @return the aggregated graph
+	 */
+	public WeightedGraph aggregate(int[] clusters, int numberOfClusters) {
+		int numberOfNodes = getNumberOfNodes();
+		
+		// the members of every cluster, in CSR format
+		int[] memberOffsets = new int[numberOfClusters + 1];
+		for (int i = 0; i < numberOfNodes; i++) {
+			memberOffsets[clusters[i] + 1]++;
+		}
+		for (int c = 0; c < numberOfClusters; c++) {
+			memberOffsets[c + 1] += memberOffsets[c];
+		}
+		int[] members = new int[numberOfNodes];
+		int[] position = Arrays.copyOf(memberOffsets, numberOfClusters);
+		for (int i = 0; i < numberOfNodes; i++) {
+			members[position[clusters[i]]++] = i;
+		}
+		
+		int[] newOffsets = new int[numberOfClusters + 1];
+		int[] newAdjacentNodes = new int[adjacentNodes.length];
+		double[] newAdjacentWeights = new double[adjacentNodes.length];
+		double[] newSelfLoopWeights = new double[numberOfClusters];
+		
+		double[] weightToCluster = new double[numberOfClusters];
+		int[] touchedClusters = new int[numberOfClusters];
+		int size = 0;
+		for (int c = 0; c < numberOfClusters; c++) {
+			int numberOfTouched = 0;
+			double selfLoopWeight = 0.0;
+			for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+				int member = members[m];
+				selfLoopWeight += selfLoopWeights[member];
+				for (int k = offsets[member]; k < offsets[member + 1]; k++) {
+					int neighborCluster = clusters[adjacentNodes[k]];
+					if (neighborCluster == c) {
+						// every internal edge is seen from both of its ends
+						selfLoopWeight += adjacentWeights[k] / 2.0;
+					} else {
+						if (weightToCluster[neighborCluster] == 0.0) {
+							touchedClusters[numberOfTouched++] = neighborCluster;
+						}
+						weightToCluster[neighborCluster] += adjacentWeights[k];
+					}
+				}
+			}
+			newSelfLoopWeights[c] = selfLoopWeight;
+			Arrays.sort(touchedClusters, 0, numberOfTouched);
+			for (int t = 0; t < numberOfTouched; t++) {
+				int neighborCluster = touchedClusters[t];
+				newAdjacentNodes[size] = neighborCluster;
+				newAdjacentWeights[size] = weightToCluster[neighborCluster];
+				size++;
+				weightToCluster[neighborCluster] = 0.0;
+			}
+			newOffsets[c + 1] = size;
+		}
+		return new WeightedGraph(newOffsets, Arrays.copyOf(newAdjacentNodes, size), Arrays.copyOf(newAdjacentWeights, size),
+				newSelfLoopWeights);
+	}
+	
+	/**
+	 * Creates the subgraph induced by the given nodes. The node {@code nodes[i]} of this graph becomes the node {@code i} of the subgraph.
+	 * 
+	 * @param nodes
+	 *           the nodes of the subgraph in increasing order
+	 * @return the induced subgraph
+	 */
+	public WeightedGraph subgraph(int[] nodes) {
+		int[] newOffsets = new int[nodes.length + 1];
+		int size = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			for (int k = offsets[nodes[i]]; k < offsets[nodes[i] + 1]; k++) {
+				if (Arrays.binarySearch(nodes, adjacentNodes[k]) >= 0) {
+					size++;
+				}
+			}
+			newOffsets[i + 1] = size;
+		}
+		int[] newAdjacentNodes = new int[size];
+		double[] newAdjacentWeights = new double[size];
+		double[] newSelfLoopWeights = new double[nodes.length];
+		size = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			newSelfLoopWeights[i] = selfLoopWeights[nodes[i]];
+			for (int k = offsets[nodes[i]]; k < offsets[nodes[i] + 1]; k++) {
+				int neighbor = Arrays.binarySearch(nodes, adjacentNodes[k]);
+				if (neighbor >= 0) {
+					newAdjacentNodes[size] = neighbor;
+					newAdjacentWeights[size] = adjacentWeights[k];
+					size++;
+				}
+			}
+		}
+		return new WeightedGraph(newOffsets, newAdjacentNodes, newAdjacentWeights, newSelfLoopWeights);
+	}
+	
+	public int getNumberOfNodes() {
+		return selfLoopWeights.length;
+	}
+	
+	public int[] getOffsets() {
+		return offsets;
+	}
+	
+	public int[] getAdjacentNodes() {
+		return adjacentNodes;
+	}
+	
+	public double[] getAdjacentWeights() {
+		return adjacentWeights;
+	}
+	
+	public double getSelfLoopWeight(int index) {
+		return selfLoopWeights[index];
+	}
+	
+	/**
+	 * Gets the weighted degree of the given node, where a self-loop counts twice.
+	 * 
+	 * @param index
+	 *           the node
+	 * @return the weighted degree of the node
+	 */
+	public double getStrength(int index) {
+		return strengths[index];
+	}
+	
+	/**
+	 * Gets the total weight of all edges, including the self-loops.
+	 * 
+	 * @return the total edge weight
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+	
+}
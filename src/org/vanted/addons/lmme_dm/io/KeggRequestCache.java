@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ReleaseInfo;
+
+/**
+ * A persistent cache of the responses of the KEGG REST service, keyed by the KEGG identifier of the queried entry, e.g. {@code rn:R00200}.
+ * <p>
+ * The responses are stored in an append-only data file, where every record consists of the identifier, the time it has been stored and the response. An index file, which is also
+ * only appended to, records the offset of every record, such that opening the cache does not require reading the responses. Records that are missing
+ * in the index, e.g. after an interrupted run, are recovered from the end of the data file, and an incomplete last record is discarded. If an identifier
+ * is stored several times, the last record is valid.
+ * <p>
+ * An empty response denotes an identifier that is unknown to KEGG. Since KEGG is extended over time, such a negative response expires after a given
+ * lifetime, such that the identifier is requested again. Cache files of an older version are discarded.
+ * 
+ * @author Michael Aichem
+ */
+public class KeggRequestCache implements Closeable {
+	
+	private static final int MAGIC = 0x4B454747;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 8;
+	
+	private static final String DATA_FILE_NAME = "kegg-cache.dat";
+	private static final String INDEX_FILE_NAME = "kegg-cache.idx";
+	
+	/**
+	 * The time after which the response for an identifier unknown to KEGG expires, if no other is given.
+	 */
+	public static final long DEFAULT_NEGATIVE_LIFETIME_MILLIS = 7L * 24 * 60 * 60 * 1000;
+	
+	private static KeggRequestCache instance;
+	
+	private RandomAccessFile data;
+	private RandomAccessFile index;
+	
+	/**
+	 * The offset of the valid record of every identifier in the data file.
+	 */
+	private HashMap<String, Long> offsets;
+	
+	private final long negativeLifetimeMillis;
+	
+	/**
+	 * Opens the cache in the given directory, which is created if necessary. Negative responses expire after the
+	 * {@link #DEFAULT_NEGATIVE_LIFETIME_MILLIS}.
+	 * 
+	 * @param directory
+	 *           the directory containing the cache files
+	 * @throws IOException
+	 *            if the cache files cannot be opened or are no cache files
+	 */
+	public KeggRequestCache(File directory) throws IOException {
+		this(directory, DEFAULT_NEGATIVE_LIFETIME_MILLIS);
+	}
+	
+	/**
+	 * Opens the cache in the given directory, which is created if necessary.
+	 * 
+	 * @param directory
+	 *           the directory containing the cache files
+	 * @param negativeLifetimeMillis
+	 *           the time in milliseconds after which the response for an identifier unknown to KEGG expires
+	 * @throws IOException
+	 *            if the cache files cannot be opened or are no cache files
+	 */
+	public KeggRequestCache(File directory, long negativeLifetimeMillis) throws IOException {
+		this.negativeLifetimeMillis = negativeLifetimeMillis;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("The directory " + directory + " could not be created.");
+		}
+		this.offsets = new HashMap<>();
+		this.data = new RandomAccessFile(new File(directory, DATA_FILE_NAME), "rw");
+		this.index = new RandomAccessFile(new File(directory, INDEX_FILE_NAME), "rw");
+		try {
+			checkHeader(this.data, DATA_FILE_NAME);
+			checkHeader(this.index, INDEX_FILE_NAME);
+			readIndex();
+			recoverRecords();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Gets the cache of the user, which is located in the VANTED application folder. It is opened on first request.
+	 * 
+	 * @return the cache, or {@code null} if it cannot be opened
+	 */
+	public static synchronized KeggRequestCache getInstance() {
+		if (instance == null) {
+			try {
+				instance = new KeggRequestCache(new File(ReleaseInfo.getAppFolderWithFinalSep() + "lmme"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Writes the header to an empty file, or checks the header of an existing one. A file of an older version is emptied.
+	 */
+	private static void checkHeader(RandomAccessFile file, String name) throws IOException {
+		if (file.length() >= HEADER_SIZE) {
+			file.seek(0);
+			if (file.readInt() != MAGIC) {
+				throw new IOException("The file " + name + " is not a KEGG cache file.");
+			}
+			int version = file.readInt();
+			if (version > VERSION) {
+				throw new IOException("The KEGG cache file " + name + " has the unsupported version " + version + ".");
+			}
+			if (version == VERSION) {
+				return;
+			}
+		}
+		file.setLength(0);
+		file.writeInt(MAGIC);
+		file.writeInt(VERSION);
+	}
+	
+	/**
+	 * Reads the index. Entries that point beyond the data file are ignored, and an incomplete last entry is cut off.
+	 */
+	private void readIndex() throws IOException {
+		long dataLength = this.data.length();
+		long position = HEADER_SIZE;
+		this.index.seek(position);
+		try {
+			while (position < this.index.length()) {
+				String key = readString(this.index);
+				long offset = this.index.readLong();
+				position = this.index.getFilePointer();
+				if (offset >= HEADER_SIZE && offset < dataLength) {
+					this.offsets.put(key, Long.valueOf(offset));
+				}
+			}
+		} catch (EOFException e) {
+			this.index.setLength(position);
+		}
+	}
+	
+	/**
+	 * Scans the data file behind the last indexed record, adds the records found there to the index, and cuts off an incomplete last record. If the
+	 * index refers to the cut off record, the index is rewritten without it, such that its offset is not taken by the next record.
+	 */
+	private void recoverRecords() throws IOException {
+		long position = HEADER_SIZE;
+		for (Long offset : this.offsets.values()) {
+			position = Math.max(position, offset.longValue());
+		}
+		long dataLength = this.data.length();
+		this.data.seek(position);
+		boolean indexed = !this.offsets.isEmpty();
+		try {
+			while (position < dataLength) {
+				String key = readString(this.data);
+				this.data.readLong();
+				int responseLength = this.data.readInt();
+				if (responseLength < 0 || this.data.getFilePointer() + responseLength > dataLength) {
+					throw new EOFException();
+				}
+				this.data.seek(this.data.getFilePointer() + responseLength);
+				if (!indexed) {
+					this.offsets.put(key, Long.valueOf(position));
+					appendIndexEntry(key, position);
+				}
+				indexed = false;
+				position = this.data.getFilePointer();
+			}
+		} catch (EOFException e) {
+			this.data.setLength(position);
+			final long dataEnd = position;
+			if (this.offsets.values().removeIf(offset -> offset.longValue() >= dataEnd)) {
+				this.index.setLength(HEADER_SIZE);
+				for (Map.Entry<String, Long> entry : this.offsets.entrySet()) {
+					appendIndexEntry(entry.getKey(), entry.getValue().longValue());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the cached response for the given identifier.
+	 * 
+	 * @param key
+	 *           the KEGG identifier
+	 * @return the cached response, which is empty if the identifier is unknown to KEGG, or {@code null} if it has not been cached or the negative
+	 *         response has expired
+	 */
+	public synchronized String get(String key) {
+		Long offset = this.offsets.get(key);
+		if (offset == null) {
+			return null;
+		}
+		try {
+			this.data.seek(offset.longValue());
+			readString(this.data);
+			long time = this.data.readLong();
+			String response = readString(this.data);
+			if (response.isEmpty() && System.currentTimeMillis() - time >= this.negativeLifetimeMillis) {
+				return null;
+			}
+			return response;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores the response for the given identifier.
+	 * 
+	 * @param key
+	 *           the KEGG identifier
+	 * @param response
+	 *           the response, empty if the identifier is unknown to KEGG
+	 */
+	public synchronized void put(String key, String response) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeString(out, key);
+			out.writeLong(System.currentTimeMillis());
+			writeString(out, response);
+			long offset = this.data.length();
+			this.data.seek(offset);
+			this.data.write(bytes.toByteArray());
+			this.offsets.put(key, Long.valueOf(offset));
+			appendIndexEntry(key, offset);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public synchronized boolean contains(String key) {
+		return this.offsets.containsKey(key);
+	}
+	
+	public synchronized int size() {
+		return this.offsets.size();
+	}
+	
+	private void appendIndexEntry(String key, long offset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, key);
+		out.writeLong(offset);
+		this.index.seek(this.index.length());
+		this.index.write(bytes.toByteArray());
+	}
+	
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(RandomAccessFile file) throws IOException {
+		int length = file.readInt();
+		if (length < 0 || file.getFilePointer() + length > file.length()) {
+			throw new EOFException();
+		}
+		byte[] bytes = new byte[length];
+		file.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (this.data != null) {
+				this.data.close();
+			}
+		} finally {
+			if (this.index != null) {
+				this.index.close();
+			}
+		}
+	}
+	
+}
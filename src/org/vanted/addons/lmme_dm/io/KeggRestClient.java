@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+import org.vanted.addons.lmme_dm.core.LMMEConstants;
+
+/**
+ * Retrieves entries from the {@code get} operation of the KEGG REST service.
+ * <p>
+ * Entries that are contained in the {@link KeggRequestCache} are taken from there without any request. The remaining ones are requested in packages of
+ * up to 10 entries, the maximum that KEGG accepts, where a bounded number of packages is requested in parallel. The entries of a response are
+ * assigned to the requested identifiers by their {@code ENTRY} line, and identifiers without an entry in a successful response are unknown to KEGG.
+ * Failed requests are repeated with an exponentially growing delay.
+ * 
+ * @author Michael Aichem
+ */
+public class KeggRestClient {
+	
+	public static final String DEFAULT_BASE_URL = "http://rest.kegg.jp/get/";
+	
+	private static final int PACKAGE_SIZE = 10;
+	
+	private static final int MAX_ATTEMPTS = 4;
+	
+	private static final long INITIAL_BACKOFF_MILLIS = 500L;
+	
+	private static final int TIMEOUT_MILLIS = 30000;
+	
+	private final String baseUrl;
+	
+	private final int parallelism;
+	
+	private final KeggRequestCache cache;
+	
+	private final long initialBackoffMillis;
+	
+	private int numberOfCachedEntries;
+	private int numberOfFailedEntries;
+	
+	/**
+	 * @param baseUrl
+	 *           the URL of the {@code get} operation, ending with a slash, e.g. {@link #DEFAULT_BASE_URL}
+	 * @param parallelism
+	 *           the maximum number of simultaneous requests
+	 * @param cache
+	 *           the cache, may be {@code null}
+	 */
+	public KeggRestClient(String baseUrl, int parallelism, KeggRequestCache cache) {
+		this(baseUrl, parallelism, cache, INITIAL_BACKOFF_MILLIS);
+	}
+	
+	/**
+	 * @param baseUrl
+	 *           the URL of the {@code get} operation, ending with a slash
+	 * @param parallelism
+	 *           the maximum number of simultaneous requests
+	 * @param cache
+	 *           the cache, may be {@code null}
+	 * @param initialBackoffMillis
+	 *           the delay before the first repetition of a failed request, which is doubled for every further one
+	 */
+	KeggRestClient(String baseUrl, int parallelism, KeggRequestCache cache, long initialBackoffMillis) {
+		this.baseUrl = baseUrl;
+		this.parallelism = parallelism;
+		this.cache = cache;
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+	
+	/**
+	 * Gets the entries for the given identifiers.
+	 * 
+	 * @param database
+	 *           the KEGG database prefix, e.g. {@code rn}
+	 * @param ids
+	 *           the identifiers within the database, e.g. {@code R00200}
+	 * @param progress
+	 *           is notified of the number of identifiers that have been processed so far, may be {@code null}
+	 * @return for every identifier that could be retrieved, its entry, which is empty if the identifier is unknown to KEGG
+	 */
+	public HashMap<String, String> getEntries(String database, List<String> ids, IntConsumer progress) {
+		
+		HashMap<String, String> res = new HashMap<>();
+		ArrayList<String> missingIds = new ArrayList<>();
+		for (String id : new LinkedHashSet<>(ids)) {
+			String entry = this.cache == null ? null : this.cache.get(database + ":" + id);
+			if (entry != null) {
+				res.put(id, entry);
+			} else {
+				missingIds.add(id);
+			}
+		}
+		this.numberOfCachedEntries = res.size();
+		this.numberOfFailedEntries = 0;
+		AtomicInteger processed = new AtomicInteger(res.size());
+		if (progress != null) {
+			progress.accept(processed.get());
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.parallelism));
+		try {
+			ArrayList<List<String>> packages = new ArrayList<>();
+			ArrayList<Future<HashMap<String, String>>> futures = new ArrayList<>();
+			for (int start = 0; start < missingIds.size(); start += PACKAGE_SIZE) {
+				List<String> idPackage = missingIds.subList(start, Math.min(missingIds.size(), start + PACKAGE_SIZE));
+				packages.add(idPackage);
+				futures.add(executor.submit(() -> {
+					HashMap<String, String> entries = requestPackage(database, idPackage);
+					if (progress != null) {
+						progress.accept(processed.addAndGet(idPackage.size()));
+					}
+					return entries;
+				}));
+			}
+			for (int p = 0; p < futures.size(); p++) {
+				HashMap<String, String> entries;
+				try {
+					entries = futures.get(p).get();
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+					entries = null;
+				}
+				if (entries == null) {
+					this.numberOfFailedEntries += packages.get(p).size();
+				} else {
+					res.putAll(entries);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return res;
+	}
+	
+	/**
+	 * Requests a package of entries, retrying on failure, and stores the result in the cache.
+	 * 
+	 * @return the entries of the package, or {@code null} if the request has failed
+	 */
+	private HashMap<String, String> requestPackage(String database, List<String> idPackage) throws InterruptedException {
+		StringBuilder query = new StringBuilder();
+		for (String id : idPackage) {
+			if (query.length() > 0) {
+				query.append('+');
+			}
+			query.append(database).append(':').append(id);
+		}
+		
+		String response = null;
+		long backoff = this.initialBackoffMillis;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && response == null; attempt++) {
+			if (attempt > 0) {
+				Thread.sleep(backoff);
+				backoff *= 2;
+			}
+			try {
+				response = request(query.toString());
+			} catch (IOException e) {
+				if (attempt == MAX_ATTEMPTS - 1) {
+					e.printStackTrace();
+				}
+			}
+		}
+		if (response == null) {
+			return null;
+		}
+		
+		HashMap<String, String> res = new HashMap<>();
+		for (String entry : response.split(Pattern.quote(LMMEConstants.KEGGSEP))) {
+			String entryId = getEntryId(entry);
+			for (String id : idPackage) {
+				if (id.equalsIgnoreCase(entryId)) {
+					res.put(id, entry);
+				}
+			}
+		}
+		for (String id : idPackage) {
+			if (!res.containsKey(id)) {
+				res.put(id, "");
+			}
+			if (this.cache != null) {
+				this.cache.put(database + ":" + id, res.get(id));
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Sends a single request.
+	 * 
+	 * @return the response, which is empty if none of the entries is known to KEGG
+	 * @throws IOException
+	 *            if the request has failed and may be repeated
+	 */
+	private String request(String query) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(this.baseUrl + query).openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		try {
+			int responseCode = connection.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+				return "";
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException("KEGG answered " + query + " with HTTP status " + responseCode + ".");
+			}
+			try (InputStream in = connection.getInputStream()) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+				return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Gets the identifier from the {@code ENTRY} line of the given entry.
+	 * 
+	 * @return the identifier, or {@code null} if the entry has no {@code ENTRY} line
+	 */
+	private static String getEntryId(String entry) {
+		for (String line : entry.split("\n")) {
+			if (line.startsWith("ENTRY")) {
+				String[] tokens = line.trim().split("\\s+");
+				return tokens.length > 1 ? tokens[1] : null;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the number of entries of the last call of {@link #getEntries(String, List, IntConsumer)} that have been taken from the cache
+	 */
+	public int getNumberOfCachedEntries() {
+		return numberOfCachedEntries;
+	}
+	
+	/**
+	 * @return the number of entries of the last call of {@link #getEntries(String, List, IntConsumer)} that could not be retrieved
+	 */
+	public int getNumberOfFailedEntries() {
+		return numberOfFailedEntries;
+	}
+	
+}
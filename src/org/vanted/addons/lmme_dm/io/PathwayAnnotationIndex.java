@@ -0,0 +1,429 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.ReleaseInfo;
+import org.vanted.addons.lmme_dm.core.LMMEConstants;
+
+/**
+ * A read-only index from identifiers of reactions or species to the pathways that they are annotated with, built from locally stored annotation
+ * dumps. The following formats are recognized:
+ * <ul>
+ * <li>KEGG link files, i.e. the output of {@code link/pathway/rn} or {@code link/pathway/cpd}, with lines such as {@code rn:R00200 path:rn00010}.
+ * Pathway names are taken from KEGG list files, i.e. the output of {@code list/pathway}, if they are given as well; otherwise the pathway is named by
+ * its map identifier. The pathways in {@link LMMEConstants#INEGLIGIBLE_KEGG_PATHWAYS} are left out.</li>
+ * <li>Reactome mapping files, such as {@code ChEBI2Reactome.txt}, with the identifier in the first and the pathway name in the fourth column.</li>
+ * <li>GMT files, recognized by their file extension, with the pathway name in the first column and the identifiers from the third column on.</li>
+ * </ul>
+ * KEGG identifiers are stored without their database prefix, e.g. {@code R00200}.
+ * <p>
+ * The index is written to a file once and memory-mapped afterwards, so that it does not have to be held on the heap and can be reused across sessions.
+ * The identifiers are sorted by their hash value into a fixed number of buckets, such that a lookup inspects a single bucket of expected constant size,
+ * independent of the size of the dumps. The file consists of a header, the start of every bucket, a record of every identifier, the names of the
+ * pathways, the pathway lists of the identifiers and a pool of strings. Since it is mapped as a whole, it is limited to 2 GB.
+ * 
+ * @author Michael Aichem
+ */
+public class PathwayAnnotationIndex {
+	
+	private static final int MAGIC = 0x4C504149;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 28;
+	
+	/**
+	 * The number of ints per identifier record: the offset of the identifier in the string pool, and the start and the length of its pathway list.
+	 */
+	private static final int RECORD_SIZE = 3;
+	
+	private static final Pattern KEGG_IDENTIFIER = Pattern.compile("\\s*\\w+:\\S+\\s*");
+	
+	/**
+	 * The indexes that have been opened in this run, by the file they are stored in.
+	 */
+	private static final HashMap<File, PathwayAnnotationIndex> OPENED_INDEXES = new HashMap<>();
+	
+	private final ByteBuffer buffer;
+	
+	private final int numberOfBuckets;
+	private final int numberOfIdentifiers;
+	
+	private final int bucketsOffset;
+	private final int recordsOffset;
+	private final int pathwayNamesOffset;
+	private final int pathwayListsOffset;
+	private final int stringPoolOffset;
+	
+	private final String[] pathwayNames;
+	
+	/**
+	 * Maps the given index file.
+	 * 
+	 * @param indexFile
+	 *           a file that has been written by {@link #build(List, File)}
+	 * @throws IOException
+	 *            if the file cannot be read or is no index file
+	 */
+	public PathwayAnnotationIndex(File indexFile) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(indexFile, "r"); FileChannel channel = file.getChannel()) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The file " + indexFile + " is not a pathway annotation index.");
+			}
+			// the mapping stays valid after the channel has been closed
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("The file " + indexFile + " is not a pathway annotation index.");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("The pathway annotation index " + indexFile + " has the unsupported version " + buffer.getInt(4) + ".");
+		}
+		this.numberOfBuckets = buffer.getInt(8);
+		this.numberOfIdentifiers = buffer.getInt(12);
+		int numberOfPathways = buffer.getInt(16);
+		int pathwayListsLength = buffer.getInt(20);
+		this.bucketsOffset = HEADER_SIZE;
+		this.recordsOffset = bucketsOffset + 4 * (numberOfBuckets + 1);
+		this.pathwayNamesOffset = recordsOffset + 4 * RECORD_SIZE * numberOfIdentifiers;
+		this.pathwayListsOffset = pathwayNamesOffset + 4 * numberOfPathways;
+		this.stringPoolOffset = pathwayListsOffset + 4 * pathwayListsLength;
+		if (stringPoolOffset + buffer.getInt(24) != buffer.capacity()) {
+			throw new IOException("The pathway annotation index " + indexFile + " is incomplete.");
+		}
+		
+		this.pathwayNames = new String[numberOfPathways];
+		for (int p = 0; p < numberOfPathways; p++) {
+			pathwayNames[p] = readString(buffer.getInt(pathwayNamesOffset + 4 * p));
+		}
+	}
+	
+	/**
+	 * Gets the index of the given dumps. The index is stored in the VANTED application folder and built only if the dumps have not been indexed
+	 * before or have changed since.
+	 * 
+	 * @param dumps
+	 *           the annotation dumps
+	 * @return the index
+	 * @throws IOException
+	 *            if a dump cannot be read or the index cannot be written
+	 */
+	public static PathwayAnnotationIndex getInstance(List<File> dumps) throws IOException {
+		return getInstance(dumps, new File(ReleaseInfo.getAppFolderWithFinalSep() + "lmme"));
+	}
+	
+	/**
+	 * Gets the index of the given dumps like {@link #getInstance(List)}, but stores it in the given directory.
+	 * 
+	 * @param dumps
+	 *           the annotation dumps
+	 * @param directory
+	 *           the directory of the index file
+	 * @return the index
+	 * @throws IOException
+	 *            if a dump cannot be read or the index cannot be written
+	 */
+	public static synchronized PathwayAnnotationIndex getInstance(List<File> dumps, File directory) throws IOException {
+		File indexFile = new File(directory, String.format("annotations-%016x.idx", Long.valueOf(fingerprint(dumps))));
+		PathwayAnnotationIndex index = OPENED_INDEXES.get(indexFile);
+		if (index == null) {
+			if (!indexFile.isFile()) {
+				build(dumps, indexFile);
+			}
+			index = new PathwayAnnotationIndex(indexFile);
+			OPENED_INDEXES.put(indexFile, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Computes a fingerprint of the paths, sizes and modification times of the given dumps, by the 64-bit FNV-1a hash.
+	 */
+	private static long fingerprint(List<File> dumps) throws IOException {
+		StringBuilder description = new StringBuilder();
+		for (File dump : dumps) {
+			description.append(dump.getCanonicalPath()).append('|').append(dump.length()).append('|').append(dump.lastModified()).append(';');
+		}
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : description.toString().getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Reads the given dumps and writes their index to the given file. The file is replaced only once it has been written completely.
+	 * 
+	 * @param dumps
+	 *           the annotation dumps
+	 * @param indexFile
+	 *           the file to be written
+	 * @throws IOException
+	 *            if a dump cannot be read or the index cannot be written
+	 */
+	public static void build(List<File> dumps, File indexFile) throws IOException {
+		
+		HashMap<String, LinkedHashSet<String>> identifier2pathways = new HashMap<>();
+		HashMap<String, LinkedHashSet<String>> identifier2keggMaps = new HashMap<>();
+		HashMap<String, String> keggMap2name = new HashMap<>();
+		for (File dump : dumps) {
+			readDump(dump, identifier2pathways, identifier2keggMaps, keggMap2name);
+		}
+		for (String identifier : identifier2keggMaps.keySet()) {
+			for (String keggMap : identifier2keggMaps.get(identifier)) {
+				String name = keggMap2name.containsKey(keggMap) ? keggMap2name.get(keggMap) : "map" + keggMap;
+				if (!LMMEConstants.INEGLIGIBLE_KEGG_PATHWAYS.contains(name)) {
+					identifier2pathways.computeIfAbsent(identifier, k -> new LinkedHashSet<>()).add(name);
+				}
+			}
+		}
+		
+		int numberOfIdentifiers = identifier2pathways.size();
+		int numberOfBuckets = 1;
+		while (numberOfBuckets < numberOfIdentifiers / 2) {
+			numberOfBuckets *= 2;
+		}
+		final int mask = numberOfBuckets - 1;
+		ArrayList<String> identifiers = new ArrayList<>(identifier2pathways.keySet());
+		Collections.sort(identifiers, (a, b) -> {
+			int cmp = Integer.compare(bucket(a, mask), bucket(b, mask));
+			return cmp != 0 ? cmp : a.compareTo(b);
+		});
+		
+		ArrayList<String> pathways = new ArrayList<>();
+		HashMap<String, Integer> pathway2index = new HashMap<>();
+		int pathwayListsLength = 0;
+		for (LinkedHashSet<String> identifierPathways : identifier2pathways.values()) {
+			for (String pathway : identifierPathways) {
+				if (!pathway2index.containsKey(pathway)) {
+					pathway2index.put(pathway, Integer.valueOf(pathways.size()));
+					pathways.add(pathway);
+				}
+			}
+			pathwayListsLength += identifierPathways.size();
+		}
+		
+		// the string pool holds the pathway names first, then the identifiers
+		ArrayList<byte[]> strings = new ArrayList<>();
+		int[] pathwayNameOffsets = new int[pathways.size()];
+		int[] identifierOffsets = new int[numberOfIdentifiers];
+		int stringPoolLength = 0;
+		for (int p = 0; p < pathways.size(); p++) {
+			byte[] bytes = pathways.get(p).getBytes(StandardCharsets.UTF_8);
+			strings.add(bytes);
+			pathwayNameOffsets[p] = stringPoolLength;
+			stringPoolLength += 4 + bytes.length;
+		}
+		for (int i = 0; i < numberOfIdentifiers; i++) {
+			byte[] bytes = identifiers.get(i).getBytes(StandardCharsets.UTF_8);
+			strings.add(bytes);
+			identifierOffsets[i] = stringPoolLength;
+			stringPoolLength += 4 + bytes.length;
+		}
+		long fileSize = HEADER_SIZE + 4L * (numberOfBuckets + 1) + 4L * RECORD_SIZE * numberOfIdentifiers + 4L * pathways.size()
+				+ 4L * pathwayListsLength + stringPoolLength;
+		if (stringPoolLength < 0 || fileSize > Integer.MAX_VALUE) {
+			throw new IOException("The annotation dumps are too large to be indexed.");
+		}
+		
+		File directory = indexFile.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("The directory " + directory + " could not be created.");
+		}
+		File temporaryFile = new File(directory, indexFile.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numberOfBuckets);
+			out.writeInt(numberOfIdentifiers);
+			out.writeInt(pathways.size());
+			out.writeInt(pathwayListsLength);
+			out.writeInt(stringPoolLength);
+			
+			int i = 0;
+			for (int b = 0; b <= numberOfBuckets; b++) {
+				while (i < numberOfIdentifiers && bucket(identifiers.get(i), mask) < b) {
+					i++;
+				}
+				out.writeInt(i);
+			}
+			int pathwayListStart = 0;
+			for (i = 0; i < numberOfIdentifiers; i++) {
+				int pathwayListLength = identifier2pathways.get(identifiers.get(i)).size();
+				out.writeInt(identifierOffsets[i]);
+				out.writeInt(pathwayListStart);
+				out.writeInt(pathwayListLength);
+				pathwayListStart += pathwayListLength;
+			}
+			for (int offset : pathwayNameOffsets) {
+				out.writeInt(offset);
+			}
+			for (String identifier : identifiers) {
+				for (String pathway : identifier2pathways.get(identifier)) {
+					out.writeInt(pathway2index.get(pathway).intValue());
+				}
+			}
+			for (byte[] bytes : strings) {
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+		Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Reads a single dump. Pathways of KEGG link files are collected by their map number, since the names may be given in a different file.
+	 */
+	private static void readDump(File dump, HashMap<String, LinkedHashSet<String>> identifier2pathways,
+			HashMap<String, LinkedHashSet<String>> identifier2keggMaps, HashMap<String, String> keggMap2name) throws IOException {
+		boolean isGmt = dump.getName().toLowerCase().endsWith(".gmt");
+		try (BufferedReader reader = Files.newBufferedReader(dump.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				if (isGmt) {
+					for (int c = 2; c < columns.length; c++) {
+						addAnnotation(identifier2pathways, columns[c], columns[0].trim());
+					}
+				} else if (columns.length >= 4 && columns[1].startsWith("R-")) {
+					addAnnotation(identifier2pathways, columns[0], columns[3].trim());
+				} else if (columns.length == 2) {
+					boolean firstIsPathway = columns[0].startsWith("path:");
+					boolean secondIsPathway = columns[1].startsWith("path:");
+					if (firstIsPathway && isKeggIdentifier(columns[1]) && !secondIsPathway) {
+						addAnnotation(identifier2keggMaps, stripPrefix(columns[1]), getKeggMapNumber(columns[0]));
+					} else if (secondIsPathway && isKeggIdentifier(columns[0]) && !firstIsPathway) {
+						addAnnotation(identifier2keggMaps, stripPrefix(columns[0]), getKeggMapNumber(columns[1]));
+					} else {
+						keggMap2name.put(getKeggMapNumber(columns[0]), columns[1].trim());
+					}
+				}
+			}
+		}
+	}
+	
+	private static void addAnnotation(HashMap<String, LinkedHashSet<String>> identifier2pathways, String identifier, String pathway) {
+		String trimmedIdentifier = identifier.trim();
+		if (!trimmedIdentifier.isEmpty() && !pathway.isEmpty()) {
+			identifier2pathways.computeIfAbsent(trimmedIdentifier, k -> new LinkedHashSet<>()).add(pathway);
+		}
+	}
+	
+	private static boolean isKeggIdentifier(String str) {
+		return KEGG_IDENTIFIER.matcher(str).matches();
+	}
+	
+	private static String stripPrefix(String keggIdentifier) {
+		return keggIdentifier.substring(keggIdentifier.indexOf(':') + 1).trim();
+	}
+	
+	/**
+	 * @return the number of a KEGG pathway identifier such as {@code path:rn00010}, i.e. {@code 00010}
+	 */
+	private static String getKeggMapNumber(String pathwayIdentifier) {
+		String res = stripPrefix(pathwayIdentifier);
+		int start = 0;
+		while (start < res.length() && Character.isLetter(res.charAt(start))) {
+			start++;
+		}
+		return res.substring(start);
+	}
+	
+	private static int bucket(String identifier, int mask) {
+		int hash = identifier.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+	
+	/**
+	 * Gets the pathways that the given identifier is annotated with.
+	 * 
+	 * @param identifier
+	 *           the identifier of a reaction or species, KEGG identifiers without their database prefix
+	 * @return the pathways, which are empty if the identifier is not contained in the index
+	 */
+	public List<String> getPathways(String identifier) {
+		int b = bucket(identifier, numberOfBuckets - 1);
+		byte[] query = identifier.getBytes(StandardCharsets.UTF_8);
+		int end = buffer.getInt(bucketsOffset + 4 * (b + 1));
+		for (int i = buffer.getInt(bucketsOffset + 4 * b); i < end; i++) {
+			int record = recordsOffset + 4 * RECORD_SIZE * i;
+			if (stringEquals(buffer.getInt(record), query)) {
+				int start = buffer.getInt(record + 4);
+				int length = buffer.getInt(record + 8);
+				ArrayList<String> res = new ArrayList<>(length);
+				for (int k = 0; k < length; k++) {
+					res.add(pathwayNames[buffer.getInt(pathwayListsOffset + 4 * (start + k))]);
+				}
+				return res;
+			}
+		}
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Compares a string of the pool with the given bytes. Only absolute accesses are used, so that lookups may be performed concurrently.
+	 */
+	private boolean stringEquals(int offset, byte[] bytes) {
+		int position = stringPoolOffset + offset;
+		if (buffer.getInt(position) != bytes.length) {
+			return false;
+		}
+		for (int k = 0; k < bytes.length; k++) {
+			if (buffer.get(position + 4 + k) != bytes[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private String readString(int offset) {
+		int position = stringPoolOffset + offset;
+		byte[] bytes = new byte[buffer.getInt(position)];
+		for (int k = 0; k < bytes.length; k++) {
+			bytes[k] = buffer.get(position + 4 + k);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	public int getNumberOfIdentifiers() {
+		return numberOfIdentifiers;
+	}
+	
+	public int getNumberOfPathways() {
+		return pathwayNames.length;
+	}
+	
+}
@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.graffiti.graph.AdjListGraph;
+import org.graffiti.graph.Graph;
+import org.graffiti.graph.Node;
+import org.vanted.addons.lmme_dm.core.LMMEConstants;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.NodeRoleIndex;
+
+import de.ipk_gatersleben.ag_nw.graffiti.plugins.ios.sbml.SBML_Constants;
+
+/**
+ * Reads an SBML file with a StAX parser directly into the LMME core model, i.e. a {@link BaseGraph} whose roles and attributes are known from the document.
+ * <p>
+ * In contrast to the SBML import of VANTED, no JSBML document is built in memory and no attribute trees are created. The nodes and edges of the graph are
+ * bare and only serve as the identities that the base graph and the decompositions work on. The SBML id, the label and the compartment of every species
+ * and reaction, as well as the CellDesigner ({@code cd19dm}) and MINERVA annotations of the disease maps and the MIRIAM resources of the RDF
+ * annotations, are collected as model attributes and passed to the base graph. From the {@code diagram} annotation of a reaction, its disease map
+ * pathway is derived in the same way as by the {@link org.vanted.addons.lmme_dm.core.LMMEModelIngest}, and a {@code node_type} annotation takes
+ * precedence over the SBML role. Notes are skipped without being parsed. This allows to process models in batch that are too large to be loaded into
+ * the GUI.
+ * <p>
+ * Reactants and modifiers are connected to their reaction by edges towards the reaction, products by edges from the reaction. Species references are
+ * resolved after the whole document has been read, such that the order of the lists in the file does not matter.
+ * 
+ * @author Michael Aichem
+ */
+public class StreamingSBMLReader {
+	
+	private static final String CELL_DESIGNER_PATH = "cd19dm";
+	private static final String MINERVA_PATH = "minerva";
+	
+	private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	
+	private static final Pattern DIAGRAM_SEPARATOR = Pattern.compile(Pattern.quote(";"));
+	
+	private static final int REFERENCE_REACTANT = 0;
+	private static final int REFERENCE_PRODUCT = 1;
+	private static final int REFERENCE_MODIFIER = 2;
+	
+	private Graph graph;
+	
+	private ArrayList<Node> nodes;
+	private ArrayList<Byte> roles;
+	
+	/**
+	 * The attributes of the nodes, keyed by {@link BaseGraph#getModelAttributeKey(String, String)}.
+	 */
+	private IdentityHashMap<Node, HashMap<String, String>> modelAttributes;
+	
+	private HashMap<String, Node> speciesById;
+	private HashMap<String, String> compartmentNames;
+	
+	/**
+	 * The unresolved species references, stored as triples of reaction node, species id and reference type.
+	 */
+	private ArrayList<Node> referenceReactions;
+	private ArrayList<String> referenceSpecies;
+	private ArrayList<Integer> referenceTypes;
+	
+	private int unresolvedReferences;
+	
+	/**
+	 * Reads the given SBML file.
+	 * 
+	 * @param file
+	 *           the SBML file
+	 * @return the graph that has been read
+	 * @throws IOException
+	 *            if the file cannot be read or is no valid XML
+	 */
+	public Graph read(File file) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+			read(in);
+		}
+		graph.setName(file.getAbsolutePath());
+		return graph;
+	}
+	
+	/**
+	 * Reads an SBML document from the given stream. The stream is not closed.
+	 * 
+	 * @param in
+	 *           the stream of the SBML document
+	 * @return the graph that has been read
+	 * @throws IOException
+	 *            if the stream cannot be read or is no valid XML
+	 */
+	public Graph read(InputStream in) throws IOException {
+		graph = new AdjListGraph();
+		nodes = new ArrayList<>();
+		roles = new ArrayList<>();
+		modelAttributes = new IdentityHashMap<>();
+		speciesById = new HashMap<>();
+		compartmentNames = new HashMap<>();
+		referenceReactions = new ArrayList<>();
+		referenceSpecies = new ArrayList<>();
+		referenceTypes = new ArrayList<>();
+		unresolvedReferences = 0;
+		
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not parse SBML: " + e.getMessage(), e);
+		}
+		
+		resolveReferences();
+		return graph;
+	}
+	
+	/**
+	 * Walks through the document and creates the nodes. Species references are only collected.
+	 * 
+	 * @param reader
+	 *           the reader positioned at the start of the document
+	 * @throws XMLStreamException
+	 */
+	private void parse(XMLStreamReader reader) throws XMLStreamException {
+		// the species or reaction whose element is currently read, and the depth of that element
+		Node currentNode = null;
+		int currentNodeDepth = -1;
+		Node currentReaction = null;
+		int referenceType = REFERENCE_REACTANT;
+		int depth = 0;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				switch (reader.getLocalName()) {
+					case "notes":
+						skipElement(reader);
+						depth--;
+						break;
+					case "annotation":
+						// only the annotations of species and reactions are kept, not those of e.g. their species references
+						if (currentNode != null && depth == currentNodeDepth + 1) {
+							readAnnotation(reader, currentNode);
+						} else {
+							skipElement(reader);
+						}
+						depth--;
+						break;
+					case "compartment":
+						String compartmentId = reader.getAttributeValue(null, "id");
+						String compartmentName = reader.getAttributeValue(null, "name");
+						compartmentNames.put(compartmentId, isEmpty(compartmentName) ? compartmentId : compartmentName);
+						break;
+					case "species":
+						currentNode = readSpecies(reader);
+						currentNodeDepth = depth;
+						break;
+					case "reaction":
+						currentReaction = readReaction(reader);
+						currentNode = currentReaction;
+						currentNodeDepth = depth;
+						break;
+					case "listOfReactants":
+						referenceType = REFERENCE_REACTANT;
+						break;
+					case "listOfProducts":
+						referenceType = REFERENCE_PRODUCT;
+						break;
+					case "listOfModifiers":
+						referenceType = REFERENCE_MODIFIER;
+						break;
+					case "speciesReference":
+					case "modifierSpeciesReference":
+						if (currentReaction != null) {
+							referenceReactions.add(currentReaction);
+							referenceSpecies.add(reader.getAttributeValue(null, "species"));
+							referenceTypes.add(Integer.valueOf(referenceType));
+						}
+						break;
+					default:
+						break;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == currentNodeDepth) {
+					applyNodeType(currentNode);
+					currentNode = null;
+					currentNodeDepth = -1;
+					currentReaction = null;
+				}
+				depth--;
+			}
+		}
+	}
+	
+	private Node readSpecies(XMLStreamReader reader) {
+		String id = reader.getAttributeValue(null, "id");
+		String name = reader.getAttributeValue(null, "name");
+		String compartment = reader.getAttributeValue(null, "compartment");
+		
+		Node node = addNode(NodeRoleIndex.ROLE_SPECIES);
+		setAttribute(node, SBML_Constants.SBML, SBML_Constants.SPECIES_ID, id);
+		setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.LABEL_ATTRIBUTE, isEmpty(name) ? id : name);
+		if (!isEmpty(compartment)) {
+			setAttribute(node, SBML_Constants.SBML, SBML_Constants.COMPARTMENT, compartment);
+			String compartmentName = compartmentNames.get(compartment);
+			setAttribute(node, SBML_Constants.SBML, SBML_Constants.SPECIES_COMPARTMENT_NAME,
+					compartmentName == null ? compartment : compartmentName);
+		}
+		speciesById.put(id, node);
+		return node;
+	}
+	
+	private Node readReaction(XMLStreamReader reader) {
+		String id = reader.getAttributeValue(null, "id");
+		String name = reader.getAttributeValue(null, "name");
+		
+		Node node = addNode(NodeRoleIndex.ROLE_REACTION);
+		setAttribute(node, SBML_Constants.SBML, SBML_Constants.REACTION_ID, id);
+		setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.LABEL_ATTRIBUTE, isEmpty(name) ? id : name);
+		return node;
+	}
+	
+	private Node addNode(byte role) {
+		Node node = graph.addNode();
+		nodes.add(node);
+		roles.add(Byte.valueOf(role));
+		modelAttributes.put(node, new HashMap<>());
+		return node;
+	}
+	
+	private void setAttribute(Node node, String path, String attributeName, String attributeValue) {
+		modelAttributes.get(node).put(BaseGraph.getModelAttributeKey(path, attributeName), attributeValue);
+	}
+	
+	private String getAttribute(Node node, String path, String attributeName) {
+		return modelAttributes.get(node).get(BaseGraph.getModelAttributeKey(path, attributeName));
+	}
+	
+	/**
+	 * Reads the CellDesigner and MINERVA annotations of the given node.
+	 * <p>
+	 * Every element within the annotation whose namespace prefix or URI refers to CellDesigner or MINERVA contributes its attributes and, if it contains
+	 * text, its text to the attributes of the node, using its local name as attribute name. The {@code rdf:resource} of every RDF list item, i.e. the
+	 * MIRIAM identifiers of the node, are kept as {@link LMMEConstants#MIRIAM_ATTRIBUTE}. All other annotations are skipped.
+	 * 
+	 * @param reader
+	 *           the reader positioned at the start of the annotation element
+	 * @param node
+	 *           the species or reaction the annotation belongs to
+	 * @throws XMLStreamException
+	 */
+	private void readAnnotation(XMLStreamReader reader, Node node) throws XMLStreamException {
+		int depth = 1;
+		String textPath = null;
+		String textName = null;
+		StringBuilder text = new StringBuilder();
+		StringBuilder resources = new StringBuilder();
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				if (RDF_NAMESPACE.equals(reader.getNamespaceURI()) && "li".equals(reader.getLocalName())) {
+					String resource = reader.getAttributeValue(RDF_NAMESPACE, "resource");
+					if (resource != null && !resource.trim().isEmpty()) {
+						resources.append(resources.length() > 0 ? " " : "").append(resource.trim());
+					}
+				}
+				textPath = getAnnotationPath(reader.getPrefix(), reader.getNamespaceURI());
+				if (textPath != null) {
+					textName = reader.getLocalName();
+					text.setLength(0);
+					for (int i = 0; i < reader.getAttributeCount(); i++) {
+						setAttribute(node, textPath, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+					}
+				}
+			} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				if (textPath != null) {
+					text.append(reader.getText());
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				if (textPath != null) {
+					String value = text.toString().trim();
+					if (!value.isEmpty()) {
+						setAttribute(node, textPath, textName, value);
+					}
+					textPath = null;
+				}
+			}
+		}
+		
+		if (resources.length() > 0) {
+			String previousResources = getAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.MIRIAM_ATTRIBUTE);
+			setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.MIRIAM_ATTRIBUTE,
+					previousResources == null ? resources.toString() : previousResources + " " + resources);
+		}
+		
+		String diagramAnnotation = getAttribute(node, CELL_DESIGNER_PATH, "diagram");
+		if (diagramAnnotation != null) {
+			setAttribute(node, LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.DISEASE_MAP_PATHWAY_ATTRIBUTE,
+					DIAGRAM_SEPARATOR.split(diagramAnnotation)[0]);
+		}
+	}
+	
+	/**
+	 * @return the attribute path for elements of the given namespace, or {@code null} if the namespace is neither CellDesigner nor MINERVA
+	 */
+	private static String getAnnotationPath(String prefix, String namespaceURI) {
+		for (String path : new String[] { CELL_DESIGNER_PATH, MINERVA_PATH }) {
+			if (path.equalsIgnoreCase(prefix) || (namespaceURI != null && namespaceURI.toLowerCase().contains(path))) {
+				return path;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Restores the SBML role of the given node from its CellDesigner {@code node_type} annotation, as done by the
+	 * {@link org.vanted.addons.lmme_dm.core.LMMEModelIngest}.
+	 * 
+	 * @param node
+	 *           the species or reaction whose element has been read completely
+	 */
+	private void applyNodeType(Node node) {
+		String nodeType = getAttribute(node, CELL_DESIGNER_PATH, "node_type");
+		if (nodeType == null) {
+			return;
+		}
+		byte role;
+		if (SBML_Constants.ROLE_SPECIES.equals(nodeType)) {
+			role = NodeRoleIndex.ROLE_SPECIES;
+		} else if (SBML_Constants.ROLE_REACTION.equals(nodeType)) {
+			role = NodeRoleIndex.ROLE_REACTION;
+		} else {
+			role = NodeRoleIndex.ROLE_OTHER;
+		}
+		// the node has been added last
+		roles.set(roles.size() - 1, Byte.valueOf(role));
+	}
+	
+	/**
+	 * Creates the edges for the collected species references.
+	 */
+	private void resolveReferences() {
+		for (int i = 0; i < referenceReactions.size(); i++) {
+			Node speciesNode = speciesById.get(referenceSpecies.get(i));
+			if (speciesNode == null) {
+				unresolvedReferences++;
+				continue;
+			}
+			Node reactionNode = referenceReactions.get(i);
+			if (referenceTypes.get(i).intValue() == REFERENCE_PRODUCT) {
+				graph.addEdge(reactionNode, speciesNode, true);
+			} else {
+				graph.addEdge(speciesNode, reactionNode, true);
+			}
+		}
+		referenceReactions = null;
+		referenceSpecies = null;
+		referenceTypes = null;
+	}
+	
+	/**
+	 * Skips the element the reader is positioned at, including all of its children.
+	 * 
+	 * @param reader
+	 *           the reader positioned at a start element
+	 * @throws XMLStreamException
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+	
+	private static boolean isEmpty(String str) {
+		return (str == null) || str.isEmpty();
+	}
+	
+	/**
+	 * Creates the {@link BaseGraph} for the graph that has been read last, using the roles and attributes that are already known from the document.
+	 * 
+	 * @return the base graph
+	 */
+	public BaseGraph createBaseGraph() {
+		Node[] nodeArray = nodes.toArray(new Node[nodes.size()]);
+		byte[] roleArray = new byte[roles.size()];
+		for (int i = 0; i < roleArray.length; i++) {
+			roleArray[i] = roles.get(i).byteValue();
+		}
+		return new BaseGraph(graph, nodeArray, roleArray, modelAttributes);
+	}
+	
+	public Graph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * Gets the number of species references that could not be resolved, because the referenced species has not been declared.
+	 * 
+	 * @return the number of unresolved species references
+	 */
+	public int getNumberOfUnresolvedReferences() {
+		return unresolvedReferences;
+	}
+	
+}
@@ -18,6 +18,7 @@ import java.awt.Color;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
 
 import org.AttributeHelper;
 import org.graffiti.attributes.CollectionAttribute;
@@ -26,6 +27,7 @@ import org.graffiti.graph.Edge;
 import org.graffiti.graph.Graph;
 import org.graffiti.graph.Node;
 import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.core.LMMESession;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
 
@@ -34,12 +36,14 @@ import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
  * <p>
  * Among others, it is responsible for the resonable combination of selected subsystem graphs to a
  * whole and the addition of further subsystems to an existing drawing.
+ * <p>
+ * Every {@link LMMESession} has its own instance, {@link #getInstance()} returns the one of the current session.
  * 
  * @author Michael Aichem
  */
 public class LMMESubsystemViewManagement {
 	
-	private static LMMESubsystemViewManagement instance;
+	private final LMMESession session;
 	
 	private ArrayList<SubsystemGraph> currentSubsystems;
 	
@@ -51,12 +55,26 @@ public class LMMESubsystemViewManagement {
 	
 	private HashMap<Node, String> node2SubsystemName;
 	
+	/**
+	 * A map that maps a node of the base graph to its copy in the current drawing of the subsystems view.
+	 */
+	private HashMap<Node, Node> nodes2newNodes;
+	
+	private boolean useColor;
+	
 	/**
 	 * The size of a node in the resulting drawing of the consolidated subsystem graph.
 	 */
 	private final int nodeSize = 50;
 	
-	private LMMESubsystemViewManagement() {
+	/**
+	 * Creates the subsystem view management for the given session.
+	 * 
+	 * @param session
+	 *           the session whose subsystems are shown
+	 */
+	public LMMESubsystemViewManagement(LMMESession session) {
+		this.session = session;
 		this.currentSubsystems = new ArrayList<>();
 		colors = new Color[] {
 				new Color(142, 181, 218),
@@ -83,13 +101,11 @@ public class LMMESubsystemViewManagement {
 		defaultColor = Color.GRAY;
 		colorMap = new HashMap<>();
 		node2SubsystemName = new HashMap<>();
+		nodes2newNodes = new HashMap<>();
 	}
 	
-	public static synchronized LMMESubsystemViewManagement getInstance() {
-		if (LMMESubsystemViewManagement.instance == null) {
-			LMMESubsystemViewManagement.instance = new LMMESubsystemViewManagement();
-		}
-		return LMMESubsystemViewManagement.instance;
+	public static LMMESubsystemViewManagement getInstance() {
+		return LMMEController.getInstance().getCurrentSession().getSubsystemViewManagement();
 	}
 	
 	/**
@@ -107,10 +123,11 @@ public class LMMESubsystemViewManagement {
 	 */
 	public void showSubsystems(ArrayList<SubsystemGraph> subsystems, boolean clearView, boolean useColor) {
 		
-		if ((LMMEViewManagement.getInstance().getSubsystemFrame() == null)
-				|| (LMMEViewManagement.getInstance().getSubsystemFrame().isClosed() == true)) {
+		if ((session.getViewManagement().getSubsystemFrame() == null)
+				|| (session.getViewManagement().getSubsystemFrame().isClosed() == true)) {
 			clearView = true;
 		}
+		this.useColor = useColor;
 		if (clearView) {
 			resetLists();
 			int nextColorIndex = 0;
@@ -141,9 +158,10 @@ public class LMMESubsystemViewManagement {
 		updateView(useColor);
 		
 		for (SubsystemGraph subsystem : currentSubsystems) {
-			if (useColor) {
-				AttributeHelper.setFillColor(LMMEController.getInstance().getCurrentSession().getOverviewGraph()
-						.getNodeOfSubsystem(subsystem), colorMap.get(subsystem));
+			// subsystems outside the currently shown level of the overview graph have no node
+			Node overviewNode = session.getOverviewGraph().getNodeOfSubsystem(subsystem);
+			if (useColor && overviewNode != null) {
+				AttributeHelper.setFillColor(overviewNode, colorMap.get(subsystem));
 			}
 		}
 		
@@ -167,13 +185,13 @@ public class LMMESubsystemViewManagement {
 	private void updateView(boolean useColor) {
 		
 		node2SubsystemName.clear();
+		nodes2newNodes.clear();
 		
-		BaseGraph baseGraph = LMMEController.getInstance().getCurrentSession().getBaseGraph();
+		BaseGraph baseGraph = session.getBaseGraph();
 		
 		Graph consolidatedSubsystemGraph = new AdjListGraph(
 				(CollectionAttribute) baseGraph.getOriginalGraph().getAttributes().copy());
 		
-		HashMap<Node, Node> nodes2newNodes = new HashMap<>();
 		HashSet<Edge> addedEdges = new HashSet<>();
 		HashSet<Node> processedInterfaces = new HashSet<>();
 		
@@ -182,7 +200,7 @@ public class LMMESubsystemViewManagement {
 		for (SubsystemGraph subsystem : currentSubsystems) {
 			for (Node speciesNode : subsystem.getSpeciesNodes()) {
 				if (!nodes2newNodes.keySet().contains(speciesNode)) {
-					Node newNode = consolidatedSubsystemGraph.addNodeCopy(speciesNode);
+					Node newNode = baseGraph.copyNode(consolidatedSubsystemGraph, speciesNode);
 					node2SubsystemName.put(newNode, subsystem.getName());
 					AttributeHelper.setSize(newNode, nodeSize, nodeSize);
 					nodes2newNodes.put(speciesNode, newNode);
@@ -193,7 +211,7 @@ public class LMMESubsystemViewManagement {
 			}
 			for (Node reactionNode : subsystem.getReactionNodes()) {
 				if (!nodes2newNodes.keySet().contains(reactionNode)) {
-					Node newNode = consolidatedSubsystemGraph.addNodeCopy(reactionNode);
+					Node newNode = baseGraph.copyNode(consolidatedSubsystemGraph, reactionNode);
 					node2SubsystemName.put(newNode, subsystem.getName());
 					AttributeHelper.setSize(newNode, nodeSize, nodeSize);
 					nodes2newNodes.put(reactionNode, newNode);
@@ -206,7 +224,7 @@ public class LMMESubsystemViewManagement {
 				if (!addedEdges.contains(edge)) {
 					Node sourceNode = nodes2newNodes.get(edge.getSource());
 					Node targetNode = nodes2newNodes.get(edge.getTarget());
-					consolidatedSubsystemGraph.addEdgeCopy(edge, sourceNode, targetNode);
+					baseGraph.copyEdge(consolidatedSubsystemGraph, edge, sourceNode, targetNode);
 					addedEdges.add(edge);
 				}
 			}
@@ -216,13 +234,13 @@ public class LMMESubsystemViewManagement {
 			for (SubsystemGraph targetSystem : currentSubsystems) {
 				if (sourceSystem != targetSystem) {
 					
-					ArrayList<Node> interfaces = LMMEController.getInstance().getCurrentSession().getOverviewGraph()
+					ArrayList<Node> interfaces = session.getOverviewGraph()
 							.getInterfaceNodes(sourceSystem, targetSystem);
 					for (Node interfaceNode : interfaces) {
 						if (!processedInterfaces.contains(interfaceNode)) {
 							processedInterfaces.add(interfaceNode);
 							if (!nodes2newNodes.keySet().contains(interfaceNode)) {
-								Node newNode = consolidatedSubsystemGraph.addNodeCopy(interfaceNode);
+								Node newNode = baseGraph.copyNode(consolidatedSubsystemGraph, interfaceNode);
 								AttributeHelper.setSize(newNode, nodeSize, nodeSize);
 								nodes2newNodes.put(interfaceNode, newNode);
 							} else {
@@ -233,7 +251,7 @@ public class LMMESubsystemViewManagement {
 								if (nodes2newNodes.keySet().contains(inEdge.getSource())
 										&& !addedEdges.contains(inEdge)) {
 									addedEdges.add(inEdge);
-									consolidatedSubsystemGraph.addEdgeCopy(inEdge,
+									baseGraph.copyEdge(consolidatedSubsystemGraph, inEdge,
 											nodes2newNodes.get(inEdge.getSource()), nodes2newNodes.get(interfaceNode));
 								}
 							}
@@ -241,7 +259,7 @@ public class LMMESubsystemViewManagement {
 								if (nodes2newNodes.keySet().contains(outEdge.getTarget())
 										&& !addedEdges.contains(outEdge)) {
 									addedEdges.add(outEdge);
-									consolidatedSubsystemGraph.addEdgeCopy(outEdge, nodes2newNodes.get(interfaceNode),
+									baseGraph.copyEdge(consolidatedSubsystemGraph, outEdge, nodes2newNodes.get(interfaceNode),
 											nodes2newNodes.get(outEdge.getTarget()));
 								}
 							}
@@ -251,7 +269,7 @@ public class LMMESubsystemViewManagement {
 				}
 			}
 		}
-		LMMEViewManagement.getInstance().showAsSubsystemGraph(consolidatedSubsystemGraph);
+		session.getViewManagement().showAsSubsystemGraph(consolidatedSubsystemGraph);
 	}
 	
 	/**
@@ -264,6 +282,44 @@ public class LMMESubsystemViewManagement {
 		return node2SubsystemName.get(node);
 	}
 	
+	/**
+	 * Gets the subsystems that are currently shown in the subsystems view, in the order in which they have been added.
+	 * 
+	 * @return the currently shown subsystems
+	 */
+	public ArrayList<SubsystemGraph> getCurrentSubsystems() {
+		return currentSubsystems;
+	}
+	
+	/**
+	 * Returns whether the color mapping has been used for the current drawing of the subsystems view.
+	 * 
+	 * @return whether the color mapping has been used
+	 */
+	public boolean isColorMappingUsed() {
+		return useColor;
+	}
+	
+	/**
+	 * Gets the nodes of the base graph that are drawn in the subsystems view.
+	 * 
+	 * @return the nodes of the base graph that are drawn
+	 */
+	public Set<Node> getShownNodes() {
+		return nodes2newNodes.keySet();
+	}
+	
+	/**
+	 * Gets the node in the subsystems view that corresponds to the given node of the base graph.
+	 * 
+	 * @param node
+	 *           the node of the base graph
+	 * @return the corresponding node in the subsystems view or {@code null} if it is not shown
+	 */
+	public Node getViewNode(Node node) {
+		return nodes2newNodes.get(node);
+	}
+	
 	/**
 	 * Resets the list of subsystems to be shown as well as the color mapping.
 	 */
@@ -271,16 +327,16 @@ public class LMMESubsystemViewManagement {
 		resetOverviewGraphColoring();
 		this.colorMap.clear();
 		this.currentSubsystems.clear();
+		this.nodes2newNodes.clear();
 	}
 	
 	/**
 	 * Resets the colors of the subsystem nodes in the overview graph.
 	 */
 	public void resetOverviewGraphColoring() {
-		if (LMMEController.getInstance().getCurrentSession().isOverviewGraphConstructed()) {
-			for (SubsystemGraph subsystem : LMMEController.getInstance().getCurrentSession().getOverviewGraph()
-					.getDecomposition().getSubsystems()) {
-				AttributeHelper.setFillColor(LMMEController.getInstance().getCurrentSession().getOverviewGraph()
+		if (session.isOverviewGraphConstructed()) {
+			for (SubsystemGraph subsystem : session.getOverviewGraph().getShownSubsystems()) {
+				AttributeHelper.setFillColor(session.getOverviewGraph()
 						.getNodeOfSubsystem(subsystem), Color.WHITE);
 			}
 		}
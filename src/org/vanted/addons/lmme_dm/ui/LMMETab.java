@@ -19,10 +19,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -45,6 +47,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.AttributeHelper;
 import org.FolderPanel;
@@ -61,6 +64,7 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.statistics.HistogramDataset;
 import org.vanted.addons.lmme_dm.core.LMMEController;
 import org.vanted.addons.lmme_dm.core.LMMESession;
+import org.vanted.addons.lmme_dm.core.LMMESessionSnapshot;
 import org.vanted.addons.lmme_dm.decomposition.MMDecompositionAlgorithm;
 import org.vanted.addons.lmme_dm.graphs.BaseGraph;
 import org.vanted.addons.lmme_dm.graphs.OverviewGraph;
@@ -82,6 +86,9 @@ public class LMMETab extends InspectorTab {
 	
 	private JPanel mainPanel;
 	
+	private JComboBox<LMMESession> cbSession;
+	private boolean updatingSessionList;
+	
 	private JLabel lblSessionInfoBaseGraph;
 	private JLabel lblSessionInfoMetabolites;
 	private JLabel lblSessionInfoReactions;
@@ -115,6 +122,19 @@ public class LMMETab extends InspectorTab {
 	private JCheckBox ckbAddTransporterSubS;
 	private JCheckBox ckbShowInterfaces;
 	private JCheckBox ckbColorInterfaces;
+	private JCheckBox ckbSplitDefaultSubsystem;
+	private JCheckBox ckbSplitLargeSubsystems;
+	private JCheckBox ckbGroupSubsystems;
+	private JCheckBox ckbCacheDecompositionsOnDisk;
+	
+	private final int defaultMinDefaultComponentSize = 5;
+	private JTextField tfMinDefaultComponentSize;
+	
+	private final int defaultMaxSubsystemSize = 200;
+	private JTextField tfMaxSubsystemSize;
+	
+	private final int defaultMaxOverviewLevelSize = 30;
+	private JTextField tfMaxOverviewLevelSize;
 	
 	private JComboBox<String> cbDecompMethod;
 	private JComboBox<String> cbOverviewLayout;
@@ -149,7 +169,8 @@ public class LMMETab extends InspectorTab {
 						TableLayoutConstants.MINIMUM, 5.0, TableLayoutConstants.MINIMUM, 5.0,
 						TableLayoutConstants.MINIMUM, 5.0, TableLayoutConstants.MINIMUM, 5.0,
 						TableLayoutConstants.MINIMUM, 5.0, TableLayoutConstants.MINIMUM, 5.0,
-						TableLayoutConstants.MINIMUM } }));
+						TableLayoutConstants.MINIMUM, 5.0, TableLayoutConstants.MINIMUM, 5.0,
+						TableLayoutConstants.MINIMUM, 5.0, TableLayoutConstants.MINIMUM } }));
 		mainPanel.setBackground(Color.WHITE);
 		
 		int rowCount = 1;
@@ -194,6 +215,23 @@ public class LMMETab extends InspectorTab {
 			}
 		});
 		
+		JButton btnExpandSubsystem = new JButton("Expand Selected Group");
+		btnExpandSubsystem.setToolTipText("Shows the subsystems of the selected group in the overview graph.");
+		JButton btnShowParentLevel = new JButton("Show Parent Level");
+		btnShowParentLevel.setToolTipText("Returns to the level of the overview graph that contains the currently shown group.");
+		mainPanel.add(combine(btnExpandSubsystem, btnShowParentLevel, Color.WHITE, true, true), "0," + rowCount);
+		rowCount += 2;
+		btnExpandSubsystem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				LMMEController.getInstance().expandSubsystemAction();
+			}
+		});
+		btnShowParentLevel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				LMMEController.getInstance().showParentLevelAction();
+			}
+		});
+		
 		this.ckbDrawEdges = new JCheckBox("Show edges in overview graph");
 		this.ckbDrawEdges
 				.setToolTipText("<html>If deselected, only the subsystem nodes will be drawn without edges</html>");
@@ -266,7 +304,60 @@ public class LMMETab extends InspectorTab {
 			}
 		});
 		
+		JButton btnSaveSession = new JButton("Save Session");
+		btnSaveSession.setToolTipText("Saves the cloning, the decomposition and the current drawings to a session file.");
+		JButton btnLoadSession = new JButton("Load Session");
+		btnLoadSession.setToolTipText("Restores a saved session for the current base graph without recomputing it.");
+		mainPanel.add(combine(btnSaveSession, btnLoadSession, Color.WHITE, true, true), "0," + rowCount);
+		rowCount += 2;
+		btnSaveSession.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser fc = createSessionFileChooser();
+				if (fc.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+					File file = fc.getSelectedFile();
+					if (!file.getName().endsWith("." + LMMESessionSnapshot.FILE_EXTENSION)) {
+						file = new File(file.getParentFile(), file.getName() + "." + LMMESessionSnapshot.FILE_EXTENSION);
+					}
+					LMMEController.getInstance().saveSessionAction(file);
+				}
+			}
+		});
+		btnLoadSession.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser fc = createSessionFileChooser();
+				if (fc.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+					LMMEController.getInstance().loadSessionAction(fc.getSelectedFile());
+				}
+			}
+		});
+		
 		LMMEController.getInstance().setTab(this);
+		updateSessionList();
+	}
+	
+	/**
+	 * Creates a file chooser for session files, which starts in the directory of the current model.
+	 * 
+	 * @return the file chooser
+	 */
+	private JFileChooser createSessionFileChooser() {
+		JFileChooser fc = new JFileChooser();
+		fc.setFileFilter(new FileNameExtensionFilter("LMME Session (*." + LMMESessionSnapshot.FILE_EXTENSION + ")",
+				LMMESessionSnapshot.FILE_EXTENSION));
+		LMMESession session = LMMEController.getInstance().getCurrentSession();
+		if (session.isModelSet()) {
+			Graph originalGraph = session.getBaseGraph().getOriginalGraph();
+			File modelFile = new File(originalGraph.getName(true));
+			if (modelFile.getParentFile() != null && modelFile.getParentFile().isDirectory()) {
+				fc.setCurrentDirectory(modelFile.getParentFile());
+			}
+			String modelName = modelFile.getName();
+			if (modelName.lastIndexOf('.') > 0) {
+				modelName = modelName.substring(0, modelName.lastIndexOf('.'));
+			}
+			fc.setSelectedFile(new File(fc.getCurrentDirectory(), modelName + "." + LMMESessionSnapshot.FILE_EXTENSION));
+		}
+		return fc;
 	}
 	
 	private JButton instantiateNodeHighlighting() {
@@ -326,7 +417,7 @@ public class LMMETab extends InspectorTab {
 							nodeLabel += splitStr[i];
 						}
 						for (Node node : baseGraph.getSpeciesNodes()) {
-							if (AttributeHelper.getLabel(node, "none").equals(nodeLabel)) {
+							if (baseGraph.getLabel(node, "none").equals(nodeLabel)) {
 								nodesHighlightMap.put(node, value);
 							}
 						}
@@ -340,7 +431,7 @@ public class LMMETab extends InspectorTab {
 						for (Node node : og.getGraph().getNodes()) {
 							AttributeHelper.setFillColor(node, Color.WHITE);
 							for (Node node2 : nodesHighlightMap.keySet()) {
-								if (AttributeHelper.getLabel(node, "none1").equals(AttributeHelper.getLabel(node2, "none2"))) {
+								if (AttributeHelper.getLabel(node, "none1").equals(baseGraph.getLabel(node2, "none2"))) {
 									double currentVal = nodesHighlightMap.get(node2).doubleValue();
 									int frac = (int) Math.round(((currentVal - minVal) / (maxVal - minVal)) * 200.0);
 									Color c = new Color(frac, frac, 255);
@@ -350,7 +441,7 @@ public class LMMETab extends InspectorTab {
 						}
 					}
 					
-					for (SubsystemGraph subsystem : og.getDecomposition().getSubsystems()) {
+					for (SubsystemGraph subsystem : og.getShownSubsystems()) {
 						AttributeHelper.setFillColor(og.getNodeOfSubsystem(subsystem), Color.WHITE);
 						double subsystemMinValue = Double.MAX_VALUE;
 						for (Node node : nodesHighlightMap.keySet()) {
@@ -369,7 +460,7 @@ public class LMMETab extends InspectorTab {
 					Graph csg = LMMEViewManagement.getInstance().getSubsystemFrame().getView().getGraph();
 					for (Node node : csg.getNodes()) {
 						for (Node node2 : nodesHighlightMap.keySet()) {
-							if (AttributeHelper.getLabel(node, "none1").equals(AttributeHelper.getLabel(node2, "none2"))) {
+							if (AttributeHelper.getLabel(node, "none1").equals(baseGraph.getLabel(node2, "none2"))) {
 								double currentVal = nodesHighlightMap.get(node2).doubleValue();
 								int frac = (int) Math.round(((currentVal - minVal) / (maxVal - minVal)) * 200.0);
 								Color c = new Color(frac, frac, 255);
@@ -389,7 +480,7 @@ public class LMMETab extends InspectorTab {
 							AttributeHelper.setSize(node, og.getInterfaceNodeSize(), og.getInterfaceNodeSize());
 						}
 						for (Node node2 : nodesHighlightMap.keySet()) {
-							if (AttributeHelper.getLabel(node, "none1").equals(AttributeHelper.getLabel(node2, "none2"))) {
+							if (AttributeHelper.getLabel(node, "none1").equals(baseGraph.getLabel(node2, "none2"))) {
 								double currentVal = nodesHighlightMap.get(node2).doubleValue();
 								double frac = 1.0 - (currentVal - minVal) / (maxVal - minVal);
 								int size = (int) Math.round(((double) og.getNodeSizeInterface()) * (1.5 * frac + 1.5));
@@ -398,7 +489,7 @@ public class LMMETab extends InspectorTab {
 						}
 					}
 					
-					for (SubsystemGraph subsystem : og.getDecomposition().getSubsystems()) {
+					for (SubsystemGraph subsystem : og.getShownSubsystems()) {
 						AttributeHelper.setSize(og.getNodeOfSubsystem(subsystem), og.getNodeSizeSubsystem(), og.getNodeSizeSubsystem());
 						double subsystemMinValue = Double.MAX_VALUE;
 						for (Node node : nodesHighlightMap.keySet()) {
@@ -419,7 +510,7 @@ public class LMMETab extends InspectorTab {
 					for (Node node : csg.getNodes()) {
 						AttributeHelper.setSize(node, nodeSize, nodeSize);
 						for (Node node2 : nodesHighlightMap.keySet()) {
-							if (AttributeHelper.getLabel(node, "none1").equals(AttributeHelper.getLabel(node2, "none2"))) {
+							if (AttributeHelper.getLabel(node, "none1").equals(baseGraph.getLabel(node2, "none2"))) {
 								double currentVal = nodesHighlightMap.get(node2).doubleValue();
 								double frac = 1.0 - (currentVal - minVal) / (maxVal - minVal);
 								int size = (int) Math.round(((double) nodeSize) * (1.5 * frac + 1.5));
@@ -608,6 +699,26 @@ public class LMMETab extends InspectorTab {
 		instantiateSelectionInformationPanel();
 		infoPanel.add(this.panelSelectionInformation, "4,0");
 		infoPanel.setBackground(Color.WHITE);
+		this.cbSession = new JComboBox<>();
+		this.cbSession.setToolTipText("The open sessions. Each session has its own decomposition and views.");
+		this.cbSession.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (!updatingSessionList && (cbSession.getSelectedItem() != null)) {
+					LMMEController.getInstance().switchSessionAction((LMMESession) cbSession.getSelectedItem());
+				}
+			}
+		});
+		JButton btnNewSession = new JButton("New Session");
+		btnNewSession.setToolTipText("Opens another session for the same base graph, e.g. to compare different decompositions.");
+		btnNewSession.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				LMMEController.getInstance().forkSessionAction();
+			}
+		});
+		JPanel sessionSelect = combine(combine(new JLabel("Session: "), this.cbSession, Color.WHITE, false, true), btnNewSession,
+				Color.WHITE, false, true);
+		addOneElementSpanning(FolderPanel.getBorderedComponent(sessionSelect, 0, 0, 5, 0), fpSessionInfo);
+		
 		addOneElementSpanning(FolderPanel.getBorderedComponent(infoPanel, 2, 0, 0, 0), fpSessionInfo);
 //		fpSessionInfo.addGuiComponentRow(FolderPanel.getBorderedComponent(infoPanel, 2, 0, 0, 0), null, true);
 		
@@ -744,6 +855,39 @@ public class LMMETab extends InspectorTab {
 		this.ckbShowInterfaces.setBackground(Color.WHITE);
 		fpSettings.addGuiComponentRow(FolderPanel.getBorderedComponent(ckbShowInterfaces, 0, 0, 0, 0), null, true);
 		
+		this.ckbSplitDefaultSubsystem = new JCheckBox("Split default subsystem, own subsystems for components of at least");
+		this.ckbSplitDefaultSubsystem.setToolTipText("<html>If selected, the connected components of the default subsystem that contain at least "
+				+ "the given number of reactions become subsystems of their own.<br>The remaining reactions stay in the default subsystem.</html>");
+		this.ckbSplitDefaultSubsystem.setBackground(Color.WHITE);
+		this.tfMinDefaultComponentSize = new JTextField(5);
+		this.tfMinDefaultComponentSize.setText(Integer.toString(this.defaultMinDefaultComponentSize));
+		JPanel splitDefaultSubsystemLine = combine(this.ckbSplitDefaultSubsystem, this.tfMinDefaultComponentSize, Color.WHITE, false, true);
+		fpSettings.addGuiComponentRow(FolderPanel.getBorderedComponent(splitDefaultSubsystemLine, 0, 0, 0, 0), null, true);
+		
+		this.ckbSplitLargeSubsystems = new JCheckBox("Split subsystems with more reactions than");
+		this.ckbSplitLargeSubsystems.setToolTipText(
+				"If selected, larger subsystems are split into parts of at most the given number of reactions, sharing few species.");
+		this.ckbSplitLargeSubsystems.setBackground(Color.WHITE);
+		this.tfMaxSubsystemSize = new JTextField(5);
+		this.tfMaxSubsystemSize.setText(Integer.toString(this.defaultMaxSubsystemSize));
+		JPanel splitLargeSubsystemsLine = combine(this.ckbSplitLargeSubsystems, this.tfMaxSubsystemSize, Color.WHITE, false, true);
+		fpSettings.addGuiComponentRow(FolderPanel.getBorderedComponent(splitLargeSubsystemsLine, 0, 0, 0, 0), null, true);
+		
+		this.ckbGroupSubsystems = new JCheckBox("Group subsystems, overview nodes per level at most");
+		this.ckbGroupSubsystems.setToolTipText("<html>If selected, the subsystems are grouped hierarchically, such that every level of the overview graph "
+				+ "has at most the given number of nodes.<br>Groups can be expanded in the overview graph.</html>");
+		this.ckbGroupSubsystems.setBackground(Color.WHITE);
+		this.tfMaxOverviewLevelSize = new JTextField(5);
+		this.tfMaxOverviewLevelSize.setText(Integer.toString(this.defaultMaxOverviewLevelSize));
+		JPanel groupSubsystemsLine = combine(this.ckbGroupSubsystems, this.tfMaxOverviewLevelSize, Color.WHITE, false, true);
+		fpSettings.addGuiComponentRow(FolderPanel.getBorderedComponent(groupSubsystemsLine, 0, 0, 0, 0), null, true);
+		
+		this.ckbCacheDecompositionsOnDisk = new JCheckBox("Keep computed decompositions on disk");
+		this.ckbCacheDecompositionsOnDisk.setToolTipText("<html>Recently computed decompositions are always reused while VANTED is running.<br>"
+				+ "If selected, they are also stored in the VANTED application folder and reused after a restart.</html>");
+		this.ckbCacheDecompositionsOnDisk.setBackground(Color.WHITE);
+		fpSettings.addGuiComponentRow(FolderPanel.getBorderedComponent(ckbCacheDecompositionsOnDisk, 0, 0, 0, 0), null, true);
+
 // Snippet might be useful in the future
 //		ckbAddDefaultSubS.addItemListener(new ItemListener() {
 //			public void itemStateChanged(ItemEvent e) {
@@ -846,7 +990,7 @@ public class LMMETab extends InspectorTab {
 					// We use getOriginalSpeciesWithDeg... here to ensure the possibility to perform
 					// another selection, even if there has already been done a decomposition based
 					// on a former selection.
-					ArrayList<Node> speciesAbove = LMMEController.getInstance().getCurrentSession().getBaseGraph()
+					List<Node> speciesAbove = LMMEController.getInstance().getCurrentSession().getBaseGraph()
 							.getOriginalSpeciesWithDegreeAtLeast(sliderSplitDeg.getValue());
 					// ArrayList<String> speciesAboveLabels = new ArrayList<>();
 					// for (Node node : speciesAbove) {
@@ -1229,6 +1373,98 @@ public class LMMETab extends InspectorTab {
 		return this.ckbShowInterfaces.isSelected();
 	}
 	
+	/**
+	 * Gets the state of the options that are applied to the result of every decomposition method, as entered in the tab and without reading the
+	 * numbers, such that no message is shown for invalid input.
+	 * 
+	 * @return the state of the general decomposition options
+	 */
+	public String getDecompositionSettings() {
+		return "transporter=" + this.ckbAddTransporterSubS.isSelected()
+				+ ";splitDefault=" + (this.ckbSplitDefaultSubsystem.isSelected() ? this.tfMinDefaultComponentSize.getText() : "")
+				+ ";splitLarge=" + (this.ckbSplitLargeSubsystems.isSelected() ? this.tfMaxSubsystemSize.getText() : "")
+				+ ";group=" + (this.ckbGroupSubsystems.isSelected() ? this.tfMaxOverviewLevelSize.getText() : "");
+	}
+	
+	/**
+	 * Returns whether the user has selected to keep computed decompositions on disk.
+	 * 
+	 * @return whether computed decompositions are to be kept on disk
+	 */
+	public boolean isDecompositionDiskCacheUsed() {
+		return this.ckbCacheDecompositionsOnDisk.isSelected();
+	}
+	
+	/**
+	 * Gets the minimum number of reactions of a connected component of the default subsystem to become a subsystem of its own, if the user has
+	 * selected the option to split the default subsystem.
+	 * 
+	 * @return the minimum number of reactions per component, or -1 if the default subsystem is not to be split
+	 */
+	public int getMinDefaultComponentSize() {
+		if (!this.ckbSplitDefaultSubsystem.isSelected()) {
+			return -1;
+		}
+		int res;
+		try {
+			res = Integer.parseInt(this.tfMinDefaultComponentSize.getText());
+			if (res < 1) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The minimum number of reactions per component of the default subsystem could not be read. "
+					+ "It has therefore been set to " + this.defaultMinDefaultComponentSize + ".");
+			res = this.defaultMinDefaultComponentSize;
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets the maximum number of reactions per subsystem, if the user has selected the option to split larger subsystems.
+	 * 
+	 * @return the maximum number of reactions per subsystem, or -1 if larger subsystems are not to be split
+	 */
+	public int getMaxSubsystemSize() {
+		if (!this.ckbSplitLargeSubsystems.isSelected()) {
+			return -1;
+		}
+		int res;
+		try {
+			res = Integer.parseInt(this.tfMaxSubsystemSize.getText());
+			if (res < 1) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The maximum number of reactions per subsystem could not be read. "
+					+ "It has therefore been set to " + this.defaultMaxSubsystemSize + ".");
+			res = this.defaultMaxSubsystemSize;
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets the maximum number of nodes per level of the overview graph, if the user has selected the option to group the subsystems.
+	 * 
+	 * @return the maximum number of nodes per level, or -1 if the subsystems are not to be grouped
+	 */
+	public int getMaxOverviewLevelSize() {
+		if (!this.ckbGroupSubsystems.isSelected()) {
+			return -1;
+		}
+		int res;
+		try {
+			res = Integer.parseInt(this.tfMaxOverviewLevelSize.getText());
+			if (res < 2) {
+				throw new NumberFormatException();
+			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(null, "The maximum number of nodes per level could not be read or is less than 2. "
+					+ "It has therefore been set to " + this.defaultMaxOverviewLevelSize + ".");
+			res = this.defaultMaxOverviewLevelSize;
+		}
+		return res;
+	}
+	
 	/**
 	 * Returns whether the clear subsystem view checkbox is currently selected.
 	 * 
@@ -1288,7 +1524,7 @@ public class LMMETab extends InspectorTab {
 	 * 
 	 * @return the species to be cloned
 	 */
-	public ArrayList<Node> getClonableSpecies() {
+	public List<Node> getClonableSpecies() {
 		ArrayList<Node> res = new ArrayList<>();
 		if (editedCloneList) {
 			for (JCheckBox cb : clonableSpeciesCheckBoxesSubmitted) {
@@ -1311,8 +1547,11 @@ public class LMMETab extends InspectorTab {
 	public void updateGUI() {
 		// TODO implement: metabolites/reactions/slider dimensions/number above/...
 		LMMESession session = LMMEController.getInstance().getCurrentSession();
+		updateSessionList();
 		if (session.isModelSet()) {
 			BaseGraph baseGraph = session.getBaseGraph();
+			setBaseGraphInfo(baseGraph.getOriginalGraph().getName(), baseGraph.getNumberOfSpecies(),
+					baseGraph.getNumberOfReactions());
 			this.labelSliderCorrespSpeciesNumber.setText(
 					String.valueOf(baseGraph.getNumberOfSpeciesWithDegreeAtLeast(this.getClonableSpeciesThreshold())));
 			this.setSliderMax(baseGraph.getMaximumDegree());
@@ -1335,6 +1574,19 @@ public class LMMETab extends InspectorTab {
 		// TODO SubsystemView Management query, what is shown?!
 	}
 	
+	/**
+	 * Fills the session selection with the open sessions and selects the current one.
+	 */
+	public void updateSessionList() {
+		updatingSessionList = true;
+		this.cbSession.removeAllItems();
+		for (LMMESession session : LMMEController.getInstance().getSessions()) {
+			this.cbSession.addItem(session);
+		}
+		this.cbSession.setSelectedItem(LMMEController.getInstance().getCurrentSession());
+		updatingSessionList = false;
+	}
+	
 	/**
 	 * Updates the availability of several options, which depend on each other.
 	 */
@@ -25,29 +25,35 @@ import org.graffiti.editor.LoadSetting;
 import org.graffiti.editor.MainFrame;
 import org.graffiti.graph.Graph;
 import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.core.LMMESession;
 
 /**
  * Manages the horizontally splitted views.
+ * <p>
+ * Every {@link LMMESession} has its own pair of views, {@link #getInstance()} returns the management of the current session.
  * 
  * @author Michael Aichem
  * @author Tobias Czauderna
  */
 public class LMMEViewManagement {
 	
-	private static LMMEViewManagement instance;
+	private final LMMESession session;
 	
 	private GraffitiInternalFrame overviewFrame;
 	private GraffitiInternalFrame subsystemFrame;
 	
-	private LMMEViewManagement() {
-		
+	/**
+	 * Creates the view management for the given session.
+	 * 
+	 * @param session
+	 *           the session whose graphs are shown
+	 */
+	public LMMEViewManagement(LMMESession session) {
+		this.session = session;
 	}
 	
-	public static synchronized LMMEViewManagement getInstance() {
-		if (LMMEViewManagement.instance == null) {
-			LMMEViewManagement.instance = new LMMEViewManagement();
-		}
-		return LMMEViewManagement.instance;
+	public static LMMEViewManagement getInstance() {
+		return LMMEController.getInstance().getCurrentSession().getViewManagement();
 	}
 	
 	/**
@@ -82,11 +88,11 @@ public class LMMEViewManagement {
 		overviewFrame.addInternalFrameListener(new InternalFrameAdapter() {
 			public void internalFrameClosing(InternalFrameEvent e) {
 				ensureClosed(subsystemFrame);
-				LMMEController.getInstance().partiallyResetSession();
+				LMMEController.getInstance().partiallyResetSession(session);
 			}
 		});
 		reArrangeFrames();
-		LMMEController.getInstance().getCurrentSession().getOverviewGraph().registerSelectionListener();
+		session.getOverviewGraph().registerSelectionListener();
 	}
 	
 	/**
@@ -101,7 +107,7 @@ public class LMMEViewManagement {
 		subsystemFrame.addInternalFrameListener(new InternalFrameAdapter() {
 			public void internalFrameClosing(InternalFrameEvent e) {
 				LMMEController.getInstance().getTab().resetSubsystemInfo();
-				LMMESubsystemViewManagement.getInstance().resetOverviewGraphColoring();
+				session.getSubsystemViewManagement().resetOverviewGraphColoring();
 //				MMESubsystemViewManagement.getInstance().resetLists();
 			}
 		});
@@ -183,6 +189,20 @@ public class LMMEViewManagement {
 		MainFrame.getInstance().setActiveSession(subsystemFrame.getSession(), subsystemFrame.getView());
 	}
 	
+	/**
+	 * Brings both frames of this session to the front, e.g. after switching to this session.
+	 */
+	public void toFront() {
+		reArrangeFrames();
+		if ((overviewFrame != null) && !overviewFrame.isClosed()) {
+			overviewFrame.toFront();
+			ensureOverviewActive();
+		}
+		if ((subsystemFrame != null) && !subsystemFrame.isClosed()) {
+			subsystemFrame.toFront();
+		}
+	}
+	
 	/**
 	 * Closes both frames.
 	 */
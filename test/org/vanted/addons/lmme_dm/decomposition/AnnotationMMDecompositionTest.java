@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.graffiti.graph.Node;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vanted.addons.lmme_dm.core.LMMEConstants;
+import org.vanted.addons.lmme_dm.core.LMMEController;
+import org.vanted.addons.lmme_dm.core.LMMESession;
+import org.vanted.addons.lmme_dm.graphs.BaseGraph;
+import org.vanted.addons.lmme_dm.graphs.SubsystemGraph;
+import org.vanted.addons.lmme_dm.io.StreamingSBMLReader;
+
+/**
+ * Tests the {@link AnnotationMMDecomposition} on a small model whose reactions carry MIRIAM annotations, against a small KEGG link dump.
+ * 
+ * @author Michael Aichem
+ */
+public class AnnotationMMDecompositionTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static final String MODEL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<sbml xmlns=\"http://www.sbml.org/sbml/level2/version4\" level=\"2\" version=\"4\">\n"
+			+ "<model id=\"glycolysis\">\n"
+			+ "<listOfCompartments><compartment id=\"c\" name=\"cytosol\"/></listOfCompartments>\n"
+			+ "<listOfSpecies>\n"
+			+ "<species id=\"s1\" compartment=\"c\"/><species id=\"s2\" compartment=\"c\"/><species id=\"s3\" compartment=\"c\"/>\n"
+			+ "<species id=\"s4\" compartment=\"c\"/><species id=\"s5\" compartment=\"c\"/>\n"
+			+ "</listOfSpecies>\n"
+			+ "<listOfReactions>\n"
+			+ reaction("r1", "s1", "s2", "urn:miriam:kegg.reaction:R00200")
+			+ reaction("r2", "s2", "s3", "https://identifiers.org/kegg.reaction:R00658")
+			+ reaction("r3", "s3", "s4", "http://identifiers.org/kegg.reaction/R01061", "urn:miriam:ec-code:1.2.1.12")
+			+ reaction("r4", "s4", "s5", "urn:miriam:kegg.reaction:R00342")
+			+ reaction("r5", "s5", "s1")
+			+ "</listOfReactions>\n"
+			+ "</model>\n"
+			+ "</sbml>\n";
+	
+	private static String reaction(String id, String reactant, String product, String... resources) {
+		StringBuilder res = new StringBuilder();
+		res.append("<reaction id=\"").append(id).append("\" metaid=\"meta_").append(id).append("\">\n");
+		if (resources.length > 0) {
+			res.append("<annotation><rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" ");
+			res.append("xmlns:bqbiol=\"http://biomodels.net/biology-qualifiers/\">");
+			res.append("<rdf:Description rdf:about=\"#meta_").append(id).append("\"><bqbiol:is><rdf:Bag>");
+			for (String resource : resources) {
+				res.append("<rdf:li rdf:resource=\"").append(resource).append("\"/>");
+			}
+			res.append("</rdf:Bag></bqbiol:is></rdf:Description></rdf:RDF></annotation>\n");
+		}
+		res.append("<listOfReactants><speciesReference species=\"").append(reactant).append("\"/></listOfReactants>\n");
+		res.append("<listOfProducts><speciesReference species=\"").append(product).append("\"/></listOfProducts>\n");
+		res.append("</reaction>\n");
+		return res.toString();
+	}
+	
+	private File write(String fileName, String content) throws IOException {
+		File file = new File(folder.getRoot(), fileName);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+	
+	@Test
+	public void reducesMiriamResourcesToIdentifiers() {
+		assertEquals("kegg.reaction:R00200", AnnotationMMDecomposition.getMiriamIdentifier("urn:miriam:kegg.reaction:R00200"));
+		assertEquals("kegg.reaction:R00200", AnnotationMMDecomposition.getMiriamIdentifier("https://identifiers.org/kegg.reaction:R00200"));
+		assertEquals("kegg.reaction:R00200", AnnotationMMDecomposition.getMiriamIdentifier("http://identifiers.org/kegg.reaction/R00200"));
+		assertEquals("obo.chebi:CHEBI:15422", AnnotationMMDecomposition.getMiriamIdentifier("urn:miriam:obo.chebi:CHEBI%3A15422"));
+		assertEquals("R00200", AnnotationMMDecomposition.getMiriamIdentifier("R00200"));
+	}
+	
+	@Test
+	public void assignsReactionsToThePathwaysOfTheirMiriamIdentifiers() throws IOException {
+		StreamingSBMLReader reader = new StreamingSBMLReader();
+		reader.read(write("model.xml", MODEL));
+		BaseGraph baseGraph = reader.createBaseGraph();
+		assertTrue(baseGraph.getModelAttributeKeys().contains(
+				BaseGraph.getModelAttributeKey(LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.MIRIAM_ATTRIBUTE)));
+		
+		File link = write("link_pathway_rn.txt",
+				"rn:R00200\tpath:rn00010\nrn:R00658\tpath:rn00010\nrn:R01061\tpath:rn00010\nrn:R00342\tpath:rn00020\n");
+		File list = write("list_pathway.txt", "path:map00010\tGlycolysis / Gluconeogenesis\npath:map00020\tCitrate cycle (TCA cycle)\n");
+		
+		LMMEController.getInstance().setCurrentSession(new LMMESession(baseGraph));
+		AnnotationMMDecomposition decomposition = new AnnotationMMDecomposition();
+		decomposition.setSettings(BaseGraph.getModelAttributeKey(LMMEConstants.ATTRIBUTE_PATH, LMMEConstants.MIRIAM_ATTRIBUTE), false, ",",
+				Arrays.asList(link, list), 2, folder.getRoot());
+		MMDecomposition result = decomposition.run(false, new ArrayList<>(), -1, -1, -1);
+		
+		HashMap<String, HashSet<String>> reactionsBySubsystem = new HashMap<>();
+		for (SubsystemGraph subsystem : result.getSubsystems()) {
+			HashSet<String> reactions = new HashSet<>();
+			for (Node reactionNode : subsystem.getReactionNodes()) {
+				reactions.add(baseGraph.getLabel(reactionNode));
+			}
+			reactionsBySubsystem.put(subsystem.getName(), reactions);
+		}
+		assertEquals(new HashSet<>(Arrays.asList("r1", "r2", "r3")), reactionsBySubsystem.get("Glycolysis / Gluconeogenesis"));
+		// the citrate cycle is left out, since only a single reaction belongs to it
+		assertTrue(!reactionsBySubsystem.containsKey("Citrate cycle (TCA cycle)"));
+	}
+	
+}
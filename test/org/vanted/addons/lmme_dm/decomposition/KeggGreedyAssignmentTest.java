@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.decomposition;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link KeggGreedyAssignment} selects the same pathways with the same reactions as the greedy loop that the
+ * {@link KeggMMDecomposition} used before, which recounted all candidates in every step.
+ * 
+ * @author Michael Aichem
+ */
+public class KeggGreedyAssignmentTest {
+	
+	/**
+	 * The former greedy loop: recount the candidates, drop the pathways below the minimum as well as the reactions without candidates, and assign the
+	 * reactions of the pathway with the most candidates. Unlike before, ties go to the lexicographically smaller pathway name instead of depending on the
+	 * iteration order of a {@code HashMap}.
+	 */
+	private static LinkedHashMap<String, HashSet<String>> greedyLoop(Map<String, ArrayList<String>> candidates, int minimumNumber) {
+		LinkedHashMap<String, ArrayList<String>> remaining = new LinkedHashMap<>();
+		for (Map.Entry<String, ArrayList<String>> entry : candidates.entrySet()) {
+			remaining.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		}
+		LinkedHashMap<String, HashSet<String>> res = new LinkedHashMap<>();
+		while (!remaining.isEmpty()) {
+			LinkedHashMap<String, Integer> numbers = new LinkedHashMap<>();
+			for (ArrayList<String> list : remaining.values()) {
+				for (String pathway : list) {
+					numbers.merge(pathway, Integer.valueOf(1), Integer::sum);
+				}
+			}
+			for (Map.Entry<String, Integer> entry : numbers.entrySet()) {
+				if (entry.getValue().intValue() < minimumNumber) {
+					for (ArrayList<String> list : remaining.values()) {
+						list.removeIf(entry.getKey()::equals);
+					}
+				}
+			}
+			numbers.values().removeIf(number -> number.intValue() < minimumNumber);
+			remaining.values().removeIf(ArrayList::isEmpty);
+			if (numbers.isEmpty()) {
+				break;
+			}
+			String hugest = null;
+			for (Map.Entry<String, Integer> entry : numbers.entrySet()) {
+				int number = entry.getValue().intValue();
+				if (hugest == null || number > numbers.get(hugest).intValue()
+						|| (number == numbers.get(hugest).intValue() && entry.getKey().compareTo(hugest) < 0)) {
+					hugest = entry.getKey();
+				}
+			}
+			HashSet<String> assigned = new HashSet<>();
+			for (Map.Entry<String, ArrayList<String>> entry : remaining.entrySet()) {
+				if (entry.getValue().contains(hugest)) {
+					assigned.add(entry.getKey());
+				}
+			}
+			remaining.keySet().removeAll(assigned);
+			res.put(hugest, assigned);
+		}
+		return res;
+	}
+	
+	private static LinkedHashMap<String, HashSet<String>> heapAssignment(Map<String, ArrayList<String>> candidates, int minimumNumber) {
+		KeggGreedyAssignment<String> greedyAssignment = new KeggGreedyAssignment<>(candidates, minimumNumber);
+		greedyAssignment.run();
+		LinkedHashMap<String, HashSet<String>> res = new LinkedHashMap<>();
+		for (Map.Entry<String, ArrayList<String>> entry : greedyAssignment.getAssignment().entrySet()) {
+			res.put(entry.getKey(), new HashSet<>(entry.getValue()));
+		}
+		return res;
+	}
+	
+	private static void assertSameAssignment(Map<String, ArrayList<String>> candidates, int minimumNumber) {
+		LinkedHashMap<String, HashSet<String>> expected = greedyLoop(candidates, minimumNumber);
+		LinkedHashMap<String, HashSet<String>> actual = heapAssignment(candidates, minimumNumber);
+		// the order of the selection matters as well
+		assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+		assertEquals(expected, actual);
+	}
+	
+	private static LinkedHashMap<String, ArrayList<String>> candidates(String... reactionsAndPathways) {
+		LinkedHashMap<String, ArrayList<String>> res = new LinkedHashMap<>();
+		for (String reactionAndPathways : reactionsAndPathways) {
+			String[] split = reactionAndPathways.split(" ");
+			res.put(split[0], new ArrayList<>(Arrays.asList(split).subList(1, split.length)));
+		}
+		return res;
+	}
+	
+	@Test
+	public void breaksTiesByPathwayName() {
+		LinkedHashMap<String, ArrayList<String>> candidates = candidates("R1 map2 map1", "R2 map2 map1", "R3 map3");
+		assertSameAssignment(candidates, 1);
+		assertEquals(Arrays.asList("map1", "map3"), new ArrayList<>(heapAssignment(candidates, 1).keySet()));
+	}
+	
+	@Test
+	public void countsDuplicatePathwaysSeveralTimes() {
+		LinkedHashMap<String, ArrayList<String>> candidates = candidates("R1 map2 map2 map2", "R2 map1 map2", "R3 map1");
+		assertSameAssignment(candidates, 1);
+		LinkedHashMap<String, HashSet<String>> assignment = heapAssignment(candidates, 1);
+		assertEquals(Arrays.asList("map2", "map1"), new ArrayList<>(assignment.keySet()));
+		assertEquals(new HashSet<>(Arrays.asList("R1", "R2")), assignment.get("map2"));
+	}
+	
+	@Test
+	public void neverSelectsPathwaysBelowTheMinimum() {
+		LinkedHashMap<String, ArrayList<String>> candidates = candidates("R1 map1 map2", "R2 map1 map2", "R3 map1", "R4 map2", "R5 map3",
+				"R6 map3 map3");
+		assertSameAssignment(candidates, 3);
+		LinkedHashMap<String, HashSet<String>> assignment = heapAssignment(candidates, 3);
+		// map1 takes R1 and R2, which leaves map2 with a single reaction
+		assertEquals(Arrays.asList("map1", "map3"), new ArrayList<>(assignment.keySet()));
+		assertEquals(new HashSet<>(Arrays.asList("R1", "R2", "R3")), assignment.get("map1"));
+	}
+	
+	@Test
+	public void handlesReactionsWithoutCandidates() {
+		assertSameAssignment(candidates("R1", "R2 map1", "R3"), 1);
+		assertSameAssignment(new LinkedHashMap<>(), 1);
+	}
+	
+	@Test
+	public void matchesTheGreedyLoopOnRandomInstances() {
+		Random random = new Random(42L);
+		for (int instance = 0; instance < 300; instance++) {
+			int numberOfReactions = 1 + random.nextInt(60);
+			int numberOfPathways = 1 + random.nextInt(12);
+			LinkedHashMap<String, ArrayList<String>> candidates = new LinkedHashMap<>();
+			for (int r = 0; r < numberOfReactions; r++) {
+				ArrayList<String> list = new ArrayList<>();
+				int numberOfCandidates = random.nextInt(5);
+				for (int k = 0; k < numberOfCandidates; k++) {
+					// few pathways per instance, such that ties and duplicates are frequent
+					list.add("map" + random.nextInt(numberOfPathways));
+				}
+				candidates.put("R" + r, list);
+			}
+			assertSameAssignment(candidates, 1 + random.nextInt(4));
+		}
+	}
+	
+}
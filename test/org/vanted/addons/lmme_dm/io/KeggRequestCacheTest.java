@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the persistence and the recovery of the {@link KeggRequestCache}.
+ * 
+ * @author Michael Aichem
+ */
+public class KeggRequestCacheTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private void fill(int numberOfEntries) throws IOException {
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			for (int i = 0; i < numberOfEntries; i++) {
+				cache.put("rn:R" + i, "ENTRY R" + i);
+			}
+		}
+	}
+	
+	private void truncate(String fileName, int bytes) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), fileName), "rw")) {
+			file.setLength(file.length() - bytes);
+		}
+	}
+	
+	@Test
+	public void keepsEntriesAcrossReopening() throws IOException {
+		fill(3);
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			cache.put("rn:R1", "");
+			assertEquals(3, cache.size());
+			assertEquals("ENTRY R0", cache.get("rn:R0"));
+			assertEquals("", cache.get("rn:R1"));
+			assertNull(cache.get("rn:R3"));
+		}
+	}
+	
+	@Test
+	public void recoversRecordsMissingInTruncatedIndex() throws IOException {
+		fill(5);
+		truncate("kegg-cache.idx", 3);
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			assertEquals(5, cache.size());
+			assertEquals("ENTRY R4", cache.get("rn:R4"));
+		}
+		// the recovered index is complete again
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			assertEquals(5, cache.size());
+		}
+	}
+	
+	@Test
+	public void discardsIncompleteLastRecordOfTruncatedDataFile() throws IOException {
+		fill(5);
+		truncate("kegg-cache.dat", 2);
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			assertNull(cache.get("rn:R4"));
+			assertEquals("ENTRY R3", cache.get("rn:R3"));
+			cache.put("rn:R5", "ENTRY R5");
+		}
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			assertEquals("ENTRY R5", cache.get("rn:R5"));
+			assertEquals("ENTRY R0", cache.get("rn:R0"));
+		}
+	}
+	
+	@Test
+	public void expiresUnknownEntries() throws IOException {
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot(), 0)) {
+			cache.put("rn:R0", "");
+			cache.put("rn:R1", "ENTRY R1");
+			assertNull(cache.get("rn:R0"));
+			assertEquals("ENTRY R1", cache.get("rn:R1"));
+		}
+	}
+	
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * LMME is a VANTED Add-on for the exploration of large metabolic models.
+ * Copyright (C) 2020 Chair for Life Science Informatics, University of Konstanz
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.vanted.addons.lmme_dm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link KeggRestClient} against a local stand-in for the KEGG REST service.
+ * 
+ * @author Michael Aichem
+ */
+public class KeggRestClientTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private HttpServer server;
+	
+	/**
+	 * The queries received by the server, e.g. {@code rn:R00001+rn:R00002}.
+	 */
+	private List<String> queries;
+	
+	/**
+	 * The number of requests that the server fails with status 503 before it answers.
+	 */
+	private AtomicInteger failures;
+	
+	/**
+	 * Whether the server answers every request with status 404.
+	 */
+	private volatile boolean notFound;
+	
+	@Before
+	public void startServer() throws IOException {
+		queries = Collections.synchronizedList(new ArrayList<>());
+		failures = new AtomicInteger();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/get/", this::handle);
+		server.start();
+	}
+	
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+	
+	/**
+	 * Answers a query with the entries of all requested reactions whose number is odd, in reverse order and with the identifier in upper case.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getPath().substring("/get/".length());
+		queries.add(query);
+		if (failures.getAndDecrement() > 0) {
+			respond(exchange, 503, "");
+			return;
+		}
+		if (notFound) {
+			respond(exchange, 404, "");
+			return;
+		}
+		StringBuilder response = new StringBuilder();
+		List<String> ids = new ArrayList<>(Arrays.asList(query.split("\\+")));
+		Collections.reverse(ids);
+		for (String id : ids) {
+			String number = id.substring(id.indexOf(':') + 1).toUpperCase();
+			if (Integer.parseInt(number.substring(1)) % 2 == 1) {
+				response.append(entry(number));
+			}
+		}
+		respond(exchange, response.length() == 0 ? 404 : 200, response.toString());
+	}
+	
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	private static String entry(String id) {
+		return "ENTRY       " + id + "                      Reaction\n"
+				+ "PATHWAY     rn00010  Pathway of " + id + "\n"
+				+ "///\n";
+	}
+	
+	private String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/get/";
+	}
+	
+	private static List<String> ids(int from, int to) {
+		ArrayList<String> ids = new ArrayList<>();
+		for (int i = from; i <= to; i++) {
+			ids.add(String.format("R%05d", i));
+		}
+		return ids;
+	}
+	
+	@Test
+	public void splitsRequestsIntoPackagesOfTen() {
+		KeggRestClient client = new KeggRestClient(getBaseUrl(), 3, null, 1);
+		HashMap<String, String> entries = client.getEntries("rn", ids(1, 25), null);
+		
+		assertEquals(25, entries.size());
+		assertEquals(3, queries.size());
+		ArrayList<Integer> packageSizes = new ArrayList<>();
+		for (String query : queries) {
+			packageSizes.add(query.split("\\+").length);
+		}
+		Collections.sort(packageSizes);
+		assertEquals(Arrays.asList(5, 10, 10), packageSizes);
+	}
+	
+	@Test
+	public void assignsEntriesByTheirEntryLine() {
+		KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, null, 1);
+		HashMap<String, String> entries = client.getEntries("rn", Arrays.asList("R00001", "r00002", "R00003"), null);
+		
+		assertTrue(entries.get("R00001").contains("ENTRY       R00001"));
+		assertTrue(entries.get("R00003").contains("Pathway of R00003"));
+		// the lower case identifier is matched, but the entry is unknown, since its number is even
+		assertEquals("", entries.get("r00002"));
+		assertEquals(0, client.getNumberOfFailedEntries());
+	}
+	
+	@Test
+	public void treatsNotFoundAsUnknownEntries() {
+		notFound = true;
+		KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, null, 1);
+		HashMap<String, String> entries = client.getEntries("rn", ids(1, 3), null);
+		
+		assertEquals(1, queries.size());
+		assertEquals(3, entries.size());
+		for (String entry : entries.values()) {
+			assertEquals("", entry);
+		}
+	}
+	
+	@Test
+	public void retriesFailedRequests() {
+		failures.set(2);
+		KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, null, 1);
+		HashMap<String, String> entries = client.getEntries("rn", ids(1, 2), null);
+		
+		assertEquals(3, queries.size());
+		assertTrue(entries.get("R00001").startsWith("ENTRY"));
+		assertEquals(0, client.getNumberOfFailedEntries());
+	}
+	
+	@Test
+	public void givesUpAfterTheLastAttempt() {
+		failures.set(Integer.MAX_VALUE);
+		KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, null, 1);
+		HashMap<String, String> entries = client.getEntries("rn", ids(1, 2), null);
+		
+		assertEquals(4, queries.size());
+		assertTrue(entries.isEmpty());
+		assertEquals(2, client.getNumberOfFailedEntries());
+	}
+	
+	@Test
+	public void answersCachedEntriesWithoutRequest() throws IOException {
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot())) {
+			new KeggRestClient(getBaseUrl(), 1, cache, 1).getEntries("rn", ids(1, 4), null);
+			assertEquals(1, queries.size());
+			
+			KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, cache, 1);
+			HashMap<String, String> entries = client.getEntries("rn", ids(1, 4), null);
+			assertEquals(1, queries.size());
+			assertEquals(4, client.getNumberOfCachedEntries());
+			assertEquals("", entries.get("R00002"));
+		}
+	}
+	
+	@Test
+	public void requestsExpiredUnknownEntriesAgain() throws IOException {
+		try (KeggRequestCache cache = new KeggRequestCache(folder.getRoot(), 0)) {
+			new KeggRestClient(getBaseUrl(), 1, cache, 1).getEntries("rn", ids(1, 2), null);
+			
+			KeggRestClient client = new KeggRestClient(getBaseUrl(), 1, cache, 1);
+			client.getEntries("rn", ids(1, 2), null);
+			assertEquals(2, queries.size());
+			assertEquals("rn:R00002", queries.get(1));
+			assertEquals(1, client.getNumberOfCachedEntries());
+			assertNull(cache.get("rn:R00002"));
+		}
+	}
+	
+}